@@ -515,6 +515,16 @@ public class ConnectionService {
                    successCount, collectionNames.size(), failCount);
     }
     
+    /**
+     * Whether a connection uses the Protostellar protocol (couchbase2://), which has no raw
+     * FTS request options (e.g. search_after)
+     */
+    public boolean isProtostellar(String connectionName) {
+        ConnectionDetails details = connectionDetails.get(connectionName);
+        return details != null && details.getConnectionString() != null
+            && details.getConnectionString().trim().toLowerCase().startsWith("couchbase2://");
+    }
+    
     /**
      * Get SSL status for a connection
      */
@@ -50,6 +50,8 @@ public class FhirConfig {
         // Configure for better performance and US Core compatibility
         fhirContext.getParserOptions().setStripVersionsFromReferences(false);
         fhirContext.getParserOptions().setDontStripVersionsFromReferencesAtPaths("meta");
+        // Bundle entries keep their own resource IDs (transaction processing maps fullUrls itself)
+        fhirContext.getParserOptions().setOverrideResourceIdWithBundleEntryFullUrl(false);
 
         logger.debug("FHIR R4 Context initialized successfully");
         logger.debug("FHIR Version: {}", fhirContext.getVersion().getVersion().getFhirVersionString());
@@ -0,0 +1,25 @@
+package com.couchbase.fhir.resources.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Concurrency budget for the entries of a single batch Bundle.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "fhir.bundle.batch")
+public class BatchBundleProperties {
+
+    /**
+     * Max independent batch entries (validate + write, or GET) processed at the same time.
+     */
+    private int maxConcurrency = 8;
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public void setMaxConcurrency(int maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+    }
+}
@@ -6,14 +6,67 @@ import org.springframework.context.annotation.Configuration;
 @Configuration
 @ConfigurationProperties(prefix = "fhir.bundle.fastpath")
 public class BundleFastpathProperties {
-    
+
     private boolean enabled = true;
-    
+
+    /**
+     * Stream searchset entries to the servlet output stream as KV reads complete
+     * instead of assembling the whole Bundle in memory first.
+     */
+    private boolean streaming = true;
+
+    /**
+     * Flush the servlet output stream once this many bytes have been written since the last flush.
+     */
+    private int streamFlushBytes = 32768;
+
+    /**
+     * Serve Patient/$everything (first and continuation pages) from raw KV bytes.
+     */
+    private boolean everything = true;
+
+    /**
+     * Serve {resourceType}/{id}/_history from raw KV bytes.
+     */
+    private boolean history = true;
+
     public boolean isEnabled() {
         return enabled;
     }
-    
+
     public void setEnabled(boolean enabled) {
         this.enabled = enabled;
     }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    public int getStreamFlushBytes() {
+        return streamFlushBytes;
+    }
+
+    public void setStreamFlushBytes(int streamFlushBytes) {
+        this.streamFlushBytes = streamFlushBytes;
+    }
+
+    public boolean isEverything() {
+        return everything;
+    }
+
+    public void setEverything(boolean everything) {
+        this.everything = everything;
+    }
+
+    public boolean isHistory() {
+        return history;
+    }
+
+    public void setHistory(boolean history) {
+        this.history = history;
+    }
 }
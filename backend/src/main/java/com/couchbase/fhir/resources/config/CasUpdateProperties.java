@@ -0,0 +1,51 @@
+package com.couchbase.fhir.resources.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Retry budget of single-resource updates in CAS mode (buckets with update.mode = "cas").
+ */
+@Configuration
+@ConfigurationProperties(prefix = "fhir.update.cas")
+public class CasUpdateProperties {
+
+    /**
+     * Read-modify-replace attempts before a PUT or PATCH without If-Match gives up with 409.
+     */
+    private int maxAttempts = 5;
+
+    /**
+     * Backoff before the second attempt, doubled per attempt (with jitter).
+     */
+    private long initialBackoffMs = 5;
+
+    /**
+     * Cap on the backoff between two attempts.
+     */
+    private long maxBackoffMs = 100;
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    public long getInitialBackoffMs() {
+        return initialBackoffMs;
+    }
+
+    public void setInitialBackoffMs(long initialBackoffMs) {
+        this.initialBackoffMs = initialBackoffMs;
+    }
+
+    public long getMaxBackoffMs() {
+        return maxBackoffMs;
+    }
+
+    public void setMaxBackoffMs(long maxBackoffMs) {
+        this.maxBackoffMs = maxBackoffMs;
+    }
+}
@@ -0,0 +1,87 @@
+package com.couchbase.fhir.resources.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Chained search execution: strategy thresholds and the short-lived cache of chain target IDs.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "fhir.search.chain")
+public class ChainSearchProperties {
+
+    /**
+     * Most reference clauses in one FTS request; larger target sets are searched in batches of this size.
+     */
+    private int disjunctionBatchSize = 1000;
+
+    /**
+     * Most target IDs resolved for one chain, and most primaries a batched lookup collects (FTS result window).
+     * Chains matching more are rejected with 400 instead of being answered from a truncated set.
+     */
+    private int maxTargets = 10000;
+
+    /**
+     * Primaries matching the other criteria are intersected in memory with the target set
+     * when there are at most this many of them and fewer than the targets.
+     */
+    private int intersectionMaxPrimaries = 1000;
+
+    private boolean cacheEnabled = true;
+
+    /**
+     * How long a chain's target IDs are reused. Writes on this node drop them; this bounds staleness
+     * from writes elsewhere. Conditional operations never use the cache.
+     */
+    private long cacheTtlSeconds = 30;
+
+    private long cacheMaximumSize = 1000;
+
+    public int getDisjunctionBatchSize() {
+        return disjunctionBatchSize;
+    }
+
+    public void setDisjunctionBatchSize(int disjunctionBatchSize) {
+        this.disjunctionBatchSize = disjunctionBatchSize;
+    }
+
+    public int getMaxTargets() {
+        return maxTargets;
+    }
+
+    public void setMaxTargets(int maxTargets) {
+        this.maxTargets = maxTargets;
+    }
+
+    public int getIntersectionMaxPrimaries() {
+        return intersectionMaxPrimaries;
+    }
+
+    public void setIntersectionMaxPrimaries(int intersectionMaxPrimaries) {
+        this.intersectionMaxPrimaries = intersectionMaxPrimaries;
+    }
+
+    public boolean isCacheEnabled() {
+        return cacheEnabled;
+    }
+
+    public void setCacheEnabled(boolean cacheEnabled) {
+        this.cacheEnabled = cacheEnabled;
+    }
+
+    public long getCacheTtlSeconds() {
+        return cacheTtlSeconds;
+    }
+
+    public void setCacheTtlSeconds(long cacheTtlSeconds) {
+        this.cacheTtlSeconds = cacheTtlSeconds;
+    }
+
+    public long getCacheMaximumSize() {
+        return cacheMaximumSize;
+    }
+
+    public void setCacheMaximumSize(long cacheMaximumSize) {
+        this.cacheMaximumSize = cacheMaximumSize;
+    }
+}
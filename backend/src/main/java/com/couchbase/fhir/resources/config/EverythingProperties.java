@@ -0,0 +1,25 @@
+package com.couchbase.fhir.resources.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Patient/$everything settings.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "fhir.everything")
+public class EverythingProperties {
+
+    /**
+     * Max FTS searches / KV batches one $everything request runs at the same time.
+     */
+    private int maxConcurrency = 8;
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public void setMaxConcurrency(int maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+    }
+}
@@ -3,14 +3,19 @@ package com.couchbase.fhir.resources.config;
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.rest.server.IResourceProvider;
 import ca.uhn.fhir.rest.server.RestfulServer;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 
 import com.couchbase.fhir.resources.provider.USCoreCapabilityProvider;
 import com.couchbase.fhir.resources.interceptor.BucketAwareValidationInterceptor;
 import com.couchbase.fhir.resources.service.FhirBucketConfigService;
+import com.couchbase.fhir.resources.service.KvFetchEngine;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
 import java.util.List;
 
 /**
@@ -69,6 +74,23 @@ public class FhirRestfulServer extends RestfulServer {
     @Autowired
     private com.couchbase.common.config.FhirServerConfig fhirServerConfig;
 
+    @Autowired
+    private KvFetchEngine kvFetchEngine;
+
+    /**
+     * Every FHIR request gets its own KV request window, shared by all of its fetch batches
+     */
+    @Override
+    protected void service(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        KvFetchEngine.RequestWindow previous = KvFetchEngine.currentWindow();
+        KvFetchEngine.bindWindow(kvFetchEngine.newRequestWindow());
+        try {
+            super.service(request, response);
+        } finally {
+            KvFetchEngine.bindWindow(previous);
+        }
+    }
+
     @Override
     protected void initialize() {
         logger.info("🚀 Initializing FhirRestfulServer");
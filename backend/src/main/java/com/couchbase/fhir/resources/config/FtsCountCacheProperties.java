@@ -0,0 +1,45 @@
+package com.couchbase.fhir.resources.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Short-lived cache of FTS total hit counts, keyed by (index, normalized query).
+ */
+@Configuration
+@ConfigurationProperties(prefix = "fhir.search.count-cache")
+public class FtsCountCacheProperties {
+
+    private boolean enabled = true;
+
+    /**
+     * How long a total is reused. Writes are not tracked, so this bounds how stale Bundle.total can be.
+     */
+    private long ttlSeconds = 30;
+
+    private long maximumSize = 10000;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getTtlSeconds() {
+        return ttlSeconds;
+    }
+
+    public void setTtlSeconds(long ttlSeconds) {
+        this.ttlSeconds = ttlSeconds;
+    }
+
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    public void setMaximumSize(long maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+}
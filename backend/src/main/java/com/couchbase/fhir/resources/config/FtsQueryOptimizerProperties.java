@@ -0,0 +1,22 @@
+package com.couchbase.fhir.resources.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Rewrite pass over combined FTS queries (see FtsQueryOptimizer).
+ */
+@Configuration
+@ConfigurationProperties(prefix = "fhir.search.optimizer")
+public class FtsQueryOptimizerProperties {
+
+    private boolean enabled = true;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+}
@@ -0,0 +1,65 @@
+package com.couchbase.fhir.resources.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Limits for the shared KV fetch engine (see KvFetchEngine).
+ */
+@Configuration
+@ConfigurationProperties(prefix = "fhir.kv.fetch")
+public class KvFetchProperties {
+
+    /**
+     * Max KV gets in flight against one bucket across all requests.
+     */
+    private int maxInFlightPerBucket = 256;
+
+    /**
+     * Max KV gets and sub-document lookups in flight for a single request, across all of its batches (search page and
+     * _include/_revinclude fetches, every $everything type, ...).
+     */
+    private int maxInFlightPerRequest = 64;
+
+    /**
+     * Upper bound for a single KV get; capped further by what is left of the request deadline.
+     */
+    private long operationTimeoutMs = 10000;
+
+    /**
+     * Overall budget for a batch, measured from submission. Keys not dispatched by then fail fast.
+     */
+    private long requestDeadlineMs = 30000;
+
+    public int getMaxInFlightPerBucket() {
+        return maxInFlightPerBucket;
+    }
+
+    public void setMaxInFlightPerBucket(int maxInFlightPerBucket) {
+        this.maxInFlightPerBucket = maxInFlightPerBucket;
+    }
+
+    public int getMaxInFlightPerRequest() {
+        return maxInFlightPerRequest;
+    }
+
+    public void setMaxInFlightPerRequest(int maxInFlightPerRequest) {
+        this.maxInFlightPerRequest = maxInFlightPerRequest;
+    }
+
+    public long getOperationTimeoutMs() {
+        return operationTimeoutMs;
+    }
+
+    public void setOperationTimeoutMs(long operationTimeoutMs) {
+        this.operationTimeoutMs = operationTimeoutMs;
+    }
+
+    public long getRequestDeadlineMs() {
+        return requestDeadlineMs;
+    }
+
+    public void setRequestDeadlineMs(long requestDeadlineMs) {
+        this.requestDeadlineMs = requestDeadlineMs;
+    }
+}
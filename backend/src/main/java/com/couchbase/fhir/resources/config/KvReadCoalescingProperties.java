@@ -0,0 +1,56 @@
+package com.couchbase.fhir.resources.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Single-flight coalescing of identical KV reads (see KvReadCoalescer).
+ */
+@Configuration
+@ConfigurationProperties(prefix = "fhir.kv.coalescing")
+public class KvReadCoalescingProperties {
+
+    private boolean enabled = true;
+
+    /**
+     * Keep completed reads for cacheTtlMs so bursts just after a read also skip the server.
+     * Invalidated by PUT/DELETE on this node; other nodes may serve the old document for up to the TTL.
+     */
+    private boolean cacheEnabled = false;
+
+    private long cacheTtlMs = 200;
+
+    private long cacheMaximumSize = 10000;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isCacheEnabled() {
+        return cacheEnabled;
+    }
+
+    public void setCacheEnabled(boolean cacheEnabled) {
+        this.cacheEnabled = cacheEnabled;
+    }
+
+    public long getCacheTtlMs() {
+        return cacheTtlMs;
+    }
+
+    public void setCacheTtlMs(long cacheTtlMs) {
+        this.cacheTtlMs = cacheTtlMs;
+    }
+
+    public long getCacheMaximumSize() {
+        return cacheMaximumSize;
+    }
+
+    public void setCacheMaximumSize(long cacheMaximumSize) {
+        this.cacheMaximumSize = cacheMaximumSize;
+    }
+}
@@ -0,0 +1,49 @@
+package com.couchbase.fhir.resources.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Local near-cache in front of the Admin.cache pagination state collection.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "fhir.search.state.near-cache")
+public class PaginationCacheProperties {
+
+    private boolean enabled = true;
+
+    /**
+     * Max pagination states held on heap (entries also expire with the state itself).
+     */
+    private long maximumSize = 10000;
+
+    /**
+     * Write to Couchbase without blocking the request. The local copy serves continuation
+     * pages on this node; other nodes read from Couchbase once the write lands.
+     */
+    private boolean asyncWrites = true;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    public void setMaximumSize(long maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    public boolean isAsyncWrites() {
+        return asyncWrites;
+    }
+
+    public void setAsyncWrites(boolean asyncWrites) {
+        this.asyncWrites = asyncWrites;
+    }
+}
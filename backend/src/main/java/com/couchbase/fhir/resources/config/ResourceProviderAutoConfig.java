@@ -2,18 +2,17 @@ package com.couchbase.fhir.resources.config;
 
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.rest.server.IResourceProvider;
-import ca.uhn.fhir.validation.FhirValidator;
 import com.couchbase.fhir.resources.provider.FhirCouchbaseResourceProvider;
 import com.couchbase.fhir.resources.search.validation.FhirSearchParameterPreprocessor;
 import com.couchbase.fhir.resources.service.FHIRResourceService;
 import com.couchbase.fhir.resources.service.FhirBucketConfigService;
+import com.couchbase.fhir.resources.service.ResourceValidationService;
 import com.couchbase.fhir.resources.validation.FhirBucketValidator;
 import com.couchbase.common.fhir.FhirMetaHelper;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.hl7.fhir.r4.model.Resource;
 import org.hl7.fhir.r4.model.Bundle;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
 
 import org.springframework.stereotype.Component;
@@ -67,11 +66,7 @@ public class ResourceProviderAutoConfig {
     private FhirContext fhirContext; // Inject singleton FhirContext bean
     
     @Autowired
-    private FhirValidator strictValidator; // Primary US Core validator
-    
-    @Autowired
-    @Qualifier("basicFhirValidator")
-    private FhirValidator lenientValidator; // Basic validator
+    private ResourceValidationService validationService; // Cached US Core / basic validation
     
     @Autowired
     private com.couchbase.admin.connections.service.ConnectionService connectionService;
@@ -120,7 +115,7 @@ public class ResourceProviderAutoConfig {
                 .filter(clazz -> !excludedResources.contains(clazz))
                 .map(clazz -> {
                     // logger.info("✅ Creating generic provider for: {}", clazz.getSimpleName());
-                    return new FhirCouchbaseResourceProvider<>(clazz, serviceFactory.getService(clazz), fhirContext, searchPreprocessor, bucketValidator, configService, strictValidator, lenientValidator, connectionService, putService, deleteService, metaHelper, searchService, patchService, conditionalPutService, historyService, everythingService, searchStateManager, fhirServerConfig);
+                    return new FhirCouchbaseResourceProvider<>(clazz, serviceFactory.getService(clazz), fhirContext, searchPreprocessor, bucketValidator, configService, validationService, connectionService, putService, deleteService, metaHelper, searchService, patchService, conditionalPutService, historyService, everythingService, searchStateManager, fhirServerConfig);
                 })
                 .collect(Collectors.toList());
 
@@ -0,0 +1,25 @@
+package com.couchbase.fhir.resources.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Concurrency budget for the _include / _revinclude branches of a single search.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "fhir.search.fan-out")
+public class SearchFanOutProperties {
+
+    /**
+     * Max _revinclude FTS searches / per-type KV batches one search runs at the same time.
+     */
+    private int maxConcurrency = 4;
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public void setMaxConcurrency(int maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+    }
+}
@@ -0,0 +1,28 @@
+package com.couchbase.fhir.resources.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Query-based pagination settings for continuation pages.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "fhir.search.pagination")
+public class SearchPaginationProperties {
+
+    /**
+     * Resume each page from the sort values of the previous page's last hit (FTS search_after)
+     * instead of skipping offset rows, so deep pages cost the same as the first one.
+     * Pages requested out of sequence (e.g. previous links) fall back to from/size, as do all
+     * pages on couchbase2:// (Protostellar) connections, which cannot send search_after.
+     */
+    private boolean keysetEnabled = true;
+
+    public boolean isKeysetEnabled() {
+        return keysetEnabled;
+    }
+
+    public void setKeysetEnabled(boolean keysetEnabled) {
+        this.keysetEnabled = keysetEnabled;
+    }
+}
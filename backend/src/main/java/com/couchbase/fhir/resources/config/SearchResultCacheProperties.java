@@ -0,0 +1,63 @@
+package com.couchbase.fhir.resources.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Searchset result cache: fastpath bundle bytes of repeated searches, invalidated by writes.
+ * Buckets opt in with searchCache.maxStalenessSeconds in their fhir-config document.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "fhir.search.result-cache")
+public class SearchResultCacheProperties {
+
+    private boolean enabled = true;
+
+    /**
+     * Total bundle bytes held on heap.
+     */
+    private long maximumSizeMb = 64;
+
+    /**
+     * Bundles larger than this are not cached.
+     */
+    private int maxEntryKb = 512;
+
+    /**
+     * Upper bound on a bucket's maxStalenessSeconds. Cached bundles carry next links, so this
+     * stays well below the 3 minute pagination state TTL.
+     */
+    private int maxStalenessSeconds = 60;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getMaximumSizeMb() {
+        return maximumSizeMb;
+    }
+
+    public void setMaximumSizeMb(long maximumSizeMb) {
+        this.maximumSizeMb = maximumSizeMb;
+    }
+
+    public int getMaxEntryKb() {
+        return maxEntryKb;
+    }
+
+    public void setMaxEntryKb(int maxEntryKb) {
+        this.maxEntryKb = maxEntryKb;
+    }
+
+    public int getMaxStalenessSeconds() {
+        return maxStalenessSeconds;
+    }
+
+    public void setMaxStalenessSeconds(int maxStalenessSeconds) {
+        this.maxStalenessSeconds = maxStalenessSeconds;
+    }
+}
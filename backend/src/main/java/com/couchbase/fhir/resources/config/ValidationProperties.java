@@ -0,0 +1,45 @@
+package com.couchbase.fhir.resources.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Validation result cache and the number of validations run at once.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "fhir.validation")
+public class ValidationProperties {
+
+    /**
+     * Validations running at once across all requests (validation is CPU bound).
+     */
+    private int maxConcurrency = Runtime.getRuntime().availableProcessors();
+
+    private boolean cacheEnabled = true;
+
+    private long cacheMaximumSize = 10000;
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public void setMaxConcurrency(int maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    public boolean isCacheEnabled() {
+        return cacheEnabled;
+    }
+
+    public void setCacheEnabled(boolean cacheEnabled) {
+        this.cacheEnabled = cacheEnabled;
+    }
+
+    public long getCacheMaximumSize() {
+        return cacheMaximumSize;
+    }
+
+    public void setCacheMaximumSize(long cacheMaximumSize) {
+        this.cacheMaximumSize = cacheMaximumSize;
+    }
+}
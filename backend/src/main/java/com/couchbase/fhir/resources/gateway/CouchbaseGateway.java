@@ -8,6 +8,7 @@ import com.couchbase.client.java.search.SearchQuery;
 import com.couchbase.client.java.search.SearchOptions;
 import com.couchbase.client.java.search.result.SearchResult;
 import com.couchbase.client.core.error.*;
+import com.couchbase.client.core.msg.kv.DurabilityLevel;
 import com.couchbase.fhir.resources.exceptions.DatabaseUnavailableException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -113,6 +114,38 @@ public class CouchbaseGateway {
             cluster -> cluster.searchQuery(indexName, searchQuery, options));
     }
     
+    /**
+     * Execute a KV operation against a collection, with the same circuit breaker as cluster operations.
+     */
+    public <T> T withCollection(String connectionName, String bucketName, String scopeName,
+                                String collectionName, Function<Collection, T> operation) {
+        return withCluster(connectionName,
+            cluster -> operation.apply(cluster.bucket(bucketName).scope(scopeName).collection(collectionName)));
+    }
+    
+    /**
+     * Whether the connection speaks Protostellar (couchbase2://)
+     */
+    public boolean isProtostellar(String connectionName) {
+        return connectionService.isProtostellar(connectionName);
+    }
+    
+    /**
+     * Durability of KV writes made outside transactions: the level configured for transactions
+     * (couchbase.sdk.transaction-durability from config.yaml, applied at startup), NONE otherwise.
+     */
+    public DurabilityLevel kvDurability() {
+        String durability = System.getProperty("couchbase.sdk.transaction-durability");
+        if (durability == null) {
+            return DurabilityLevel.NONE;
+        }
+        try {
+            return DurabilityLevel.valueOf(durability.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return DurabilityLevel.NONE;
+        }
+    }
+    
     /**
      * Get a collection for KV operations.
      */
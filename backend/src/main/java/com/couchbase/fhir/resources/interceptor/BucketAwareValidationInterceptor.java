@@ -72,6 +72,7 @@ public class BucketAwareValidationInterceptor {
         // Create performance tracking bag for this request
         RequestPerfBag perfBag = new RequestPerfBag();
         theRequestDetails.getUserData().put(UD_PERF_BAG, perfBag);
+        RequestPerfBagUtils.bind(perfBag);
         
         // Set basic request info
         String operationName = theRequestDetails.getRestOperationType() != null ? 
@@ -137,6 +138,7 @@ public class BucketAwareValidationInterceptor {
 
     @Hook(Pointcut.SERVER_OUTGOING_RESPONSE)
     public void after(RequestDetails rd) {
+        RequestPerfBagUtils.unbind();
         RequestPerfBag perfBag = (RequestPerfBag) rd.getUserData().get(UD_PERF_BAG);
         if (perfBag != null) {
             perfBag.setStatus("success");
@@ -178,6 +180,7 @@ public class BucketAwareValidationInterceptor {
             return true;
         }
         
+        RequestPerfBagUtils.unbind();
         RequestPerfBag perfBag = (RequestPerfBag) rd.getUserData().get(UD_PERF_BAG);
         if (perfBag != null) {
             perfBag.setStatus("error");
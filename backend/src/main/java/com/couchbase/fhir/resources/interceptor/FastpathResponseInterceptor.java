@@ -1,23 +1,45 @@
 package com.couchbase.fhir.resources.interceptor;
 
 import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
 import ca.uhn.fhir.rest.server.interceptor.InterceptorAdapter;
 import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
+import com.couchbase.fhir.resources.service.FastJsonBundleBuilder;
+import com.couchbase.fhir.resources.service.SearchResultCache;
 import com.couchbase.fhir.resources.service.SearchService;
+import com.couchbase.fhir.resources.service.StreamingSearchset;
+import com.google.common.io.CountingOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import jakarta.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 
 @Component
 public class FastpathResponseInterceptor extends InterceptorAdapter {
     
     private static final Logger logger = LoggerFactory.getLogger(FastpathResponseInterceptor.class);
     
+    @Autowired
+    private FastJsonBundleBuilder fastJsonBundleBuilder;
+    
+    @Autowired
+    private SearchResultCache searchResultCache;
+    
     @Override
     public boolean outgoingResponse(RequestDetails theRequestDetails) {
+        // Streaming fastpath: entries are written as KV reads complete (no in-memory Bundle)
+        Object streamingData = theRequestDetails.getUserData().get(SearchService.FASTPATH_STREAM_ATTRIBUTE);
+        if (streamingData instanceof StreamingSearchset && theRequestDetails instanceof ServletRequestDetails) {
+            return streamSearchset((StreamingSearchset) streamingData, (ServletRequestDetails) theRequestDetails);
+        }
+        
         // Check for fastpath UTF-8 bytes (2x memory savings vs String)
         Object fastpathData = theRequestDetails.getUserData().get(SearchService.FASTPATH_BYTES_ATTRIBUTE);
         
@@ -39,6 +61,11 @@ public class FastpathResponseInterceptor extends InterceptorAdapter {
                     
                     logger.debug("🚀 FASTPATH INTERCEPTOR: Wrote {} bytes to response (Tomcat will compress if enabled)", jsonBytes.length);
                     
+                    SearchResultCache.Ticket ticket = pendingTicket(theRequestDetails);
+                    if (ticket != null) {
+                        searchResultCache.put(ticket, jsonBytes);
+                    }
+                    
                     return false;
                 }
             } catch (IOException e) {
@@ -48,4 +75,99 @@ public class FastpathResponseInterceptor extends InterceptorAdapter {
         
         return true;
     }
+    
+    private boolean streamSearchset(StreamingSearchset searchset, ServletRequestDetails servletDetails) {
+        logger.debug("🚀 FASTPATH INTERCEPTOR: Streaming {}", searchset);
+        HttpServletResponse response = servletDetails.getServletResponse();
+        
+        response.setContentType("application/fhir+json;charset=UTF-8");
+        response.setStatus(HttpServletResponse.SC_OK);
+        
+        try {
+            // A pending result cache ticket keeps a bounded copy of what is streamed
+            SearchResultCache.Ticket ticket = pendingTicket(servletDetails);
+            CapturingOutputStream capture = ticket != null
+                ? new CapturingOutputStream(response.getOutputStream(), searchResultCache.getMaxEntryBytes())
+                : null;
+            CountingOutputStream out = new CountingOutputStream(capture != null ? capture : response.getOutputStream());
+            int entries = fastJsonBundleBuilder.writeSearchsetBundle(searchset, out);
+            // Only a completely written bundle is cached
+            if (capture != null && !capture.overflowed) {
+                searchResultCache.put(ticket, capture.copy.toByteArray());
+            }
+            
+            RequestPerfBagUtils.addCount(servletDetails, "entries", entries);
+            RequestPerfBagUtils.addCount(servletDetails, "response_bytes", (int) out.getCount());
+            logger.debug("🚀 FASTPATH INTERCEPTOR: Streamed {} entries ({} bytes)", entries, out.getCount());
+        } catch (IOException | RuntimeException e) {
+            // KV timeouts and other runtime failures can surface mid-stream, not just client disconnects
+            abortStream(response, e);
+        }
+        return false;
+    }
+    
+    /**
+     * Give up on a streamed searchset. Before anything reached the client the buffer is reset and
+     * HAPI reports the error normally; after that the body is closed as is (the client sees
+     * truncated JSON) and HAPI must not append an OperationOutcome to it.
+     */
+    private void abortStream(HttpServletResponse response, Exception e) {
+        if (!response.isCommitted()) {
+            logger.error("🚀 FASTPATH INTERCEPTOR: Failed to stream fastpath bundle before commit: {}", e.getMessage());
+            response.reset();
+            throw e instanceof BaseServerResponseException serverError
+                ? serverError
+                : new InternalErrorException("Failed to stream search results: " + e.getMessage(), e);
+        }
+        logger.error("🚀 FASTPATH INTERCEPTOR: Failed to stream fastpath bundle after commit, aborting response: {}",
+                     e.getMessage());
+        try {
+            response.getOutputStream().close();
+        } catch (IOException | RuntimeException closeError) {
+            logger.debug("🚀 FASTPATH INTERCEPTOR: Response already closed: {}", closeError.getMessage());
+        }
+    }
+    
+    private static SearchResultCache.Ticket pendingTicket(RequestDetails requestDetails) {
+        Object ticket = requestDetails.getUserData().remove(SearchResultCache.PENDING_ATTRIBUTE);
+        return ticket instanceof SearchResultCache.Ticket ? (SearchResultCache.Ticket) ticket : null;
+    }
+    
+    /**
+     * Passes writes through and keeps a copy until it grows past the limit
+     */
+    private static final class CapturingOutputStream extends FilterOutputStream {
+        private final ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        private final int limit;
+        private boolean overflowed;
+        
+        CapturingOutputStream(OutputStream out, int limit) {
+            super(out);
+            this.limit = limit;
+        }
+        
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            capture(new byte[] { (byte) b }, 0, 1);
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            capture(b, off, len);
+        }
+        
+        private void capture(byte[] b, int off, int len) {
+            if (overflowed) {
+                return;
+            }
+            if (copy.size() + len > limit) {
+                overflowed = true;
+                copy.reset();
+                return;
+            }
+            copy.write(b, off, len);
+        }
+    }
 }
@@ -14,6 +14,7 @@ public class RequestPerfBag {
     private final long startNs;
     private final Map<String, Long> timings;
     private final Map<String, Integer> counts;
+    private final Map<String, String> notes;
     
     // Request metadata
     private String operation;
@@ -26,6 +27,7 @@ public class RequestPerfBag {
         this.startNs = System.nanoTime();
         this.timings = new LinkedHashMap<>(); // Preserve insertion order
         this.counts = new LinkedHashMap<>();  // Preserve insertion order
+        this.notes = new LinkedHashMap<>();
     }
     
     /**
@@ -53,6 +55,16 @@ public class RequestPerfBag {
         addCount(name, 1);
     }
     
+    /**
+     * Add a free-form note, e.g. a query plan (appended if key already exists).
+     * Synchronized: notes may come from fan-out threads of the same request.
+     */
+    public synchronized void addNote(String name, String value) {
+        if (name != null && value != null && !value.isEmpty()) {
+            notes.merge(name, value, (existing, added) -> existing + " | " + added);
+        }
+    }
+    
     /**
      * Set request metadata
      */
@@ -96,6 +108,13 @@ public class RequestPerfBag {
             sb.append("}");
         }
         
+        Map<String, String> notesCopy = getNotes();
+        if (!notesCopy.isEmpty()) {
+            sb.append(", notes={");
+            notesCopy.forEach((key, value) -> sb.append(key).append("=[").append(value).append("] "));
+            sb.append("}");
+        }
+        
         return sb.toString();
     }
     
@@ -150,4 +169,5 @@ public class RequestPerfBag {
     public String getStatus() { return status; }
     public Map<String, Long> getTimings() { return new LinkedHashMap<>(timings); }
     public Map<String, Integer> getCounts() { return new LinkedHashMap<>(counts); }
+    public synchronized Map<String, String> getNotes() { return new LinkedHashMap<>(notes); }
 }
@@ -12,6 +12,11 @@ public class RequestPerfBagUtils {
     private static final Logger logger = LoggerFactory.getLogger(RequestPerfBagUtils.class);
     private static final String UD_PERF_BAG = "_perf_bag";
     
+    // Bag of the request being handled, for layers that have no RequestDetails (e.g. FtsSearchService).
+    // Not inheritable: pooled threads would keep a finished request's bag. RequestFanOut carries it
+    // to its tasks explicitly.
+    private static final ThreadLocal<RequestPerfBag> CURRENT = new ThreadLocal<>();
+    
     /**
      * Get the current request's PerfBag, or null if not available
      */
@@ -60,6 +65,39 @@ public class RequestPerfBagUtils {
         }
     }
     
+    /**
+     * Bind a request's PerfBag to the handling thread (see addNote); null unbinds
+     */
+    public static void bind(RequestPerfBag perfBag) {
+        if (perfBag == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(perfBag);
+        }
+    }
+    
+    /**
+     * The PerfBag bound to this thread, or null
+     */
+    public static RequestPerfBag current() {
+        return CURRENT.get();
+    }
+    
+    public static void unbind() {
+        CURRENT.remove();
+    }
+    
+    /**
+     * Add a note to the PerfBag bound to this thread
+     * Safe to call even if no PerfBag is bound
+     */
+    public static void addNote(String name, String value) {
+        RequestPerfBag perfBag = CURRENT.get();
+        if (perfBag != null) {
+            perfBag.addNote(name, value);
+        }
+    }
+    
     /**
      * Get the current request ID for correlation
      */
@@ -9,8 +9,6 @@ import com.couchbase.fhir.resources.service.FhirBundleProcessingService;
 import com.couchbase.fhir.resources.service.FhirBucketConfigService;
 import com.couchbase.fhir.resources.service.FhirBucketConfigService.FhirBucketConfig;
 
-import ca.uhn.fhir.context.FhirContext;
-import ca.uhn.fhir.parser.IParser;
 import org.hl7.fhir.r4.model.Bundle;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,14 +29,6 @@ public class BundleTransactionProvider implements IResourceProvider {
     
     @Autowired
     private FhirBucketConfigService bucketConfigService;
-    
-    // FhirContext is injected into the parser, no need for direct reference
-    
-    @Autowired 
-    private IParser jsonParser; // Reuse singleton parser
-    
-    @Autowired
-    private FhirContext fhirContext;
 
     /**
      * Tell HAPI that this provider handles Bundle resources
@@ -54,35 +44,20 @@ public class BundleTransactionProvider implements IResourceProvider {
      */
     @Transaction
     public Bundle transaction(@TransactionParam Bundle bundle, ca.uhn.fhir.rest.api.server.RequestDetails requestDetails) {
-        // Try to get the raw JSON from the interceptor cache first
+        // The Bundle was parsed once by HAPI, from the same cached body. The context's parser options
+        // keep entry resource IDs and reference versions as sent (see FhirConfig.fhirContext).
+        // The raw body is only token-scanned, so POST entries can be stored from their original JSON.
         byte[] cachedBody = (byte[]) requestDetails.getUserData().get("_req_body");
-        String bundleJson = null;
-        
-        if (cachedBody != null && cachedBody.length > 0) {
-            bundleJson = new String(cachedBody, java.nio.charset.StandardCharsets.UTF_8);
-            logger.debug("🔧 Using raw JSON from interceptor cache to avoid HAPI reference preprocessing");
-        } else {
+        if (cachedBody == null || cachedBody.length == 0) {
             // FAIL FAST - don't silently degrade to broken reference behavior
             throw new InvalidRequestException("Bundle processing requires raw request body - interceptor may not be configured properly");
         }
         
-        // Parse the raw JSON to get Bundle type for validation
-        // Create a special parser that doesn't process references
-        Bundle rawBundle = null;
-        try {
-            IParser noReferenceParser = fhirContext.newJsonParser();
-            noReferenceParser.setOverrideResourceIdWithBundleEntryFullUrl(false);
-            noReferenceParser.setStripVersionsFromReferences(false);
-            rawBundle = noReferenceParser.parseResource(Bundle.class, bundleJson);
-        } catch (Exception e) {
-            throw new InvalidRequestException("Failed to parse Bundle JSON: " + e.getMessage());
-        }
-        
         // Validate Bundle type - must be transaction or batch
-        if (rawBundle.getType() != Bundle.BundleType.TRANSACTION && 
-            rawBundle.getType() != Bundle.BundleType.BATCH) {
+        if (bundle.getType() != Bundle.BundleType.TRANSACTION && 
+            bundle.getType() != Bundle.BundleType.BATCH) {
             throw new InvalidRequestException("Bundle type must be 'transaction' or 'batch', but was: " + 
-                                            (rawBundle.getType() != null ? rawBundle.getType().toCode() : "null"));
+                                            (bundle.getType() != null ? bundle.getType().toCode() : "null"));
         }
         
         try {
@@ -90,7 +65,7 @@ public class BundleTransactionProvider implements IResourceProvider {
             String connectionName = "default"; // Could be made configurable
             
             logger.debug("🚀 Processing Bundle {} for tenant: {}", 
-                       rawBundle.getType().toCode(), bucketName);
+                       bundle.getType().toCode(), bucketName);
             
             // Get complete bucket-specific validation configuration
             FhirBucketConfig bucketConfig = bucketConfigService.getFhirBucketConfig(bucketName);
@@ -104,7 +79,8 @@ public class BundleTransactionProvider implements IResourceProvider {
             
             // Process using complete bucket configuration
             Bundle responseBundle = bundleProcessingService.processBundleTransaction(
-                bundleJson, 
+                bundle,
+                cachedBody, 
                 connectionName, 
                 bucketName,
                 bucketConfig  // Pass complete config object
@@ -113,6 +89,9 @@ public class BundleTransactionProvider implements IResourceProvider {
             logger.debug("✅ Bundle processing completed successfully for tenant: {}", bucketName);
             return responseBundle;
             
+        } catch (ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException e) {
+            // Keep the FHIR status (e.g. 412 for an ambiguous ifNoneExist in a transaction)
+            throw e;
         } catch (Exception e) {
             // Use the clean error message from the service
             String errorMessage = e.getMessage();
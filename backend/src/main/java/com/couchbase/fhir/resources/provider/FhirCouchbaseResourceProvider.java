@@ -20,7 +20,6 @@ import com.couchbase.fhir.resources.search.validation.FhirSearchParameterPreproc
 import com.couchbase.fhir.resources.validation.FhirBucketValidator;
 import com.couchbase.fhir.resources.validation.FhirBucketValidationException;
 import org.hl7.fhir.r4.model.*;
-import ca.uhn.fhir.validation.FhirValidator;
 import ca.uhn.fhir.rest.annotation.Operation;
 import ca.uhn.fhir.rest.annotation.ResourceParam;
 import ca.uhn.fhir.rest.api.PatchTypeEnum;
@@ -51,8 +50,7 @@ public class FhirCouchbaseResourceProvider <T extends Resource> implements IReso
     private final FhirContext fhirContext;
     private final FhirBucketValidator bucketValidator;
     private final FhirBucketConfigService configService;
-    private final FhirValidator strictValidator; // Primary US Core validator
-    private final FhirValidator lenientValidator; // Basic validator
+    private final com.couchbase.fhir.resources.service.ResourceValidationService validationService; // Cached US Core / basic validation
     private final com.couchbase.admin.connections.service.ConnectionService connectionService;
     private final com.couchbase.fhir.resources.service.PutService putService;
     private final com.couchbase.fhir.resources.service.DeleteService deleteService;
@@ -66,15 +64,14 @@ public class FhirCouchbaseResourceProvider <T extends Resource> implements IReso
     private final com.couchbase.common.config.FhirServerConfig fhirServerConfig;
 
 
-    public FhirCouchbaseResourceProvider(Class<T> resourceClass, FhirResourceDaoImpl<T> dao , FhirContext fhirContext, FhirSearchParameterPreprocessor searchPreprocessor, FhirBucketValidator bucketValidator, FhirBucketConfigService configService, FhirValidator strictValidator, FhirValidator lenientValidator, com.couchbase.admin.connections.service.ConnectionService connectionService, com.couchbase.fhir.resources.service.PutService putService, com.couchbase.fhir.resources.service.DeleteService deleteService, FhirMetaHelper metaHelper, com.couchbase.fhir.resources.service.SearchService searchService, com.couchbase.fhir.resources.service.PatchService patchService, com.couchbase.fhir.resources.service.ConditionalPutService conditionalPutService, com.couchbase.fhir.resources.service.HistoryService historyService, com.couchbase.fhir.resources.service.EverythingService everythingService, com.couchbase.fhir.resources.search.SearchStateManager searchStateManager, com.couchbase.common.config.FhirServerConfig fhirServerConfig) {
+    public FhirCouchbaseResourceProvider(Class<T> resourceClass, FhirResourceDaoImpl<T> dao , FhirContext fhirContext, FhirSearchParameterPreprocessor searchPreprocessor, FhirBucketValidator bucketValidator, FhirBucketConfigService configService, com.couchbase.fhir.resources.service.ResourceValidationService validationService, com.couchbase.admin.connections.service.ConnectionService connectionService, com.couchbase.fhir.resources.service.PutService putService, com.couchbase.fhir.resources.service.DeleteService deleteService, FhirMetaHelper metaHelper, com.couchbase.fhir.resources.service.SearchService searchService, com.couchbase.fhir.resources.service.PatchService patchService, com.couchbase.fhir.resources.service.ConditionalPutService conditionalPutService, com.couchbase.fhir.resources.service.HistoryService historyService, com.couchbase.fhir.resources.service.EverythingService everythingService, com.couchbase.fhir.resources.search.SearchStateManager searchStateManager, com.couchbase.common.config.FhirServerConfig fhirServerConfig) {
         this.resourceClass = resourceClass;
         this.dao = dao;
         this.fhirContext = fhirContext;
         // searchPreprocessor is now handled by SearchService
         this.bucketValidator = bucketValidator;
         this.configService = configService;
-        this.strictValidator = strictValidator;
-        this.lenientValidator = lenientValidator;
+        this.validationService = validationService;
         this.connectionService = connectionService;
         this.putService = putService;
         this.deleteService = deleteService;
@@ -163,7 +160,8 @@ public class FhirCouchbaseResourceProvider <T extends Resource> implements IReso
     public List<T> getResourceInstanceHistory(
             @IdParam IdType theId,
             @ca.uhn.fhir.rest.annotation.Since java.util.Date theSince,
-            @ca.uhn.fhir.rest.annotation.Count Integer theCount
+            @ca.uhn.fhir.rest.annotation.Count Integer theCount,
+            RequestDetails requestDetails
     ) {
         String bucketName = TenantContextHolder.getTenantId();
         String resourceType = getFhirResourceType();
@@ -181,6 +179,16 @@ public class FhirCouchbaseResourceProvider <T extends Resource> implements IReso
         
         logger.info("📜 History request: {}/{} (count={}, since={})", resourceType, id, theCount, sinceInstant);
         
+        if (historyService.isFastpathEnabled() && requestDetails != null) {
+            String baseUrl = extractBaseUrl(requestDetails, bucketName);
+            requestDetails.getUserData().put(com.couchbase.fhir.resources.service.SearchService.FASTPATH_BYTES_ATTRIBUTE,
+                historyService.getResourceHistoryAsBytes(resourceType, id, theCount, sinceInstant, bucketName,
+                                                         requestDetails.getCompleteUrl(), baseUrl));
+            
+            // Return empty placeholder list (interceptor will replace with JSON)
+            return new ArrayList<>();
+        }
+        
         // Get list of versioned resources - HAPI will wrap them in a history bundle
         List<Resource> versions = historyService.getResourceHistoryResources(resourceType, id, theCount, sinceInstant, bucketName);
         
@@ -237,21 +245,13 @@ public class FhirCouchbaseResourceProvider <T extends Resource> implements IReso
         // Perform validation based on bucket configuration
         if (!bucketConfig.isValidationDisabled()) {
             // Choose validator based on bucket configuration
-            FhirValidator validator;
-            String validationMode;
-            
-            if (bucketConfig.isStrictValidation() || bucketConfig.isEnforceUSCore()) {
-                validator = strictValidator;
-                validationMode = "strict (US Core enforced)";
-            } else {
-                validator = lenientValidator;
-                validationMode = "lenient (basic FHIR R4)";
-            }
+            boolean usCore = bucketConfig.isStrictValidation() || bucketConfig.isEnforceUSCore();
+            String validationMode = usCore ? "strict (US Core enforced)" : "lenient (basic FHIR R4)";
 
             logger.debug("🔍 ResourceProvider: Using {} validation for bucket: {}", validationMode, bucketName);
-            logger.debug("🔍 ResourceProvider: About to validate resource with validator: {}", validator.getClass().getSimpleName());
 
-            ValidationResult result = validator.validateWithResult(resource);
+            // Identical content (e.g. a resubmitted resource) reuses the cached outcome
+            ValidationResult result = validationService.validate(resource, usCore);
 
             logger.debug("🔍 ResourceProvider: Validation result - isSuccessful: {}, messageCount: {}", 
                 result.isSuccessful(), result.getMessages().size());
@@ -328,7 +328,8 @@ public class FhirCouchbaseResourceProvider <T extends Resource> implements IReso
             // Ensure the resource ID matches the URL parameter
             resource.setId(urlId);
             
-            return performPut(resource, urlId, bucketName, false);
+            // If-Match (W/"n") arrives as the version part of the id
+            return performPut(resource, urlId, bucketName, false, theId.getVersionIdPart());
             
         } else {
             // Conditional PUT - use HAPI's already-parsed parameters
@@ -361,7 +362,8 @@ public class FhirCouchbaseResourceProvider <T extends Resource> implements IReso
     /**
      * Perform the actual PUT operation for both ID-based and conditional updates
      */
-    private MethodOutcome performPut(T resource, String expectedId, String bucketName, boolean isConditionalCreate) throws IOException {
+    private MethodOutcome performPut(T resource, String expectedId, String bucketName, boolean isConditionalCreate,
+                                     String expectedVersionId) throws IOException {
         String resourceType = getFhirResourceType();
         String resourceId = resource.getIdElement() != null ? resource.getIdElement().getIdPart() : "new";
         
@@ -375,7 +377,7 @@ public class FhirCouchbaseResourceProvider <T extends Resource> implements IReso
                 new com.couchbase.fhir.resources.service.TransactionContextImpl(cluster, bucketName);
             
             @SuppressWarnings("unchecked")
-            T updatedResource = (T) putService.updateOrCreateResource(resource, context);
+            T updatedResource = (T) putService.updateOrCreateResource(resource, context, expectedVersionId);
             
             MethodOutcome outcome = new MethodOutcome();
             outcome.setResource(updatedResource);
@@ -393,8 +395,8 @@ public class FhirCouchbaseResourceProvider <T extends Resource> implements IReso
             
             return outcome;
             
-        } catch (ca.uhn.fhir.rest.server.exceptions.ResourceVersionConflictException e) {
-            // ID was tombstoned - return 409
+        } catch (ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException e) {
+            // ID was tombstoned or concurrently updated - 409; If-Match version not current - 412
             throw e;
         } catch (Exception e) {
             logger.error("❌ PUT {}: Failed to update resource {}: {}", resourceType, resourceId, e.getMessage());
@@ -508,7 +510,8 @@ public class FhirCouchbaseResourceProvider <T extends Resource> implements IReso
     }
 
         @ca.uhn.fhir.rest.annotation.Patch
-    public MethodOutcome patch(@IdParam IdType theId, PatchTypeEnum patchType, @ResourceParam String patchBody) throws IOException {
+    public MethodOutcome patch(@IdParam IdType theId, PatchTypeEnum patchType, @ResourceParam String patchBody,
+                               RequestDetails requestDetails) throws IOException {
         String resourceId = theId.getIdPart();
         String resourceType = getFhirResourceType();
         
@@ -522,7 +525,23 @@ public class FhirCouchbaseResourceProvider <T extends Resource> implements IReso
         }
         
         // Delegate to PatchService for all patch operations
-        return patchService.patchResource(resourceType, resourceId, patchBody, resourceClass);
+        return patchService.patchResource(resourceType, resourceId, patchBody, resourceClass,
+                                          ifMatchVersion(theId, requestDetails));
+    }
+    
+    /**
+     * Version named by If-Match (W/"n" or "n"), or the version part of the id, or null
+     */
+    private static String ifMatchVersion(IdType theId, RequestDetails requestDetails) {
+        String ifMatch = requestDetails != null ? requestDetails.getHeader("If-Match") : null;
+        if (ifMatch != null && !ifMatch.isBlank()) {
+            String version = ifMatch.trim();
+            if (version.startsWith("W/")) {
+                version = version.substring(2);
+            }
+            return version.replace("\"", "").trim();
+        }
+        return theId.hasVersionIdPart() ? theId.getVersionIdPart() : null;
     }
 
     @Search(allowUnknownParams = true)
@@ -577,17 +596,11 @@ public class FhirCouchbaseResourceProvider <T extends Resource> implements IReso
             FhirBucketConfigService.FhirBucketConfig bucketConfig = configService.getFhirBucketConfig(bucketName);
             
             // Use singleton validator based on bucket configuration
-            FhirValidator validator;
-            if (bucketConfig.isStrictValidation() || bucketConfig.isEnforceUSCore()) {
-                validator = strictValidator;  // Reuse singleton (saves 95MB per request!)
-                logger.debug("$validate using strict validator");
-            } else {
-                validator = lenientValidator; // Reuse singleton
-                logger.debug("$validate using lenient validator");
-            }
+            boolean usCore = bucketConfig.isStrictValidation() || bucketConfig.isEnforceUSCore();
+            logger.debug("$validate using {} validator", usCore ? "strict" : "lenient");
             
             // Validate the resource
-            ValidationResult result = validator.validateWithResult(resource);
+            ValidationResult result = validationService.validate(resource, usCore);
             
             // Create OperationOutcome based on validation result
             OperationOutcome outcome = new OperationOutcome();
@@ -698,6 +711,12 @@ public class FhirCouchbaseResourceProvider <T extends Resource> implements IReso
         // Get base URL
         String bucketName = TenantContextHolder.getTenantId();
         String baseUrl = extractBaseUrl(requestDetails, bucketName);
+        String selfUrl = buildEverythingSelfUrl(baseUrl, patientId, typeString, startDate, endDate, sinceDate, countInt);
+        
+        if (everythingService.isFastpathEnabled() && requestDetails != null) {
+            return patientEverythingFastpath(patientId, startDate, endDate, typeString, sinceDate, countInt,
+                                             bucketName, baseUrl, selfUrl, requestDetails);
+        }
         
         // Get all resources related to the patient (with pagination support)
         com.couchbase.fhir.resources.service.EverythingService.EverythingResult result = 
@@ -712,24 +731,9 @@ public class FhirCouchbaseResourceProvider <T extends Resource> implements IReso
             );
         
         // Store pagination state if needed
-        String paginationToken = null;
-        if (result.needsPagination) {
-            int effectiveCount = (countInt != null && countInt > 0) ? Math.min(countInt, 200) : 50;
-            com.couchbase.fhir.resources.search.PaginationState paginationState = 
-                com.couchbase.fhir.resources.search.PaginationState.builder()
-                    .searchType("everything")
-                    .resourceType("Patient")
-                    .allDocumentKeys(result.allDocumentKeys)
-                    .pageSize(effectiveCount)
-                    .currentOffset(effectiveCount) // Next page starts after first page
-                    .bucketName(bucketName)
-                    .baseUrl(baseUrl)
-                    .build();
-            
-            paginationToken = searchStateManager.storePaginationState(paginationState);
-            logger.info("✅ Created $everything PaginationState: token={}, totalKeys={}, pages={}", 
-                       paginationToken, result.allDocumentKeys.size(), paginationState.getTotalPages());
-        }
+        String paginationToken = result.needsPagination
+            ? storeEverythingPaginationState(result.allDocumentKeys, countInt, bucketName, baseUrl)
+            : null;
         
         // Build bundle
         Bundle bundle = new Bundle();
@@ -755,13 +759,6 @@ public class FhirCouchbaseResourceProvider <T extends Resource> implements IReso
         }
         
         // Add self link
-        String selfUrl = baseUrl + "/Patient/" + patientId + "/$everything";
-        if (typeString != null) selfUrl += "?_type=" + typeString;
-        if (startDate != null) selfUrl += (selfUrl.contains("?") ? "&" : "?") + "start=" + formatDate(startDate);
-        if (endDate != null) selfUrl += (selfUrl.contains("?") ? "&" : "?") + "end=" + formatDate(endDate);
-        if (sinceDate != null) selfUrl += (selfUrl.contains("?") ? "&" : "?") + "_since=" + formatDate(sinceDate);
-        if (countInt != null) selfUrl += (selfUrl.contains("?") ? "&" : "?") + "_count=" + countInt;
-        
         bundle.addLink()
             .setRelation("self")
             .setUrl(selfUrl);
@@ -769,13 +766,9 @@ public class FhirCouchbaseResourceProvider <T extends Resource> implements IReso
         // Add next link if pagination is needed
         if (paginationToken != null) {
             int effectiveCount = (countInt != null && countInt > 0) ? Math.min(countInt, 200) : 50;
-            String nextUrl = baseUrl + "/Patient/" + patientId + "/$everything?_page=" + paginationToken 
-                           + "&_offset=" + effectiveCount 
-                           + "&_count=" + effectiveCount;
-            
             bundle.addLink()
                 .setRelation("next")
-                .setUrl(nextUrl);
+                .setUrl(buildEverythingNextUrl(baseUrl, patientId, paginationToken, effectiveCount, effectiveCount));
         }
         
         logger.info("✅ $everything returning bundle with {} resources (total: {})", 
@@ -783,6 +776,80 @@ public class FhirCouchbaseResourceProvider <T extends Resource> implements IReso
         return bundle;
     }
     
+    /**
+     * FASTPATH: $everything first page assembled from raw KV bytes (no HAPI parse/serialize).
+     * The Bundle bytes are stored in userData for FastpathResponseInterceptor; a placeholder is returned.
+     */
+    private Bundle patientEverythingFastpath(String patientId, Date startDate, Date endDate, String typeString,
+                                             Date sinceDate, Integer countInt, String bucketName, String baseUrl,
+                                             String selfUrl, RequestDetails requestDetails) {
+        com.couchbase.fhir.resources.service.EverythingService.EverythingBytesResult result = 
+            everythingService.getPatientEverythingAsBytes(patientId, startDate, endDate, typeString, sinceDate, countInt);
+        
+        String nextUrl = null;
+        if (result.needsPagination) {
+            int effectiveCount = (countInt != null && countInt > 0) ? Math.min(countInt, 200) : 50;
+            String paginationToken = storeEverythingPaginationState(result.allDocumentKeys, countInt, bucketName, baseUrl);
+            nextUrl = buildEverythingNextUrl(baseUrl, patientId, paginationToken, effectiveCount, effectiveCount);
+        }
+        
+        // Patient first, then the first page of related resources (all search.mode=match)
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("Patient/" + patientId, result.patientBytes);
+        entries.putAll(result.firstPageBytes);
+        
+        requestDetails.getUserData().put(com.couchbase.fhir.resources.service.SearchService.FASTPATH_BYTES_ATTRIBUTE,
+            everythingService.buildBundleBytes(entries, result.totalResourceCount, selfUrl, nextUrl, baseUrl));
+        
+        logger.info("✅ $everything (fastpath) returning bundle with {} resources (total: {})", 
+                   entries.size(), result.totalResourceCount);
+        
+        // Return empty placeholder Bundle (interceptor will replace with JSON)
+        Bundle placeholder = new Bundle();
+        placeholder.setType(Bundle.BundleType.SEARCHSET);
+        return placeholder;
+    }
+    
+    /**
+     * Store the $everything key list so continuation pages can slice it by _offset
+     */
+    private String storeEverythingPaginationState(List<String> allDocumentKeys, Integer countInt,
+                                                  String bucketName, String baseUrl) {
+        int effectiveCount = (countInt != null && countInt > 0) ? Math.min(countInt, 200) : 50;
+        com.couchbase.fhir.resources.search.PaginationState paginationState = 
+            com.couchbase.fhir.resources.search.PaginationState.builder()
+                .searchType("everything")
+                .resourceType("Patient")
+                .allDocumentKeys(allDocumentKeys)
+                .pageSize(effectiveCount)
+                .currentOffset(effectiveCount) // Next page starts after first page
+                .bucketName(bucketName)
+                .baseUrl(baseUrl)
+                .build();
+        
+        String paginationToken = searchStateManager.storePaginationState(paginationState);
+        logger.info("✅ Created $everything PaginationState: token={}, totalKeys={}, pages={}", 
+                   paginationToken, allDocumentKeys.size(), paginationState.getTotalPages());
+        return paginationToken;
+    }
+    
+    private String buildEverythingSelfUrl(String baseUrl, String patientId, String typeString, Date startDate,
+                                          Date endDate, Date sinceDate, Integer countInt) {
+        String selfUrl = baseUrl + "/Patient/" + patientId + "/$everything";
+        if (typeString != null) selfUrl += "?_type=" + typeString;
+        if (startDate != null) selfUrl += (selfUrl.contains("?") ? "&" : "?") + "start=" + formatDate(startDate);
+        if (endDate != null) selfUrl += (selfUrl.contains("?") ? "&" : "?") + "end=" + formatDate(endDate);
+        if (sinceDate != null) selfUrl += (selfUrl.contains("?") ? "&" : "?") + "_since=" + formatDate(sinceDate);
+        if (countInt != null) selfUrl += (selfUrl.contains("?") ? "&" : "?") + "_count=" + countInt;
+        return selfUrl;
+    }
+    
+    private String buildEverythingNextUrl(String baseUrl, String patientId, String paginationToken, int offset, int pageSize) {
+        return baseUrl + "/Patient/" + patientId + "/$everything?_page=" + paginationToken 
+             + "&_offset=" + offset 
+             + "&_count=" + pageSize;
+    }
+    
     /**
      * Build continuation bundle for $everything pagination
      */
@@ -793,6 +860,10 @@ public class FhirCouchbaseResourceProvider <T extends Resource> implements IReso
         // Extract patient ID from the request URL (e.g., /Patient/example/$everything)
         String patientId = extractPatientIdFromRequest(requestDetails);
         
+        if (everythingService.isFastpathEnabled() && requestDetails != null) {
+            return buildEverythingContinuationFastpath(continuationToken, offset, count, patientId, bucketName, baseUrl, requestDetails);
+        }
+        
         // Get next page of resources
         List<Resource> pageResources = everythingService.getPatientEverythingNextPage(continuationToken, offset, count);
         
@@ -839,13 +910,9 @@ public class FhirCouchbaseResourceProvider <T extends Resource> implements IReso
             && nextOffset < paginationState.getAllDocumentKeys().size();
         
         if (hasMoreResults) {
-            String nextUrl = baseUrl + "/Patient/" + patientId + "/$everything?_page=" + continuationToken 
-                           + "&_offset=" + nextOffset 
-                           + "&_count=" + pageSize;
-            
             bundle.addLink()
                 .setRelation("next")
-                .setUrl(nextUrl);
+                .setUrl(buildEverythingNextUrl(baseUrl, patientId, continuationToken, nextOffset, pageSize));
         }
         
         // Note: We rely on TTL for cleanup (no explicit delete to avoid unnecessary DB chatter)
@@ -861,6 +928,43 @@ public class FhirCouchbaseResourceProvider <T extends Resource> implements IReso
         return bundle;
     }
     
+    /**
+     * FASTPATH: $everything continuation page assembled from raw KV bytes (all entries search.mode=match)
+     */
+    private Bundle buildEverythingContinuationFastpath(String continuationToken, int offset, Integer count, String patientId,
+                                                       String bucketName, String baseUrl, RequestDetails requestDetails) {
+        // Throws 410 Gone when the state has expired
+        Map<String, byte[]> pageBytes = everythingService.getPatientEverythingNextPageAsBytes(continuationToken, offset, count);
+        
+        com.couchbase.fhir.resources.search.PaginationState paginationState = 
+            searchStateManager.getPaginationState(continuationToken, bucketName);
+        if (paginationState == null) {
+            throw new ca.uhn.fhir.rest.server.exceptions.ResourceGoneException(
+                "Pagination state has expired or is invalid. Please repeat your original $everything request.");
+        }
+        
+        List<String> allDocumentKeys = paginationState.getAllDocumentKeys();
+        int totalKeys = allDocumentKeys != null ? allDocumentKeys.size() : 0;
+        int pageSize = (count != null && count > 0) ? count : paginationState.getPageSize();
+        int nextOffset = offset + pageBytes.size();
+        
+        String selfUrl = baseUrl + "/Patient/" + patientId + "/$everything?_page=" + continuationToken;
+        String nextUrl = nextOffset < totalKeys
+            ? buildEverythingNextUrl(baseUrl, patientId, continuationToken, nextOffset, pageSize)
+            : null;
+        
+        requestDetails.getUserData().put(com.couchbase.fhir.resources.service.SearchService.FASTPATH_BYTES_ATTRIBUTE,
+            everythingService.buildBundleBytes(pageBytes, totalKeys + 1, selfUrl, nextUrl, baseUrl)); // +1 for patient
+        
+        logger.info("✅ $everything continuation (fastpath) returning {} resources (page {}/{})", 
+                   pageBytes.size(), (offset / pageSize) + 1, (int) Math.ceil((double) totalKeys / pageSize));
+        
+        // Return empty placeholder Bundle (interceptor will replace with JSON)
+        Bundle placeholder = new Bundle();
+        placeholder.setType(Bundle.BundleType.SEARCHSET);
+        return placeholder;
+    }
+    
     /**
      * Extract base URL from request details
      * 
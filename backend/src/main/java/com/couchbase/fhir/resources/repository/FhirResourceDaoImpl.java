@@ -7,12 +7,15 @@ import com.couchbase.client.java.Cluster;
 import com.couchbase.client.java.query.QueryResult;
 import com.couchbase.client.java.json.JsonObject;
 import com.couchbase.fhir.resources.service.CollectionRoutingService;
+import com.couchbase.fhir.resources.service.KvReadCoalescer;
+import com.couchbase.fhir.resources.service.RequestFanOut;
 import com.couchbase.fhir.resources.interceptor.DAOTimingContext;
 import com.google.common.base.Stopwatch;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
@@ -31,11 +34,13 @@ public class FhirResourceDaoImpl<T extends IBaseResource> implements  FhirResour
     private final ConnectionService connectionService;
     private final FhirContext fhirContext;
     private final CollectionRoutingService collectionRoutingService;
+    private final KvReadCoalescer readCoalescer;
 
-    public FhirResourceDaoImpl(Class<T> resourceClass , ConnectionService connectionService , FhirContext fhirContext, CollectionRoutingService collectionRoutingService) {
+    public FhirResourceDaoImpl(Class<T> resourceClass , ConnectionService connectionService , FhirContext fhirContext, CollectionRoutingService collectionRoutingService, KvReadCoalescer readCoalescer) {
         this.connectionService = connectionService;
         this.fhirContext = fhirContext;
         this.collectionRoutingService = collectionRoutingService;
+        this.readCoalescer = readCoalescer;
     }
 
 
@@ -61,11 +66,12 @@ public class FhirResourceDaoImpl<T extends IBaseResource> implements  FhirResour
                     .scope(DEFAULT_SCOPE)
                     .collection(targetCollection);
             
-            com.couchbase.client.java.kv.GetResult result = collection.get(documentKey);
-            JsonObject json = result.contentAsObject();
+            // Concurrent reads of the same hot resource share one KV get (raw JSON bytes)
+            com.couchbase.client.java.kv.GetResult result = RequestFanOut.join(readCoalescer.get(collection, documentKey, null));
+            String json = new String(result.contentAs(byte[].class), StandardCharsets.UTF_8);
             
             @SuppressWarnings("unchecked")
-            T resource = (T) fhirContext.newJsonParser().parseResource(json.toString());
+            T resource = (T) fhirContext.newJsonParser().parseResource(json);
             return Optional.of(resource);
 
         } catch (Exception e) {
@@ -30,7 +30,7 @@ public class PaginationState {
     private final String resourceType;         // Primary resource type being searched
     
     @JsonProperty("allDocumentKeys")
-    private final List<String> allDocumentKeys; // All doc keys from initial FTS query (max 1000)
+    private final List<String> allDocumentKeys; // All doc keys from initial FTS query (max 1000); key-addressed chain plans
     
     @JsonProperty("pageSize")
     private final int pageSize;               // User-specified page size (default 50)
@@ -91,6 +91,17 @@ public class PaginationState {
     @JsonProperty("includeParamsList")
     private final List<String> includeParamsList;      // Multiple _include parameters
     
+    // For keyset (search_after) pagination:
+    @JsonProperty("searchAfter")
+    private final List<String> searchAfter;            // Sort values of the last hit before primaryOffset
+    
+    // Projection of the first page, applied to every continuation page:
+    @JsonProperty("summaryMode")
+    private final String summaryMode;                  // _summary code (e.g., "true", "data"), null = none
+    
+    @JsonProperty("elements")
+    private final List<String> elements;               // _elements, null = none
+    
     // Strategy flag
     @JsonProperty("useLegacyKeyList")
     private final boolean useLegacyKeyList;            // true = use allDocumentKeys, false = use query-based
@@ -101,7 +112,7 @@ public class PaginationState {
         this.resourceType = builder.resourceType;
         this.allDocumentKeys = builder.allDocumentKeys;
         this.pageSize = builder.pageSize;
-        this.createdAt = LocalDateTime.now();
+        this.createdAt = builder.createdAt != null ? builder.createdAt : LocalDateTime.now();
         this.expiresAt = this.createdAt.plusMinutes(3); // 3 minute TTL (configurable via application.properties)
         this.currentOffset = builder.currentOffset;
         this.bucketName = builder.bucketName;
@@ -119,6 +130,9 @@ public class PaginationState {
         this.includeResourceType = builder.includeResourceType;
         this.includeSearchParam = builder.includeSearchParam;
         this.includeParamsList = builder.includeParamsList;
+        this.searchAfter = builder.searchAfter;
+        this.summaryMode = builder.summaryMode;
+        this.elements = builder.elements;
         this.useLegacyKeyList = builder.useLegacyKeyList;
     }
     
@@ -145,6 +159,9 @@ public class PaginationState {
     public String getIncludeResourceType() { return includeResourceType; }
     public String getIncludeSearchParam() { return includeSearchParam; }
     public List<String> getIncludeParamsList() { return includeParamsList; }
+    public List<String> getSearchAfter() { return searchAfter; }
+    public String getSummaryMode() { return summaryMode; }
+    public List<String> getElements() { return elements; }
     public boolean isUseLegacyKeyList() { return useLegacyKeyList; }
     
     // State management
@@ -202,6 +219,36 @@ public class PaginationState {
         return new Builder();
     }
     
+    /**
+     * Builder pre-populated with this state, used to derive the state for the next page.
+     * createdAt is not copied, so the derived state gets a fresh TTL.
+     */
+    public Builder toBuilder() {
+        return new Builder()
+            .searchType(searchType)
+            .resourceType(resourceType)
+            .allDocumentKeys(allDocumentKeys)
+            .pageSize(pageSize)
+            .currentOffset(currentOffset)
+            .bucketName(bucketName)
+            .baseUrl(baseUrl)
+            .primaryResourceCount(primaryResourceCount)
+            .primaryFtsQueriesJson(primaryFtsQueriesJson)
+            .primaryOffset(primaryOffset)
+            .primaryPageSize(primaryPageSize)
+            .sortFieldsJson(sortFieldsJson)
+            .maxBundleSize(maxBundleSize)
+            .revIncludeResourceType(revIncludeResourceType)
+            .revIncludeSearchParam(revIncludeSearchParam)
+            .includeResourceType(includeResourceType)
+            .includeSearchParam(includeSearchParam)
+            .includeParamsList(includeParamsList)
+            .searchAfter(searchAfter)
+            .summaryMode(summaryMode)
+            .elements(elements)
+            .useLegacyKeyList(useLegacyKeyList);
+    }
+    
     public static class Builder {
         // Legacy fields
         private String searchType;
@@ -224,7 +271,11 @@ public class PaginationState {
         private String includeResourceType;
         private String includeSearchParam;
         private List<String> includeParamsList;
+        private List<String> searchAfter;
+        private String summaryMode;
+        private List<String> elements;
         private boolean useLegacyKeyList = false;  // Default to new query-based approach
+        private LocalDateTime createdAt;             // null = now (set when restoring a stored state)
         
         // Legacy field setters
         public Builder searchType(String searchType) { 
@@ -318,11 +369,31 @@ public class PaginationState {
             return this;
         }
         
+        public Builder searchAfter(List<String> searchAfter) {
+            this.searchAfter = searchAfter;
+            return this;
+        }
+        
+        public Builder summaryMode(String summaryMode) {
+            this.summaryMode = summaryMode;
+            return this;
+        }
+        
+        public Builder elements(List<String> elements) {
+            this.elements = elements;
+            return this;
+        }
+        
         public Builder useLegacyKeyList(boolean useLegacyKeyList) {
             this.useLegacyKeyList = useLegacyKeyList;
             return this;
         }
         
+        public Builder createdAt(LocalDateTime createdAt) {
+            this.createdAt = createdAt;
+            return this;
+        }
+        
         public PaginationState build() {
             return new PaginationState(this);
         }
@@ -335,8 +406,8 @@ public class PaginationState {
                                searchType, resourceType, allDocumentKeys.size(), pageSize, 
                                currentOffset, getCurrentPage(), getTotalPages());
         } else {
-            return String.format("PaginationState{type=%s, resource=%s, strategy=NEW, primaryOffset=%d, primaryPageSize=%d, maxBundle=%d}", 
-                               searchType, resourceType, primaryOffset, primaryPageSize, maxBundleSize);
+            return String.format("PaginationState{type=%s, resource=%s, strategy=NEW, primaryOffset=%d, primaryPageSize=%d, maxBundle=%d, keyset=%s}", 
+                               searchType, resourceType, primaryOffset, primaryPageSize, maxBundleSize, searchAfter != null);
         }
     }
 }
@@ -0,0 +1,168 @@
+package com.couchbase.fhir.resources.search;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary encoding of {@link PaginationState} for the Admin.cache collection.
+ *
+ * Replaces the PaginationState → Map → JSON String → JsonObject chain (and the reverse on read)
+ * with a single pass over a DataOutputStream. Layout is positional and prefixed with a format
+ * version byte; strings are length-prefixed UTF-8 and null is encoded as length -1.
+ *
+ * The first byte is never '{', so stored JSON documents from older versions can still be
+ * recognised with {@link #isBinary(byte[])}.
+ */
+public final class PaginationStateCodec {
+
+    // v2 appends searchAfter, v3 the projection; older documents are still readable until they expire
+    private static final byte FORMAT_VERSION = 3;
+    private static final byte FORMAT_VERSION_V2 = 2;
+    private static final byte FORMAT_VERSION_V1 = 1;
+
+    private PaginationStateCodec() {
+    }
+
+    public static boolean isBinary(byte[] bytes) {
+        return bytes != null && bytes.length > 0 && isSupported(bytes[0]);
+    }
+
+    private static boolean isSupported(byte version) {
+        return version == FORMAT_VERSION || version == FORMAT_VERSION_V2 || version == FORMAT_VERSION_V1;
+    }
+
+    public static byte[] encode(PaginationState state) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(baos)) {
+            out.writeByte(FORMAT_VERSION);
+            writeString(out, state.getSearchType());
+            writeString(out, state.getResourceType());
+            writeString(out, state.getBucketName());
+            writeString(out, state.getBaseUrl());
+            LocalDateTime createdAt = state.getCreatedAt();
+            out.writeLong(createdAt.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(createdAt.getNano());
+
+            // Legacy key-list fields
+            writeStringList(out, state.getAllDocumentKeys());
+            out.writeInt(state.getPageSize());
+            out.writeInt(state.getCurrentOffset());
+            out.writeInt(state.getPrimaryResourceCount());
+
+            // Query-based fields
+            writeStringList(out, state.getPrimaryFtsQueriesJson());
+            out.writeInt(state.getPrimaryOffset());
+            out.writeInt(state.getPrimaryPageSize());
+            writeStringList(out, state.getSortFieldsJson());
+            out.writeInt(state.getMaxBundleSize());
+            writeString(out, state.getRevIncludeResourceType());
+            writeString(out, state.getRevIncludeSearchParam());
+            writeString(out, state.getIncludeResourceType());
+            writeString(out, state.getIncludeSearchParam());
+            writeStringList(out, state.getIncludeParamsList());
+            out.writeBoolean(state.isUseLegacyKeyList());
+            writeStringList(out, state.getSearchAfter());
+            writeString(out, state.getSummaryMode());
+            writeStringList(out, state.getElements());
+        } catch (IOException e) {
+            // Should never happen with ByteArrayOutputStream
+            throw new RuntimeException("Failed to encode pagination state", e);
+        }
+        return baos.toByteArray();
+    }
+
+    public static PaginationState decode(byte[] bytes) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            byte version = in.readByte();
+            if (!isSupported(version)) {
+                throw new IllegalArgumentException("Unsupported pagination state format version: " + version);
+            }
+            PaginationState.Builder builder = PaginationState.builder()
+                .searchType(readString(in))
+                .resourceType(readString(in))
+                .bucketName(readString(in))
+                .baseUrl(readString(in));
+            long epochSecond = in.readLong();
+            int nano = in.readInt();
+            builder.createdAt(LocalDateTime.ofEpochSecond(epochSecond, nano, ZoneOffset.UTC));
+
+            builder
+                .allDocumentKeys(readStringList(in))
+                .pageSize(in.readInt())
+                .currentOffset(in.readInt())
+                .primaryResourceCount(in.readInt())
+                .primaryFtsQueriesJson(readStringList(in))
+                .primaryOffset(in.readInt())
+                .primaryPageSize(in.readInt())
+                .sortFieldsJson(readStringList(in))
+                .maxBundleSize(in.readInt())
+                .revIncludeResourceType(readString(in))
+                .revIncludeSearchParam(readString(in))
+                .includeResourceType(readString(in))
+                .includeSearchParam(readString(in))
+                .includeParamsList(readStringList(in))
+                .useLegacyKeyList(in.readBoolean());
+            if (version >= 2) {
+                builder.searchAfter(readStringList(in));
+            }
+            if (version >= 3) {
+                builder.summaryMode(readString(in))
+                    .elements(readStringList(in));
+            }
+            return builder.build();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Corrupt pagination state: " + e.getMessage(), e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] utf8 = new byte[length];
+        in.readFully(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private static void writeStringList(DataOutputStream out, List<String> values) throws IOException {
+        if (values == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(values.size());
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    private static List<String> readStringList(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+        List<String> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(readString(in));
+        }
+        return values;
+    }
+}
@@ -0,0 +1,282 @@
+package com.couchbase.fhir.resources.search;
+
+import com.couchbase.client.core.api.search.CoreSearchQuery;
+import com.couchbase.client.core.deps.com.fasterxml.jackson.databind.JsonNode;
+import com.couchbase.client.core.deps.com.fasterxml.jackson.databind.node.ObjectNode;
+import com.couchbase.client.core.json.Mapper;
+import com.couchbase.client.java.search.SearchQuery;
+import com.couchbase.client.java.search.queries.BooleanFieldQuery;
+import com.couchbase.client.java.search.queries.BooleanQuery;
+import com.couchbase.client.java.search.queries.DateRangeQuery;
+import com.couchbase.client.java.search.queries.DisjunctionQuery;
+import com.couchbase.client.java.search.queries.MatchOperator;
+import com.couchbase.client.java.search.queries.MatchPhraseQuery;
+import com.couchbase.client.java.search.queries.MatchQuery;
+import com.couchbase.client.java.search.queries.NumericRangeQuery;
+import com.couchbase.client.java.search.queries.PhraseQuery;
+import com.couchbase.client.java.search.queries.PrefixQuery;
+import com.couchbase.client.java.search.queries.RegexpQuery;
+import com.couchbase.client.java.search.queries.TermQuery;
+import com.couchbase.client.java.search.queries.TermRangeQuery;
+import com.couchbase.client.java.search.queries.WildcardQuery;
+import com.couchbase.client.protostellar.search.v1.Query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * FTS query restored from the JSON produced by {@link SearchQuery#export()}.
+ *
+ * Used to replay the stored primary queries of a PaginationState on continuation pages, and to
+ * send the queries rewritten by FtsQueryOptimizer. Over the classic protocol (couchbase://,
+ * couchbases://) the JSON is sent to the server as-is, so every query type the SDK can export
+ * round-trips without having to be rebuilt field by field. Protostellar (couchbase2://) has no raw
+ * form; there the JSON is rebuilt into the SDK's typed queries ({@link #toTyped()}) first.
+ */
+public class RawJsonSearchQuery extends SearchQuery {
+
+    private final String json;
+    private final JsonNode tree;
+
+    public RawJsonSearchQuery(String json) {
+        JsonNode parsed = Mapper.decodeIntoTree(json);
+        if (!parsed.isObject()) {
+            throw new IllegalArgumentException("FTS query JSON must be an object: " + json);
+        }
+        this.json = json;
+        this.tree = parsed;
+    }
+
+    public String getJson() {
+        return json;
+    }
+
+    @Override
+    public CoreSearchQuery toCore() {
+        return new CoreSearchQuery(boost) {
+            @Override
+            protected void injectParams(ObjectNode input) {
+                for (Map.Entry<String, JsonNode> field : tree.properties()) {
+                    input.set(field.getKey(), field.getValue().deepCopy());
+                }
+            }
+
+            @Override
+            public Query asProtostellar() {
+                return toTyped().toCore().asProtostellar();
+            }
+        };
+    }
+
+    /**
+     * The same query built from the SDK's typed query classes
+     *
+     * @throws IllegalArgumentException for query types the FHIR search never produces (geo)
+     */
+    public SearchQuery toTyped() {
+        SearchQuery typed = typed(tree);
+        if (boost != null) {
+            typed.boost(boost);
+        }
+        return typed;
+    }
+
+    private static SearchQuery typed(JsonNode node) {
+        SearchQuery query;
+        if (node.has("conjuncts")) {
+            query = SearchQuery.conjuncts(children(node.get("conjuncts")));
+        } else if (node.has("disjuncts")) {
+            DisjunctionQuery disjunction = SearchQuery.disjuncts(children(node.get("disjuncts")));
+            if (node.has("min")) {
+                disjunction.min(node.get("min").asInt());
+            }
+            query = disjunction;
+        } else if (node.has("must") || node.has("should") || node.has("must_not")) {
+            query = booleans(node);
+        } else if (node.has("match_all")) {
+            query = SearchQuery.matchAll();
+        } else if (node.has("match_none")) {
+            query = SearchQuery.matchNone();
+        } else if (node.has("ids")) {
+            List<String> ids = new ArrayList<>();
+            node.get("ids").forEach(id -> ids.add(id.asText()));
+            query = SearchQuery.docId(ids.toArray(new String[0]));
+        } else if (node.has("match")) {
+            MatchQuery match = SearchQuery.match(node.get("match").asText());
+            if (node.has("analyzer")) {
+                match.analyzer(node.get("analyzer").asText());
+            }
+            if (node.has("prefix_length")) {
+                match.prefixLength(node.get("prefix_length").asInt());
+            }
+            if (node.has("fuzziness")) {
+                match.fuzziness(node.get("fuzziness").asInt());
+            }
+            if (node.has("operator")) {
+                match.operator("and".equalsIgnoreCase(node.get("operator").asText()) ? MatchOperator.AND : MatchOperator.OR);
+            }
+            query = match;
+        } else if (node.has("match_phrase")) {
+            MatchPhraseQuery phrase = SearchQuery.matchPhrase(node.get("match_phrase").asText());
+            if (node.has("analyzer")) {
+                phrase.analyzer(node.get("analyzer").asText());
+            }
+            query = phrase;
+        } else if (node.has("term")) {
+            TermQuery term = SearchQuery.term(node.get("term").asText());
+            if (node.has("prefix_length")) {
+                term.prefixLength(node.get("prefix_length").asInt());
+            }
+            if (node.has("fuzziness")) {
+                term.fuzziness(node.get("fuzziness").asInt());
+            }
+            query = term;
+        } else if (node.has("terms")) {
+            List<String> terms = new ArrayList<>();
+            node.get("terms").forEach(term -> terms.add(term.asText()));
+            query = SearchQuery.phrase(terms.toArray(new String[0]));
+        } else if (node.has("prefix")) {
+            query = SearchQuery.prefix(node.get("prefix").asText());
+        } else if (node.has("wildcard")) {
+            query = SearchQuery.wildcard(node.get("wildcard").asText());
+        } else if (node.has("regexp")) {
+            query = SearchQuery.regexp(node.get("regexp").asText());
+        } else if (node.has("query")) {
+            query = SearchQuery.queryString(node.get("query").asText());
+        } else if (node.has("bool")) {
+            query = SearchQuery.booleanField(node.get("bool").asBoolean());
+        } else if (node.has("start") || node.has("end")) {
+            query = dateRange(node);
+        } else if (node.has("min") || node.has("max")) {
+            query = range(node);
+        } else {
+            throw new IllegalArgumentException("FTS query type cannot be rebuilt for Protostellar: " + node);
+        }
+
+        if (node.has("field")) {
+            setField(query, node.get("field").asText());
+        }
+        if (node.has("boost")) {
+            query.boost(node.get("boost").asDouble());
+        }
+        return query;
+    }
+
+    private static SearchQuery[] children(JsonNode array) {
+        List<SearchQuery> children = new ArrayList<>();
+        array.forEach(child -> children.add(typed(child)));
+        return children.toArray(new SearchQuery[0]);
+    }
+
+    private static SearchQuery booleans(JsonNode node) {
+        BooleanQuery booleans = SearchQuery.booleans();
+        if (node.has("must")) {
+            booleans.must(children(node.get("must").get("conjuncts")));
+        }
+        if (node.has("should")) {
+            JsonNode should = node.get("should");
+            booleans.should(children(should.get("disjuncts")));
+            if (should.has("min")) {
+                booleans.shouldMin(should.get("min").asInt());
+            }
+        }
+        if (node.has("must_not")) {
+            booleans.mustNot(children(node.get("must_not").get("disjuncts")));
+        }
+        return booleans;
+    }
+
+    private static SearchQuery dateRange(JsonNode node) {
+        DateRangeQuery range = SearchQuery.dateRange();
+        // Inclusiveness only when it was set: couchbase2 rejects the flag on date ranges
+        if (node.has("start")) {
+            String start = node.get("start").asText();
+            if (node.has("inclusive_start")) {
+                range.start(start, node.get("inclusive_start").asBoolean());
+            } else {
+                range.start(start);
+            }
+        }
+        if (node.has("end")) {
+            String end = node.get("end").asText();
+            if (node.has("inclusive_end")) {
+                range.end(end, node.get("inclusive_end").asBoolean());
+            } else {
+                range.end(end);
+            }
+        }
+        if (node.has("datetime_parser")) {
+            range.dateTimeParser(node.get("datetime_parser").asText());
+        }
+        return range;
+    }
+
+    /**
+     * Numeric range, or term range when the bounds are strings
+     */
+    private static SearchQuery range(JsonNode node) {
+        JsonNode min = node.get("min");
+        JsonNode max = node.get("max");
+        if ((min != null && min.isTextual()) || (max != null && max.isTextual())) {
+            TermRangeQuery range = SearchQuery.termRange();
+            if (min != null) {
+                if (node.has("inclusive_min")) {
+                    range.min(min.asText(), node.get("inclusive_min").asBoolean());
+                } else {
+                    range.min(min.asText());
+                }
+            }
+            if (max != null) {
+                if (node.has("inclusive_max")) {
+                    range.max(max.asText(), node.get("inclusive_max").asBoolean());
+                } else {
+                    range.max(max.asText());
+                }
+            }
+            return range;
+        }
+        NumericRangeQuery range = SearchQuery.numericRange();
+        if (min != null) {
+            if (node.has("inclusive_min")) {
+                range.min(min.asDouble(), node.get("inclusive_min").asBoolean());
+            } else {
+                range.min(min.asDouble());
+            }
+        }
+        if (max != null) {
+            if (node.has("inclusive_max")) {
+                range.max(max.asDouble(), node.get("inclusive_max").asBoolean());
+            } else {
+                range.max(max.asDouble());
+            }
+        }
+        return range;
+    }
+
+    private static void setField(SearchQuery query, String field) {
+        if (query instanceof MatchQuery match) {
+            match.field(field);
+        } else if (query instanceof MatchPhraseQuery phrase) {
+            phrase.field(field);
+        } else if (query instanceof TermQuery term) {
+            term.field(field);
+        } else if (query instanceof PhraseQuery phrase) {
+            phrase.field(field);
+        } else if (query instanceof PrefixQuery prefix) {
+            prefix.field(field);
+        } else if (query instanceof WildcardQuery wildcard) {
+            wildcard.field(field);
+        } else if (query instanceof RegexpQuery regexp) {
+            regexp.field(field);
+        } else if (query instanceof BooleanFieldQuery bool) {
+            bool.field(field);
+        } else if (query instanceof DateRangeQuery range) {
+            range.field(field);
+        } else if (query instanceof NumericRangeQuery range) {
+            range.field(field);
+        } else if (query instanceof TermRangeQuery range) {
+            range.field(field);
+        }
+    }
+}
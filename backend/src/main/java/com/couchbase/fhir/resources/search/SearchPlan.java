@@ -0,0 +1,64 @@
+package com.couchbase.fhir.resources.search;
+
+import com.couchbase.client.java.search.SearchQuery;
+
+import java.util.List;
+
+/**
+ * Compiled plan for one search parameter shape: (resourceType, parameter name, modifier).
+ *
+ * Everything that does not depend on the search value - search parameter resolution,
+ * FHIRPath parsing, US Core lookups, field expansion - is done once when the plan is built.
+ * Binding request values to the plan only constructs the SearchQuery objects.
+ */
+public final class SearchPlan {
+
+    /**
+     * Query template: turns the request values for a parameter into FTS queries.
+     */
+    @FunctionalInterface
+    public interface QueryBinder {
+        List<SearchQuery> bind(List<String> values);
+    }
+
+    private final String resourceType;
+    private final String paramName;
+    private final String modifier;
+    private final String paramType;     // HAPI/US Core parameter type, for logging
+    private final List<String> fieldPaths;
+    private final QueryBinder binder;
+
+    public SearchPlan(String resourceType, String paramName, String modifier, String paramType,
+                      List<String> fieldPaths, QueryBinder binder) {
+        this.resourceType = resourceType;
+        this.paramName = paramName;
+        this.modifier = modifier;
+        this.paramType = paramType;
+        this.fieldPaths = fieldPaths != null ? List.copyOf(fieldPaths) : List.of();
+        this.binder = binder;
+    }
+
+    /**
+     * Bind request values. Returns an empty list when the parameter is not supported
+     * or no query could be built for the values.
+     */
+    public List<SearchQuery> bind(List<String> values) {
+        if (binder == null || values == null || values.isEmpty()) {
+            return List.of();
+        }
+        return binder.bind(values);
+    }
+
+    public boolean isSupported() { return binder != null; }
+    public String getResourceType() { return resourceType; }
+    public String getParamName() { return paramName; }
+    public String getModifier() { return modifier; }
+    public String getParamType() { return paramType; }
+    public List<String> getFieldPaths() { return fieldPaths; }
+
+    @Override
+    public String toString() {
+        return String.format("SearchPlan{%s.%s%s, type=%s, fields=%s}", resourceType, paramName,
+                             modifier != null ? ":" + modifier : "", paramType, fieldPaths);
+    }
+}
@@ -0,0 +1,151 @@
+package com.couchbase.fhir.resources.service;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Resource;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/**
+ * Ordering constraints between the entries of a batch Bundle.
+ *
+ * Entry i waits for an earlier entry j only when running them out of order could change a result:
+ * - i references j's fullUrl (urn:uuid or any other fullUrl in the Bundle)
+ * - both touch the same document (PUT/DELETE/GET by id, or the id assigned to a POST)
+ * - i is a type-level read (search, conditional PUT/DELETE) and j writes that type, or the other way round
+ *
+ * Edges only point backwards, so the graph is acyclic and in request order it is the plain
+ * sequential loop; everything else may run concurrently. Built after the urn:uuid mapping has
+ * assigned the POST ids.
+ */
+final class BatchDependencyGraph {
+
+    /**
+     * Reads and writes of one resource type. Reads between two writes form a group that shares the
+     * same dependencies, and a write waits for the current group, so every dependency list stays short.
+     */
+    private static final class TypeState {
+        private final List<Integer> writes = new ArrayList<>();   // since the current read group
+        private final List<Integer> reads = new ArrayList<>();    // current read group
+        private List<Integer> readDependencies = List.of();       // writes the current read group waits for
+
+        void read(int index, Set<Integer> dependencies) {
+            if (!writes.isEmpty()) {
+                readDependencies = List.copyOf(writes);
+                writes.clear();
+                reads.clear();
+            }
+            dependencies.addAll(readDependencies);
+            reads.add(index);
+        }
+
+        void write(int index, Set<Integer> dependencies) {
+            dependencies.addAll(reads);
+            writes.add(index);
+        }
+    }
+
+    private BatchDependencyGraph() {
+    }
+
+    /**
+     * @param referencesOf the reference strings of an entry resource
+     * @return for each entry, the earlier entries it has to wait for
+     */
+    static List<Set<Integer>> build(Bundle bundle, Function<Resource, Collection<String>> referencesOf) {
+        List<Bundle.BundleEntryComponent> entries = bundle.getEntry();
+        List<Set<Integer>> dependencies = new ArrayList<>(entries.size());
+        Map<String, Integer> byFullUrl = new HashMap<>();
+        Map<String, Integer> lastByDocument = new HashMap<>();
+        Map<String, TypeState> types = new HashMap<>();
+
+        for (int i = 0; i < entries.size(); i++) {
+            Bundle.BundleEntryComponent entry = entries.get(i);
+            Resource resource = entry.getResource();
+            Bundle.HTTPVerb method = entry.getRequest() != null && entry.getRequest().getMethod() != null
+                ? entry.getRequest().getMethod() : Bundle.HTTPVerb.POST;
+            String url = entry.getRequest() != null ? entry.getRequest().getUrl() : null;
+            Set<Integer> waitFor = new TreeSet<>();
+
+            if (resource != null) {
+                for (String reference : referencesOf.apply(resource)) {
+                    Integer target = byFullUrl.get(reference);
+                    if (target != null) {
+                        waitFor.add(target);
+                    }
+                }
+            }
+
+            boolean conditional = url != null && url.contains("?");
+            String type = resource != null ? resource.getResourceType().name() : typeOf(url);
+            String id;
+            if (conditional) {
+                id = null;
+            } else if (resource != null && (method == Bundle.HTTPVerb.POST || method == Bundle.HTTPVerb.PUT)) {
+                id = resource.getIdElement().getIdPart();
+            } else {
+                id = idOf(url);
+            }
+
+            if (type != null) {
+                TypeState state = types.computeIfAbsent(type, k -> new TypeState());
+                boolean write = method != Bundle.HTTPVerb.GET && method != Bundle.HTTPVerb.HEAD;
+                if (id != null) {
+                    Integer previous = lastByDocument.put(type + "/" + id, i);
+                    if (previous != null) {
+                        waitFor.add(previous);
+                    }
+                } else {
+                    state.read(i, waitFor);
+                }
+                if (write) {
+                    state.write(i, waitFor);
+                }
+            }
+
+            if (entry.getFullUrl() != null && !entry.getFullUrl().isEmpty()) {
+                byFullUrl.put(entry.getFullUrl(), i);
+            }
+            waitFor.remove(i);
+            dependencies.add(waitFor);
+        }
+        return dependencies;
+    }
+
+    /**
+     * "Patient" for "Patient?name=x", "/Patient/123" or "Patient/123/_history"
+     */
+    static String typeOf(String url) {
+        if (url == null) {
+            return null;
+        }
+        String path = stripQuery(url);
+        int slash = path.indexOf('/');
+        String type = slash >= 0 ? path.substring(0, slash) : path;
+        return type.isEmpty() ? null : type;
+    }
+
+    /**
+     * "123" for "Patient/123" or "Patient/123/_history", null for a type-level URL
+     */
+    static String idOf(String url) {
+        if (url == null || url.contains("?")) {
+            return null;
+        }
+        String[] parts = stripQuery(url).split("/");
+        return parts.length >= 2 && !parts[1].isEmpty() && !parts[1].startsWith("$") && !parts[1].startsWith("_")
+            ? parts[1] : null;
+    }
+
+    private static String stripQuery(String url) {
+        String path = url.startsWith("/") ? url.substring(1) : url;
+        int query = path.indexOf('?');
+        return query >= 0 ? path.substring(0, query) : path;
+    }
+}
@@ -1,10 +1,6 @@
 package com.couchbase.fhir.resources.service;
 
-import ca.uhn.fhir.context.FhirContext;
-import ca.uhn.fhir.parser.JsonParser;
-import ca.uhn.fhir.parser.LenientErrorHandler;
 import com.couchbase.client.java.Collection;
-import com.couchbase.client.java.kv.GetOptions;
 import com.couchbase.client.java.kv.GetResult;
 import com.couchbase.fhir.resources.config.TenantContextHolder;
 import com.couchbase.fhir.resources.interceptor.DAOTimingContext;
@@ -15,12 +11,11 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.time.Duration;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -40,7 +35,10 @@ public class BatchKvService {
     private CollectionRoutingService collectionRoutingService;
     
     @Autowired
-    private FhirContext fhirContext;
+    private KvFetchEngine kvFetchEngine;
+    
+    @Autowired
+    private ParallelResourceParser parallelResourceParser;
     
     /**
      * Retrieve multiple documents by their keys and parse them into FHIR resources
@@ -65,46 +63,36 @@ public class BatchKvService {
             String targetCollection = collectionRoutingService.getTargetCollection(resourceType);
             Collection collection = couchbaseGateway.getCollection("default", bucketName, DEFAULT_SCOPE, targetCollection);
             
-            // Execute async KV operations in parallel for maximum performance
-            List<CompletableFuture<GetResult>> futures = new ArrayList<>();
-            
-            for (String documentKey : documentKeys) {
-                CompletableFuture<GetResult> future = collection.async().get(documentKey,
-                    GetOptions.getOptions().timeout(Duration.ofSeconds(10)));
-                futures.add(future);
-            }
-            
-            // Wait for all KV operations to complete
-            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
-                .get(30, TimeUnit.SECONDS); // Overall timeout
+            // Execute async KV operations through the shared engine (bounded in-flight window)
+            // RawJsonTranscoder: raw UTF-8 bytes go straight to the parser (no JsonObject/String copies)
+            KvFetchEngine.KvFetch fetch = kvFetchEngine.fetch(collection, documentKeys,
+                com.couchbase.client.java.codec.RawJsonTranscoder.INSTANCE);
             
-            long kvTimeMs = stopwatch.elapsed(TimeUnit.MILLISECONDS);
-            logger.debug("🔑 Async KV operations completed in {} ms ({} docs)", kvTimeMs, documentKeys.size());
-            DAOTimingContext.recordQueryTime(kvTimeMs);
-            
-            // Parse results into FHIR resources
-            List<Resource> resources = new ArrayList<>();
-            JsonParser parser = (JsonParser) fhirContext.newJsonParser();
-            parser.setParserErrorHandler(new LenientErrorHandler().setErrorOnInvalidValue(false));
-            
-            for (int i = 0; i < futures.size(); i++) {
+            List<String> foundKeys = new ArrayList<>(documentKeys.size());
+            List<byte[]> documents = new ArrayList<>(documentKeys.size());
+            for (int i = 0; i < documentKeys.size(); i++) {
                 try {
-                    CompletableFuture<GetResult> future = futures.get(i);
-                    GetResult result = future.get();
-                    
+                    GetResult result = fetch.await(i);
                     if (result != null) {
-                        String json = result.contentAsObject().toString();
-                        Resource resource = (Resource) parser.parseResource(json);
-                        resources.add(resource);
+                        foundKeys.add(documentKeys.get(i));
+                        documents.add(result.contentAs(byte[].class));
                     } else {
                         logger.warn("🔑 Document not found: {}", documentKeys.get(i));
                     }
                 } catch (Exception e) {
-                    logger.warn("🔑 Failed to retrieve/parse document {}: {}", 
-                              documentKeys.get(i), e.getMessage());
+                    logger.warn("🔑 Failed to retrieve document {}: {}", documentKeys.get(i), e.getMessage());
                 }
+                fetch.release(i);
             }
             
+            long kvTimeMs = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+            logger.debug("🔑 Async KV operations completed in {} ms ({} docs, queue: {} ms max, service: {} ms)", 
+                       kvTimeMs, documentKeys.size(), fetch.getQueueMs(), fetch.getServiceMs());
+            DAOTimingContext.recordQueryTime(kvTimeMs);
+            
+            // Parse results into FHIR resources (pooled parsers, fanned out across cores for large pages)
+            List<Resource> resources = parallelResourceParser.parseAll(foundKeys, documents);
+            
             long totalTimeMs = stopwatch.elapsed(TimeUnit.MILLISECONDS);
             long parsingTimeMs = totalTimeMs - kvTimeMs;
             
@@ -140,24 +128,17 @@ public class BatchKvService {
             String targetCollection = collectionRoutingService.getTargetCollection(resourceType);
             Collection collection = couchbaseGateway.getCollection("default", bucketName, DEFAULT_SCOPE, targetCollection);
             
-            List<CompletableFuture<GetResult>> futures = new ArrayList<>();
-            
-            for (String documentKey : documentKeys) {
-                // Use RawJsonTranscoder for JSON documents (better than RawBinaryTranscoder for JSON)
-                CompletableFuture<GetResult> future = collection.async().get(documentKey,
-                    GetOptions.getOptions()
-                        .timeout(Duration.ofSeconds(10))
-                        .transcoder(com.couchbase.client.java.codec.RawJsonTranscoder.INSTANCE));
-                futures.add(future);
-            }
+            // Use RawJsonTranscoder for JSON documents (better than RawBinaryTranscoder for JSON)
+            KvFetchEngine.KvFetch fetch = kvFetchEngine.fetch(collection, documentKeys,
+                com.couchbase.client.java.codec.RawJsonTranscoder.INSTANCE);
             
             // Preserve key-to-bytes association using LinkedHashMap (maintains insertion order)
             Map<String, byte[]> keyToBytesMap = new LinkedHashMap<>();
             
-            for (int i = 0; i < futures.size(); i++) {
+            for (int i = 0; i < documentKeys.size(); i++) {
                 String key = documentKeys.get(i);
                 try {
-                    GetResult result = futures.get(i).get(10, TimeUnit.SECONDS);
+                    GetResult result = fetch.await(i);
                     if (result != null) {
                         // Get raw JSON bytes directly from Couchbase (zero-copy!)
                         byte[] jsonBytes = result.contentAs(byte[].class);
@@ -178,6 +159,70 @@ public class BatchKvService {
         }
     }
     
+    /**
+     * Callback receiving raw document bytes in key order (see {@link #streamDocumentsAsBytes}).
+     */
+    @FunctionalInterface
+    public interface DocumentSink {
+        void accept(String key, byte[] jsonBytes) throws IOException;
+    }
+
+    /**
+     * Stream documents as raw UTF-8 bytes to a sink, in the same order as documentKeys.
+     *
+     * KV gets are pipelined through the fetch engine; each document is handed to the sink as soon
+     * as it and every document before it have arrived, and the reference is dropped right after,
+     * so only the in-flight window is held on heap rather than the whole page.
+     * Missing or failed documents are skipped (same behaviour as getDocumentsAsBytesWithKeys).
+     *
+     * @return number of documents delivered to the sink
+     * @throws IOException if the sink fails (e.g. client disconnected)
+     */
+    public int streamDocumentsAsBytes(List<String> documentKeys, String resourceType, DocumentSink sink) throws IOException {
+        if (documentKeys == null || documentKeys.isEmpty()) {
+            return 0;
+        }
+
+        String bucketName = TenantContextHolder.getTenantId();
+
+        logger.debug("🚀 FASTPATH: Streaming KV retrieval (raw bytes): {} documents for {}", documentKeys.size(), resourceType);
+
+        KvFetchEngine.KvFetch fetch;
+        try {
+            String targetCollection = collectionRoutingService.getTargetCollection(resourceType);
+            Collection collection = couchbaseGateway.getCollection("default", bucketName, DEFAULT_SCOPE, targetCollection);
+
+            fetch = kvFetchEngine.fetch(collection, documentKeys,
+                com.couchbase.client.java.codec.RawJsonTranscoder.INSTANCE);
+        } catch (Exception e) {
+            logger.error("❌ Streaming KV retrieval failed for {}: {}", resourceType, e.getMessage());
+            throw new RuntimeException("Streaming KV retrieval failed: " + e.getMessage(), e);
+        }
+
+        int delivered = 0;
+        for (int i = 0; i < documentKeys.size(); i++) {
+            String key = documentKeys.get(i);
+            byte[] jsonBytes = null;
+            try {
+                GetResult result = fetch.await(i);
+                if (result != null) {
+                    jsonBytes = result.contentAs(byte[].class);
+                }
+            } catch (Exception e) {
+                logger.warn("🔑 Failed to retrieve document {}: {}", key, e.getMessage());
+            }
+            fetch.release(i); // Release the GetResult as soon as it is consumed
+
+            if (jsonBytes != null) {
+                sink.accept(key, jsonBytes);
+                delivered++;
+            }
+        }
+
+        logger.debug("🚀 FASTPATH: Streamed {}/{} documents as raw bytes", delivered, documentKeys.size());
+        return delivered;
+    }
+
     /**
      * Check if documents exist (without retrieving content)
      * Useful for validation operations
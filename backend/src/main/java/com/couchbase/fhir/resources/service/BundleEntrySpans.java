@@ -0,0 +1,173 @@
+package com.couchbase.fhir.resources.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * Raw JSON spans of the entry resources of a transaction/batch Bundle request body.
+ *
+ * The request bytes are scanned once with Jackson's streaming parser (tokens only, no model)
+ * to find where each entry.resource object starts and ends. Storage can then write an entry
+ * from its original bytes: {@link #rewrite} copies the span token for token, swapping in the
+ * server id, the meta and the resolved urn:uuid references, instead of encoding the HAPI model.
+ */
+public final class BundleEntrySpans {
+
+    private static final Logger logger = LoggerFactory.getLogger(BundleEntrySpans.class);
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final byte[] body;
+    private final List<int[]> spans;  // [start, end) per entry, null when the entry has no resource
+
+    private BundleEntrySpans(byte[] body, List<int[]> spans) {
+        this.body = body;
+        this.spans = spans;
+    }
+
+    /**
+     * Scan a Bundle request body, or return null when it cannot be scanned
+     * (callers then encode from the HAPI model as before)
+     */
+    public static BundleEntrySpans scan(byte[] body) {
+        if (body == null || body.length == 0) {
+            return null;
+        }
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            List<int[]> spans = new ArrayList<>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("entry".equals(field) && value == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        spans.add(scanEntry(parser));
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return new BundleEntrySpans(body, spans);
+        } catch (IOException | RuntimeException e) {
+            logger.debug("📦 Bundle body not scannable ({}), entries will be encoded", e.getMessage());
+            return null;
+        }
+    }
+
+    private static int[] scanEntry(JsonParser parser) throws IOException {
+        int[] span = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("resource".equals(field) && value == JsonToken.START_OBJECT) {
+                int start = (int) parser.currentTokenLocation().getByteOffset();
+                parser.skipChildren();
+                span = new int[] { start, (int) parser.currentLocation().getByteOffset() };
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return span;
+    }
+
+    public int size() {
+        return spans.size();
+    }
+
+    public boolean hasResource(int entryIndex) {
+        return entryIndex < spans.size() && spans.get(entryIndex) != null;
+    }
+
+    /**
+     * Copy an entry's resource with the server id and meta in place of the client's, and every
+     * "reference" string passed through the resolver (which returns null to keep a reference as is).
+     * Numbers are copied as written, so decimal precision survives.
+     *
+     * @param metaJson the meta element as JSON (e.g. IParser.encodeToString(resource.getMeta()))
+     */
+    public byte[] rewrite(int entryIndex, String id, String metaJson, UnaryOperator<String> referenceResolver)
+            throws IOException {
+        int[] span = spans.get(entryIndex);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(span[1] - span[0] + 128);
+        try (JsonParser parser = JSON_FACTORY.createParser(body, span[0], span[1] - span[0]);
+             JsonGenerator generator = JSON_FACTORY.createGenerator(out)) {
+            int depth = 0;
+            boolean headerWritten = false;
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                switch (token) {
+                    case START_OBJECT, START_ARRAY -> {
+                        depth++;
+                        generator.copyCurrentEvent(parser);
+                    }
+                    case END_OBJECT, END_ARRAY -> {
+                        if (depth == 1 && !headerWritten) {
+                            writeHeader(generator, id, metaJson);
+                            headerWritten = true;
+                        }
+                        depth--;
+                        generator.copyCurrentEvent(parser);
+                    }
+                    case FIELD_NAME -> {
+                        String field = parser.currentName();
+                        if (depth == 1 && ("id".equals(field) || "meta".equals(field))) {
+                            parser.nextToken();
+                            parser.skipChildren();
+                        } else if (depth == 1 && "resourceType".equals(field)) {
+                            generator.copyCurrentEvent(parser);
+                            parser.nextToken();
+                            generator.copyCurrentEvent(parser);
+                            writeHeader(generator, id, metaJson);
+                            headerWritten = true;
+                        } else if (!"reference".equals(field)) {
+                            generator.copyCurrentEvent(parser);
+                        } else if (parser.nextToken() == JsonToken.VALUE_STRING) {
+                            String original = parser.getText();
+                            String resolved = referenceResolver.apply(original);
+                            generator.writeStringField(field, resolved != null ? resolved : original);
+                        } else {
+                            // Not a reference string - copy the field, its value token is already current
+                            generator.writeFieldName(field);
+                            if (parser.currentToken().isStructStart()) {
+                                depth++;
+                                generator.copyCurrentEvent(parser);
+                            } else {
+                                copyScalar(parser, generator);
+                            }
+                        }
+                    }
+                    default -> copyScalar(parser, generator);
+                }
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static void copyScalar(JsonParser parser, JsonGenerator generator) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT) {
+            generator.writeNumber(parser.getText());
+        } else {
+            generator.copyCurrentEvent(parser);
+        }
+    }
+
+    private static void writeHeader(JsonGenerator generator, String id, String metaJson) throws IOException {
+        generator.writeStringField("id", id);
+        if (metaJson != null) {
+            generator.writeFieldName("meta");
+            generator.writeRawValue(metaJson);
+        }
+    }
+}
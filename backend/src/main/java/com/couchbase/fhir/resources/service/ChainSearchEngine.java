@@ -0,0 +1,380 @@
+package com.couchbase.fhir.resources.service;
+
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import com.couchbase.client.java.search.SearchQuery;
+import com.couchbase.client.java.search.sort.SearchSort;
+import com.couchbase.fhir.resources.config.ChainSearchProperties;
+import com.couchbase.fhir.resources.config.SearchFanOutProperties;
+import ca.uhn.fhir.model.api.Include;
+import com.couchbase.fhir.resources.search.ChainParam;
+import com.couchbase.fhir.resources.search.HasParam;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Semi-join engine for chained searches (e.g. Observation?subject:Patient.name=smith).
+ *
+ * Step 1 resolves the chain's target IDs with one FTS search on the target type. The result is
+ * cached for a short TTL per normalized chain (target type + canonical target query); writes to
+ * the target type on this node drop it ({@link #onWrite}), and conditional operations bypass it.
+ * Step 2 turns the targets into primary FTS queries, picking a strategy by cardinality:
+ * - REVERSE_LOOKUP: few targets → one disjunction of reference matches on the primary type
+ * - INTERSECTION: the primary's other criteria match fewer primaries than there are targets →
+ *   scan those primaries in sort order, read their reference field with KV sub-document lookups
+ *   and keep the ones pointing into the target set
+ * - BATCHED_LOOKUP: both sides large → one FTS search per batch of at most
+ *   fhir.search.chain.disjunction-batch-size reference matches, run in parallel; the matching
+ *   primary keys are merged and put in sort order
+ *
+ * No FTS request ever carries more than disjunction-batch-size reference clauses. REVERSE_LOOKUP
+ * ends in primary queries, so totals and continuation pages are done by FTS. The other two end in
+ * the complete, ordered list of primary keys: the total is its size and continuation pages slice it.
+ * A chain matching more than fhir.search.chain.max-targets targets or primaries is rejected rather
+ * than answered from a truncated set.
+ *
+ * Reverse chains ($has) run the other way round: the matching targets' reference field is read
+ * with KV sub-document lookups and the distinct referenced primaries become a document ID query.
+ */
+@Service
+public class ChainSearchEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChainSearchEngine.class);
+
+    public enum Strategy { REVERSE_LOOKUP, INTERSECTION, BATCHED_LOOKUP }
+
+    /**
+     * Primary queries for a chained search, or empty when nothing can match. Key-addressed plans
+     * also carry the complete primary key list in result order.
+     */
+    public static final class ChainPlan {
+        private final Strategy strategy;
+        private final List<SearchQuery> primaryQueries;
+        private final List<String> primaryKeys;
+        private final int targetCount;
+
+        ChainPlan(Strategy strategy, List<SearchQuery> primaryQueries, int targetCount) {
+            this(strategy, primaryQueries, null, targetCount);
+        }
+
+        private ChainPlan(Strategy strategy, List<SearchQuery> primaryQueries, List<String> primaryKeys,
+                          int targetCount) {
+            this.strategy = strategy;
+            this.primaryQueries = primaryQueries;
+            this.primaryKeys = primaryKeys;
+            this.targetCount = targetCount;
+        }
+
+        static ChainPlan ofKeys(Strategy strategy, List<String> primaryKeys, int targetCount) {
+            return new ChainPlan(strategy, List.of(SearchQuery.docId(primaryKeys.toArray(new String[0]))),
+                                 primaryKeys, targetCount);
+        }
+
+        public boolean isEmpty() { return primaryQueries == null; }
+        public Strategy getStrategy() { return strategy; }
+        /** For key-addressed plans a single document ID query over {@link #getPrimaryKeys()} */
+        public List<SearchQuery> getPrimaryQueries() { return primaryQueries; }
+        /** Complete primary keys in result order, or null when the plan is query-based */
+        public List<String> getPrimaryKeys() { return primaryKeys; }
+        public int getTargetCount() { return targetCount; }
+
+        @Override
+        public String toString() {
+            return String.format("ChainPlan{strategy=%s, targets=%d}", strategy, targetCount);
+        }
+    }
+
+    private static final ChainPlan EMPTY = new ChainPlan(null, null, 0);
+
+    @Autowired
+    private ChainSearchProperties properties;
+
+    @Autowired
+    private FtsSearchService ftsSearchService;
+
+    @Autowired
+    private IncludeReferenceExtractor referenceExtractor;
+
+    @Autowired
+    private SearchFanOutProperties fanOutProperties;
+
+    private Cache<String, List<String>> targetCache;
+
+    // Bumped by writes per bucket|type, so a target set resolved across a write is not cached
+    private final Map<String, AtomicLong> writeGenerations = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void init() {
+        targetCache = Caffeine.newBuilder()
+            .maximumSize(properties.getCacheMaximumSize())
+            .expireAfterWrite(Duration.ofSeconds(properties.getCacheTtlSeconds()))
+            .build();
+        logger.info("🔗 Chain engine: batch={}, maxTargets={}, intersectionMax={}, cache={} (ttl={}s)",
+                    properties.getDisjunctionBatchSize(), properties.getMaxTargets(),
+                    properties.getIntersectionMaxPrimaries(), properties.isCacheEnabled(), properties.getCacheTtlSeconds());
+    }
+
+    /**
+     * Plan a chained search.
+     *
+     * @param targetQueries FTS queries selecting the chain's targets (e.g. Patient name=smith)
+     * @param additionalQueries the primary's other criteria (may be empty)
+     * @param sortFields the primary search's sort, applied to key-addressed plans (may be null)
+     * @param useTargetCache false for conditional operations, which must see the current targets
+     * @throws InvalidRequestException when the chain matches more targets or primaries than fhir.search.chain.max-targets
+     */
+    public ChainPlan plan(String primaryResourceType, ChainParam chainParam, List<SearchQuery> targetQueries,
+                          List<SearchQuery> additionalQueries, List<SearchSort> sortFields, String bucketName,
+                          boolean useTargetCache) {
+        String targetResourceType = chainParam.getTargetResourceType();
+
+        // Step 1: Resolve target IDs (cached per normalized chain)
+        List<String> targetIds = resolveTargetIds(targetResourceType, targetQueries, bucketName, useTargetCache);
+        if (targetIds.isEmpty()) {
+            return EMPTY;
+        }
+
+        // Step 2: Pick a strategy by cardinality
+        ChainPlan plan;
+        if (targetIds.size() <= properties.getDisjunctionBatchSize()) {
+            plan = new ChainPlan(Strategy.REVERSE_LOOKUP,
+                withCriteria(referenceDisjunction(chainParam, targetIds, 0, targetIds.size()), additionalQueries),
+                targetIds.size());
+        } else {
+            plan = planIntersection(primaryResourceType, chainParam, targetIds, additionalQueries, sortFields, bucketName);
+            if (plan == null) {
+                plan = planBatchedLookup(primaryResourceType, chainParam, targetIds, additionalQueries, sortFields);
+            }
+        }
+
+        logger.debug("🔗 Chain {} on {}: {}", chainParam.getOriginalParameter(), primaryResourceType, plan);
+        return plan;
+    }
+
+    /**
+     * Resolve a _has parameter to the distinct primary document keys it selects
+     * (e.g. Patient?_has:Observation:subject:code=1234 → the Patient keys referenced by matching Observations).
+     *
+     * Only the reference field of each matching target is read; targets are never parsed.
+     *
+     * @param targetQueries FTS queries selecting the _has targets (e.g. Observation code=1234)
+     * @param useTargetCache false for conditional operations, which must see the current targets
+     * @return primary document keys in target order, de-duplicated (empty when nothing matches)
+     */
+    public List<String> resolveHasPrimaryKeys(String primaryResourceType, HasParam hasParam,
+                                              List<SearchQuery> targetQueries, String bucketName,
+                                              boolean useTargetCache) {
+        String targetResourceType = hasParam.getTargetResource();
+        List<String> targetIds = resolveTargetIds(targetResourceType, targetQueries, bucketName, useTargetCache);
+        if (targetIds.isEmpty()) {
+            return List.of();
+        }
+
+        List<String> targetKeys = new ArrayList<>(targetIds.size());
+        for (String id : targetIds) {
+            targetKeys.add(targetResourceType + "/" + id);
+        }
+        List<String> references = referenceExtractor.extractReferences(targetKeys,
+            List.of(new Include(targetResourceType + ":" + hasParam.getReferenceField())),
+            targetResourceType, bucketName, Integer.MAX_VALUE);
+
+        // Keep references to the primary type only (a param like "subject" may also point at Group)
+        String prefix = primaryResourceType + "/";
+        List<String> primaryKeys = references.stream().filter(ref -> ref.startsWith(prefix)).toList();
+
+        logger.debug("🔗 {} on {}: {} targets reference {} distinct primaries",
+                     hasParam, primaryResourceType, targetIds.size(), primaryKeys.size());
+        return primaryKeys;
+    }
+
+    /**
+     * Record a write to a resource type: its cached target sets are dropped, and target sets
+     * being resolved concurrently are not cached
+     */
+    public void onWrite(String bucketName, String resourceType) {
+        String prefix = bucketName + "|" + resourceType + "|";
+        writeGenerations.computeIfAbsent(prefix, k -> new AtomicLong()).incrementAndGet();
+        targetCache.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    public void clear() {
+        targetCache.invalidateAll();
+    }
+
+    private List<String> resolveTargetIds(String targetResourceType, List<SearchQuery> targetQueries, String bucketName,
+                                          boolean useTargetCache) {
+        String cacheKey = useTargetCache && properties.isCacheEnabled()
+            ? cacheKey(targetResourceType, targetQueries, bucketName) : null;
+        AtomicLong generation = writeGenerations.computeIfAbsent(bucketName + "|" + targetResourceType + "|",
+                                                                 k -> new AtomicLong());
+        long generationBefore = generation.get();
+        if (cacheKey != null) {
+            List<String> cached = targetCache.getIfPresent(cacheKey);
+            if (cached != null) {
+                logger.debug("🔗 Chain targets cache hit: {} {} IDs", cached.size(), targetResourceType);
+                return cached;
+            }
+        }
+
+        FtsSearchService.FtsSearchResult result = ftsSearchService.searchForKeys(
+            targetQueries, targetResourceType, 0, properties.getMaxTargets(), null);
+        if (result.getTotalCount() > result.size()) {
+            throw tooManyMatches(targetResourceType, result.getTotalCount());
+        }
+
+        List<String> ids = result.getDocumentKeys().stream()
+            .map(key -> key.substring(key.lastIndexOf('/') + 1))  // Extract ID from "ResourceType/id"
+            .toList();
+        if (cacheKey != null && generation.get() == generationBefore) {
+            targetCache.put(cacheKey, ids);
+        }
+        return ids;
+    }
+
+    /**
+     * Intersection driven by the primary side, or null when that side is not the smaller one
+     */
+    private ChainPlan planIntersection(String primaryResourceType, ChainParam chainParam, List<String> targetIds,
+                                       List<SearchQuery> additionalQueries, List<SearchSort> sortFields,
+                                       String bucketName) {
+        if (additionalQueries == null || additionalQueries.isEmpty()) {
+            return null;  // Unconstrained primary side - never the smaller one
+        }
+        long primaryCount = ftsSearchService.getCount(additionalQueries, primaryResourceType);
+        if (primaryCount > properties.getIntersectionMaxPrimaries() || primaryCount >= targetIds.size()) {
+            return null;
+        }
+        if (primaryCount == 0) {
+            return EMPTY;
+        }
+
+        // Sized to the cap, not the (possibly cached) count, so primaries added since are still seen
+        FtsSearchService.FtsSearchResult candidateResult = ftsSearchService.searchForKeys(
+            additionalQueries, primaryResourceType, 0, properties.getIntersectionMaxPrimaries(), sortFields);
+        if (candidateResult.getTotalCount() > candidateResult.size()) {
+            return null;
+        }
+        List<String> candidates = candidateResult.getDocumentKeys();
+        List<Set<String>> references = referenceExtractor.extractReferencesPerPrimary(
+            candidates, chainParam.getChainField(), primaryResourceType, bucketName);
+
+        Set<String> targetRefs = new HashSet<>(targetIds.size() * 2);
+        for (String id : targetIds) {
+            targetRefs.add(chainParam.getTargetResourceType() + "/" + id);
+        }
+
+        List<String> matches = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            for (String ref : references.get(i)) {
+                if (targetRefs.contains(ref)) {
+                    matches.add(candidates.get(i));
+                    break;
+                }
+            }
+        }
+
+        logger.debug("🔗 Intersection: {}/{} {} primaries reference one of {} targets",
+                     matches.size(), candidates.size(), primaryResourceType, targetIds.size());
+        if (matches.isEmpty()) {
+            return EMPTY;
+        }
+        // The candidates already matched the other criteria, in sort order
+        return ChainPlan.ofKeys(Strategy.INTERSECTION, matches, targetIds.size());
+    }
+
+    /**
+     * One FTS search per batch of reference matches (with the primary's other criteria), run in
+     * parallel. The matching primary keys are merged and, when the search is sorted, ordered by
+     * one document ID search over all of them.
+     */
+    private ChainPlan planBatchedLookup(String primaryResourceType, ChainParam chainParam, List<String> targetIds,
+                                        List<SearchQuery> additionalQueries, List<SearchSort> sortFields) {
+        int batchSize = Math.max(1, properties.getDisjunctionBatchSize());
+        RequestFanOut fanOut = new RequestFanOut(fanOutProperties.getMaxConcurrency());
+        List<CompletableFuture<FtsSearchService.FtsSearchResult>> batches = new ArrayList<>();
+        for (int from = 0; from < targetIds.size(); from += batchSize) {
+            List<SearchQuery> batchQueries = withCriteria(
+                referenceDisjunction(chainParam, targetIds, from, Math.min(from + batchSize, targetIds.size())),
+                additionalQueries);
+            batches.add(fanOut.submit(() -> ftsSearchService.searchForKeys(
+                batchQueries, primaryResourceType, 0, properties.getMaxTargets(), null)));
+        }
+
+        TreeSet<String> primaryKeys = new TreeSet<>();
+        for (CompletableFuture<FtsSearchService.FtsSearchResult> batch : batches) {
+            FtsSearchService.FtsSearchResult result = RequestFanOut.join(batch);
+            if (result.getTotalCount() > result.size()) {
+                throw tooManyMatches(primaryResourceType, result.getTotalCount());
+            }
+            primaryKeys.addAll(result.getDocumentKeys());
+        }
+        if (primaryKeys.size() > properties.getMaxTargets()) {
+            throw tooManyMatches(primaryResourceType, primaryKeys.size());
+        }
+
+        logger.debug("🔗 Batched lookup: {} batches of ≤{} targets matched {} {} primaries",
+                     batches.size(), batchSize, primaryKeys.size(), primaryResourceType);
+        if (primaryKeys.isEmpty()) {
+            return EMPTY;
+        }
+        List<String> keys = new ArrayList<>(primaryKeys);
+        if (sortFields != null && !sortFields.isEmpty() && keys.size() > 1) {
+            // The batches already applied the other criteria
+            keys = ftsSearchService.searchForKeys(List.of(SearchQuery.docId(keys.toArray(new String[0]))),
+                                                  primaryResourceType, 0, keys.size(), sortFields).getDocumentKeys();
+        }
+        return ChainPlan.ofKeys(Strategy.BATCHED_LOOKUP, keys, targetIds.size());
+    }
+
+    private InvalidRequestException tooManyMatches(String resourceType, long matched) {
+        logger.warn("⚠️  Chain matched {} {} resources, more than fhir.search.chain.max-targets={}",
+                    matched, resourceType, properties.getMaxTargets());
+        return new InvalidRequestException("Chained search matches " + matched + " " + resourceType
+            + " resources, more than the " + properties.getMaxTargets() + " supported; add criteria to narrow it");
+    }
+
+    private SearchQuery referenceDisjunction(ChainParam chainParam, List<String> targetIds, int from, int to) {
+        SearchQuery[] matches = new SearchQuery[to - from];
+        for (int i = from; i < to; i++) {
+            String referenceValue = chainParam.getTargetResourceType() + "/" + targetIds.get(i);
+            matches[i - from] = SearchQuery.match(referenceValue).field(chainParam.getReferenceFieldPath());
+        }
+        return SearchQuery.disjuncts(matches);
+    }
+
+    private static List<SearchQuery> withCriteria(SearchQuery chainQuery, List<SearchQuery> additionalQueries) {
+        List<SearchQuery> primaryQueries = new ArrayList<>();
+        primaryQueries.add(chainQuery);
+        if (additionalQueries != null) {
+            primaryQueries.addAll(additionalQueries);
+        }
+        return primaryQueries;
+    }
+
+    private static String cacheKey(String targetResourceType, List<SearchQuery> targetQueries, String bucketName) {
+        try {
+            SearchQuery combined = targetQueries.size() == 1
+                ? targetQueries.get(0)
+                : SearchQuery.conjuncts(targetQueries.toArray(new SearchQuery[0]));
+            return bucketName + "|" + targetResourceType + "|" + FtsCountCache.hash(combined.export().toString());
+        } catch (Exception e) {
+            logger.debug("🔗 Chain target query not cacheable: {}", e.getMessage());
+            return null;
+        }
+    }
+}
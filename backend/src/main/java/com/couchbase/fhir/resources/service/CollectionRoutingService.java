@@ -61,10 +61,19 @@ public class CollectionRoutingService {
      * @return The FTS index name for this resource type, or null if not found
      */
     public String getFtsIndex(String resourceType) {
+        // Get the bucket name from the tenant context
+        return getFtsIndex(com.couchbase.fhir.resources.config.TenantContextHolder.getTenantId(), resourceType);
+    }
+    
+    /**
+     * Get the FTS index for a FHIR resource type in a given bucket
+     * @param bucketName The bucket holding the index
+     * @param resourceType The FHIR resource type
+     * @return The fully qualified FTS index name (bucket.scope.index), or null if not found
+     */
+    public String getFtsIndex(String bucketName, String resourceType) {
         Optional<String> ftsIndex = mappingService.getFtsIndex(resourceType);
         if (ftsIndex.isPresent()) {
-            // Get the bucket name from the tenant context
-            String bucketName = com.couchbase.fhir.resources.config.TenantContextHolder.getTenantId();
             String fullyQualifiedIndex = bucketName + "." + DEFAULT_SCOPE + "." + ftsIndex.get();
             logger.debug("Using FTS index {} for resource type {}", fullyQualifiedIndex, resourceType);
             return fullyQualifiedIndex;
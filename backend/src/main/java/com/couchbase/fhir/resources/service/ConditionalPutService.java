@@ -157,6 +157,9 @@ public class ConditionalPutService {
             
             return outcome;
             
+        } catch (ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException e) {
+            // Tombstoned ID or concurrent update (409)
+            throw e;
         } catch (Exception e) {
             logger.error("❌ ConditionalPutService: Failed to update resource {}: {}", resourceId, e.getMessage());
             throw new InternalErrorException("Failed to update resource: " + e.getMessage());
@@ -8,16 +8,15 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
-import java.util.List;
 
 /**
  * Service for handling FHIR DELETE operations with proper tombstone management.
  * DELETE operations are idempotent and use soft delete with tombstones.
  * 
  * Flow:
- * 1. Copy current resource to Versions (if exists)
+ * 1. Copy current resource to Versions (if exists) - KV reads/writes only, no N1QL
  * 2. Create tombstone ONLY if resource actually existed (FHIR best practice)
- * 3. Remove from live Resources collection (always attempt for idempotency)
+ * 3. Remove from live Resources collection (nothing to remove when it did not exist)
  * 4. Always return 204 (even if resource didn't exist)
  */
 @Service
@@ -25,7 +24,6 @@ public class DeleteService {
     
     private static final Logger logger = LoggerFactory.getLogger(DeleteService.class);
     private static final String DEFAULT_SCOPE = "Resources";
-    private static final String VERSIONS_COLLECTION = "Versions";
     private static final String TOMBSTONES_COLLECTION = "Tombstones";
     
     @Autowired
@@ -34,6 +32,15 @@ public class DeleteService {
     @Autowired
     private CollectionRoutingService collectionRoutingService;
     
+    @Autowired
+    private KvReadCoalescer readCoalescer;
+    
+    @Autowired
+    private SearchResultCache searchResultCache;
+    
+    @Autowired
+    private ResourceVersioningService versioningService;
+    
     /**
      * Delete a FHIR resource (soft delete with tombstone).
      * Always returns success (204) even if resource doesn't exist (idempotent).
@@ -84,6 +91,10 @@ public class DeleteService {
                                             txContext, context.getCluster(), context.getBucketName());
                 logger.debug("✅ DELETE {}: Transaction operations completed", resourceType);
             });
+            // Reads between the remove and the commit may have cached the old document
+            readCoalescer.invalidate(context.getBucketName(), DEFAULT_SCOPE,
+                                     collectionRoutingService.getTargetCollection(resourceType), documentKey);
+            searchResultCache.onWrite(context.getBucketName(), resourceType);
             logger.debug("✅ DELETE {}: Standalone transaction committed for {}", resourceType, documentKey);
         } catch (Exception e) {
             logger.error("❌ DELETE {} (standalone transaction) failed: {}", documentKey, e.getMessage());
@@ -101,69 +112,22 @@ public class DeleteService {
                                              com.couchbase.client.java.transactions.TransactionAttemptContext txContext,
                                              Cluster cluster, String bucketName) {
         
-        // Step 1: Copy current resource to Versions (if it exists) and get version info
-        String lastVersionId = copyCurrentResourceToVersions(txContext, cluster, bucketName, resourceType, documentKey);
+        // Step 1: Copy current resource to Versions (if it exists) and get version info - KV only
+        ResourceVersioningService.CurrentVersion current =
+            versioningService.archiveCurrent(txContext, cluster, bucketName, resourceType, documentKey);
         
         // Step 2: Only create tombstone if resource actually existed (FHIR best practice)
-        if (lastVersionId != null) {
-            createTombstone(txContext, cluster, bucketName, resourceType, resourceId, lastVersionId);
-            logger.debug("🪦 DELETE {}: Resource deleted - archived version {}, tombstone created, live removed",
-                       documentKey, lastVersionId);
-        } else {
+        if (current == null) {
             logger.debug("🔍 DELETE {}: Resource didn't exist - no tombstone created (idempotent 204)",
                        documentKey);
+            return;
         }
+        createTombstone(txContext, cluster, bucketName, resourceType, resourceId, current.getVersionId());
         
-        // Step 3: Remove from live Resources collection (if it exists) - always attempt for idempotency
-        removeFromLiveCollection(txContext, cluster, bucketName, resourceType, documentKey);
-    }
-    
-    /**
-     * Copy current resource to Versions collection using efficient N1QL with RETURNING
-     * Same approach as PUT service to get version ID directly from the query
-     * @return The version ID of the archived resource (null if resource didn't exist)
-     */
-    private String copyCurrentResourceToVersions(com.couchbase.client.java.transactions.TransactionAttemptContext txContext,
-                                                Cluster cluster, String bucketName, String resourceType, String documentKey) {
-        try {
-            // Get the correct target collection for this resource type
-            String targetCollection = collectionRoutingService.getTargetCollection(resourceType);
-            
-            // Use same efficient N1QL as PUT service with RETURNING to get version ID directly
-            String sql = String.format(
-                "INSERT INTO `%s`.`%s`.`%s` (KEY k, VALUE v) " +
-                "SELECT " +
-                "    CONCAT(META(r).id, '/', IFNULL(r.meta.versionId, '1')) AS k, " +
-                "    r AS v " +
-                "FROM `%s`.`%s`.`%s` r " +
-                "USE KEYS '%s' " +
-                "RETURNING RAW %s.meta.versionId",
-                bucketName, DEFAULT_SCOPE, VERSIONS_COLLECTION,  // INSERT INTO Versions
-                bucketName, DEFAULT_SCOPE, targetCollection,     // FROM TargetCollection
-                documentKey,                                     // USE KEYS 'Patient/04d74bb4-61a9-45f5-8912-3d30d8029fa7'
-                VERSIONS_COLLECTION                              // RETURNING RAW Versions.meta.versionId
-            );
-            
-            logger.debug("🔄 Copying current resource to Versions with RETURNING for delete: {}", sql);
-            
-            // Execute query within transaction context
-            com.couchbase.client.java.transactions.TransactionQueryResult result = txContext.query(sql);
-            
-            // Get RETURNING results from SDK - this gives us the version ID that was copied
-            List<String> rows = result.rowsAs(String.class);
-            if (!rows.isEmpty()) {
-                String versionId = rows.get(0);
-                logger.debug("📂 Copied resource to Versions for delete, version: {}", versionId);
-                return versionId;
-            } else {
-                logger.debug("🔍 Resource {} doesn't exist - no version to archive", documentKey);
-                return null;
-            }
-            
-        } catch (Exception e) {
-            logger.debug("Failed to copy resource {} to Versions: {}", documentKey, e.getMessage());
-            return null; // Continue with delete even if archiving fails
-        }
+        // Step 3: Remove the document read in step 1 from the live Resources collection
+        removeFromLiveCollection(txContext, bucketName, resourceType, documentKey, current);
+        logger.debug("🪦 DELETE {}: Resource deleted - archived version {}, tombstone created, live removed",
+                   documentKey, current.getVersionId());
     }
     
     /**
@@ -214,24 +178,13 @@ public class DeleteService {
      * Remove resource from live Resources collection
      */
     private void removeFromLiveCollection(com.couchbase.client.java.transactions.TransactionAttemptContext txContext,
-                                        Cluster cluster, String bucketName, String resourceType, String documentKey) {
+                                        String bucketName, String resourceType, String documentKey,
+                                        ResourceVersioningService.CurrentVersion current) {
         try {
-            // Get the correct target collection for this resource type
-            String targetCollection = collectionRoutingService.getTargetCollection(resourceType);
-            
-            // Get live collection reference
-            com.couchbase.client.java.Collection liveCollection = 
-                cluster.bucket(bucketName).scope(DEFAULT_SCOPE).collection(targetCollection);
-            
-            try {
-                // Try to remove the document (idempotent - OK if doesn't exist)
-                var existingDoc = txContext.get(liveCollection, documentKey);
-                txContext.remove(existingDoc);
-                logger.debug("🗑️ Removed resource from live collection: {}", documentKey);
-            } catch (com.couchbase.client.core.error.DocumentNotFoundException e) {
-                // Document doesn't exist in live collection - that's OK (idempotent)
-                logger.debug("🔍 Resource {} not found in live collection (already deleted or never existed)", documentKey);
-            }
+            txContext.remove(current.getDocument());
+            readCoalescer.invalidate(bucketName, DEFAULT_SCOPE, collectionRoutingService.getTargetCollection(resourceType), documentKey);
+            searchResultCache.onWrite(bucketName, resourceType);
+            logger.debug("🗑️ Removed resource from live collection: {}", documentKey);
             
         } catch (Exception e) {
             logger.error("❌ Failed to remove resource {} from live collection: {}", documentKey, e.getMessage());
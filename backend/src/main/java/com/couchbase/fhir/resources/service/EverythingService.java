@@ -5,6 +5,8 @@ import ca.uhn.fhir.rest.server.exceptions.ResourceGoneException;
 import com.couchbase.client.java.search.SearchQuery;
 import com.couchbase.client.java.search.sort.SearchSort;
 import com.couchbase.common.config.FhirResourceMappingConfig;
+import com.couchbase.fhir.resources.config.BundleFastpathProperties;
+import com.couchbase.fhir.resources.config.EverythingProperties;
 import com.couchbase.fhir.resources.config.TenantContextHolder;
 import org.hl7.fhir.r4.model.Patient;
 import org.hl7.fhir.r4.model.Resource;
@@ -12,7 +14,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
+import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -29,6 +35,12 @@ import java.util.stream.Collectors;
  * 3. Use FTS queries with subject.reference OR patient.reference filters
  * 4. Group results by resource type and batch fetch via KV
  * 5. Support pagination using the same strategy as _revinclude
+ * 
+ * <p>The per-collection FTS searches run concurrently (bounded per request), and the KV fetch for
+ * a collection's share of the first page starts as soon as its keys arrive.
+ * 
+ * <p>With the JSON fastpath enabled the same flow fetches raw KV bytes instead of parsed resources
+ * (see {@link #getPatientEverythingAsBytes}), so the Bundle is assembled without HAPI models.
  */
 @Service
 public class EverythingService {
@@ -40,6 +52,9 @@ public class EverythingService {
     private final BatchKvService batchKvService;
     private final FhirResourceMappingConfig mappingConfig;
     private final com.couchbase.fhir.resources.search.SearchStateManager searchStateManager;
+    private final EverythingProperties everythingProperties;
+    private final BundleFastpathProperties fastpathProperties;
+    private final FastJsonBundleBuilder fastJsonBundleBuilder;
     
     /**
      * Collections to exclude from $everything operation
@@ -53,12 +68,18 @@ public class EverythingService {
             FtsSearchService ftsSearchService,
             BatchKvService batchKvService,
             FhirResourceMappingConfig mappingConfig,
-            com.couchbase.fhir.resources.search.SearchStateManager searchStateManager) {
+            com.couchbase.fhir.resources.search.SearchStateManager searchStateManager,
+            EverythingProperties everythingProperties,
+            BundleFastpathProperties fastpathProperties,
+            FastJsonBundleBuilder fastJsonBundleBuilder) {
         this.collectionRoutingService = collectionRoutingService;
         this.ftsSearchService = ftsSearchService;
         this.batchKvService = batchKvService;
         this.mappingConfig = mappingConfig;
         this.searchStateManager = searchStateManager;
+        this.everythingProperties = everythingProperties;
+        this.fastpathProperties = fastpathProperties;
+        this.fastJsonBundleBuilder = fastJsonBundleBuilder;
     }
     
     /**
@@ -81,6 +102,33 @@ public class EverythingService {
         }
     }
     
+    /**
+     * Fastpath result holder for $everything: raw JSON bytes keyed by document key, never parsed
+     */
+    public static class EverythingBytesResult {
+        public final byte[] patientBytes;
+        public final Map<String, byte[]> firstPageBytes;  // Key order = allDocumentKeys order
+        public final List<String> allDocumentKeys;
+        public final int totalResourceCount;
+        public final boolean needsPagination;
+        
+        public EverythingBytesResult(byte[] patientBytes, Map<String, byte[]> firstPageBytes,
+                                     List<String> allDocumentKeys, int totalResourceCount, boolean needsPagination) {
+            this.patientBytes = patientBytes;
+            this.firstPageBytes = firstPageBytes;
+            this.allDocumentKeys = allDocumentKeys;
+            this.totalResourceCount = totalResourceCount;
+            this.needsPagination = needsPagination;
+        }
+    }
+    
+    /**
+     * Whether $everything should be served through the JSON fastpath (raw KV bytes, no HAPI parse/serialize)
+     */
+    public boolean isFastpathEnabled() {
+        return fastpathProperties.isEnabled() && fastpathProperties.isEverything();
+    }
+    
     /**
      * Get all resources related to a patient (with pagination support)
      * 
@@ -106,15 +154,18 @@ public class EverythingService {
         logger.debug("🌍 $everything for Patient/{} (bucket: {}, start: {}, end: {}, types: {}, since: {}, count: {})", 
                    patientId, bucketName, start, end, types, since, count);
         
-        // Step 1: Validate patient exists and get the resource
-        Patient patient = getPatientResource(patientId, bucketName);
+        RequestFanOut fanOut = new RequestFanOut(everythingProperties.getMaxConcurrency());
+        
+        // Step 1: Validate patient exists and get the resource (in parallel with the searches)
+        CompletableFuture<Patient> patientFuture = fanOut.submit(() -> getPatientResource(patientId, bucketName));
         
         // Step 2: Determine which collections to search
         List<String> collectionsToSearch = determineCollections(types);
         logger.debug("🌍 Searching {} collections for Patient/{}", collectionsToSearch.size(), patientId);
         
-        // Step 3: Search for all related resource KEYS across all collections (don't fetch yet!)
-        List<String> allDocumentKeys = searchRelatedResourceKeys(
+        // Step 3: Search for all related resource KEYS across all collections concurrently (don't fetch yet!)
+        List<CompletableFuture<List<String>>> keySearches = searchRelatedResourceKeys(
+            fanOut,
             patientId, 
             collectionsToSearch, 
             start, 
@@ -123,14 +174,20 @@ public class EverythingService {
             bucketName
         );
         
-        // Step 4: Determine pagination
+        // 404 before waiting on the searches (they keep running, results are discarded)
+        Patient patient = RequestFanOut.join(patientFuture);
+        
+        // Step 4: Collect keys in collection order; as each collection completes, start the KV
+        // fetch for its share of the first page while the remaining searches are still running
         int effectiveCount = (count != null && count > 0) ? Math.min(count, 200) : 50;
+        List<CompletableFuture<List<Resource>>> firstPageFetches = new ArrayList<>();
+        List<String> allDocumentKeys = collectKeys(keySearches, collectionsToSearch, patientId, effectiveCount,
+            pageKeys -> firstPageFetches.addAll(submitFetches(fanOut, pageKeys, this::fetchResourcesOfType)));
+        
         boolean needsPagination = allDocumentKeys.size() > effectiveCount;
         
-        // Step 5: Fetch first page of resources
-        int firstPageSize = Math.min(effectiveCount, allDocumentKeys.size());
-        List<String> firstPageKeys = allDocumentKeys.subList(0, firstPageSize);
-        List<Resource> firstPageResources = fetchResourcesByKeys(firstPageKeys, bucketName);
+        // Step 5: Wait for the first page of resources
+        List<Resource> firstPageResources = collectFetches(firstPageFetches);
         
         logger.debug("✅ $everything found {} total resources (1 Patient + {} related), returning first {} resources", 
                    allDocumentKeys.size() + 1, allDocumentKeys.size(), firstPageResources.size() + 1);
@@ -144,10 +201,106 @@ public class EverythingService {
         );
     }
     
+    /**
+     * FASTPATH: Same as {@link #getPatientEverything} but every document (patient included) is fetched
+     * as raw JSON bytes, one KV batch per resource type, and returned in key order.
+     */
+    public EverythingBytesResult getPatientEverythingAsBytes(
+            String patientId,
+            Date start,
+            Date end,
+            String types,
+            Date since,
+            Integer count) {
+        
+        String bucketName = TenantContextHolder.getTenantId();
+        logger.debug("🚀 FASTPATH: $everything for Patient/{} (bucket: {}, start: {}, end: {}, types: {}, since: {}, count: {})", 
+                   patientId, bucketName, start, end, types, since, count);
+        
+        RequestFanOut fanOut = new RequestFanOut(everythingProperties.getMaxConcurrency());
+        
+        // Step 1: Patient bytes (in parallel with the searches)
+        CompletableFuture<byte[]> patientFuture = fanOut.submit(() -> getPatientBytes(patientId));
+        
+        // Step 2-3: Search every collection for related keys concurrently
+        List<String> collectionsToSearch = determineCollections(types);
+        List<CompletableFuture<List<String>>> keySearches = searchRelatedResourceKeys(
+            fanOut, patientId, collectionsToSearch, start, end, since, bucketName);
+        
+        byte[] patientBytes = RequestFanOut.join(patientFuture);
+        
+        // Step 4: Collect keys, pipelining the first page's byte fetches
+        int effectiveCount = (count != null && count > 0) ? Math.min(count, 200) : 50;
+        List<CompletableFuture<Map<String, byte[]>>> firstPageFetches = new ArrayList<>();
+        List<String> firstPageKeys = new ArrayList<>();
+        List<String> allDocumentKeys = collectKeys(keySearches, collectionsToSearch, patientId, effectiveCount, pageKeys -> {
+            firstPageKeys.addAll(pageKeys);
+            firstPageFetches.addAll(submitFetches(fanOut, pageKeys, this::fetchBytesOfType));
+        });
+        
+        // Step 5: Wait for the first page of bytes
+        Map<String, byte[]> firstPageBytes = collectByteFetches(firstPageFetches, firstPageKeys);
+        
+        logger.debug("✅ FASTPATH: $everything found {} total resources, returning first {} as raw bytes", 
+                   allDocumentKeys.size() + 1, firstPageBytes.size() + 1);
+        
+        return new EverythingBytesResult(
+            patientBytes,
+            firstPageBytes,
+            allDocumentKeys,
+            allDocumentKeys.size() + 1, // +1 for patient
+            allDocumentKeys.size() > effectiveCount
+        );
+    }
+    
     /**
      * Get next page of results using continuation token
      */
     public List<Resource> getPatientEverythingNextPage(String continuationToken, int offset, Integer count) {
+        List<String> pageKeys = resolvePageKeys(continuationToken, offset, count);
+        if (pageKeys.isEmpty()) {
+            return new ArrayList<>();
+        }
+        
+        // Fetch resources for this page (one KV batch per resource type, in parallel)
+        RequestFanOut fanOut = new RequestFanOut(everythingProperties.getMaxConcurrency());
+        return collectFetches(submitFetches(fanOut, pageKeys, this::fetchResourcesOfType));
+    }
+    
+    /**
+     * FASTPATH: Get next page of results as raw JSON bytes (key order preserved across resource types)
+     */
+    public Map<String, byte[]> getPatientEverythingNextPageAsBytes(String continuationToken, int offset, Integer count) {
+        List<String> pageKeys = resolvePageKeys(continuationToken, offset, count);
+        if (pageKeys.isEmpty()) {
+            return new LinkedHashMap<>();
+        }
+        
+        RequestFanOut fanOut = new RequestFanOut(everythingProperties.getMaxConcurrency());
+        return collectByteFetches(submitFetches(fanOut, pageKeys, this::fetchBytesOfType), pageKeys);
+    }
+    
+    /**
+     * FASTPATH: Assemble a searchset Bundle from raw bytes. Every entry (patient and related
+     * resources) is written with search.mode=match.
+     */
+    public byte[] buildBundleBytes(Map<String, byte[]> entries, int total, String selfUrl, String nextUrl, String baseUrl) {
+        return fastJsonBundleBuilder.buildSearchsetBundle(
+            entries,
+            new LinkedHashMap<>(),  // $everything has no include-mode entries
+            total,
+            selfUrl,
+            nextUrl,
+            null,
+            baseUrl,
+            Instant.now()
+        );
+    }
+    
+    /**
+     * Resolve the document keys of a continuation page from the stored pagination state
+     */
+    private List<String> resolvePageKeys(String continuationToken, int offset, Integer count) {
         // Get current bucket from tenant context
         String bucketName = com.couchbase.fhir.resources.config.TenantContextHolder.getTenantId();
         
@@ -170,7 +323,7 @@ public class EverythingService {
         
         if (pageKeys.isEmpty()) {
             logger.debug("🔑 No more results for pagination token: {}", continuationToken);
-            return new ArrayList<>();
+            return List.of();
         }
         
         // Calculate current page for logging (1-based)
@@ -179,9 +332,7 @@ public class EverythingService {
         
         logger.debug("🔑 Fetching {} resources for page {}/{}", 
                    pageKeys.size(), currentPage, totalPages);
-        
-        // Fetch resources for this page
-        return fetchResourcesByKeys(pageKeys, paginationState.getBucketName());
+        return pageKeys;
     }
     
     /**
@@ -215,6 +366,24 @@ public class EverythingService {
         }
     }
     
+    /**
+     * FASTPATH: Get the patient document as raw bytes via KV lookup
+     */
+    private byte[] getPatientBytes(String patientId) {
+        String patientKey = "Patient/" + patientId;
+        byte[] patientBytes;
+        try {
+            patientBytes = batchKvService.getDocumentsAsBytesWithKeys(List.of(patientKey), "Patient").get(patientKey);
+        } catch (Exception e) {
+            logger.error("❌ Failed to retrieve Patient/{}: {}", patientId, e.getMessage());
+            throw new ResourceNotFoundException("Patient/" + patientId + " not found");
+        }
+        if (patientBytes == null) {
+            throw new ResourceNotFoundException("Patient/" + patientId + " not found");
+        }
+        return patientBytes;
+    }
+    
     /**
      * Determine which collections to search based on _type parameter
      * If no _type specified, search all collections (except Versions/Tombstones)
@@ -250,9 +419,11 @@ public class EverythingService {
     
     /**
      * Search for all related resource KEYS across all collections (FTS only, no KV fetch)
-     * This is used for pagination - we get all keys first, then fetch pages as needed
+     * This is used for pagination - we get all keys first, then fetch pages as needed.
+     * One FTS query per collection, issued concurrently; futures are in collection order.
      */
-    private List<String> searchRelatedResourceKeys(
+    private List<CompletableFuture<List<String>>> searchRelatedResourceKeys(
+            RequestFanOut fanOut,
             String patientId,
             List<String> collections,
             Date start,
@@ -261,17 +432,17 @@ public class EverythingService {
             String bucketName) {
         
         String patientReference = "Patient/" + patientId;
-        List<String> allDocumentKeys = new ArrayList<>();
+        List<CompletableFuture<List<String>>> searches = new ArrayList<>(collections.size());
         
-        // Loop through each collection and search via FTS (keys only)
         for (String collectionName : collections) {
-            try {
-                String ftsIndex = mappingConfig.getFtsIndexForCollection(collectionName);
-                if (ftsIndex == null) {
-                    logger.warn("🌍 No FTS index found for collection: {}", collectionName);
-                    continue;
-                }
-                
+            String ftsIndex = mappingConfig.getFtsIndexForCollection(collectionName);
+            if (ftsIndex == null) {
+                logger.warn("🌍 No FTS index found for collection: {}", collectionName);
+                searches.add(CompletableFuture.completedFuture(List.of()));
+                continue;
+            }
+            
+            searches.add(fanOut.submit(() -> {
                 List<String> keys = searchCollectionForPatientKeys(
                     collectionName,
                     ftsIndex,
@@ -281,51 +452,126 @@ public class EverythingService {
                     since,
                     bucketName
                 );
-                
                 logger.debug("🌍 Found {} keys in {} collection for Patient/{}", 
                            keys.size(), collectionName, patientId);
-                allDocumentKeys.addAll(keys);
-                
-            } catch (Exception e) {
-                logger.warn("🌍 Failed to search {} collection for Patient/{}: {}", 
-                           collectionName, patientId, e.getMessage());
-            }
+                return keys;
+            }));
         }
         
+        return searches;
+    }
+    
+    /**
+     * Wait for one collection's keys. A failed collection is logged and contributes no keys.
+     */
+    private List<String> awaitKeys(CompletableFuture<List<String>> search, String collectionName, String patientId) {
+        try {
+            return RequestFanOut.join(search);
+        } catch (Exception e) {
+            logger.warn("🌍 Failed to search {} collection for Patient/{}: {}", 
+                       collectionName, patientId, e.getMessage());
+            return List.of();
+        }
+    }
+    
+    /**
+     * Wait for every collection's keys in collection order. Each collection's share of the first
+     * page (up to pageSize keys overall) is handed to firstPageSink as soon as it arrives.
+     */
+    private List<String> collectKeys(List<CompletableFuture<List<String>>> keySearches, List<String> collections,
+                                     String patientId, int pageSize, Consumer<List<String>> firstPageSink) {
+        List<String> allDocumentKeys = new ArrayList<>();
+        for (int i = 0; i < keySearches.size(); i++) {
+            List<String> keys = awaitKeys(keySearches.get(i), collections.get(i), patientId);
+            int remaining = pageSize - allDocumentKeys.size();
+            if (remaining > 0 && !keys.isEmpty()) {
+                firstPageSink.accept(keys.subList(0, Math.min(remaining, keys.size())));
+            }
+            allDocumentKeys.addAll(keys);
+        }
         logger.debug("🌍 Total keys found across {} collections: {}", collections.size(), allDocumentKeys.size());
         return allDocumentKeys;
     }
     
     /**
-     * Fetch resources by their keys (batch KV operation)
+     * Start KV fetches for the given keys: one batch per resource type (keys order kept within a type)
      */
-    private List<Resource> fetchResourcesByKeys(List<String> documentKeys, String bucketName) {
+    private <R> List<CompletableFuture<R>> submitFetches(RequestFanOut fanOut, List<String> documentKeys,
+                                                         BiFunction<List<String>, String, R> fetcher) {
         // Group keys by resource type
-        Map<String, List<String>> keysByResourceType = new HashMap<>();
+        Map<String, List<String>> keysByResourceType = new LinkedHashMap<>();
         for (String key : documentKeys) {
             String resourceType = extractResourceTypeFromKey(key);
             keysByResourceType.computeIfAbsent(resourceType, k -> new ArrayList<>()).add(key);
         }
         
-        // Retrieve documents grouped by resource type
-        List<Resource> resources = new ArrayList<>();
+        List<CompletableFuture<R>> fetches = new ArrayList<>(keysByResourceType.size());
         for (Map.Entry<String, List<String>> entry : keysByResourceType.entrySet()) {
             String resourceType = entry.getKey();
             List<String> keys = entry.getValue();
-            
-            try {
-                List<Resource> batchResources = batchKvService.getDocuments(keys, resourceType);
-                resources.addAll(batchResources);
-                logger.debug("🌍 Retrieved {}/{} {} resources", 
-                           batchResources.size(), keys.size(), resourceType);
-            } catch (Exception e) {
-                logger.warn("🌍 Failed to retrieve {} documents: {}", resourceType, e.getMessage());
-            }
+            fetches.add(fanOut.submit(() -> fetcher.apply(keys, resourceType)));
+        }
+        return fetches;
+    }
+    
+    private List<Resource> collectFetches(List<CompletableFuture<List<Resource>>> fetches) {
+        List<Resource> resources = new ArrayList<>();
+        for (CompletableFuture<List<Resource>> fetch : fetches) {
+            resources.addAll(RequestFanOut.join(fetch));
         }
-        
         return resources;
     }
     
+    /**
+     * Join per-type byte fetches and put the documents back in key order (types are interleaved
+     * in the key list, e.g. when a page spans two collections)
+     */
+    private Map<String, byte[]> collectByteFetches(List<CompletableFuture<Map<String, byte[]>>> fetches,
+                                                   List<String> orderedKeys) {
+        Map<String, byte[]> fetched = new HashMap<>();
+        for (CompletableFuture<Map<String, byte[]>> fetch : fetches) {
+            fetched.putAll(RequestFanOut.join(fetch));
+        }
+        Map<String, byte[]> ordered = new LinkedHashMap<>();
+        for (String key : orderedKeys) {
+            byte[] bytes = fetched.get(key);
+            if (bytes != null) {
+                ordered.put(key, bytes);
+            }
+        }
+        return ordered;
+    }
+    
+    /**
+     * FASTPATH: Fetch one resource type's keys as raw JSON bytes (batch KV operation)
+     */
+    private Map<String, byte[]> fetchBytesOfType(List<String> keys, String resourceType) {
+        try {
+            Map<String, byte[]> batchBytes = batchKvService.getDocumentsAsBytesWithKeys(keys, resourceType);
+            logger.debug("🚀 FASTPATH: Retrieved {}/{} {} documents as raw bytes", 
+                       batchBytes.size(), keys.size(), resourceType);
+            return batchBytes;
+        } catch (Exception e) {
+            logger.warn("🌍 Failed to retrieve {} documents: {}", resourceType, e.getMessage());
+            return Map.of();
+        }
+    }
+    
+    /**
+     * Fetch one resource type's keys (batch KV operation)
+     */
+    private List<Resource> fetchResourcesOfType(List<String> keys, String resourceType) {
+        try {
+            List<Resource> batchResources = batchKvService.getDocuments(keys, resourceType);
+            logger.debug("🌍 Retrieved {}/{} {} resources", 
+                       batchResources.size(), keys.size(), resourceType);
+            return batchResources;
+        } catch (Exception e) {
+            logger.warn("🌍 Failed to retrieve {} documents: {}", resourceType, e.getMessage());
+            return List.of();
+        }
+    }
+    
     /**
      * Search a specific collection for resource KEYS that reference the patient
      * Uses the SAME query for ALL collections: (patient.reference OR subject.reference) = "Patient/123"
@@ -18,8 +18,11 @@ public class  FHIRResourceService{
     
     @Autowired
     private CollectionRoutingService collectionRoutingService;
+    
+    @Autowired
+    private KvReadCoalescer readCoalescer;
 
     public <T extends IBaseResource> FhirResourceDaoImpl<T> getService(Class<T> resourceClass) {
-        return new FhirResourceDaoImpl<>(resourceClass, connectionService, fhirContext, collectionRoutingService);
+        return new FhirResourceDaoImpl<>(resourceClass, connectionService, fhirContext, collectionRoutingService, readCoalescer);
     }
 }
@@ -1,11 +1,15 @@
 package com.couchbase.fhir.resources.service;
 
+import com.couchbase.fhir.resources.config.BundleFastpathProperties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.ZoneOffset;
@@ -18,6 +22,12 @@ public class FastJsonBundleBuilder {
     
     private static final Logger logger = LoggerFactory.getLogger(FastJsonBundleBuilder.class);
     
+    @Autowired
+    private BatchKvService batchKvService;
+    
+    @Autowired
+    private BundleFastpathProperties fastpathProperties;
+    
     /**
      * Build FHIR Bundle as UTF-8 bytes with ZERO-COPY optimization
      * Accepts raw byte[] JSON from Couchbase KV (no String conversion needed!)
@@ -36,6 +46,25 @@ public class FastJsonBundleBuilder {
             String previousUrl,
             String baseUrl,
             Instant timestamp) {
+        return buildSearchsetBundle(primaryKeyToBytesMap, includedKeyToBytesMap, totalPrimaries,
+                                    selfUrl, nextUrl, previousUrl, baseUrl, timestamp, null);
+    }
+    
+    /**
+     * Same as above, projecting every resource for _summary/_elements on the way out
+     * 
+     * @param projection byte-level projection, or null to write resources whole
+     */
+    public byte[] buildSearchsetBundle(
+            Map<String, byte[]> primaryKeyToBytesMap,
+            Map<String, byte[]> includedKeyToBytesMap,
+            int totalPrimaries,
+            String selfUrl,
+            String nextUrl,
+            String previousUrl,
+            String baseUrl,
+            Instant timestamp,
+            ResourceProjection projection) {
         
         long startMs = System.currentTimeMillis();
         
@@ -49,35 +78,8 @@ public class FastJsonBundleBuilder {
         int estimatedSize = (totalEntries * 2048) + 512;
         ByteArrayOutputStream baos = new ByteArrayOutputStream(estimatedSize);
         
-        // Generate Bundle ID and format timestamp
-        String bundleId = UUID.randomUUID().toString();
-        String formattedTimestamp = timestamp.atOffset(ZoneOffset.UTC)
-            .format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
-        
         try {
-            // Build Bundle header
-            write(baos, "{");
-            write(baos, "\"resourceType\":\"Bundle\",");
-            write(baos, "\"id\":\"" + bundleId + "\",");
-            write(baos, "\"meta\":{\"lastUpdated\":\"" + formattedTimestamp + "\"},");
-            write(baos, "\"type\":\"searchset\",");
-            write(baos, "\"total\":" + totalPrimaries + ",");
-            
-            // Build links in order: self, next, previous (FHIR standard)
-            write(baos, "\"link\":[");
-            write(baos, "{\"relation\":\"self\",\"url\":\"" + escapeJson(selfUrl) + "\"}");
-            
-            if (nextUrl != null) {
-                write(baos, ",{\"relation\":\"next\",\"url\":\"" + escapeJson(nextUrl) + "\"}");
-            }
-            
-            if (previousUrl != null) {
-                write(baos, ",{\"relation\":\"previous\",\"url\":\"" + escapeJson(previousUrl) + "\"}");
-            }
-            
-            write(baos, "],");
-            
-            write(baos, "\"entry\":[");
+            writeHeader(baos, "searchset", totalPrimaries, selfUrl, nextUrl, previousUrl, timestamp);
         
             // Add primary resources (ZERO-COPY: write raw bytes directly!)
             if (primaryCount > 0) {
@@ -89,7 +91,7 @@ public class FastJsonBundleBuilder {
                     
                     write(baos, "{\"fullUrl\":\"" + escapeJson(fullUrl) + "\",");
                     write(baos, "\"resource\":");
-                    baos.write(resourceBytes);  // ZERO-COPY: Write bytes directly!
+                    baos.write(project(projection, key, resourceBytes));  // ZERO-COPY unless projected
                     write(baos, ",\"search\":{\"mode\":\"match\"}}");
                     
                     if (i < primaryCount - 1 || includedCount > 0) {
@@ -109,7 +111,7 @@ public class FastJsonBundleBuilder {
                     
                     write(baos, "{\"fullUrl\":\"" + escapeJson(fullUrl) + "\",");
                     write(baos, "\"resource\":");
-                    baos.write(resourceBytes);  // ZERO-COPY: Write bytes directly!
+                    baos.write(project(projection, key, resourceBytes));  // ZERO-COPY unless projected
                     write(baos, ",\"search\":{\"mode\":\"include\"}}");
                     
                     if (i < includedCount - 1) {
@@ -159,10 +161,179 @@ public class FastJsonBundleBuilder {
     }
     
     /**
-     * Write string to ByteArrayOutputStream as UTF-8 bytes
+     * STREAMING FASTPATH: Write a searchset Bundle directly to an output stream.
+     * 
+     * Documents are pulled from KV in FTS order and each entry is written as soon as it
+     * arrives, so time-to-first-byte no longer waits on the slowest GetResult and heap usage
+     * is bounded by the documents in flight rather than the whole Bundle.
+     * The stream is flushed every {@code fhir.bundle.fastpath.stream-flush-bytes} bytes.
+     * 
+     * @return number of entries written
+     */
+    public int writeSearchsetBundle(StreamingSearchset searchset, OutputStream out) throws IOException {
+        long startMs = System.currentTimeMillis();
+        ChunkedFlushOutputStream chunked = new ChunkedFlushOutputStream(out, fastpathProperties.getStreamFlushBytes());
+        
+        writeHeader(chunked, "searchset", searchset.getTotal(), searchset.getSelfUrl(), searchset.getNextUrl(),
+                    searchset.getPreviousUrl(), searchset.getTimestamp());
+        
+        String baseUrl = searchset.getBaseUrl();
+        ResourceProjection projection = searchset.getProjection();
+        int[] written = {0};
+        batchKvService.streamDocumentsAsBytes(searchset.getPrimaryKeys(), searchset.getResourceType(), (key, resourceBytes) -> {
+            if (written[0] > 0) {
+                write(chunked, ",");
+            }
+            write(chunked, "{\"fullUrl\":\"" + escapeJson(baseUrl + "/" + key) + "\",");
+            write(chunked, "\"resource\":");
+            chunked.write(project(projection, key, resourceBytes));  // ZERO-COPY unless projected
+            write(chunked, ",\"search\":{\"mode\":\"match\"}}");
+            written[0]++;
+            chunked.maybeFlush();
+        });
+        
+        write(chunked, "]}");
+        chunked.flush();
+        
+        logger.debug("🚀 FASTPATH: Streamed Bundle in {} ms ({} bytes, {} entries)", 
+                   System.currentTimeMillis() - startMs, chunked.getTotalBytes(), written[0]);
+        return written[0];
+    }
+    
+    /**
+     * Build a history Bundle for one resource instance from raw KV bytes (newest version first).
+     * Versions come from their keys, so the documents are never parsed: version 1 is recorded
+     * as a POST, later versions as PUTs.
+     * 
+     * @param versionToBytes versionId → raw JSON of that version, in output order
+     */
+    public byte[] buildHistoryBundle(String resourceType, String id, Map<Integer, byte[]> versionToBytes,
+                                     String selfUrl, String baseUrl, Instant timestamp) {
+        long startMs = System.currentTimeMillis();
+        String resourceUrl = resourceType + "/" + id;
+        String fullUrl = escapeJson(baseUrl + "/" + resourceUrl);
+        
+        ByteArrayOutputStream baos = new ByteArrayOutputStream((versionToBytes.size() * 2048) + 512);
+        try {
+            writeHeader(baos, "history", versionToBytes.size(), selfUrl, null, null, timestamp);
+            
+            int i = 0;
+            for (Map.Entry<Integer, byte[]> entry : versionToBytes.entrySet()) {
+                int version = entry.getKey();
+                if (i++ > 0) {
+                    write(baos, ",");
+                }
+                write(baos, "{\"fullUrl\":\"" + fullUrl + "\",");
+                write(baos, "\"resource\":");
+                baos.write(entry.getValue());  // ZERO-COPY: Write bytes directly!
+                write(baos, ",\"request\":{\"method\":\"" + (version == 1 ? "POST" : "PUT")
+                    + "\",\"url\":\"" + escapeJson(version == 1 ? resourceType : resourceUrl) + "\"}");
+                write(baos, ",\"response\":{\"status\":\"" + (version == 1 ? "201 Created" : "200 OK")
+                    + "\",\"etag\":\"W/\\\"" + version + "\\\"\"}}");
+            }
+            
+            write(baos, "]}");
+            
+            byte[] result = baos.toByteArray();
+            logger.debug("🚀 FASTPATH: Built history Bundle for {} in {} ms ({} bytes, {} versions)", 
+                       resourceUrl, System.currentTimeMillis() - startMs, result.length, versionToBytes.size());
+            return result;
+            
+        } catch (IOException e) {
+            // Should never happen with ByteArrayOutputStream
+            logger.error("❌ Failed to build history Bundle JSON: {}", e.getMessage());
+            throw new RuntimeException("Failed to build history Bundle JSON", e);
+        }
+    }
+    
+    /**
+     * Write Bundle header up to and including the opening of the entry array
      */
-    private void write(ByteArrayOutputStream baos, String str) throws IOException {
-        baos.write(str.getBytes(StandardCharsets.UTF_8));
+    private void writeHeader(OutputStream out, String type, int total, String selfUrl, String nextUrl,
+                             String previousUrl, Instant timestamp) throws IOException {
+        // Generate Bundle ID and format timestamp
+        String bundleId = UUID.randomUUID().toString();
+        String formattedTimestamp = timestamp.atOffset(ZoneOffset.UTC)
+            .format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+        
+        write(out, "{");
+        write(out, "\"resourceType\":\"Bundle\",");
+        write(out, "\"id\":\"" + bundleId + "\",");
+        write(out, "\"meta\":{\"lastUpdated\":\"" + formattedTimestamp + "\"},");
+        write(out, "\"type\":\"" + type + "\",");
+        write(out, "\"total\":" + total + ",");
+        
+        // Build links in order: self, next, previous (FHIR standard)
+        write(out, "\"link\":[");
+        write(out, "{\"relation\":\"self\",\"url\":\"" + escapeJson(selfUrl) + "\"}");
+        
+        if (nextUrl != null) {
+            write(out, ",{\"relation\":\"next\",\"url\":\"" + escapeJson(nextUrl) + "\"}");
+        }
+        
+        if (previousUrl != null) {
+            write(out, ",{\"relation\":\"previous\",\"url\":\"" + escapeJson(previousUrl) + "\"}");
+        }
+        
+        write(out, "],");
+        
+        write(out, "\"entry\":[");
+    }
+    
+    private static byte[] project(ResourceProjection projection, String key, byte[] resourceBytes) {
+        return projection != null ? projection.apply(key, resourceBytes) : resourceBytes;
+    }
+    
+    /**
+     * Write string to an OutputStream as UTF-8 bytes
+     */
+    private void write(OutputStream out, String str) throws IOException {
+        out.write(str.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * Counts bytes and flushes the underlying stream once a chunk worth of data is pending.
+     * Flushing only happens between entries (maybeFlush) so a document is never split across flushes needlessly.
+     */
+    private static final class ChunkedFlushOutputStream extends FilterOutputStream {
+        private final int flushBytes;
+        private long totalBytes;
+        private long pendingBytes;
+        
+        ChunkedFlushOutputStream(OutputStream out, int flushBytes) {
+            super(out);
+            this.flushBytes = Math.max(1, flushBytes);
+        }
+        
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            totalBytes++;
+            pendingBytes++;
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            totalBytes += len;
+            pendingBytes += len;
+        }
+        
+        void maybeFlush() throws IOException {
+            if (pendingBytes >= flushBytes) {
+                flush();
+            }
+        }
+        
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+            pendingBytes = 0;
+        }
+        
+        long getTotalBytes() {
+            return totalBytes;
+        }
     }
     
     private String escapeJson(String input) {
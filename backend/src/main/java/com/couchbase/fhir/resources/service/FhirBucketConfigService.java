@@ -88,6 +88,8 @@ public class FhirBucketConfigService {
         private LogsConfig logs = new LogsConfig();
         private String version;                         // Configuration version (e.g., "1")
         private String createdAt;                       // Human-readable creation timestamp
+        private int searchCacheMaxStalenessSeconds = 0; // Searchset result cache staleness bound (0 = disabled)
+        private String updateMode = "transaction";      // "transaction" | "cas" (standalone PUT/PATCH)
         
         // Getters and setters
         public String getValidationMode() { return validationMode; }
@@ -108,11 +110,18 @@ public class FhirBucketConfigService {
         public String getCreatedAt() { return createdAt; }
         public void setCreatedAt(String createdAt) { this.createdAt = createdAt; }
         
+        public int getSearchCacheMaxStalenessSeconds() { return searchCacheMaxStalenessSeconds; }
+        public void setSearchCacheMaxStalenessSeconds(int searchCacheMaxStalenessSeconds) { this.searchCacheMaxStalenessSeconds = searchCacheMaxStalenessSeconds; }
+        
+        public String getUpdateMode() { return updateMode; }
+        public void setUpdateMode(String updateMode) { this.updateMode = updateMode; }
+        
         // Convenience methods for backward compatibility and validation logic
         public boolean isEnforceUSCore() { return "us-core".equals(validationProfile); }
         public boolean isStrictValidation() { return "strict".equalsIgnoreCase(validationMode); }
         public boolean isLenientValidation() { return "lenient".equalsIgnoreCase(validationMode); }
         public boolean isValidationDisabled() { return "disabled".equalsIgnoreCase(validationMode); }
+        public boolean isCasUpdateMode() { return "cas".equalsIgnoreCase(updateMode); }
         
         // Backward compatibility methods (deprecated)
         @Deprecated public boolean isAllowUnknownElements() { return true; } // Always allow in simplified model
@@ -214,6 +223,18 @@ public class FhirBucketConfigService {
                 config.setValidationProfile(validation.getString("profile"));
             }
             
+            // Parse search result cache settings (opt-in per bucket)
+            JsonObject searchCache = configDoc.getObject("searchCache");
+            if (searchCache != null && searchCache.getInt("maxStalenessSeconds") != null) {
+                config.setSearchCacheMaxStalenessSeconds(searchCache.getInt("maxStalenessSeconds"));
+            }
+            
+            // Parse update mode (opt-in per bucket)
+            JsonObject update = configDoc.getObject("update");
+            if (update != null && update.getString("mode") != null) {
+                config.setUpdateMode(update.getString("mode"));
+            }
+            
             // Parse logs settings
             JsonObject logs = configDoc.getObject("logs");
             if (logs != null) {
@@ -2,27 +2,28 @@ package com.couchbase.fhir.resources.service;
 
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import ca.uhn.fhir.rest.server.exceptions.PreconditionFailedException;
 import ca.uhn.fhir.util.FhirTerser;
-import ca.uhn.fhir.validation.FhirValidator; 
 import ca.uhn.fhir.validation.ValidationResult;
 import ca.uhn.fhir.validation.SingleValidationMessage;
 import ca.uhn.fhir.validation.ResultSeverityEnum;
 import com.couchbase.admin.connections.service.ConnectionService;
 import com.couchbase.client.java.Cluster;
-import com.couchbase.client.java.json.JsonObject;
-import com.couchbase.client.java.query.QueryResult;
+import com.couchbase.fhir.resources.config.BatchBundleProperties;
 import com.couchbase.fhir.resources.gateway.CouchbaseGateway;
 import java.util.Map;
 import org.hl7.fhir.r4.model.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import jakarta.annotation.PostConstruct;
 
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 @Service
@@ -40,11 +41,7 @@ public class FhirBundleProcessingService {
     private FhirContext fhirContext;
 
     @Autowired
-    private FhirValidator fhirValidator;  // Primary US Core validator
-
-    @Autowired
-    @Qualifier("basicFhirValidator")
-    private FhirValidator basicFhirValidator;  // Basic validator for sample data
+    private ResourceValidationService validationService;  // Cached US Core / basic validation
 
     @Autowired
     private IParser jsonParser;
@@ -61,6 +58,18 @@ public class FhirBundleProcessingService {
     @Autowired
     private SearchService searchService;
     
+    @Autowired
+    private SearchResultCache searchResultCache;
+    
+    @Autowired
+    private KvReadCoalescer readCoalescer;
+    
+    @Autowired
+    private CollectionRoutingService collectionRoutingService;
+    
+    @Autowired
+    private BatchBundleProperties batchProperties;
+    
 
     // Default connection and bucket names
     private static final String DEFAULT_CONNECTION = "default";
@@ -112,6 +121,26 @@ public class FhirBundleProcessingService {
      */
     public Bundle processBundleTransaction(String bundleJson, String connectionName, String bucketName,
                                            com.couchbase.fhir.resources.service.FhirBucketConfigService.FhirBucketConfig bucketConfig) {
+        Bundle bundle;
+        try {
+            bundle = (Bundle) jsonParser.parseResource(bundleJson);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to parse Bundle JSON: " + e.getMessage(), e);
+        }
+        return processBundleTransaction(bundle, bundleJson.getBytes(java.nio.charset.StandardCharsets.UTF_8),
+                                        connectionName, bucketName, bucketConfig);
+    }
+
+    /**
+     * Process an already parsed FHIR Bundle transaction (the Bundle is not parsed again).
+     * @param bundle Bundle parsed from the request body
+     * @param body The raw request body - validated POST entries are stored from their JSON spans in it
+     * @param connectionName Couchbase connection name
+     * @param bucketName Couchbase bucket name
+     * @param bucketConfig Complete bucket validation configuration
+     */
+    public Bundle processBundleTransaction(Bundle bundle, byte[] body, String connectionName, String bucketName,
+                                           com.couchbase.fhir.resources.service.FhirBucketConfigService.FhirBucketConfig bucketConfig) {
         try {
             // Extract validation settings from simplified bucket config
             boolean skipValidation = "disabled".equals(bucketConfig.getValidationMode());
@@ -129,9 +158,15 @@ public class FhirBundleProcessingService {
                 validationType = desc.toString();
             }
             logger.debug("🔄 Processing FHIR Bundle transaction with {} validation", validationType);
-            // Step 1: Parse Bundle
-            Bundle bundle = (Bundle) jsonParser.parseResource(bundleJson);
-            logger.debug("📦 Parsed Bundle with {} entries", bundle.getEntry().size());
+            // Step 1: Locate each entry's raw JSON (token scan, no second parse). Only validated
+            // entries are stored from it: unvalidated JSON may carry elements the parser dropped.
+            BundleEntrySpans spans = skipValidation ? null : BundleEntrySpans.scan(body);
+            if (spans != null && spans.size() != bundle.getEntry().size()) {
+                logger.warn("⚠️ Bundle body has {} entries but the parsed Bundle {}, entries will be encoded",
+                            spans.size(), bundle.getEntry().size());
+                spans = null;
+            }
+            logger.debug("📦 Bundle with {} entries (raw spans: {})", bundle.getEntry().size(), spans != null);
 
             // Step 2: Validate Bundle structure (skip if requested for performance)
             if (!skipValidation) {
@@ -158,15 +193,19 @@ public class FhirBundleProcessingService {
             // Use Couchbase Server transactions for BUNDLE TRANSACTION types (not for BATCH)
             if (bundle.getType() == Bundle.BundleType.TRANSACTION) {
                 logger.debug("🔒 Starting Couchbase Server TRANSACTION for Bundle processing");
-                processedEntries = processEntriesWithTransaction(bundle, connectionName, bucketName, bucketConfig);
+                processedEntries = processEntriesWithTransaction(bundle, spans, connectionName, bucketName, bucketConfig);
             } else {
                 logger.debug("📦 Processing Bundle as BATCH (no transaction wrapper)");
-                processedEntries = processEntriesSequentially(bundle, connectionName, bucketName, bucketConfig);
+                processedEntries = processBatchEntries(bundle, spans, connectionName, bucketName, bucketConfig);
             }
 
             // Step 5: Create proper FHIR transaction-response Bundle
             return createTransactionResponseBundle(processedEntries, bundle.getType());
 
+        } catch (BaseServerResponseException e) {
+            // 412/409/... from an entry fail the whole transaction with that status
+            logger.error("❌ Failed to process Bundle transaction: {}", e.getMessage());
+            throw e;
         } catch (Exception e) {
             String cleanMessage = extractCleanErrorMessage(e);
             logger.error("❌ Failed to process Bundle transaction: {}", cleanMessage);
@@ -183,7 +222,7 @@ public class FhirBundleProcessingService {
     /**
      * Process Bundle entries within a Couchbase Server transaction for ACID properties
      */
-    private List<ProcessedEntry> processEntriesWithTransaction(Bundle bundle, String connectionName, String bucketName, 
+    private List<ProcessedEntry> processEntriesWithTransaction(Bundle bundle, BundleEntrySpans spans, String connectionName, String bucketName, 
                                                               com.couchbase.fhir.resources.service.FhirBucketConfigService.FhirBucketConfig bucketConfig) {
         boolean skipValidation = "disabled".equals(bucketConfig.getValidationMode());
         logger.debug("🔒 Processing Bundle entries with Couchbase Server TRANSACTION (validation: {})", skipValidation ? "SKIPPED" : "ENABLED");
@@ -195,6 +234,10 @@ public class FhirBundleProcessingService {
 
         List<ProcessedEntry> processedEntries = new ArrayList<>();
         
+        // Resolve ifNoneExist up front: FTS does not see the transaction's own writes anyway,
+        // and retried transaction attempts reuse the answers
+        Map<Integer, ResolveResult> ifNoneExistMatches = resolveIfNoneExist(bundle);
+        
         try {
             // Use Couchbase Transactions API for proper ACID guarantees
             logger.debug("🚀 Starting Couchbase transaction for Bundle processing");
@@ -203,14 +246,34 @@ public class FhirBundleProcessingService {
                 // Execute all operations within a single transaction and collect responses
                 cluster.transactions().run((ctx) -> {
                     logger.debug("🔄 Executing Bundle operations within transaction context");
-                    List<ProcessedEntry> entries = processEntriesInTransactionContext(ctx, bundle, cluster, finalBucketName, bucketConfig);
+                    List<ProcessedEntry> entries = processEntriesInTransactionContext(ctx, bundle, spans, cluster, finalBucketName, bucketConfig,
+                                                                                   ifNoneExistMatches);
                     // Store entries for use after transaction commits
                     processedEntries.addAll(entries);
                 });
 
                 logger.debug("✅ Transaction committed successfully - Bundle processing complete with {} entries", processedEntries.size());
                 
+                // Searches and reads that ran between the writes and the commit may have cached pre-commit results
+                processedEntries.stream()
+                    .map(ProcessedEntry::getResourceType)
+                    .filter(Objects::nonNull)
+                    .distinct()
+                    .forEach(resourceType -> searchResultCache.onWrite(finalBucketName, resourceType));
+                for (ProcessedEntry entry : processedEntries) {
+                    if (entry.getResourceId() != null && !"GET".equals(entry.getResourceType())) {
+                        String documentKey = entry.getResourceType() + "/" + new IdType(entry.getResourceId()).getIdPart();
+                        readCoalescer.invalidate(finalBucketName, DEFAULT_SCOPE,
+                            collectionRoutingService.getTargetCollection(entry.getResourceType()), documentKey);
+                    }
+                }
+                
             } catch (Exception txEx) {
+                // 412/409/... raised by an entry come back wrapped in TransactionFailedException
+                if (txEx.getCause() instanceof BaseServerResponseException fhirError) {
+                    logger.error("❌ FHIR Bundle TRANSACTION failed: {}", fhirError.getMessage());
+                    throw fhirError;
+                }
                 String cleanMessage = extractCleanErrorMessage(txEx);
                 logger.error("❌ FHIR Bundle TRANSACTION failed: {}", cleanMessage);
                 logger.debug("❌ Transaction error details:", txEx);
@@ -221,6 +284,8 @@ public class FhirBundleProcessingService {
                 throw new RuntimeException("Bundle TRANSACTION failed (FHIR atomicity required): " + cleanMessage, txEx);
             }
             
+        } catch (BaseServerResponseException e) {
+            throw e;
         } catch (Exception e) {
             String cleanMessage = extractCleanErrorMessage(e);
             logger.error("❌ Transaction processing failed: {}", cleanMessage);
@@ -238,19 +303,19 @@ public class FhirBundleProcessingService {
     }
 
     /**
-     * Process Bundle entries sequentially with proper UUID resolution (without transaction wrapper)
+     * Process BATCH Bundle entries with proper UUID resolution (without transaction wrapper)
      */
-    private List<ProcessedEntry> processEntriesSequentially(Bundle bundle, String connectionName, String bucketName, 
-                                                           com.couchbase.fhir.resources.service.FhirBucketConfigService.FhirBucketConfig bucketConfig) {
+    private List<ProcessedEntry> processBatchEntries(Bundle bundle, BundleEntrySpans spans, String connectionName, String bucketName, 
+                                                    com.couchbase.fhir.resources.service.FhirBucketConfigService.FhirBucketConfig bucketConfig) {
         boolean skipValidation = "disabled".equals(bucketConfig.getValidationMode());
-        logger.debug("🔄 Processing Bundle entries sequentially (validation: {})", skipValidation ? "SKIPPED" : "ENABLED");
+        logger.debug("🔄 Processing BATCH Bundle entries (validation: {})", skipValidation ? "SKIPPED" : "ENABLED");
 
         connectionName = connectionName != null ? connectionName : getDefaultConnection();
         bucketName = bucketName != null ? bucketName : DEFAULT_BUCKET;
 
         Cluster cluster = couchbaseGateway.getClusterForTransaction(connectionName);
         
-        return processEntriesSequentiallyInternal(bundle, cluster, bucketName, bucketConfig);
+        return processBatchEntriesInternal(bundle, spans, cluster, bucketName, bucketConfig, resolveIfNoneExist(bundle));
     }
 
     /**
@@ -258,15 +323,16 @@ public class FhirBundleProcessingService {
      * Now orchestrates individual POST, PUT, DELETE services
      */
     private List<ProcessedEntry> processEntriesInTransactionContext(com.couchbase.client.java.transactions.TransactionAttemptContext ctx, 
-                                                   Bundle bundle, Cluster cluster, String bucketName, 
-                                                   com.couchbase.fhir.resources.service.FhirBucketConfigService.FhirBucketConfig bucketConfig) {
+                                                   Bundle bundle, BundleEntrySpans spans, Cluster cluster, String bucketName, 
+                                                   com.couchbase.fhir.resources.service.FhirBucketConfigService.FhirBucketConfig bucketConfig,
+                                                   Map<Integer, ResolveResult> ifNoneExistMatches) {
         logger.debug("🔄 Processing {} Bundle entries within transaction using service orchestration", bundle.getEntry().size());
         
         // List to collect processed entries (including GET responses)
         List<ProcessedEntry> processedEntries = new ArrayList<>();
         
         // Step 1: Build UUID mapping for all entries first (for POST operations)
-        Map<String, String> uuidToIdMapping = buildUuidMapping(bundle);
+        Map<String, String> uuidToIdMapping = buildUuidMapping(bundle, ifNoneExistMatches);
         
         // Step 2: Create transaction context for services
         TransactionContext transactionContext = new TransactionContextImpl(cluster, bucketName, ctx);
@@ -309,7 +375,13 @@ public class FhirBundleProcessingService {
                 // Step 3b: Route to appropriate service based on HTTP method
                 switch (method) {
                     case POST:
-                        postService.createResourceInTransaction(resource, ctx, cluster, bucketName);
+                        ResolveResult match = ifNoneExistMatches.get(i);
+                        if (match != null && !match.isZero()) {
+                            processedEntries.add(ifNoneExistEntry(resourceType, match));
+                            break;
+                        }
+                        postService.createResourceInTransaction(resource, entryEncoder(spans, i, uuidToIdMapping),
+                                                                ctx, cluster, bucketName);
                         logger.debug("✅ POST {}: Created with server-generated ID {}", resourceType, resource.getId());
                         // Add to processed entries for response
                         Bundle.BundleEntryComponent responseEntry = createResponseEntry(resource, resourceType);
@@ -351,6 +423,9 @@ public class FhirBundleProcessingService {
                         throw new RuntimeException("Unsupported HTTP method in Bundle: " + method);
                 }
                 
+            } catch (BaseServerResponseException e) {
+                logger.error("❌ Failed to process {} {} in transaction: {}", method, resourceType, e.getMessage());
+                throw e;
             } catch (Exception e) {
                 logger.error("❌ Failed to process {} {} in transaction: {}", method, resourceType, e.getMessage());
                 throw new RuntimeException("Transaction failed processing " + method + " " + resourceType + ": " + e.getMessage(), e);
@@ -362,119 +437,170 @@ public class FhirBundleProcessingService {
     }
     
     /**
-     * Internal method to process Bundle entries with a given cluster connection
-     * Used by BATCH processing (non-transaction) - now orchestrates individual services
+     * Internal method to process BATCH Bundle entries with a given cluster connection (non-transaction).
+     * Batch entries are independent by spec, so they run in parallel (fhir.bundle.batch.max-concurrency);
+     * only entries that depend on each other (urn:uuid references, same document, searches and
+     * conditional URLs vs writes of that type) wait for one another, in request order.
+     * Response entries keep request order.
      */
-    private List<ProcessedEntry> processEntriesSequentiallyInternal(Bundle bundle, Cluster cluster, String bucketName, 
-                                                                   com.couchbase.fhir.resources.service.FhirBucketConfigService.FhirBucketConfig bucketConfig) {
-        boolean skipValidation = "disabled".equals(bucketConfig.getValidationMode());
-        
+    private List<ProcessedEntry> processBatchEntriesInternal(Bundle bundle, BundleEntrySpans spans, Cluster cluster, String bucketName, 
+                                                            com.couchbase.fhir.resources.service.FhirBucketConfigService.FhirBucketConfig bucketConfig,
+                                                            Map<Integer, ResolveResult> ifNoneExistMatches) {
         // Step 1: Build UUID mapping for POST entries
-        Map<String, String> uuidToIdMapping = buildUuidMapping(bundle);
+        Map<String, String> uuidToIdMapping = buildUuidMapping(bundle, ifNoneExistMatches);
 
         // Step 2: Create standalone transaction context for services
         TransactionContext standaloneContext = new TransactionContextImpl(cluster, bucketName);
         
-        // Step 3: Process each entry in order using service orchestration
-        List<ProcessedEntry> processedEntries = new ArrayList<>();
+        // Step 3: Find the entries that have to wait for earlier ones
+        List<Set<Integer>> dependencies = BatchDependencyGraph.build(bundle, this::referencesOf);
         
-        logger.debug("🔄 Starting to process {} Bundle entries sequentially (BATCH mode)", bundle.getEntry().size());
+        // Step 4: Start each entry once the entries it depends on are done
+        int entryCount = bundle.getEntry().size();
+        RequestFanOut fanOut = new RequestFanOut(batchProperties.getMaxConcurrency());
+        List<CompletableFuture<ProcessedEntry>> futures = new ArrayList<>(entryCount);
+        
+        logger.debug("🔄 Starting to process {} Bundle entries (BATCH mode, {} with dependencies)", entryCount,
+                     dependencies.stream().filter(waitFor -> !waitFor.isEmpty()).count());
+
+        for (int i = 0; i < entryCount; i++) {
+            int entryIndex = i;
+            java.util.function.Supplier<ProcessedEntry> task = () -> processBatchEntry(bundle, entryIndex, spans, cluster, bucketName,
+                bucketConfig, ifNoneExistMatches, uuidToIdMapping, standaloneContext);
+            Set<Integer> waitFor = dependencies.get(i);
+            if (waitFor.isEmpty()) {
+                futures.add(fanOut.submit(task));
+            } else {
+                CompletableFuture<?>[] prerequisites = waitFor.stream().map(futures::get).toArray(CompletableFuture[]::new);
+                // A failed prerequisite does not skip the entry - batch entries succeed or fail on their own
+                futures.add(CompletableFuture.allOf(prerequisites)
+                    .handle((ignored, error) -> null)
+                    .thenCompose(ignored -> fanOut.submit(task)));
+            }
+        }
 
-        for (int i = 0; i < bundle.getEntry().size(); i++) {
-            Bundle.BundleEntryComponent entry = bundle.getEntry().get(i);
-            Resource resource = entry.getResource();
-            Bundle.HTTPVerb method = entry.getRequest() != null ? entry.getRequest().getMethod() : Bundle.HTTPVerb.POST;
+        // Step 5: Collect responses in request order
+        List<ProcessedEntry> processedEntries = new ArrayList<>(entryCount);
+        for (CompletableFuture<ProcessedEntry> future : futures) {
+            processedEntries.add(RequestFanOut.join(future));
+        }
+        return processedEntries;
+    }
+    
+    /**
+     * Process one BATCH entry: GET, or validate and route the write to its service
+     */
+    private ProcessedEntry processBatchEntry(Bundle bundle, int i, BundleEntrySpans spans, Cluster cluster, String bucketName,
+                                             com.couchbase.fhir.resources.service.FhirBucketConfigService.FhirBucketConfig bucketConfig,
+                                             Map<Integer, ResolveResult> ifNoneExistMatches, Map<String, String> uuidToIdMapping,
+                                             TransactionContext standaloneContext) {
+        boolean skipValidation = "disabled".equals(bucketConfig.getValidationMode());
+        Bundle.BundleEntryComponent entry = bundle.getEntry().get(i);
+        Resource resource = entry.getResource();
+        Bundle.HTTPVerb method = entry.getRequest() != null ? entry.getRequest().getMethod() : Bundle.HTTPVerb.POST;
+        
+        // Handle GET requests (no resource, only request)
+        if (resource == null) {
+            if (method == Bundle.HTTPVerb.GET) {
+                logger.debug("🔄 Processing entry {}/{}: GET request", i+1, bundle.getEntry().size());
+                try {
+                    Bundle.BundleEntryComponent getResponseEntry = processGetRequest(entry, cluster, bucketName);
+                    return ProcessedEntry.success("GET", "search", "search", getResponseEntry);
+                } catch (Exception e) {
+                    logger.error("❌ Failed to process GET request: {}", e.getMessage());
+                    return ProcessedEntry.failed("Failed to process GET request: " + e.getMessage());
+                }
+            } else {
+                throw new RuntimeException("Bundle entry has no resource but method is not GET: " + method);
+            }
+        }
+        
+        String resourceType = resource.getResourceType().name();
+        
+        logger.debug("🔄 Processing entry {}/{}: {} {} resource", i+1, bundle.getEntry().size(), method, resourceType);
+
+        try {
+            Resource processedResource = null;
+            String responseStatus = "201 Created";
             
-            // Handle GET requests (no resource, only request)
-            if (resource == null) {
-                if (method == Bundle.HTTPVerb.GET) {
-                    logger.debug("🔄 Processing entry {}/{}: GET request", i+1, bundle.getEntry().size());
-                    try {
-                        Bundle.BundleEntryComponent getResponseEntry = processGetRequest(entry, cluster, bucketName);
-                        processedEntries.add(ProcessedEntry.success("GET", "search", "search", getResponseEntry));
-                        continue;
-                    } catch (Exception e) {
-                        logger.error("❌ Failed to process GET request: {}", e.getMessage());
-                        Bundle.BundleEntryComponent errorEntry = createErrorResponseEntry("500 Internal Server Error", 
-                            "Failed to process GET request: " + e.getMessage());
-                        processedEntries.add(ProcessedEntry.failed("Failed to process GET request: " + e.getMessage()));
-                        continue;
+            // Step 3a: Route to appropriate service based on HTTP method
+            switch (method) {
+                case POST:
+                    ResolveResult match = ifNoneExistMatches.get(i);
+                    if (match != null && !match.isZero()) {
+                        return ifNoneExistEntry(resourceType, match);
                     }
-                } else {
-                    throw new RuntimeException("Bundle entry has no resource but method is not GET: " + method);
-                }
+                    
+                    // Resolve UUID references for POST operations
+                    resolveUuidReferencesInResource(resource, uuidToIdMapping);
+                    
+                    // Validate if enabled
+                    if (!skipValidation) {
+                        validateResource(resource, bucketConfig);
+                    }
+                    
+                    processedResource = postService.createResource(resource, entryEncoder(spans, i, uuidToIdMapping), bucketName);
+                    responseStatus = "201 Created";
+                    logger.debug("✅ POST {}: Created with server-generated ID {}", resourceType, processedResource.getId());
+                    break;
+                    
+                case PUT:
+                    // Validate if enabled
+                    if (!skipValidation) {
+                        validateResource(resource, bucketConfig);
+                    }
+                    
+                    processedResource = putService.updateOrCreateResource(resource, standaloneContext);
+                    boolean wasCreated = "1".equals(processedResource.getMeta().getVersionId());
+                    responseStatus = wasCreated ? "201 Created" : "200 OK";
+                    logger.debug("✅ PUT {}: {} with ID {}", resourceType, wasCreated ? "Created" : "Updated", processedResource.getId());
+                    break;
+                    
+                case DELETE:
+                    String resourceId = extractResourceIdFromUrl(entry.getRequest().getUrl());
+                    if (resourceId != null) {
+                        deleteService.deleteResource(resourceType, resourceId, standaloneContext);
+                        responseStatus = "204 No Content";
+                        logger.debug("✅ DELETE {}: Soft deleted ID {}", resourceType, resourceId);
+                        // For DELETE, we don't have a resource to return
+                        processedResource = null;
+                    } else {
+                        throw new RuntimeException("DELETE operation requires resource ID in request URL");
+                    }
+                    break;
+                    
+                default:
+                    throw new RuntimeException("Unsupported HTTP method in Bundle: " + method);
             }
             
-            String resourceType = resource.getResourceType().name();
+            // Step 3b: Create response entry
+            Bundle.BundleEntryComponent responseEntry = createResponseEntryForMethod(processedResource, resourceType, method, responseStatus);
+            String documentKey = processedResource != null ? resourceType + "/" + processedResource.getId() : resourceType + "/" + "deleted";
+            String resourceId = processedResource != null ? processedResource.getId() : "deleted";
             
-            logger.debug("🔄 Processing entry {}/{}: {} {} resource", i+1, bundle.getEntry().size(), method, resourceType);
+            logger.debug("✅ Successfully processed {} {}", method, resourceType);
+            return ProcessedEntry.success(resourceType, resourceId, documentKey, responseEntry);
 
-            try {
-                Resource processedResource = null;
-                String responseStatus = "201 Created";
-                
-                // Step 3a: Route to appropriate service based on HTTP method
-                switch (method) {
-                    case POST:
-                        // Resolve UUID references for POST operations
-                        resolveUuidReferencesInResource(resource, uuidToIdMapping);
-                        
-                        // Validate if enabled
-                        if (!skipValidation) {
-                            validateResource(resource, bucketConfig);
-                        }
-                        
-                        processedResource = postService.createResource(resource, bucketName);
-                        responseStatus = "201 Created";
-                        logger.debug("✅ POST {}: Created with server-generated ID {}", resourceType, processedResource.getId());
-                        break;
-                        
-                    case PUT:
-                        // Validate if enabled
-                        if (!skipValidation) {
-                            validateResource(resource, bucketConfig);
-                        }
-                        
-                        boolean wasCreated = !resourceExists(cluster, bucketName, resourceType, resource.getId());
-                        processedResource = putService.updateOrCreateResource(resource, standaloneContext);
-                        responseStatus = wasCreated ? "201 Created" : "200 OK";
-                        logger.debug("✅ PUT {}: {} with ID {}", resourceType, wasCreated ? "Created" : "Updated", processedResource.getId());
-                        break;
-                        
-                    case DELETE:
-                        String resourceId = extractResourceIdFromUrl(entry.getRequest().getUrl());
-                        if (resourceId != null) {
-                            deleteService.deleteResource(resourceType, resourceId, standaloneContext);
-                            responseStatus = "204 No Content";
-                            logger.debug("✅ DELETE {}: Soft deleted ID {}", resourceType, resourceId);
-                            // For DELETE, we don't have a resource to return
-                            processedResource = null;
-                        } else {
-                            throw new RuntimeException("DELETE operation requires resource ID in request URL");
-                        }
-                        break;
-                        
-                    default:
-                        throw new RuntimeException("Unsupported HTTP method in Bundle: " + method);
-                }
-                
-                // Step 3b: Create response entry
-                Bundle.BundleEntryComponent responseEntry = createResponseEntryForMethod(processedResource, resourceType, method, responseStatus);
-                String documentKey = processedResource != null ? resourceType + "/" + processedResource.getId() : resourceType + "/" + "deleted";
-                String resourceId = processedResource != null ? processedResource.getId() : "deleted";
-                
-                processedEntries.add(ProcessedEntry.success(resourceType, resourceId, documentKey, responseEntry));
-                logger.debug("✅ Successfully processed {} {}", method, resourceType);
-
-            } catch (Exception e) {
-                String errorMessage = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
-                logger.error("❌ Failed to process {} {} entry: {}", method, resourceType, errorMessage, e);
+        } catch (BaseServerResponseException e) {
+            // The entry fails with its own status (e.g. 412 for an ambiguous ifNoneExist); the batch goes on
+            logger.warn("❌ Failed to process {} {} entry: {} {}", method, resourceType, e.getStatusCode(), e.getMessage());
+            return ProcessedEntry.failed(statusLine(e.getStatusCode()), e.getMessage());
+        } catch (Exception e) {
+            String errorMessage = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            logger.error("❌ Failed to process {} {} entry: {}", method, resourceType, errorMessage, e);
 
-                processedEntries.add(ProcessedEntry.failed("Failed to process " + method + " " + resourceType + ": " + errorMessage));
-            }
+            return ProcessedEntry.failed("Failed to process " + method + " " + resourceType + ": " + errorMessage);
         }
-
-        return processedEntries;
+    }
+    
+    /**
+     * Reference strings of a resource (for the batch dependency graph)
+     */
+    private List<String> referencesOf(Resource resource) {
+        return fhirContext.newTerser().getAllPopulatedChildElementsOfType(resource, Reference.class).stream()
+            .map(Reference::getReference)
+            .filter(Objects::nonNull)
+            .collect(Collectors.toList());
     }
 
     /**
@@ -482,12 +608,13 @@ public class FhirBundleProcessingService {
      * For POST operations: Always generate new IDs (ignore client-supplied IDs)
      * For PUT operations: Use client-supplied IDs (not implemented yet)
      */
-    private Map<String, String> buildUuidMapping(Bundle bundle) {
+    private Map<String, String> buildUuidMapping(Bundle bundle, Map<Integer, ResolveResult> ifNoneExistMatches) {
         Map<String, String> uuidToIdMapping = new HashMap<>();
 
         logger.debug("🔄 Building UUID mapping for Bundle with {} entries", bundle.getEntry().size());
 
-        for (Bundle.BundleEntryComponent entry : bundle.getEntry()) {
+        for (int i = 0; i < bundle.getEntry().size(); i++) {
+            Bundle.BundleEntryComponent entry = bundle.getEntry().get(i);
             Resource resource = entry.getResource();
             
             // Skip entries without resources (e.g., GET requests in batches)
@@ -503,8 +630,10 @@ public class FhirBundleProcessingService {
 
             // ✅ FHIR Compliance: For POST operations, ALWAYS generate new IDs
             // The server ignores any client-supplied IDs and generates its own
-            String actualResourceId = generateResourceId(resourceType);
-            logger.debug("🆔 Generated new server ID for {}: {} (ignoring any client-supplied ID)", resourceType, actualResourceId);
+            // ifNoneExist matched an existing resource: references to this entry point at that one
+            ResolveResult match = ifNoneExistMatches.get(i);
+            String actualResourceId = match != null && match.isOne() ? match.getResourceId() : generateResourceId(resourceType);
+            logger.debug("🆔 Assigned server ID for {}: {} (ignoring any client-supplied ID)", resourceType, actualResourceId);
 
             // Map fullUrl references to the new server-generated ID
             // Handle both proper UUIDs ("urn:uuid:...") and simple identifiers ("qr-pgp")
@@ -522,6 +651,49 @@ public class FhirBundleProcessingService {
         return uuidToIdMapping;
     }
 
+    /**
+     * Resolve the ifNoneExist criteria of all POST entries in one parallel pass, by entry index
+     */
+    private Map<Integer, ResolveResult> resolveIfNoneExist(Bundle bundle) {
+        Map<Integer, String> conditionalUrls = new HashMap<>();
+        for (int i = 0; i < bundle.getEntry().size(); i++) {
+            Bundle.BundleEntryComponent entry = bundle.getEntry().get(i);
+            if (entry.getResource() == null || entry.getRequest() == null
+                    || entry.getRequest().getMethod() != Bundle.HTTPVerb.POST || !entry.getRequest().hasIfNoneExist()) {
+                continue;
+            }
+            // ifNoneExist is a query string ("identifier=sys|123"), sometimes sent with a "Type?" prefix
+            String criteria = entry.getRequest().getIfNoneExist();
+            criteria = criteria.substring(criteria.indexOf('?') + 1);
+            conditionalUrls.put(i, entry.getResource().getResourceType().name() + "?" + criteria);
+        }
+        if (conditionalUrls.isEmpty()) {
+            return Map.of();
+        }
+        
+        Map<String, ResolveResult> resolved = searchService.resolveConditionalUrls(conditionalUrls.values());
+        Map<Integer, ResolveResult> matches = new HashMap<>();
+        conditionalUrls.forEach((index, url) -> matches.put(index, resolved.get(url)));
+        logger.debug("🔍 Resolved ifNoneExist for {} POST entries", matches.size());
+        return matches;
+    }
+    
+    /**
+     * Response for a POST whose ifNoneExist matched: 200 OK pointing at the existing resource, or 412 when ambiguous
+     */
+    private ProcessedEntry ifNoneExistEntry(String resourceType, ResolveResult match) {
+        if (match.isMany()) {
+            throw new PreconditionFailedException("ifNoneExist matched multiple " + resourceType + " resources");
+        }
+        String resourceId = match.getResourceId();
+        Bundle.BundleEntryComponent responseEntry = new Bundle.BundleEntryComponent();
+        responseEntry.setResponse(new Bundle.BundleEntryResponseComponent()
+            .setStatus("200 OK")
+            .setLocation(resourceType + "/" + resourceId));
+        logger.debug("✅ POST {}: ifNoneExist matched existing ID {}, not created", resourceType, resourceId);
+        return ProcessedEntry.success(resourceType, resourceId, resourceType + "/" + resourceId, responseEntry);
+    }
+
     // Removed extractIdFromUuid and isValidResourceId methods - no longer needed
     // Server always generates its own IDs for POST operations
 
@@ -549,37 +721,13 @@ public class FhirBundleProcessingService {
             logger.debug("🔍 Processing reference: {}", originalRef);
 
             if (originalRef != null && !originalRef.isEmpty()) {
-                // Try to resolve the reference using our fullUrl mapping
-                String actualReference = uuidToIdMapping.get(originalRef);
-
+                String actualReference = resolveReference(originalRef, uuidToIdMapping);
                 if (actualReference != null) {
                     reference.setReference(actualReference);
                     logger.debug("🔗 Resolved reference in {}: {} → {}", resourceType, originalRef, actualReference);
                 } else {
-                    // Handle legacy "urn:uuid:" format for backwards compatibility
-                    if (originalRef.contains("urn:uuid:")) {
-                        String uuid = null;
-                        if (originalRef.startsWith("urn:uuid:")) {
-                            uuid = originalRef; // Direct UUID reference
-                        } else if (originalRef.contains("/urn:uuid:")) {
-                            // Extract just the urn:uuid part
-                            int uuidIndex = originalRef.indexOf("urn:uuid:");
-                            uuid = originalRef.substring(uuidIndex);
-                        }
-
-                        if (uuid != null) {
-                            actualReference = uuidToIdMapping.get(uuid);
-                            if (actualReference != null) {
-                                reference.setReference(actualReference);
-                                logger.debug("🔗 Resolved UUID reference in {}: {} → {}", resourceType, originalRef, actualReference);
-                            }
-                        }
-                    }
-                    
-                    if (actualReference == null) {
-                        logger.debug("⚠️ Could not resolve reference: {} in {}", originalRef, resourceType);
-                        logger.debug("⚠️ Available mappings: {}", uuidToIdMapping.keySet());
-                    }
+                    logger.debug("⚠️ Could not resolve reference: {} in {}", originalRef, resourceType);
+                    logger.debug("⚠️ Available mappings: {}", uuidToIdMapping.keySet());
                 }
             } else {
                 logger.debug("📝 Empty reference (skipping)");
@@ -587,6 +735,42 @@ public class FhirBundleProcessingService {
         }
     }
 
+    /**
+     * Resolve a reference through the fullUrl mapping, or null when it does not point into the Bundle
+     */
+    private static String resolveReference(String originalRef, Map<String, String> uuidToIdMapping) {
+        String actualReference = uuidToIdMapping.get(originalRef);
+        if (actualReference != null) {
+            return actualReference;
+        }
+        // Handle legacy "urn:uuid:" format for backwards compatibility ("Patient/urn:uuid:...")
+        if (originalRef.contains("/urn:uuid:")) {
+            return uuidToIdMapping.get(originalRef.substring(originalRef.indexOf("urn:uuid:")));
+        }
+        return null;
+    }
+
+    /**
+     * Encoder for a POST entry: its raw request JSON with the server ID, meta and resolved
+     * references swapped in, or the encoded model when the body could not be scanned or was
+     * not validated (spans is null)
+     */
+    private java.util.function.Function<Resource, byte[]> entryEncoder(BundleEntrySpans spans, int entryIndex,
+                                                                       Map<String, String> uuidToIdMapping) {
+        return resource -> {
+            if (spans != null && spans.hasResource(entryIndex)) {
+                try {
+                    return spans.rewrite(entryIndex, resource.getIdElement().getIdPart(),
+                        jsonParser.encodeToString(resource.getMeta()),
+                        ref -> resolveReference(ref, uuidToIdMapping));
+                } catch (java.io.IOException e) {
+                    logger.debug("📦 Entry {} raw JSON not usable ({}), encoding the model", entryIndex, e.getMessage());
+                }
+            }
+            return jsonParser.encodeResourceToString(resource).getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        };
+    }
+
     // Removed insertResourceInTransaction - now handled by PostService
 
     // Removed insertResourceIntoCouchbase - now handled by individual services
@@ -650,21 +834,16 @@ public class FhirBundleProcessingService {
      * Validate Bundle structure using bucket-specific validation configuration
      */
     private ValidationResult validateBundle(Bundle bundle, com.couchbase.fhir.resources.service.FhirBucketConfigService.FhirBucketConfig bucketConfig) {
-        FhirValidator validator;
-        boolean useLenientValidation = "lenient".equals(bucketConfig.getValidationMode());
-        
-        boolean enforceUSCore = "us-core".equals(bucketConfig.getValidationProfile());
-        
-        if (useLenientValidation || !enforceUSCore) {
-            validator = basicFhirValidator;
+        boolean usCore = useUSCoreValidator(bucketConfig);
+        if (usCore) {
+            logger.debug("Using strict US Core 6.1.0 validator");
+        } else {
             logger.debug("Using basic FHIR R4 validator (mode: {}, profile: {})", 
                        bucketConfig.getValidationMode(), bucketConfig.getValidationProfile());
-        } else {
-            validator = fhirValidator;
-            logger.debug("Using strict US Core 6.1.0 validator");
         }
 
-        ValidationResult result = validator.validateWithResult(bundle);
+        // Entry resources are validated in parallel and cached by content
+        ValidationResult result = validationService.validateBundle(bundle, usCore);
 
         // Filter out INFORMATION level messages
         List<SingleValidationMessage> filteredMessages = result
@@ -676,6 +855,15 @@ public class FhirBundleProcessingService {
         return new ValidationResult(result.getContext(), filteredMessages);
     }
 
+    /**
+     * US Core validator for strict us-core buckets, basic R4 validator otherwise
+     */
+    private boolean useUSCoreValidator(com.couchbase.fhir.resources.service.FhirBucketConfigService.FhirBucketConfig bucketConfig) {
+        boolean useLenientValidation = "lenient".equals(bucketConfig.getValidationMode());
+        boolean enforceUSCore = "us-core".equals(bucketConfig.getValidationProfile());
+        return !useLenientValidation && enforceUSCore;
+    }
+
     /**
      * Create comprehensive response
      */
@@ -713,7 +901,7 @@ public class FhirBundleProcessingService {
                 logger.debug("✅ Added successful entry: {}/{}", entry.getResourceType(), entry.getResourceId());
             } else {
                 // Create error entry
-                Bundle.BundleEntryComponent errorEntry = createErrorEntry(entry.getErrorMessage());
+                Bundle.BundleEntryComponent errorEntry = createErrorEntry(entry.getErrorStatus(), entry.getErrorMessage());
                 responseBundle.addEntry(errorEntry);
                 logger.warn("❌ Added error entry: {}", entry.getErrorMessage());
             }
@@ -728,14 +916,23 @@ public class FhirBundleProcessingService {
     /**
      * Create error entry for Bundle response
      */
-    private Bundle.BundleEntryComponent createErrorEntry(String errorMessage) {
+    private Bundle.BundleEntryComponent createErrorEntry(String status, String errorMessage) {
         Bundle.BundleEntryComponent errorEntry = new Bundle.BundleEntryComponent();
         Bundle.BundleEntryResponseComponent errorResponse = new Bundle.BundleEntryResponseComponent();
-        errorResponse.setStatus("400 Bad Request");
+        errorResponse.setStatus(status);
         errorResponse.setOutcome(createOperationOutcome(errorMessage));
         errorEntry.setResponse(errorResponse);
         return errorEntry;
     }
+
+    /**
+     * Bundle entry status line for an HTTP status code, e.g. "412 Precondition Failed"
+     */
+    private static String statusLine(int statusCode) {
+        HttpStatus status = HttpStatus.resolve(statusCode);
+        return status != null ? statusCode + " " + status.getReasonPhrase() : String.valueOf(statusCode);
+    }
+
     /**
      * Create OperationOutcome for error responses
      */
@@ -781,49 +978,12 @@ public class FhirBundleProcessingService {
         return null;
     }
     
-    /**
-     * Check if a resource exists in the live collection
-     */
-    private boolean resourceExists(Cluster cluster, String bucketName, String resourceType, String resourceId) {
-        try {
-            String documentKey = resourceType + "/" + resourceId;
-            String sql = String.format(
-                "SELECT COUNT(*) AS count FROM `%s`.`%s`.`%s` USE KEYS '%s'",
-                bucketName, DEFAULT_SCOPE, resourceType, documentKey
-            );
-            
-            QueryResult result = cluster.query(sql);
-            List<JsonObject> rows = result.rowsAsObject();
-            
-            if (!rows.isEmpty()) {
-                int count = rows.get(0).getInt("count");
-                return count > 0;
-            }
-            
-            return false;
-            
-        } catch (Exception e) {
-            logger.debug("Failed to check if resource exists {}/{}: {}", resourceType, resourceId, e.getMessage());
-            return false;
-        }
-    }
-    
     /**
      * Validate a single resource using bucket configuration
      */
     private void validateResource(Resource resource, com.couchbase.fhir.resources.service.FhirBucketConfigService.FhirBucketConfig bucketConfig) {
         // Choose validator based on simplified bucket config
-        FhirValidator validator;
-        boolean useLenientValidation = "lenient".equals(bucketConfig.getValidationMode());
-        boolean enforceUSCore = "us-core".equals(bucketConfig.getValidationProfile());
-        
-        if (useLenientValidation || !enforceUSCore) {
-            validator = basicFhirValidator;
-        } else {
-            validator = fhirValidator;
-        }
-        
-        ValidationResult result = validator.validateWithResult(resource);
+        ValidationResult result = validationService.validate(resource, useUSCoreValidator(bucketConfig));
 
         // Filter out INFORMATION level messages
         List<SingleValidationMessage> filteredMessages = result
@@ -1,7 +1,6 @@
 package com.couchbase.fhir.resources.service;
 
 import ca.uhn.fhir.parser.IParser;
-import ca.uhn.fhir.validation.FhirValidator;
 import ca.uhn.fhir.validation.ValidationResult;
 import com.couchbase.client.java.Cluster;
 import com.couchbase.client.java.Collection;
@@ -12,7 +11,6 @@ import org.hl7.fhir.r4.model.Resource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
 import java.util.HashMap;
@@ -31,11 +29,7 @@ public class FhirResourceStorageHelper {
     private FhirMetaHelper metaHelper;
 
     @Autowired
-    private FhirValidator fhirValidator;  // Primary US Core validator
-
-    @Autowired
-    @Qualifier("basicFhirValidator")
-    private FhirValidator basicFhirValidator;  // Basic validator for lenient validation
+    private ResourceValidationService validationService;  // Cached US Core / basic validation
 
     @Autowired
     public IParser jsonParser;
@@ -99,10 +93,9 @@ public class FhirResourceStorageHelper {
             }
             // Validate the resource (skip if requested for performance)
             if (!skipValidation) {
-                FhirValidator validator = useLenientValidation ? basicFhirValidator : fhirValidator;
                 String validationType = useLenientValidation ? "lenient (basic FHIR R4)" : "strict (US Core 6.1.0)";
 
-                ValidationResult validationResult = validator.validateWithResult(fhirResource);
+                ValidationResult validationResult = validationService.validate(fhirResource, !useLenientValidation);
                 if (!validationResult.isSuccessful()) {
                     log.error("FHIR {} validation failed with {} validation:", resourceType, validationType);
                     validationResult.getMessages().forEach(msg ->
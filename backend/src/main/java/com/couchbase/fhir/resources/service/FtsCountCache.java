@@ -0,0 +1,139 @@
+package com.couchbase.fhir.resources.service;
+
+import com.couchbase.client.java.search.SearchQuery;
+import com.couchbase.fhir.resources.config.FtsCountCacheProperties;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.hash.Hashing;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Total hit counts of recent FTS queries, keyed by (index, normalized query hash).
+ *
+ * Every key search already returns total_hits, so its total is recorded here for free.
+ * Count-only requests (_total=accurate&_count=0), continuation pages and repeated dashboard
+ * queries then reuse it instead of issuing another FTS request. Entries expire after
+ * {@code fhir.search.count-cache.ttl-seconds}.
+ *
+ * Keys carry a per-index write generation, bumped by SearchResultCache.onWrite for the index of the
+ * written resource type. Counts of that index are not served again after a write, and a count whose
+ * key was taken before the write is stored under the old generation, where nobody looks it up.
+ */
+@Service
+public class FtsCountCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(FtsCountCache.class);
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    // Boolean combinators whose children can be reordered without changing the result
+    private static final Set<String> COMMUTATIVE_ARRAYS = Set.of("conjuncts", "disjuncts");
+
+    @Autowired
+    private FtsCountCacheProperties properties;
+
+    @Autowired
+    private CollectionRoutingService collectionRoutingService;
+
+    private final ConcurrentHashMap<String, AtomicLong> generations = new ConcurrentHashMap<>();
+    private Cache<String, Long> counts;
+
+    @PostConstruct
+    void init() {
+        counts = Caffeine.newBuilder()
+            .maximumSize(properties.getMaximumSize())
+            .expireAfterWrite(Duration.ofSeconds(properties.getTtlSeconds()))
+            .build();
+        logger.info("🔢 FTS count cache: enabled={}, ttl={}s, maxSize={}",
+                    properties.isEnabled(), properties.getTtlSeconds(), properties.getMaximumSize());
+    }
+
+    /**
+     * Cache key for a query on an index, or null if the query cannot be exported.
+     * Take it before running the query, so a write during the query makes its count unreachable.
+     */
+    public String key(String ftsIndex, SearchQuery query) {
+        if (!properties.isEnabled()) {
+            return null;
+        }
+        try {
+            long generation = generations.computeIfAbsent(ftsIndex, k -> new AtomicLong()).get();
+            return ftsIndex + "|" + generation + "|" + hash(query.export().toString());
+        } catch (Exception e) {
+            logger.debug("🔢 Query not cacheable: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    public Long get(String key) {
+        return key != null ? counts.getIfPresent(key) : null;
+    }
+
+    public void put(String key, long totalCount) {
+        if (key != null) {
+            counts.put(key, totalCount);
+        }
+    }
+
+    /**
+     * Record a write to a resource type: counts of its FTS index are stale from now on
+     */
+    public void onWrite(String bucketName, String resourceType) {
+        String ftsIndex = collectionRoutingService.getFtsIndex(bucketName, resourceType);
+        if (ftsIndex != null) {
+            generations.computeIfAbsent(ftsIndex, k -> new AtomicLong()).incrementAndGet();
+        }
+    }
+
+    public void clear() {
+        counts.invalidateAll();
+    }
+
+    /**
+     * Hash of the canonical form of an exported FTS query: object fields sorted by name and
+     * conjunct/disjunct children sorted, so equivalent queries built in a different order share a key.
+     */
+    static String hash(String queryJson) throws java.io.IOException {
+        String canonical = MAPPER.writeValueAsString(canonicalize(MAPPER.readTree(queryJson), null));
+        return Hashing.murmur3_128().hashString(canonical, StandardCharsets.UTF_8).toString();
+    }
+
+    private static JsonNode canonicalize(JsonNode node, String fieldName) {
+        if (node.isObject()) {
+            TreeMap<String, JsonNode> sorted = new TreeMap<>();
+            node.properties().forEach(e -> sorted.put(e.getKey(), canonicalize(e.getValue(), e.getKey())));
+            ObjectNode result = MAPPER.createObjectNode();
+            sorted.forEach(result::set);
+            return result;
+        }
+        if (node.isArray()) {
+            List<JsonNode> children = new ArrayList<>(node.size());
+            node.forEach(child -> children.add(canonicalize(child, null)));
+            if (fieldName != null && COMMUTATIVE_ARRAYS.contains(fieldName)) {
+                children.sort(Comparator.comparing(JsonNode::toString));
+            }
+            ArrayNode result = MAPPER.createArrayNode();
+            children.forEach(result::add);
+            return result;
+        }
+        return node;
+    }
+}
@@ -0,0 +1,404 @@
+package com.couchbase.fhir.resources.service;
+
+import com.couchbase.client.java.search.SearchQuery;
+import com.couchbase.fhir.resources.config.FtsQueryOptimizerProperties;
+import com.couchbase.fhir.resources.search.RawJsonSearchQuery;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Service;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rewrites the combined FTS query of a search before it is sent, using the field mappings
+ * shipped in fts-indexes/*.json.
+ *
+ * Passes (over the exported query JSON):
+ * 1. Flatten nested conjunctions and unwrap single-child conjunctions/disjunctions
+ *    (disjunctions are never merged - chained searches nest them on purpose to stay under
+ *    the clause limit)
+ * 2. Drop conjuncts that cannot filter anything: match_all, and a resourceType match on a
+ *    collection that holds one resource type
+ * 3. match → term where the field's analyzer is keyword (or keyword + to_lower, with the value
+ *    lowercased), so the server skips query-time analysis
+ * 4. Order conjuncts by estimated selectivity (IDs and references first, ranges and negations last)
+ *
+ * Scoring is already disabled on every key and count search (see FtsSearchService.buildOptions).
+ * A short explain string of the applied rewrites is returned with the query and recorded in the
+ * request's RequestPerfBag as "fts_plan".
+ */
+@Service
+public class FtsQueryOptimizer {
+
+    private static final Logger logger = LoggerFactory.getLogger(FtsQueryOptimizer.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String FTS_INDEXES_PATH = "classpath*:/fts-indexes/*.json";
+
+    // Collection holding several resource types (needs the resourceType filter)
+    private static final String SHARED_COLLECTION = "General";
+
+    // Last path segments of fields with few distinct values
+    private static final Set<String> LOW_CARDINALITY = Set.of(
+        "status", "gender", "resourceType", "intent", "use", "active", "system", "clinicalStatus", "verificationStatus");
+
+    /**
+     * Optimized query plus what was done to it
+     */
+    public static final class OptimizedQuery {
+        private final SearchQuery query;
+        private final String explain;
+
+        OptimizedQuery(SearchQuery query, String explain) {
+            this.query = query;
+            this.explain = explain;
+        }
+
+        public SearchQuery getQuery() { return query; }
+        public String getExplain() { return explain; }
+    }
+
+    /**
+     * Indexed field: FTS type and the analyzer in effect for it
+     */
+    record FieldInfo(String type, String analyzer) {}
+
+    @Autowired
+    private FtsQueryOptimizerProperties properties;
+
+    @Autowired
+    private CollectionRoutingService collectionRoutingService;
+
+    // collection → field path → field
+    private Map<String, Map<String, FieldInfo>> fieldsByCollection = Map.of();
+
+    // Custom analyzers equivalent to keyword + lowercase
+    private Set<String> lowercaseKeywordAnalyzers = Set.of();
+
+    @PostConstruct
+    void init() {
+        if (!properties.isEnabled()) {
+            logger.info("🔍 FTS query optimizer disabled");
+            return;
+        }
+        try {
+            Resource[] resources = new PathMatchingResourcePatternResolver().getResources(FTS_INDEXES_PATH);
+            Map<String, Map<String, FieldInfo>> fields = new HashMap<>();
+            Set<String> lowercaseAnalyzers = new HashSet<>();
+            for (Resource resource : resources) {
+                try (InputStream in = resource.getInputStream()) {
+                    loadMapping(MAPPER.readTree(in), fields, lowercaseAnalyzers);
+                }
+            }
+            fieldsByCollection = fields;
+            lowercaseKeywordAnalyzers = lowercaseAnalyzers;
+            logger.info("🔍 FTS query optimizer: field mappings for {} collections", fields.size());
+        } catch (Exception e) {
+            logger.warn("⚠️  FTS query optimizer: could not load fts-indexes mappings ({}), term rewrites disabled", e.getMessage());
+        }
+    }
+
+    /**
+     * Optimize the combined query of a search on resourceType
+     */
+    public OptimizedQuery optimize(SearchQuery query, String resourceType) {
+        if (!properties.isEnabled()) {
+            return new OptimizedQuery(query, null);
+        }
+        try {
+            return optimizeForCollection(query, collectionRoutingService.getTargetCollection(resourceType));
+        } catch (Exception e) {
+            logger.debug("🔍 FTS optimizer skipped for {}: {}", resourceType, e.getMessage());
+            return new OptimizedQuery(query, null);
+        }
+    }
+
+    OptimizedQuery optimizeForCollection(SearchQuery query, String collection) throws Exception {
+        JsonNode tree = MAPPER.readTree(query.export().toString());
+        Explain explain = new Explain();
+        JsonNode optimized = rewrite(tree, collection, explain);
+        if (!explain.changed()) {
+            return new OptimizedQuery(query, explain.toString());
+        }
+        return new OptimizedQuery(new RawJsonSearchQuery(MAPPER.writeValueAsString(optimized)), explain.toString());
+    }
+
+    private JsonNode rewrite(JsonNode node, String collection, Explain explain) {
+        if (!node.isObject()) {
+            return node;
+        }
+        ObjectNode object = (ObjectNode) node;
+
+        if (object.has("conjuncts")) {
+            List<JsonNode> children = new ArrayList<>();
+            flattenConjuncts((ArrayNode) object.get("conjuncts"), children, explain);
+
+            List<JsonNode> kept = new ArrayList<>();
+            for (JsonNode child : children) {
+                JsonNode rewritten = rewrite(child, collection, explain);
+                if (isRedundantConjunct(rewritten, collection)) {
+                    explain.dropped++;
+                    continue;
+                }
+                kept.add(rewritten);
+            }
+            if (kept.isEmpty()) {
+                return MAPPER.createObjectNode().putNull("match_all");
+            }
+            if (kept.size() == 1 && !object.has("boost")) {
+                explain.unwrapped++;
+                return kept.get(0);
+            }
+
+            List<JsonNode> ordered = new ArrayList<>(kept);
+            ordered.sort(Comparator.comparingInt(child -> cost(child, collection)));
+            if (!ordered.equals(kept)) {
+                explain.reordered = true;
+            }
+            explain.order = ordered.stream().map(FtsQueryOptimizer::describe).toList();
+
+            ArrayNode conjuncts = object.putArray("conjuncts");
+            ordered.forEach(conjuncts::add);
+            return object;
+        }
+
+        if (object.has("disjuncts")) {
+            ArrayNode disjuncts = (ArrayNode) object.get("disjuncts");
+            if (disjuncts.size() == 1 && !object.has("boost") && object.path("min").asInt(0) <= 1) {
+                explain.unwrapped++;
+                return rewrite(disjuncts.get(0), collection, explain);
+            }
+            for (int i = 0; i < disjuncts.size(); i++) {
+                disjuncts.set(i, rewrite(disjuncts.get(i), collection, explain));
+            }
+            return object;
+        }
+
+        for (String clause : List.of("must", "should", "must_not")) {
+            if (object.has(clause)) {
+                object.set(clause, rewrite(object.get(clause), collection, explain));
+            }
+        }
+
+        if (object.has("match") && object.has("field")) {
+            return toTermQuery(object, collection, explain);
+        }
+        return object;
+    }
+
+    private static void flattenConjuncts(ArrayNode conjuncts, List<JsonNode> out, Explain explain) {
+        for (JsonNode child : conjuncts) {
+            if (child.isObject() && child.has("conjuncts") && !child.has("boost") && child.size() == 1) {
+                explain.flattened++;
+                flattenConjuncts((ArrayNode) child.get("conjuncts"), out, explain);
+            } else {
+                out.add(child);
+            }
+        }
+    }
+
+    private boolean isRedundantConjunct(JsonNode node, String collection) {
+        if (node.has("match_all")) {
+            return true;
+        }
+        if (SHARED_COLLECTION.equals(collection)) {
+            return false;
+        }
+        // Dedicated collections hold a single resource type
+        return "resourceType".equals(node.path("field").asText(null)) && (node.has("match") || node.has("term"));
+    }
+
+    /**
+     * Plain match on a keyword-analyzed text field → term (the analyzer would produce the value itself)
+     */
+    private JsonNode toTermQuery(ObjectNode match, String collection, Explain explain) {
+        Iterator<String> names = match.fieldNames();
+        while (names.hasNext()) {
+            String name = names.next();
+            if (!name.equals("match") && !name.equals("field") && !name.equals("boost")) {
+                return match;  // fuzziness, operator, analyzer... keep match semantics
+            }
+        }
+        JsonNode value = match.get("match");
+        FieldInfo field = fieldsByCollection.getOrDefault(collection, Map.of()).get(match.get("field").asText());
+        if (!value.isTextual() || field == null || !"text".equals(field.type())) {
+            return match;
+        }
+
+        String term;
+        if ("keyword".equals(field.analyzer())) {
+            term = value.asText();
+        } else if (lowercaseKeywordAnalyzers.contains(field.analyzer())) {
+            term = value.asText().toLowerCase(Locale.ROOT);
+        } else {
+            return match;
+        }
+
+        ObjectNode termQuery = MAPPER.createObjectNode();
+        termQuery.put("term", term);
+        termQuery.set("field", match.get("field"));
+        if (match.has("boost")) {
+            termQuery.set("boost", match.get("boost"));
+        }
+        explain.terms++;
+        return termQuery;
+    }
+
+    /**
+     * Rough selectivity rank (lower = matches fewer documents)
+     */
+    private int cost(JsonNode node, String collection) {
+        if (node.has("ids")) {
+            return 0;
+        }
+        if (node.has("term") || node.has("match") || node.has("match_phrase")) {
+            String field = node.path("field").asText("");
+            String last = field.substring(field.lastIndexOf('.') + 1);
+            if (field.endsWith("reference") || last.equals("id") || field.endsWith("identifier.value")) {
+                return 1;
+            }
+            return LOW_CARDINALITY.contains(last) ? 4 : 2;
+        }
+        if (node.has("prefix")) {
+            return 3;
+        }
+        if (node.has("bool")) {
+            return 4;
+        }
+        if (node.has("conjuncts")) {
+            int min = Integer.MAX_VALUE;
+            for (JsonNode child : node.get("conjuncts")) {
+                min = Math.min(min, cost(child, collection));
+            }
+            return min == Integer.MAX_VALUE ? 5 : min;
+        }
+        if (node.has("disjuncts")) {
+            int max = 0;
+            for (JsonNode child : node.get("disjuncts")) {
+                max = Math.max(max, cost(child, collection));
+            }
+            return max;
+        }
+        if (node.has("must") || node.has("must_not") || node.has("should")) {
+            return 6;
+        }
+        if (node.has("match_all")) {
+            return 9;
+        }
+        return 5;  // numeric / date ranges, wildcards
+    }
+
+    private static String describe(JsonNode node) {
+        if (node.has("ids")) {
+            return "ids(" + node.get("ids").size() + ")";
+        }
+        if (node.has("disjuncts")) {
+            return "or(" + node.get("disjuncts").size() + ")";
+        }
+        if (node.has("conjuncts")) {
+            return "and(" + node.get("conjuncts").size() + ")";
+        }
+        String kind = "?";
+        for (String candidate : List.of("term", "match", "match_phrase", "prefix", "bool", "wildcard", "regexp", "match_all")) {
+            if (node.has(candidate)) {
+                kind = candidate;
+                break;
+            }
+        }
+        if (kind.equals("?") && (node.has("start") || node.has("end"))) {
+            kind = "date";
+        } else if (kind.equals("?") && (node.has("min") || node.has("max"))) {
+            kind = "num";
+        }
+        return node.has("field") ? kind + ":" + node.get("field").asText() : kind;
+    }
+
+    /**
+     * Collect the text/number/date fields of one index definition, keyed by dotted path
+     */
+    static void loadMapping(JsonNode index, Map<String, Map<String, FieldInfo>> fields, Set<String> lowercaseAnalyzers) {
+        JsonNode params = index.has("params") ? index.get("params") : index;
+        JsonNode mapping = params.path("mapping");
+
+        mapping.path("analysis").path("analyzers").properties().forEach(entry -> {
+            JsonNode analyzer = entry.getValue();
+            JsonNode filters = analyzer.path("token_filters");
+            if ("single".equals(analyzer.path("tokenizer").asText())
+                && filters.size() == 1 && "to_lower".equals(filters.get(0).asText())) {
+                lowercaseAnalyzers.add(entry.getKey());
+            }
+        });
+
+        String indexAnalyzer = mapping.path("default_analyzer").asText("standard");
+        mapping.path("types").properties().forEach(type -> {
+            // "Resources.Patient" → collection "Patient"
+            String typeName = type.getKey();
+            String collection = typeName.substring(typeName.lastIndexOf('.') + 1);
+            Map<String, FieldInfo> collectionFields = fields.computeIfAbsent(collection, k -> new HashMap<>());
+            collectFields(type.getValue(), "", indexAnalyzer, collectionFields);
+        });
+    }
+
+    private static void collectFields(JsonNode mapping, String path, String analyzer, Map<String, FieldInfo> out) {
+        String mappingAnalyzer = mapping.path("default_analyzer").asText(analyzer);
+        mapping.path("properties").properties().forEach(property -> {
+            JsonNode child = property.getValue();
+            String childAnalyzer = child.path("default_analyzer").asText(mappingAnalyzer);
+            // Fields are named relative to the property's parent ("name" → "family" → field "familyExact")
+            for (JsonNode field : child.path("fields")) {
+                String fieldPath = join(path, field.path("name").asText());
+                out.put(fieldPath, new FieldInfo(field.path("type").asText(), field.path("analyzer").asText(childAnalyzer)));
+            }
+            if (child.has("properties")) {
+                collectFields(child, join(path, property.getKey()), mappingAnalyzer, out);
+            }
+        });
+    }
+
+    private static String join(String parent, String name) {
+        return parent.isEmpty() ? name : parent + "." + name;
+    }
+
+    /**
+     * What the passes did, e.g. "flatten=1 drop=1 term=2 order=[ids(3), term:subject.reference, dateRange...]"
+     */
+    private static final class Explain {
+        int flattened;
+        int unwrapped;
+        int dropped;
+        int terms;
+        boolean reordered;
+        List<String> order;
+
+        boolean changed() {
+            return flattened > 0 || unwrapped > 0 || dropped > 0 || terms > 0 || reordered;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            if (flattened > 0) sb.append("flatten=").append(flattened).append(' ');
+            if (unwrapped > 0) sb.append("unwrap=").append(unwrapped).append(' ');
+            if (dropped > 0) sb.append("drop=").append(dropped).append(' ');
+            if (terms > 0) sb.append("term=").append(terms).append(' ');
+            if (order != null) sb.append(reordered ? "reorder=" : "order=").append(order);
+            return sb.toString().trim();
+        }
+    }
+}
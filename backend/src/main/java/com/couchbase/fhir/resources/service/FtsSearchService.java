@@ -1,11 +1,13 @@
 package com.couchbase.fhir.resources.service;
 
+import com.couchbase.client.java.json.JsonArray;
 import com.couchbase.client.java.search.SearchQuery;
 import com.couchbase.client.java.search.result.SearchResult;
 import com.couchbase.client.java.search.result.SearchRow;
 import com.couchbase.client.java.search.SearchOptions;
 import com.couchbase.client.java.search.sort.SearchSort;
 import com.couchbase.fhir.resources.gateway.CouchbaseGateway;
+import com.couchbase.fhir.resources.interceptor.RequestPerfBagUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -31,6 +33,12 @@ public class FtsSearchService {
     @Autowired
     private CollectionRoutingService collectionRoutingService;
     
+    @Autowired
+    private FtsCountCache countCache;
+    
+    @Autowired
+    private FtsQueryOptimizer queryOptimizer;
+    
     /**
      * Execute FTS search for maximum keys (new pagination strategy)
      * Always fetches up to 1000 keys with offset=0 for optimal pagination
@@ -57,6 +65,41 @@ public class FtsSearchService {
      */
     public FtsSearchResult searchForKeys(List<SearchQuery> ftsQueries, String resourceType, 
                                        int from, int size, List<SearchSort> sortFields) {
+        return executeKeySearch(ftsQueries, resourceType, from, size, sortFields, null);
+    }
+    
+    /**
+     * Execute FTS search that resumes after a previous hit (keyset pagination).
+     * Uses FTS search_after, so the server does not have to collect and skip the rows
+     * before the page - deep pages cost the same as the first one and are not bound
+     * by the index's max result window.
+     * 
+     * @param ftsQueries List of FTS search queries
+     * @param resourceType FHIR resource type
+     * @param searchAfter Sort values of the last hit of the previous page (see FtsSearchResult.getSortValues)
+     * @param size Number of results to return
+     * @param sortFields Sort fields - must be the same sort the searchAfter values came from
+     * @return FtsSearchResult containing document keys and metadata
+     */
+    public FtsSearchResult searchForKeysAfter(List<SearchQuery> ftsQueries, String resourceType,
+                                            List<String> searchAfter, int size, List<SearchSort> sortFields) {
+        if (searchAfter == null || searchAfter.isEmpty()) {
+            throw new IllegalArgumentException("searchAfter values are required for keyset search");
+        }
+        return executeKeySearch(ftsQueries, resourceType, 0, size, sortFields, searchAfter);
+    }
+    
+    /**
+     * Whether keyset pagination can be used: search_after is a raw request option, which
+     * Protostellar (couchbase2://) connections cannot send
+     */
+    public boolean supportsSearchAfter() {
+        return !couchbaseGateway.isProtostellar("default");
+    }
+    
+    private FtsSearchResult executeKeySearch(List<SearchQuery> ftsQueries, String resourceType, 
+                                           int from, int size, List<SearchSort> sortFields,
+                                           List<String> searchAfter) {
         
         try {
             String ftsIndex = collectionRoutingService.getFtsIndex(resourceType);
@@ -66,14 +109,21 @@ public class FtsSearchService {
             
             // Build FTS SearchQuery using SDK API (not JSON string)
             SearchQuery combinedQuery = buildCombinedSearchQuery(ftsQueries, resourceType);
+            String countKey = countCache.key(ftsIndex, combinedQuery);
                         
             // Build and log options
             SearchOptions searchOptions = buildOptions(from, size, sortFields);
+            if (searchAfter != null) {
+                searchOptions.raw("search_after", JsonArray.from(new ArrayList<Object>(searchAfter)));
+            }
 
-            if (logger.isInfoEnabled()) {
+            if (logger.isDebugEnabled()) {
                 try {
                     String queryJson = combinedQuery.export().toString();
                     String optionsJson = exportOptions(searchOptions, from, size, sortFields);
+                    if (searchAfter != null) {
+                        optionsJson += ", search_after=" + searchAfter;
+                    }
                     logger.debug("🔍 FTS Request Payload:\n  query={}\n  options={}, Index={}", queryJson, optionsJson, ftsIndex);
                 } catch (Exception e) {
                     logger.error("🔍 Failed to export FTS request payload: {}", e.getMessage());
@@ -91,12 +141,17 @@ public class FtsSearchService {
             }
             
             long afterQueryTime = System.currentTimeMillis();            
-            // Extract document keys from search results
+            // Extract document keys (and sort values, so the caller can resume after any hit)
+            boolean sorted = sortFields != null && !sortFields.isEmpty();
             List<String> documentKeys = new ArrayList<>();
+            List<List<String>> sortValues = sorted ? new ArrayList<>() : null;
             for (SearchRow row : searchResult.rows()) {
                 // FTS returns document IDs, which are our document keys
                 String documentKey = row.id();
                 documentKeys.add(documentKey);
+                if (sorted) {
+                    sortValues.add(row.keyset().toCore().keys());
+                }
             }
             
             long ftsElapsedTime = System.currentTimeMillis() - ftsStartTime;
@@ -109,10 +164,15 @@ public class FtsSearchService {
                        documentKeys.size(), resourceType, ftsElapsedTime, 
                        roundTripTime, serverExecutionTime, networkOverhead, processingTime);
             
+            // Keys and total come back in the same round trip - remember the total for count-only requests
+            long totalRows = searchResult.metaData().metrics().totalRows();
+            countCache.put(countKey, totalRows);
+            
             return new FtsSearchResult(
                 documentKeys,
-                searchResult.metaData().metrics().totalRows(),
-                serverExecutionTime
+                totalRows,
+                serverExecutionTime,
+                sortValues
             );
             
         } catch (Exception e) {
@@ -122,7 +182,8 @@ public class FtsSearchService {
     }
     
     /**
-     * Execute FTS count query for _total=accurate operations
+     * Execute FTS count query for _total=accurate operations.
+     * Served from the count cache when the same query ran recently (key searches record their total).
      */
     public long getCount(List<SearchQuery> ftsQueries, String resourceType) {
         
@@ -135,6 +196,13 @@ public class FtsSearchService {
             // Build FTS SearchQuery for count
             SearchQuery combinedQuery = buildCombinedSearchQuery(ftsQueries, resourceType);
             
+            String countKey = countCache.key(ftsIndex, combinedQuery);
+            Long cachedCount = countCache.get(countKey);
+            if (cachedCount != null) {
+                logger.debug("🔍 FTS count for {} served from cache: {}", resourceType, cachedCount);
+                return cachedCount;
+            }
+            
             logger.debug("🔍 FTS Count Query: index={}, query={}", ftsIndex, combinedQuery);
             
             // Execute FTS search for count only and measure timing
@@ -159,6 +227,7 @@ public class FtsSearchService {
             }
             
             long totalCount = searchResult.metaData().metrics().totalRows();
+            countCache.put(countKey, totalCount);
             long ftsElapsedTime = System.currentTimeMillis() - ftsStartTime;
             long serverExecutionTime = searchResult.metaData().metrics().took().toMillis();
             long networkOverhead = ftsElapsedTime - serverExecutionTime;
@@ -192,14 +261,23 @@ public class FtsSearchService {
         allQueries.addAll(ftsQueries);
         
         // Build the final query
+        SearchQuery combinedQuery;
         if (allQueries.isEmpty()) {
             return SearchQuery.matchAll();
         } else if (allQueries.size() == 1) {
-            return allQueries.get(0);
+            combinedQuery = allQueries.get(0);
         } else {
             // Use conjuncts (AND) to combine resourceType filter with search queries
-            return SearchQuery.conjuncts(allQueries.toArray(new SearchQuery[0]));
+            combinedQuery = SearchQuery.conjuncts(allQueries.toArray(new SearchQuery[0]));
         }
+        
+        // Rewrite pass: flatten, match → term, selectivity order (explain goes to the perf bag)
+        FtsQueryOptimizer.OptimizedQuery optimized = queryOptimizer.optimize(combinedQuery, resourceType);
+        if (optimized.getExplain() != null) {
+            logger.debug("🔍 FTS plan for {}: {}", resourceType, optimized.getExplain());
+            RequestPerfBagUtils.addNote("fts_plan", resourceType + " " + optimized.getExplain());
+        }
+        return optimized.getQuery();
     }
     
     /**
@@ -212,6 +290,8 @@ public class FtsSearchService {
 
     /**
      * Build SearchOptions with sort & standard flags.
+     * Sorted searches get a trailing _id sort so ties (e.g. same meta.lastUpdated) have a stable
+     * order - required for search_after and keeps from/size pages from overlapping.
      */
     private SearchOptions buildOptions(int from, int size, List<SearchSort> sortFields) {
         SearchOptions opts = SearchOptions.searchOptions()
@@ -221,8 +301,10 @@ public class FtsSearchService {
             .includeLocations(false)
             .disableScoring(true);
         if (sortFields != null && !sortFields.isEmpty()) {
+            List<SearchSort> sorts = new ArrayList<>(sortFields);
+            sorts.add(SearchSort.byId());
             // Cast to Object[] to satisfy varargs on older SDK signatures
-            opts.sort((Object[]) sortFields.toArray(new SearchSort[0]));
+            opts.sort((Object[]) sorts.toArray(new SearchSort[0]));
             logger.debug("🔍 FTS: Added {} sort fields", sortFields.size());
         }
         return opts;
@@ -270,6 +352,8 @@ public class FtsSearchService {
                 combinedQuery = SearchQuery.matchAll();
             }
             
+            String countKey = countCache.key(fullIndexName, combinedQuery);
+            
             // Build search options
             SearchOptions searchOptions = buildOptions(0, 1000, sortFields);
             
@@ -297,9 +381,12 @@ public class FtsSearchService {
             logger.debug("🔍 FTS search on {} returned {} document keys in {} ms (serverExec: {} ms, networkOverhead: {} ms)", 
                        fullIndexName, documentKeys.size(), ftsElapsedTime, serverExecutionTime, networkOverhead);
             
+            long totalRows = searchResult.metaData().metrics().totalRows();
+            countCache.put(countKey, totalRows);
+            
             return new FtsSearchResult(
                 documentKeys,
-                searchResult.metaData().metrics().totalRows(),
+                totalRows,
                 serverExecutionTime
             );
             
@@ -316,11 +403,18 @@ public class FtsSearchService {
         private final List<String> documentKeys;
         private final long totalCount;
         private final long executionTimeMs;
+        private final List<List<String>> sortValues;
         
         public FtsSearchResult(List<String> documentKeys, long totalCount, long executionTimeMs) {
+            this(documentKeys, totalCount, executionTimeMs, null);
+        }
+        
+        public FtsSearchResult(List<String> documentKeys, long totalCount, long executionTimeMs,
+                               List<List<String>> sortValues) {
             this.documentKeys = documentKeys;
             this.totalCount = totalCount;
             this.executionTimeMs = executionTimeMs;
+            this.sortValues = sortValues;
         }
         
         public List<String> getDocumentKeys() {
@@ -335,6 +429,16 @@ public class FtsSearchService {
             return executionTimeMs;
         }
         
+        /**
+         * Sort values of the hit at index (usable as search_after), or null if the search was unsorted.
+         */
+        public List<String> getSortValues(int index) {
+            if (sortValues == null || index < 0 || index >= sortValues.size()) {
+                return null;
+            }
+            return sortValues.get(index);
+        }
+        
         public boolean isEmpty() {
             return documentKeys.isEmpty();
         }
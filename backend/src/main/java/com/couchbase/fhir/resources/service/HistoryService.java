@@ -4,153 +4,153 @@ import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.parser.JsonParser;
 import ca.uhn.fhir.parser.LenientErrorHandler;
 import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
-import com.couchbase.client.java.Cluster;
+import com.couchbase.client.core.error.DocumentNotFoundException;
 import com.couchbase.client.java.Collection;
-import com.couchbase.client.java.json.JsonObject;
-import com.couchbase.client.java.kv.GetOptions;
+import com.couchbase.client.java.codec.RawJsonTranscoder;
 import com.couchbase.client.java.kv.GetResult;
-import com.couchbase.client.java.search.SearchQuery;
-import com.couchbase.client.java.search.sort.SearchSort;
+import com.couchbase.fhir.resources.config.BundleFastpathProperties;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonToken;
+import org.hl7.fhir.r4.model.IdType;
 import org.hl7.fhir.r4.model.Resource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.time.Duration;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.time.OffsetDateTime;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Service for handling FHIR resource version history operations.
- * 
+ *
  * Implements:
  * - GET {resourceType}/{id}/_history/{vid} - Get specific version (KV operation)
- * - GET {resourceType}/{id}/_history - Get all versions (returns List<Resource> for HAPI)
- * 
- * Strategy:
- * 1. Specific version: Direct KV GET from Versions collection with key {resourceType}/{id}/{vid}
- * 2. All versions: 
- *    - KV GET current version from resource collection
- *    - FTS search on Versions collection for all historical versions
- *    - Batch KV GET all version documents
- *    - Return list with proper IdType (HAPI handles bundle creation)
+ * - GET {resourceType}/{id}/_history - Get all versions (returns List<Resource> for HAPI, or raw bytes for fastpath)
+ *
+ * Strategy (KV only, no FTS):
+ * Every update copies the previous version to the Versions collection as {resourceType}/{id}/{vid}
+ * (see PutService.copyExistingResourceToVersions), so the current meta.versionId gives the whole key range.
+ * 1. Specific version: KV GET {resourceType}/{id}/{vid} from Versions; the current version lives only in
+ *    the resource collection, so a miss falls back to the current document when its versionId matches
+ * 2. All versions:
+ *    - KV GET current version from resource collection (gives n = meta.versionId)
+ *    - Batch KV GET {id}/n-1 .. {id}/1 from Versions, newest first, only as many as the page needs
+ *    - _since stops the walk at the first version whose meta.lastUpdated is older (versions are monotonic)
+ *
+ * History latency therefore no longer depends on ftsVersions indexing lag or load.
  */
 @Service
 public class HistoryService {
-    
+
     private static final Logger logger = LoggerFactory.getLogger(HistoryService.class);
     private static final String DEFAULT_SCOPE = "Resources";
     private static final String VERSIONS_COLLECTION = "Versions";
-    private static final String VERSIONS_FTS_INDEX = "ftsVersions";
     private static final int DEFAULT_HISTORY_PAGE_SIZE = 50;
     private static final int MAX_HISTORY_SIZE = 1000;
-    
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
     @Autowired
     private com.couchbase.fhir.resources.gateway.CouchbaseGateway couchbaseGateway;
-    
+
     @Autowired
     private CollectionRoutingService collectionRoutingService;
-    
+
     @Autowired
     private FhirContext fhirContext;
-    
+
+    @Autowired
+    private KvFetchEngine kvFetchEngine;
+
+    @Autowired
+    private KvReadCoalescer readCoalescer;
+
+    @Autowired
+    private FastJsonBundleBuilder fastJsonBundleBuilder;
+
     @Autowired
-    private FtsSearchService ftsSearchService;
-    
+    private BundleFastpathProperties fastpathProperties;
+
+    /**
+     * meta.versionId / meta.lastUpdated of a stored document
+     */
+    static final class VersionMeta {
+        final int versionId;
+        final Instant lastUpdated;
+
+        VersionMeta(int versionId, Instant lastUpdated) {
+            this.versionId = versionId;
+            this.lastUpdated = lastUpdated;
+        }
+    }
+
+    public boolean isFastpathEnabled() {
+        return fastpathProperties.isEnabled() && fastpathProperties.isHistory();
+    }
+
     /**
      * Get a specific version of a resource (vread operation)
      * GET {resourceType}/{id}/_history/{vid}
-     * 
+     *
      * Uses direct KV operation on Versions collection with key: {resourceType}/{id}/{vid}
      */
     public Resource getResourceVersion(String resourceType, String id, String versionId, String bucketName) {
         logger.debug("📜 Getting specific version: {}/{} version {}", resourceType, id, versionId);
-        
+
+        // Key format in Versions collection: {resourceType}/{id}/{versionId}
+        String versionKey = resourceType + "/" + id + "/" + versionId;
+
         try {
-            String connectionName = "default";
-            Cluster cluster = couchbaseGateway.getClusterForTransaction(connectionName);
-            
-            // Key format in Versions collection: {resourceType}/{id}/{versionId}
-            String versionKey = resourceType + "/" + id + "/" + versionId;
-            
-            // Get from Versions collection
-            Collection collection = cluster.bucket(bucketName)
-                    .scope(DEFAULT_SCOPE)
-                    .collection(VERSIONS_COLLECTION);
-            
+            Collection versions = couchbaseGateway.getCollection("default", bucketName, DEFAULT_SCOPE, VERSIONS_COLLECTION);
             logger.debug("📜 KV GET: bucket={}, collection={}, key={}", bucketName, VERSIONS_COLLECTION, versionKey);
-            
-            GetResult result = collection.get(versionKey, 
-                GetOptions.getOptions().timeout(Duration.ofSeconds(10)));
-            JsonObject json = result.contentAsObject();
-            
-            // Parse into FHIR resource
-            JsonParser parser = (JsonParser) fhirContext.newJsonParser();
-            parser.setParserErrorHandler(new LenientErrorHandler().setErrorOnInvalidValue(false));
-            Resource resource = (Resource) parser.parseResource(json.toString());
-            
+
+            byte[] bytes = RequestFanOut.join(readCoalescer.get(versions, versionKey, null)).contentAs(byte[].class);
             logger.debug("✅ Retrieved version {}/{} v{}", resourceType, id, versionId);
-            return resource;
-            
+            return parseVersion(bytes, resourceType, id);
+
+        } catch (DocumentNotFoundException e) {
+            // Not archived yet - the current document holds the latest version
+            byte[] current = getCurrentBytes(resourceType, id, bucketName);
+            if (current != null && String.valueOf(readMeta(current).versionId).equals(versionId)) {
+                logger.debug("✅ Version {}/{} v{} is the current version", resourceType, id, versionId);
+                return parseVersion(current, resourceType, id);
+            }
         } catch (Exception e) {
             logger.error("❌ Failed to get version {}/{} v{}: {}", resourceType, id, versionId, e.getMessage());
-            throw new ResourceNotFoundException("Version not found: " + resourceType + "/" + id + "/_history/" + versionId);
         }
+        throw new ResourceNotFoundException("Version not found: " + resourceType + "/" + id + "/_history/" + versionId);
     }
-    
+
     /**
      * Get complete version history for a resource as a list (for HAPI @History annotation)
      * Returns List<Resource> with proper IdType including version - HAPI will create the bundle
-     * 
+     *
      * GET {resourceType}/{id}/_history
      */
     public List<Resource> getResourceHistoryResources(String resourceType, String id, Integer count,
                                                        Instant since, String bucketName) {
         logger.debug("📜 Getting history for {}/{} (count={}, since={})", resourceType, id, count, since);
-        
-        int pageSize = (count != null && count > 0) ? Math.min(count, MAX_HISTORY_SIZE) : DEFAULT_HISTORY_PAGE_SIZE;
-        
+
         try {
-            // Step 1: Get current version from resource collection
-            Resource currentResource = getCurrentResource(resourceType, id, bucketName);
-            List<Resource> result = new ArrayList<>();
-            
-            // Add current version with proper versioned IdType
-            if (currentResource.getMeta() != null && currentResource.getMeta().getVersionId() != null) {
-                String versionId = currentResource.getMeta().getVersionId();
-                currentResource.setId(new org.hl7.fhir.r4.model.IdType(resourceType, id, versionId));
-                result.add(currentResource);
-            }
-            
-            // Step 2: Get historical versions from Versions collection
-            List<String> historicalKeys = searchHistoricalVersions(resourceType, id, since, bucketName);
-            
-            logger.debug("📜 Found {} historical versions for {}/{}", historicalKeys.size(), resourceType, id);
-            
-            // Limit if needed
-            if (historicalKeys.size() > pageSize - result.size()) {
-                historicalKeys = historicalKeys.subList(0, Math.max(0, pageSize - result.size()));
-            }
-            
-            // Step 3: Fetch and add historical versions
-            if (!historicalKeys.isEmpty()) {
-                List<Resource> historical = fetchVersionDocuments(historicalKeys, resourceType, id, bucketName);
-                for (Resource r : historical) {
-                    String versionId = r.getMeta() != null ? r.getMeta().getVersionId() : null;
-                    if (versionId != null) {
-                        r.setId(new org.hl7.fhir.r4.model.IdType(resourceType, id, versionId));
-                    }
-                }
-                result.addAll(historical);
+            Map<Integer, byte[]> versions = collectVersions(resourceType, id, count, since, bucketName);
+
+            List<Resource> result = new ArrayList<>(versions.size());
+            for (byte[] bytes : versions.values()) {
+                result.add(parseVersion(bytes, resourceType, id));
             }
-            
+
             logger.debug("✅ Returning {} versions for {}/{}", result.size(), resourceType, id);
             return result;
-            
+
         } catch (ResourceNotFoundException e) {
             throw e;
         } catch (Exception e) {
@@ -158,124 +158,162 @@ public class HistoryService {
             throw new RuntimeException("Failed to retrieve resource history: " + e.getMessage(), e);
         }
     }
-    
+
     /**
-     * Get current resource from main collection
+     * FASTPATH: complete version history as a history Bundle built from raw KV bytes (no parsing)
+     *
+     * GET {resourceType}/{id}/_history
      */
-    private Resource getCurrentResource(String resourceType, String id, String bucketName) {
+    public byte[] getResourceHistoryAsBytes(String resourceType, String id, Integer count, Instant since,
+                                            String bucketName, String selfUrl, String baseUrl) {
+        logger.debug("🚀 FASTPATH: Getting history for {}/{} (count={}, since={})", resourceType, id, count, since);
+
         try {
-            String connectionName = "default";
-            Cluster cluster = couchbaseGateway.getClusterForTransaction(connectionName);
-            
-            String documentKey = resourceType + "/" + id;
-            String targetCollection = collectionRoutingService.getTargetCollection(resourceType);
-            
-            Collection collection = cluster.bucket(bucketName)
-                    .scope(DEFAULT_SCOPE)
-                    .collection(targetCollection);
-            
-            GetResult result = collection.get(documentKey, 
-                GetOptions.getOptions().timeout(Duration.ofSeconds(10)));
-            JsonObject json = result.contentAsObject();
-            
-            JsonParser parser = (JsonParser) fhirContext.newJsonParser();
-            parser.setParserErrorHandler(new LenientErrorHandler().setErrorOnInvalidValue(false));
-            Resource resource = (Resource) parser.parseResource(json.toString());
-            
-            return resource;
-            
+            Map<Integer, byte[]> versions = collectVersions(resourceType, id, count, since, bucketName);
+            return fastJsonBundleBuilder.buildHistoryBundle(resourceType, id, versions, selfUrl, baseUrl, Instant.now());
+
+        } catch (ResourceNotFoundException e) {
+            throw e;
         } catch (Exception e) {
+            logger.error("❌ Failed to get history for {}/{}: {}", resourceType, id, e.getMessage());
+            throw new RuntimeException("Failed to retrieve resource history: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Collect raw JSON of the current version and its predecessors, newest first, keyed by versionId.
+     * Archived versions missing from Versions (e.g. a failed copy) are skipped.
+     */
+    private Map<Integer, byte[]> collectVersions(String resourceType, String id, Integer count,
+                                                 Instant since, String bucketName) {
+        int pageSize = (count != null && count > 0) ? Math.min(count, MAX_HISTORY_SIZE) : DEFAULT_HISTORY_PAGE_SIZE;
+        Map<Integer, byte[]> result = new LinkedHashMap<>();
+
+        // Step 1: Get current version from resource collection
+        byte[] current = getCurrentBytes(resourceType, id, bucketName);
+        if (current == null) {
             logger.error("❌ Current resource not found: {}/{}", resourceType, id);
             throw new ResourceNotFoundException("Resource not found: " + resourceType + "/" + id);
         }
+        VersionMeta currentMeta = readMeta(current);
+        if (isBefore(currentMeta, since)) {
+            return result;  // Nothing changed since then
+        }
+        result.put(currentMeta.versionId, current);
+
+        // Step 2: Walk {id}/n-1 .. {id}/1 in Versions, fetching only what the page still needs
+        Collection versions = couchbaseGateway.getCollection("default", bucketName, DEFAULT_SCOPE, VERSIONS_COLLECTION);
+        int next = currentMeta.versionId - 1;
+        while (next >= 1 && result.size() < pageSize) {
+            int window = Math.min(pageSize - result.size(), next);
+            List<String> keys = new ArrayList<>(window);
+            for (int v = next; v > next - window; v--) {
+                keys.add(resourceType + "/" + id + "/" + v);
+            }
+
+            KvFetchEngine.KvFetch fetch = kvFetchEngine.fetch(versions, keys, RawJsonTranscoder.INSTANCE);
+            for (int i = 0; i < keys.size(); i++) {
+                byte[] bytes = awaitBytes(fetch, i, keys.get(i));
+                if (bytes == null) {
+                    continue;
+                }
+                if (since != null && isBefore(readMeta(bytes), since)) {
+                    logger.debug("📜 {}/{} v{} predates _since, stopping", resourceType, id, next - i);
+                    return result;
+                }
+                result.put(next - i, bytes);
+            }
+            next -= window;
+        }
+
+        logger.debug("📜 Collected {} versions for {}/{} (current v{})", result.size(), resourceType, id, currentMeta.versionId);
+        return result;
     }
-    
+
     /**
-     * Search for historical versions in Versions collection using FTS
+     * Current document as raw JSON, or null if it does not exist
      */
-    private List<String> searchHistoricalVersions(String resourceType, String id, Instant since, String bucketName) {
+    private byte[] getCurrentBytes(String resourceType, String id, String bucketName) {
+        String targetCollection = collectionRoutingService.getTargetCollection(resourceType);
+        Collection collection = couchbaseGateway.getCollection("default", bucketName, DEFAULT_SCOPE, targetCollection);
         try {
-            // Build FTS query: match resourceType AND match id
-            List<SearchQuery> ftsQueries = new ArrayList<>();
-            ftsQueries.add(SearchQuery.match(resourceType).field("resourceType"));
-            ftsQueries.add(SearchQuery.match(id).field("id"));
-            
-            // Add date range filter if _since parameter provided
-            if (since != null) {
-                String sinceStr = since.toString();
-                ftsQueries.add(SearchQuery.dateRange()
-                    .start(sinceStr, true)
-                    .field("meta.lastUpdated"));
-            }
-            
-            // Sort by meta.lastUpdated descending (newest first)
-            List<SearchSort> sortFields = new ArrayList<>();
-            sortFields.add(SearchSort.byField("meta.lastUpdated").desc(true));
-            
-            // Execute FTS search to get all version keys
-            FtsSearchService.FtsSearchResult ftsResult = ftsSearchService.searchForAllKeysInCollection(
-                ftsQueries, VERSIONS_FTS_INDEX, sortFields, bucketName);
-            
-            return ftsResult.getDocumentKeys();
-            
+            return RequestFanOut.join(readCoalescer.get(collection, resourceType + "/" + id, null)).contentAs(byte[].class);
+        } catch (DocumentNotFoundException e) {
+            return null;
+        }
+    }
+
+    private byte[] awaitBytes(KvFetchEngine.KvFetch fetch, int index, String key) {
+        try {
+            GetResult result = fetch.await(index);
+            return result != null ? result.contentAs(byte[].class) : null;
         } catch (Exception e) {
-            logger.warn("📜 FTS search for historical versions failed (returning empty): {}", e.getMessage());
-            return new ArrayList<>();
+            Throwable cause = e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof DocumentNotFoundException) {
+                logger.debug("📜 Historical version {} not in Versions, skipping", key);
+            } else {
+                logger.warn("📜 Failed to fetch historical version {}: {}", key, cause.getMessage());
+            }
+        } finally {
+            fetch.release(index);
         }
+        return null;
     }
-    
+
     /**
-     * Fetch version documents using batch KV operations
-     * Handles both current versions (simple key) and historical versions (key with version suffix)
+     * Parse a stored version and give it a versioned IdType
      */
-    private List<Resource> fetchVersionDocuments(List<String> versionKeys, String resourceType, 
-                                                 String id, String bucketName) {
-        List<Resource> resources = new ArrayList<>();
-        
-        try {
-            String connectionName = "default";
-            Cluster cluster = couchbaseGateway.getClusterForTransaction(connectionName);
-            
-            // Fetch historical versions from Versions collection
-            Collection versionsCollection = cluster.bucket(bucketName)
-                    .scope(DEFAULT_SCOPE)
-                    .collection(VERSIONS_COLLECTION);
-            
-            List<CompletableFuture<GetResult>> futures = new ArrayList<>();
-            for (String key : versionKeys) {
-                CompletableFuture<GetResult> future = versionsCollection.async().get(key,
-                    GetOptions.getOptions().timeout(Duration.ofSeconds(10)));
-                futures.add(future);
+    private Resource parseVersion(byte[] bytes, String resourceType, String id) {
+        JsonParser parser = (JsonParser) fhirContext.newJsonParser();
+        parser.setParserErrorHandler(new LenientErrorHandler().setErrorOnInvalidValue(false));
+        Resource resource = (Resource) parser.parseResource(
+            new InputStreamReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8));
+
+        String versionId = resource.getMeta() != null ? resource.getMeta().getVersionId() : null;
+        if (versionId != null) {
+            resource.setId(new IdType(resourceType, id, versionId));
+        }
+        return resource;
+    }
+
+    private static boolean isBefore(VersionMeta meta, Instant since) {
+        return since != null && meta.lastUpdated != null && meta.lastUpdated.isBefore(since);
+    }
+
+    /**
+     * Read meta.versionId / meta.lastUpdated with a streaming parser (the rest of the document is skipped).
+     * A missing versionId means version 1.
+     */
+    static VersionMeta readMeta(byte[] json) {
+        int versionId = 1;
+        Instant lastUpdated = null;
+        try (com.fasterxml.jackson.core.JsonParser parser = JSON_FACTORY.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return new VersionMeta(versionId, null);
             }
-            
-            // Wait for all to complete
-            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
-                .get(30, TimeUnit.SECONDS);
-            
-            // Parse results
-            JsonParser parser = (JsonParser) fhirContext.newJsonParser();
-            parser.setParserErrorHandler(new LenientErrorHandler().setErrorOnInvalidValue(false));
-            
-            for (int i = 0; i < futures.size(); i++) {
-                try {
-                    GetResult result = futures.get(i).get(1, TimeUnit.SECONDS);
-                    if (result != null) {
-                        JsonObject json = result.contentAsObject();
-                        Resource resource = (Resource) parser.parseResource(json.toString());
-                        resources.add(resource);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (!"meta".equals(field) || value != JsonToken.START_OBJECT) {
+                    parser.skipChildren();
+                    continue;
+                }
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String metaField = parser.currentName();
+                    parser.nextToken();
+                    if ("versionId".equals(metaField)) {
+                        versionId = Integer.parseInt(parser.getValueAsString());
+                    } else if ("lastUpdated".equals(metaField)) {
+                        lastUpdated = OffsetDateTime.parse(parser.getValueAsString()).toInstant();
+                    } else {
+                        parser.skipChildren();
                     }
-                } catch (Exception e) {
-                    logger.warn("📜 Failed to fetch historical version {}: {}", 
-                               versionKeys.get(i), e.getMessage());
                 }
+                break;
             }
-            
-            logger.debug("📜 Fetched {} version documents", resources.size());
-            return resources;
-            
-        } catch (Exception e) {
-            logger.error("❌ Failed to fetch version documents: {}", e.getMessage());
-            return resources;
+        } catch (IOException | RuntimeException e) {
+            logger.debug("📜 Could not read meta from stored document: {}", e.getMessage());
         }
+        return new VersionMeta(versionId, lastUpdated);
     }
 }
@@ -3,362 +3,282 @@ package com.couchbase.fhir.resources.service;
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.context.RuntimeSearchParam;
 import ca.uhn.fhir.model.api.Include;
-import com.couchbase.client.java.Cluster;
-import com.couchbase.client.java.json.JsonArray;
-import com.couchbase.client.java.query.QueryOptions;
-import com.couchbase.client.java.query.QueryResult;
+import com.couchbase.client.core.error.DocumentNotFoundException;
+import com.couchbase.client.java.Collection;
+import com.couchbase.client.java.kv.LookupInResult;
+import com.couchbase.client.java.kv.LookupInSpec;
+import com.couchbase.fhir.resources.util.FHIRPathParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 
 /**
- * N1QL-based reference extraction for _include parameters.
- * 
- * Efficiently extracts references from primary resources using server-side N1QL queries
- * instead of fetching full documents twice. Handles both simple fields and array fields.
- * Automatically filters out contained references (starting with '#') at the database level.
- * 
+ * KV sub-document reference extraction for _include parameters.
+ *
+ * The JSON paths holding each include's references are derived once per (resourceType, param)
+ * from RuntimeSearchParam.getPath(). For a page of primaries only those top-level fields are
+ * pulled with lookupIn through KvFetchEngine (sharing the request's KV window and the bucket lane
+ * with its gets), then walked and de-duplicated in memory - no query service hop, and no
+ * full-document fetch.
+ * Contained references (starting with '#') are dropped.
+ *
  * Example:
- * - Simple: resource.subject.reference
- * - Array:  ARRAY loc.location.reference FOR loc IN resource.location END
- * - Filtering: Excludes "#med123" (contained), includes "Medication/med123" (external)
+ * - Simple: subject → lookupIn("subject"), take .reference
+ * - Array:  participant.individual → lookupIn("participant"), take [*].individual.reference
+ * - Choice: (MedicationRequest.medication as Reference) → lookupIn("medicationReference")
  */
 @Service
 public class IncludeReferenceExtractor {
-    
+
     private static final Logger logger = LoggerFactory.getLogger(IncludeReferenceExtractor.class);
-    
+    private static final String DEFAULT_SCOPE = "Resources";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    // Sub-document API limit on specs per lookupIn
+    private static final int MAX_SPECS_PER_LOOKUP = 16;
+
     @Autowired
     private FhirContext fhirContext;
-    
+
     @Autowired
-    private com.couchbase.admin.connections.service.ConnectionService connectionService;
-    
+    private com.couchbase.fhir.resources.gateway.CouchbaseGateway couchbaseGateway;
+
     @Autowired
     private CollectionRoutingService collectionRoutingService;
-    
+
+    @Autowired
+    private KvFetchEngine kvFetchEngine;
+
+    private final Map<String, List<ReferencePath>> pathCache = new ConcurrentHashMap<>();
+
     /**
-     * Extract all references from primary resources for given _include parameters using N1QL.
-     * Uses CTE-based approach with global de-duplication and limiting.
-     * Automatically filters out contained references (starting with '#') at the database level.
-     * 
+     * JSON location of references for one include: a top-level field fetched with lookupIn,
+     * and the nested fields walked in memory (arrays are flattened at every level).
+     */
+    static final class ReferencePath {
+        final String topField;
+        final String[] nestedFields;
+
+        ReferencePath(String fieldPath) {
+            String[] segments = fieldPath.split("\\.");
+            this.topField = segments[0];
+            this.nestedFields = Arrays.copyOfRange(segments, 1, segments.length);
+        }
+
+        @Override
+        public String toString() {
+            return nestedFields.length == 0 ? topField : topField + "." + String.join(".", nestedFields);
+        }
+    }
+
+    /**
+     * Extract all references from primary resources for given _include parameters.
+     *
      * @param primaryKeys List of primary resource keys (e.g., ["Encounter/123", "Encounter/456"])
      * @param includes List of Include parameters (e.g., Encounter:subject, Encounter:participant)
      * @param primaryResourceType Primary resource type (e.g., "Encounter")
      * @param bucketName Couchbase bucket name
      * @param maxIncludeCount Maximum number of include resources to return (for bundle size limiting)
-     * @return Globally deduplicated and limited list of reference keys (e.g., ["Patient/abc", "Practitioner/def"]), 
-     *         excluding contained references like "#med123"
+     * @return De-duplicated and limited list of reference keys (e.g., ["Patient/abc", "Practitioner/def"])
+     *         in primary order, excluding contained references like "#med123"
      */
-    public List<String> extractReferences(List<String> primaryKeys, List<Include> includes, 
+    public List<String> extractReferences(List<String> primaryKeys, List<Include> includes,
                                          String primaryResourceType, String bucketName, int maxIncludeCount) {
-        
+
         if (primaryKeys == null || primaryKeys.isEmpty() || includes == null || includes.isEmpty()) {
             return Collections.emptyList();
         }
-        
-        logger.debug("🔍 N1QL: Extracting references for {} primaries with {} includes (limit={})", 
-                   primaryKeys.size(), includes.size(), maxIncludeCount);
-        
-        try {
-            // Build N1QL query with CTE-based global de-duplication
-            String n1qlQuery = buildReferenceExtractionQuery(primaryKeys, includes, primaryResourceType, bucketName, maxIncludeCount);
-            
-            logger.debug("🔍 N1QL Query:\n{}", n1qlQuery);
-            
-            // Execute N1QL query
-            Cluster cluster = connectionService.getConnection("default");
-            QueryResult result = cluster.query(n1qlQuery, QueryOptions.queryOptions().readonly(true));
-            
-            // Extract references from result (query returns single row with "references" array)
-            List<String> references = new ArrayList<>();
-            if (!result.rowsAsObject().isEmpty()) {
-                var row = result.rowsAsObject().get(0);
-                JsonArray refsArray = row.getArray("references");
-                if (refsArray != null) {
-                    for (int i = 0; i < refsArray.size(); i++) {
-                        String ref = refsArray.getString(i);
-                        if (ref != null && !ref.isEmpty()) {
-                            references.add(ref);
-                        }
-                    }
-                }
-            }
-            
-            logger.debug("🔍 N1QL: Extracted {} unique references (globally de-duplicated)", references.size());
-            
-            // Limit results in Java (array slicing in N1QL had compatibility issues)
-            if (references.size() > maxIncludeCount) {
-                logger.debug("🔍 N1QL: Limiting references from {} to {} (bundle size cap)", 
-                           references.size(), maxIncludeCount);
-                return references.subList(0, maxIncludeCount);
-            }
-            
-            return references;
-            
-        } catch (Exception e) {
-            logger.error("❌ N1QL reference extraction failed: {}", e.getMessage(), e);
-            // Fall back to empty list - caller can handle gracefully
-            return Collections.emptyList();
-        }
-    }
-    
-    /**
-     * Build N1QL query to extract references from primary resources using CTE-based approach.
-     * This provides global de-duplication across all primary documents.
-     * Filters out contained references (starting with '#') at the database level.
-     * Limiting is done in Java after retrieval.
-     * 
-     * Uses CollectionRoutingService to get the actual collection name (e.g., QuestionnaireResponse → General)
-     * 
-     * Example output:
-     * WITH per AS (
-     *   SELECT ARRAY_DISTINCT(ARRAY_FLATTEN([
-     *     [resource.subject.reference],
-     *     ARRAY par.individual.reference FOR par IN resource.participant WHEN par.individual.reference IS VALUED END,
-     *     ARRAY loc.location.reference FOR loc IN resource.location WHEN loc.location.reference IS VALUED END
-     *   ], 1)) AS refs
-     *   FROM `acme`.`Resources`.`Encounter` AS resource
-     *   USE KEYS ['Encounter/key1', 'Encounter/key2']
-     * )
-     * SELECT ARRAY_AGG(DISTINCT r) AS references
-     * FROM per
-     * UNNEST per.refs AS r
-     * WHERE r NOT LIKE '#%'
-     */
-    private String buildReferenceExtractionQuery(List<String> primaryKeys, List<Include> includes,
-                                                 String primaryResourceType, String bucketName, int maxIncludeCount) {
-        
-        StringBuilder query = new StringBuilder();
-        
-        // Start CTE
-        query.append("WITH per AS (\n");
-        query.append("  SELECT ARRAY_DISTINCT(ARRAY_FLATTEN([\n");
-        
-        List<String> fieldExpressions = new ArrayList<>();
-        
+
+        // Step 1: Resolve reference paths (compiled once per resource type/param)
+        List<ReferencePath> paths = new ArrayList<>();
         for (Include include : includes) {
-            String paramName = include.getParamName();  // e.g., "subject", "participant", "location"
-            
-            // Get HAPI search parameter to determine field structure
-            RuntimeSearchParam searchParam = fhirContext
-                    .getResourceDefinition(primaryResourceType)
-                    .getSearchParam(paramName);
-            
-            if (searchParam == null) {
-                logger.warn("⚠️  Unknown include parameter: {}", paramName);
-                continue;
-            }
-            
-            String path = searchParam.getPath();  // e.g., "Encounter.subject", "Encounter.participant.individual"
-            
-            // Determine if this is an array field by checking HAPI metadata
-            boolean isArray = isArrayField(primaryResourceType, paramName, path);
-            
-            // Build appropriate N1QL expression with WHEN IS VALUED filter for arrays
-            String expression = buildFieldExpressionWithFilter(paramName, path, primaryResourceType, isArray);
-            fieldExpressions.add(expression);
-            
-            logger.debug("🔍 Include '{}' → {} (array={})", paramName, expression, isArray);
+            paths.addAll(resolveReferencePaths(primaryResourceType, include.getParamName()));
         }
-        
-        if (fieldExpressions.isEmpty()) {
-            logger.warn("⚠️  No valid include parameters found, returning empty query");
-            return null;
+        if (paths.isEmpty()) {
+            logger.warn("⚠️  No valid include parameters found for {}", primaryResourceType);
+            return Collections.emptyList();
         }
-        
-        // Join all field expressions with commas
-        query.append("    ").append(String.join(",\n    ", fieldExpressions));
-        
-        query.append("\n  ], 1)) AS refs\n");
-        
-        // Get actual collection name (e.g., "QuestionnaireResponse" → "General")
+
+        List<String> topFields = paths.stream().map(p -> p.topField).distinct().toList();
+        logger.debug("🔍 KV: Extracting references for {} primaries via lookupIn {} (limit={})",
+                   primaryKeys.size(), topFields, maxIncludeCount);
+
+        // Step 2: lookupIn the top-level fields of every primary (windowed by the KV fetch engine)
         String targetCollection = collectionRoutingService.getTargetCollection(primaryResourceType);
-        query.append("  FROM `").append(bucketName).append("`.`Resources`.`").append(targetCollection).append("` AS resource\n");
-        query.append("  USE KEYS [");
-        
-        // Add primary keys
-        for (int i = 0; i < primaryKeys.size(); i++) {
-            query.append("'").append(primaryKeys.get(i)).append("'");
-            if (i < primaryKeys.size() - 1) {
-                query.append(", ");
+        Collection collection = couchbaseGateway.getCollection("default", bucketName, DEFAULT_SCOPE, targetCollection);
+        List<Map<String, JsonNode>> fieldsByPrimary = lookupFields(collection, primaryKeys, topFields);
+
+        // Step 3: Walk nested fields and de-duplicate in memory (primary order, then include order)
+        Set<String> references = new LinkedHashSet<>();
+        for (Map<String, JsonNode> fields : fieldsByPrimary) {
+            for (ReferencePath path : paths) {
+                JsonNode top = fields.get(path.topField);
+                if (top != null) {
+                    collectReferences(top, path.nestedFields, 0, references);
+                }
             }
+            if (references.size() >= maxIncludeCount) {
+                break;
+            }
+        }
+
+        List<String> result = new ArrayList<>(references);
+        logger.debug("🔍 KV: Extracted {} unique references", result.size());
+
+        if (result.size() > maxIncludeCount) {
+            logger.debug("🔍 KV: Limiting references from {} to {} (bundle size cap)", result.size(), maxIncludeCount);
+            return result.subList(0, maxIncludeCount);
         }
-        query.append("]\n");
-        query.append(")\n");
-        
-        // Global de-duplication with filtering (limiting done in Java after retrieval)
-        // Filter out contained references (starting with '#') - these don't need to be fetched
-        query.append("SELECT ARRAY_AGG(DISTINCT r) AS references\n");
-        query.append("FROM per\n");
-        query.append("UNNEST per.refs AS r\n");
-        query.append("WHERE r NOT LIKE '#%'");
-        
-        return query.toString();
+        return result;
     }
-    
+
     /**
-     * Build N1QL field expression with WHEN IS VALUED filter for arrays.
-     * Handles FHIR choice types (e.g., "medication as Reference" → "medicationReference").
-     * 
-     * Simple field: [resource.subject.reference]
-     * Choice type:  [resource.medicationReference.reference] (for "medication as Reference")
-     * Array field:  ARRAY item.individual.reference FOR item IN resource.participant WHEN item.individual.reference IS VALUED END
+     * Extract the references held by one reference search parameter, per primary resource
+     * (used by chained searches to intersect primaries with a target set).
+     *
+     * @return one set per primary key, in key order (empty when the document is missing)
      */
-    private String buildFieldExpressionWithFilter(String paramName, String path, String resourceType, boolean isArray) {
-        // Extract field path from HAPI path (e.g., "Encounter.subject" → "subject")
-        String fieldPath = extractFieldPath(path, resourceType);
-        
-        // Handle FHIR choice types: "medication as Reference" → "medicationReference"
-        fieldPath = handleChoiceTypeReference(fieldPath);
-        
-        if (isArray) {
-            // Array field: ARRAY item.{remainingPath}.reference FOR item IN resource.{arrayField} WHEN ... IS VALUED END
-            // Example: "participant.individual" → iterate over "participant", access "individual.reference"
-            String[] pathSegments = fieldPath.split("\\.");
-            String arrayField = pathSegments[0];  // First segment is the array (e.g., "participant")
-            
-            // Remaining path after array field (e.g., "individual" for "participant.individual")
-            String remainingPath = pathSegments.length > 1 ? 
-                String.join(".", Arrays.copyOfRange(pathSegments, 1, pathSegments.length)) : "";
-            
-            String iteratorVar = paramName.substring(0, Math.min(3, paramName.length()));  // Short variable name
-            
-            if (remainingPath.isEmpty()) {
-                // Simple array: ARRAY item.reference FOR item IN resource.location WHEN item.reference IS VALUED END
-                return String.format("ARRAY %s.reference FOR %s IN resource.%s WHEN %s.reference IS VALUED END", 
-                                   iteratorVar, iteratorVar, arrayField, iteratorVar);
-            } else {
-                // Nested array: ARRAY item.individual.reference FOR item IN resource.participant WHEN item.individual.reference IS VALUED END
-                return String.format("ARRAY %s.%s.reference FOR %s IN resource.%s WHEN %s.%s.reference IS VALUED END", 
-                                   iteratorVar, remainingPath, iteratorVar, arrayField, iteratorVar, remainingPath);
+    public List<Set<String>> extractReferencesPerPrimary(List<String> primaryKeys, String paramName,
+                                                         String primaryResourceType, String bucketName) {
+        List<ReferencePath> paths = resolveReferencePaths(primaryResourceType, paramName);
+        if (primaryKeys == null || primaryKeys.isEmpty() || paths.isEmpty()) {
+            return Collections.nCopies(primaryKeys == null ? 0 : primaryKeys.size(), Set.of());
+        }
+
+        List<String> topFields = paths.stream().map(p -> p.topField).distinct().toList();
+        String targetCollection = collectionRoutingService.getTargetCollection(primaryResourceType);
+        Collection collection = couchbaseGateway.getCollection("default", bucketName, DEFAULT_SCOPE, targetCollection);
+
+        List<Set<String>> result = new ArrayList<>(primaryKeys.size());
+        for (Map<String, JsonNode> fields : lookupFields(collection, primaryKeys, topFields)) {
+            Set<String> references = new LinkedHashSet<>();
+            for (ReferencePath path : paths) {
+                JsonNode top = fields.get(path.topField);
+                if (top != null) {
+                    collectReferences(top, path.nestedFields, 0, references);
+                }
             }
-        } else {
-            // Simple field: [resource.field.reference]
-            return String.format("[resource.%s.reference]", fieldPath);
+            result.add(references);
         }
+        return result;
     }
-    
+
     /**
-     * Determine if a field is an array by checking HAPI FHIRPath expression.
-     * 
-     * HAPI provides paths like:
-     * - Simple: "Encounter.subject" (single reference)
-     * - Array: "Encounter.participant.individual" (participant is array, individual is nested reference)
-     * 
-     * If the path has more than 2 segments (ResourceType.field.subfield), the middle segment is typically an array.
+     * Derive the JSON paths of an include's references from the HAPI search parameter path.
+     * Unions keep only alternatives for this resource type; .where(resolve() is X) and
+     * "as Reference" casts are handled by FHIRPathParser.
      */
-    private boolean isArrayField(String resourceType, String paramName, String path) {
-        try {
-            if (path == null || path.isEmpty()) {
-                return false;
+    List<ReferencePath> resolveReferencePaths(String resourceType, String paramName) {
+        return pathCache.computeIfAbsent(resourceType + "|" + paramName, k -> {
+            RuntimeSearchParam searchParam = fhirContext.getResourceDefinition(resourceType).getSearchParam(paramName);
+            if (searchParam == null || searchParam.getPath() == null || searchParam.getPath().isBlank()) {
+                logger.warn("⚠️  Unknown include parameter: {}:{}", resourceType, paramName);
+                return List.of();
             }
-            
-            // Split path into segments
-            String[] segments = path.split("\\.");
-            
-            // Pattern detection:
-            // - "Encounter.subject" (2 segments) → simple field
-            // - "Encounter.participant.individual" (3 segments) → participant is array
-            // - "Encounter.location.location" (3 segments, repeated) → location is array
-            
-            if (segments.length > 2) {
-                // Middle segment(s) indicate array structure
-                logger.debug("🔍 Detected array field from path structure: {} (segments={})", path, segments.length);
-                return true;
+
+            List<ReferencePath> paths = new ArrayList<>();
+            for (String alternative : searchParam.getPath().split("\\s*\\|\\s*")) {
+                String trimmed = alternative.trim();
+                String unwrapped = trimmed.startsWith("(") ? trimmed.substring(1) : trimmed;
+                if (!unwrapped.startsWith(resourceType + ".")) {
+                    continue;  // Shared parameter expression for another resource type
+                }
+                String fieldPath = FHIRPathParser.parse(trimmed).getPrimaryFieldPath();
+                if (fieldPath != null && !fieldPath.isEmpty() && !fieldPath.contains("(")) {
+                    paths.add(new ReferencePath(fieldPath));
+                }
             }
-            
-            return false;
-            
-        } catch (Exception e) {
-            logger.debug("Failed to determine if field is array: {}", e.getMessage());
-            return false;  // Default to simple field
-        }
+            logger.debug("🔍 Include '{}:{}' → {} (path: {})", resourceType, paramName, paths, searchParam.getPath());
+            return List.copyOf(paths);
+        });
     }
-    
+
     /**
-     * Handle FHIR choice type references by converting "field as Reference" to "fieldReference".
-     * 
-     * FHIR choice types like medication[x] can be:
-     * - medicationReference (Reference)
-     * - medicationCodeableConcept (CodeableConcept)
-     * 
-     * HAPI returns paths like "(MedicationRequest.medication as Reference)" 
-     * which needs to be converted to "medicationReference" for N1QL queries.
-     * 
-     * Examples:
-     * - "medication as Reference" → "medicationReference"
-     * - "reported as Reference" → "reportedReference"
-     * - "subject" (no "as") → "subject" (unchanged)
-     * 
-     * @param fieldPath The field path extracted from HAPI (may contain "as Reference")
-     * @return The corrected field path for JSON access
+     * lookupIn the given top-level fields for each key. Results are in key order; missing
+     * documents (deleted since the search) and absent fields contribute nothing. Any other
+     * failure (timeout, circuit open, node down) fails the search rather than silently
+     * dropping includes.
      */
-    private String handleChoiceTypeReference(String fieldPath) {
-        if (fieldPath == null || fieldPath.isEmpty()) {
-            return fieldPath;
+    private List<Map<String, JsonNode>> lookupFields(Collection collection, List<String> keys, List<String> topFields) {
+        List<List<String>> specGroups = new ArrayList<>();
+        List<KvFetchEngine.KvLookup> lookups = new ArrayList<>();
+        for (int i = 0; i < topFields.size(); i += MAX_SPECS_PER_LOOKUP) {
+            List<String> group = topFields.subList(i, Math.min(i + MAX_SPECS_PER_LOOKUP, topFields.size()));
+            specGroups.add(group);
+            lookups.add(kvFetchEngine.lookupIn(collection, keys,
+                                               group.stream().<LookupInSpec>map(LookupInSpec::get).toList()));
         }
-        
-        // Check for " as Reference" pattern (with space before "as")
-        // Example: "medication as Reference" or "(medication as Reference)"
-        if (fieldPath.contains(" as Reference")) {
-            // Remove parentheses if present
-            String cleaned = fieldPath.replace("(", "").replace(")", "").trim();
-            
-            // Extract the field name before " as Reference"
-            int asIndex = cleaned.indexOf(" as Reference");
-            if (asIndex > 0) {
-                String baseFieldName = cleaned.substring(0, asIndex).trim();
-                
-                // Handle nested paths (e.g., "encounter.diagnosis as Reference")
-                if (baseFieldName.contains(".")) {
-                    String[] parts = baseFieldName.split("\\.");
-                    // Append "Reference" to the last segment only
-                    parts[parts.length - 1] = parts[parts.length - 1] + "Reference";
-                    String result = String.join(".", parts);
-                    logger.debug("🔍 Choice type: '{}' → '{}' (nested)", fieldPath, result);
-                    return result;
-                } else {
-                    // Simple field: append "Reference"
-                    String result = baseFieldName + "Reference";
-                    logger.debug("🔍 Choice type: '{}' → '{}'", fieldPath, result);
-                    return result;
+
+        List<Map<String, JsonNode>> results = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.get(i);
+            Map<String, JsonNode> fields = new HashMap<>();
+            for (int g = 0; g < specGroups.size(); g++) {
+                LookupInResult result;
+                try {
+                    result = lookups.get(g).await(i);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    if (cause instanceof DocumentNotFoundException) {
+                        logger.debug("🔍 {} no longer exists, no references", key);
+                        break;
+                    }
+                    logger.warn("⚠️  lookupIn failed for {}: {}", key, cause.getMessage());
+                    throw new RuntimeException("Failed to read references of " + key + ": " + cause.getMessage(), cause);
+                } catch (Exception e) {
+                    logger.warn("⚠️  lookupIn failed for {}: {}", key, e.getMessage());
+                    throw new RuntimeException("Failed to read references of " + key + ": " + e.getMessage(), e);
                 }
+                List<String> group = specGroups.get(g);
+                for (int s = 0; s < group.size(); s++) {
+                    if (result.exists(s)) {
+                        try {
+                            fields.put(group.get(s), MAPPER.readTree(result.contentAsBytes(s)));
+                        } catch (IOException e) {
+                            throw new RuntimeException("Invalid JSON in " + key + "." + group.get(s), e);
+                        }
+                    }
+                }
+            }
+            for (KvFetchEngine.KvLookup lookup : lookups) {
+                lookup.release(i);
             }
+            results.add(fields);
         }
-        
-        // No "as Reference" found - return as-is
-        return fieldPath;
+        return results;
     }
-    
+
     /**
-     * Extract field path from HAPI path.
-     * 
-     * Example: "Encounter.subject" → "subject"
-     *          "Encounter.participant.individual" → "participant.individual"
-     *          "(MedicationRequest.medication as Reference)" → "medication as Reference"
+     * Walk nestedFields from node (flattening arrays) and collect non-contained .reference values
      */
-    private String extractFieldPath(String hapiPath, String resourceType) {
-        if (hapiPath == null) {
-            return "";
+    static void collectReferences(JsonNode node, String[] nestedFields, int depth, Set<String> out) {
+        if (node == null || node.isNull()) {
+            return;
         }
-        
-        // Handle parenthetical expressions like "(MedicationRequest.medication as Reference)"
-        String cleaned = hapiPath.trim();
-        if (cleaned.startsWith("(") && cleaned.endsWith(")")) {
-            cleaned = cleaned.substring(1, cleaned.length() - 1).trim();
+        if (node.isArray()) {
+            for (JsonNode item : node) {
+                collectReferences(item, nestedFields, depth, out);
+            }
+            return;
         }
-        
-        // Remove resource type prefix
-        String prefix = resourceType + ".";
-        if (cleaned.startsWith(prefix)) {
-            return cleaned.substring(prefix.length());
+        if (depth < nestedFields.length) {
+            collectReferences(node.get(nestedFields[depth]), nestedFields, depth + 1, out);
+            return;
+        }
+        JsonNode reference = node.get("reference");
+        if (reference != null && reference.isTextual()) {
+            String ref = reference.asText();
+            if (!ref.isEmpty() && !ref.startsWith("#")) {
+                out.add(ref);
+            }
         }
-        
-        return cleaned;
     }
 }
-
@@ -0,0 +1,501 @@
+package com.couchbase.fhir.resources.service;
+
+import com.couchbase.client.java.Collection;
+import com.couchbase.client.java.codec.RawJsonTranscoder;
+import com.couchbase.client.java.codec.Transcoder;
+import com.couchbase.client.java.kv.GetOptions;
+import com.couchbase.client.java.kv.GetResult;
+import com.couchbase.client.java.kv.LookupInOptions;
+import com.couchbase.client.java.kv.LookupInResult;
+import com.couchbase.client.java.kv.LookupInSpec;
+import com.couchbase.fhir.resources.config.KvFetchProperties;
+import com.couchbase.fhir.resources.config.TenantContextHolder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared, bounded-concurrency KV fetch engine.
+ *
+ * Instead of firing one async get (or sub-document lookupIn) per key with no limit, callers submit a
+ * batch of keys and the engine pipelines them through two windows:
+ * - per bucket: at most maxInFlightPerBucket gets outstanding against a bucket across all requests
+ * - per request: at most maxInFlightPerRequest gets outstanding for one request, across all of its
+ *   batches (a search page plus its _include/_revinclude fetches, every type of $everything, ...)
+ *
+ * The request window is a RequestWindow bound to the handling thread (FhirRestfulServer binds one
+ * per HTTP request, RequestFanOut carries it into its tasks). A batch submitted with no window bound
+ * gets one of its own. A batch whose request window is full is parked on the window and re-joins its
+ * lane when another get of the same request completes.
+ *
+ * Waiting work is served round-robin across tenants, then across that tenant's batches, so a
+ * single _count=500 or $everything request cannot starve everyone else.
+ *
+ * Each batch carries a deadline; a key's SDK timeout is whatever is left of it (capped at
+ * operationTimeoutMs) and keys still queued when it expires fail fast without touching the server.
+ *
+ * Raw JSON gets go through KvReadCoalescer, so identical keys requested by concurrent batches
+ * share one server round trip.
+ *
+ * Metrics: fhir.kv.fetch.queue (submit → dispatch) and fhir.kv.fetch.service (dispatch → response),
+ * plus a fhir.kv.fetch.inflight gauge, all tagged by bucket.
+ */
+@Service
+public class KvFetchEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(KvFetchEngine.class);
+
+    @Autowired
+    private KvFetchProperties properties;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private KvReadCoalescer readCoalescer;
+
+    private static final ThreadLocal<RequestWindow> CURRENT_WINDOW = new ThreadLocal<>();
+
+    private final ConcurrentHashMap<String, BucketLane> lanes = new ConcurrentHashMap<>();
+
+    /**
+     * A fresh request window sized by maxInFlightPerRequest, for binding with {@link #bindWindow}
+     */
+    public RequestWindow newRequestWindow() {
+        return new RequestWindow(Math.max(1, properties.getMaxInFlightPerRequest()));
+    }
+
+    /**
+     * The request window bound to the current thread, or null
+     */
+    public static RequestWindow currentWindow() {
+        return CURRENT_WINDOW.get();
+    }
+
+    /**
+     * Bind a request window to the current thread (null unbinds)
+     */
+    public static void bindWindow(RequestWindow window) {
+        if (window == null) {
+            CURRENT_WINDOW.remove();
+        } else {
+            CURRENT_WINDOW.set(window);
+        }
+    }
+
+    /**
+     * Submit a batch of KV gets. Futures are returned in the same order as documentKeys and
+     * complete as the engine dispatches and receives each document.
+     *
+     * @param transcoder optional transcoder (e.g. RawJsonTranscoder for fastpath), null for default JSON
+     */
+    public KvFetch fetch(Collection collection, List<String> documentKeys, Transcoder transcoder) {
+        KvOperation<GetResult> get;
+        if (transcoder == RawJsonTranscoder.INSTANCE) {
+            // Raw JSON reads share in-flight gets for hot keys (e.g. an _include target on many pages)
+            get = (key, timeout) -> readCoalescer.get(collection, key, timeout);
+        } else {
+            get = (key, timeout) -> {
+                GetOptions options = GetOptions.getOptions().timeout(timeout);
+                if (transcoder != null) {
+                    options.transcoder(transcoder);
+                }
+                return collection.async().get(key, options);
+            };
+        }
+        return new KvFetch(submit(collection, documentKeys, get));
+    }
+
+    /**
+     * Submit a batch of sub-document lookups (the same specs for every key), windowed and
+     * deadlined like {@link #fetch}. Futures are in documentKeys order.
+     */
+    public KvLookup lookupIn(Collection collection, List<String> documentKeys, List<LookupInSpec> specs) {
+        return new KvLookup(submit(collection, documentKeys, (key, timeout) ->
+            collection.async().lookupIn(key, specs, LookupInOptions.lookupInOptions().timeout(timeout))));
+    }
+
+    private <T> FetchBatch<T> submit(Collection collection, List<String> documentKeys, KvOperation<T> operation) {
+        RequestWindow window = currentWindow();
+        if (window == null) {
+            window = newRequestWindow();
+        }
+        BucketLane lane = lanes.computeIfAbsent(collection.bucketName(), this::createLane);
+        FetchBatch<T> batch = new FetchBatch<>(lane, documentKeys, operation, TenantContextHolder.getTenantId(),
+            System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(properties.getRequestDeadlineMs()), window);
+
+        if (!documentKeys.isEmpty()) {
+            lane.submit(batch);
+        }
+        return batch;
+    }
+
+    private BucketLane createLane(String bucketName) {
+        BucketLane lane = new BucketLane(bucketName, Math.max(1, properties.getMaxInFlightPerBucket()));
+        if (meterRegistry != null) {
+            lane.queueTimer = Timer.builder("fhir.kv.fetch.queue")
+                .description("Time a KV get waited for an in-flight slot")
+                .tags(Tags.of("bucket", bucketName))
+                .register(meterRegistry);
+            lane.serviceTimer = Timer.builder("fhir.kv.fetch.service")
+                .description("Time from KV get dispatch to response")
+                .tags(Tags.of("bucket", bucketName))
+                .register(meterRegistry);
+            meterRegistry.gauge("fhir.kv.fetch.inflight", Tags.of("bucket", bucketName), lane, BucketLane::inFlight);
+        }
+        logger.debug("🔑 KV fetch lane created for bucket {} (maxInFlight={})", bucketName, lane.maxInFlight);
+        return lane;
+    }
+
+    /**
+     * Handle returned to callers: ordered futures plus a deadline-aware wait.
+     */
+    public static class KvBatch<T> {
+        private static final long GRACE_NANOS = TimeUnit.SECONDS.toNanos(1);
+        private final FetchBatch<T> batch;
+
+        private KvBatch(FetchBatch<T> batch) {
+            this.batch = batch;
+        }
+
+        public List<CompletableFuture<T>> futures() {
+            return batch.results;
+        }
+
+        /**
+         * Wait for the result at index, no longer than the batch deadline.
+         */
+        public T await(int index) throws Exception {
+            long remaining = Math.max(0, batch.deadlineNanos - System.nanoTime()) + GRACE_NANOS;
+            return batch.results.get(index).get(remaining, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Wait for every document in the batch, no longer than the batch deadline.
+         */
+        public void awaitAll() throws Exception {
+            long remaining = Math.max(0, batch.deadlineNanos - System.nanoTime()) + GRACE_NANOS;
+            CompletableFuture.allOf(batch.results.toArray(new CompletableFuture[0]))
+                .get(remaining, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Drop the reference to a consumed result so it can be collected before the batch finishes.
+         */
+        public void release(int index) {
+            batch.results.set(index, null);
+        }
+
+        /**
+         * Longest time any key of the batch waited for a slot
+         */
+        public long getQueueMs() {
+            return TimeUnit.NANOSECONDS.toMillis(batch.maxQueueNanos.get());
+        }
+
+        public long getServiceMs() {
+            return TimeUnit.NANOSECONDS.toMillis(batch.serviceNanos.get());
+        }
+    }
+
+    public static final class KvFetch extends KvBatch<GetResult> {
+        private KvFetch(FetchBatch<GetResult> batch) {
+            super(batch);
+        }
+    }
+
+    public static final class KvLookup extends KvBatch<LookupInResult> {
+        private KvLookup(FetchBatch<LookupInResult> batch) {
+            super(batch);
+        }
+    }
+
+    /**
+     * One KV round trip for a key, with the SDK timeout left by the batch deadline
+     */
+    @FunctionalInterface
+    private interface KvOperation<T> {
+        CompletableFuture<T> start(String key, Duration timeout);
+    }
+
+    /**
+     * In-flight window shared by every batch of one request. Lock order: lane, then window; the
+     * window never takes a lane lock.
+     */
+    public static final class RequestWindow {
+        private final int maxInFlight;
+
+        // Guarded by this
+        private int inFlight;
+        private final List<FetchBatch<?>> parked = new ArrayList<>();
+
+        private RequestWindow(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+        }
+
+        /**
+         * Claim a slot for the batch, or park it until a slot of this request is released
+         */
+        synchronized boolean tryAcquire(FetchBatch<?> batch) {
+            if (inFlight < maxInFlight) {
+                inFlight++;
+                return true;
+            }
+            if (!parked.contains(batch)) {
+                parked.add(batch);
+            }
+            return false;
+        }
+
+        /**
+         * Release a slot; returns the parked batches, which the caller hands back to their lanes
+         */
+        synchronized List<FetchBatch<?>> release() {
+            inFlight--;
+            if (parked.isEmpty()) {
+                return List.of();
+            }
+            List<FetchBatch<?>> unparked = new ArrayList<>(parked);
+            parked.clear();
+            return unparked;
+        }
+
+        synchronized int inFlight() {
+            return inFlight;
+        }
+    }
+
+    private static final class FetchBatch<T> {
+        final BucketLane lane;
+        final List<String> keys;
+        final KvOperation<T> operation;
+        final String tenant;
+        final long submittedNanos = System.nanoTime();
+        final long deadlineNanos;
+        final RequestWindow window;
+        final List<CompletableFuture<T>> results;
+        final AtomicLong maxQueueNanos = new AtomicLong();
+        final AtomicLong serviceNanos = new AtomicLong();
+
+        // Guarded by the owning lane
+        int nextIndex;
+        int completed;
+        boolean queued;
+
+        FetchBatch(BucketLane lane, List<String> keys, KvOperation<T> operation, String tenant,
+                   long deadlineNanos, RequestWindow window) {
+            this.lane = lane;
+            this.keys = keys;
+            this.operation = operation;
+            this.tenant = tenant;
+            this.deadlineNanos = deadlineNanos;
+            this.window = window;
+            this.results = new ArrayList<>(keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                results.add(new CompletableFuture<>());
+            }
+        }
+
+        boolean hasPending() {
+            return nextIndex < keys.size();
+        }
+    }
+
+    private final class BucketLane {
+        final String bucketName;
+        final int maxInFlight;
+        Timer queueTimer;
+        Timer serviceTimer;
+
+        // Guarded by this
+        private int inFlight;
+        private final Map<String, ArrayDeque<FetchBatch<?>>> waitingByTenant = new LinkedHashMap<>();
+        private final ArrayDeque<String> tenantRing = new ArrayDeque<>();
+        private boolean pumping;
+        private boolean repump;
+
+        BucketLane(String bucketName, int maxInFlight) {
+            this.bucketName = bucketName;
+            this.maxInFlight = maxInFlight;
+        }
+
+        synchronized int inFlight() {
+            return inFlight;
+        }
+
+        void submit(FetchBatch<?> batch) {
+            synchronized (this) {
+                enqueue(batch);
+            }
+            pump();
+        }
+
+        /**
+         * Re-join a batch that was parked on its request window
+         */
+        void unpark(FetchBatch<?> batch) {
+            synchronized (this) {
+                if (batch.queued || !batch.hasPending()) {
+                    return;
+                }
+                enqueue(batch);
+            }
+            pump();
+        }
+
+        private void enqueue(FetchBatch<?> batch) {
+            ArrayDeque<FetchBatch<?>> queue = waitingByTenant.get(batch.tenant);
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                waitingByTenant.put(batch.tenant, queue);
+                tenantRing.addLast(batch.tenant);
+            }
+            queue.addLast(batch);
+            batch.queued = true;
+        }
+
+        /**
+         * Claim as many slots as both windows allow (under the lock), then dispatch outside it.
+         * Not re-entrant: gets that complete synchronously (coalesced/cached reads, fail-fast) release
+         * their slot from inside dispatch, so a nested call just asks the active pump to go round again
+         * instead of recursing once per key.
+         */
+        private void pump() {
+            synchronized (this) {
+                if (pumping) {
+                    repump = true;
+                    return;
+                }
+                pumping = true;
+            }
+            while (true) {
+                pumpOnce();
+                synchronized (this) {
+                    if (!repump) {
+                        pumping = false;
+                        return;
+                    }
+                    repump = false;
+                }
+            }
+        }
+
+        private void pumpOnce() {
+            List<FetchBatch<?>> batches = new ArrayList<>();
+            List<Integer> indexes = new ArrayList<>();
+
+            synchronized (this) {
+                while (inFlight < maxInFlight && !tenantRing.isEmpty()) {
+                    String tenant = tenantRing.pollFirst();
+                    ArrayDeque<FetchBatch<?>> queue = waitingByTenant.get(tenant);
+                    FetchBatch<?> batch = queue.pollFirst();
+
+                    boolean acquired = batch.hasPending() && batch.window.tryAcquire(batch);
+                    if (acquired) {
+                        batches.add(batch);
+                        indexes.add(batch.nextIndex++);
+                        inFlight++;
+                    }
+
+                    // Rotate: the batch goes to the back of its tenant queue if it can still dispatch,
+                    // otherwise it is parked on its request window until a get of that request completes
+                    if (acquired && batch.hasPending()) {
+                        queue.addLast(batch);
+                    } else {
+                        batch.queued = false;
+                    }
+                    if (queue.isEmpty()) {
+                        waitingByTenant.remove(tenant);
+                    } else {
+                        tenantRing.addLast(tenant);
+                    }
+                }
+            }
+
+            for (int i = 0; i < batches.size(); i++) {
+                dispatch(batches.get(i), indexes.get(i));
+            }
+        }
+
+        private <T> void dispatch(FetchBatch<T> batch, int index) {
+            long dispatchNanos = System.nanoTime();
+            long waited = dispatchNanos - batch.submittedNanos;
+            batch.maxQueueNanos.accumulateAndGet(waited, Math::max);
+            if (queueTimer != null) {
+                queueTimer.record(waited, TimeUnit.NANOSECONDS);
+            }
+
+            CompletableFuture<T> target = batch.results.get(index);
+            long remainingNanos = batch.deadlineNanos - dispatchNanos;
+            if (remainingNanos <= 0) {
+                target.completeExceptionally(new TimeoutException(
+                    "KV fetch deadline exceeded before dispatch: " + batch.keys.get(index)));
+                release(batch);
+                return;
+            }
+
+            Duration timeout = Duration.ofNanos(Math.min(remainingNanos,
+                TimeUnit.MILLISECONDS.toNanos(properties.getOperationTimeoutMs())));
+
+            CompletableFuture<T> future;
+            try {
+                future = batch.operation.start(batch.keys.get(index), timeout);
+            } catch (RuntimeException e) {
+                target.completeExceptionally(e);
+                release(batch);
+                return;
+            }
+
+            future.whenComplete((result, error) -> {
+                long service = System.nanoTime() - dispatchNanos;
+                batch.serviceNanos.addAndGet(service);
+                if (serviceTimer != null) {
+                    serviceTimer.record(service, TimeUnit.NANOSECONDS);
+                }
+                // Free the slot before completing so the caller's continuation sees a fresh window
+                release(batch);
+                if (error != null) {
+                    target.completeExceptionally(error);
+                } else {
+                    target.complete(result);
+                }
+            });
+        }
+
+        private void release(FetchBatch<?> batch) {
+            boolean finished;
+            synchronized (this) {
+                inFlight--;
+                batch.completed++;
+                finished = batch.completed == batch.keys.size();
+            }
+            // Outside the lane lock: parked batches may belong to other lanes
+            for (FetchBatch<?> unparked : batch.window.release()) {
+                unparked.lane.unpark(unparked);
+            }
+            if (finished && logger.isDebugEnabled()) {
+                logger.debug("🔑 KV fetch batch done: {} keys on {} (queue: {} ms max, service: {} ms total)",
+                    batch.keys.size(), bucketName,
+                    TimeUnit.NANOSECONDS.toMillis(batch.maxQueueNanos.get()),
+                    TimeUnit.NANOSECONDS.toMillis(batch.serviceNanos.get()));
+            }
+            pump();
+        }
+    }
+}
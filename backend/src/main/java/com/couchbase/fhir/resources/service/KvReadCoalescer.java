@@ -0,0 +1,149 @@
+package com.couchbase.fhir.resources.service;
+
+import com.couchbase.client.java.Collection;
+import com.couchbase.client.java.codec.RawJsonTranscoder;
+import com.couchbase.client.java.kv.GetOptions;
+import com.couchbase.client.java.kv.GetResult;
+import com.couchbase.fhir.resources.config.KvReadCoalescingProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single-flight layer for raw JSON KV gets.
+ *
+ * A popular Practitioner or Organization pulled in by _include on hundreds of concurrent searches
+ * would otherwise be fetched hundreds of times at the same moment. Concurrent gets for the same
+ * bucket/scope/collection/key share one in-flight future; the first caller's timeout applies.
+ *
+ * Optionally, completed reads are kept for a very short TTL. Writes call {@link #invalidate},
+ * which drops both the cached result and any in-flight read, and bumps a generation counter so
+ * a read that started before the write cannot repopulate the cache when it lands.
+ * Failed reads (including not found) are never cached.
+ */
+@Service
+public class KvReadCoalescer {
+
+    private static final Logger logger = LoggerFactory.getLogger(KvReadCoalescer.class);
+
+    @Autowired
+    private KvReadCoalescingProperties properties;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private final ConcurrentHashMap<String, CompletableFuture<GetResult>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong writeGeneration = new AtomicLong();
+    private Cache<String, GetResult> recent;
+    private Counter coalescedCounter;
+
+    @PostConstruct
+    void init() {
+        if (properties.isCacheEnabled()) {
+            recent = Caffeine.newBuilder()
+                .maximumSize(properties.getCacheMaximumSize())
+                .expireAfterWrite(Duration.ofMillis(properties.getCacheTtlMs()))
+                .build();
+        }
+        if (meterRegistry != null) {
+            coalescedCounter = Counter.builder("fhir.kv.coalesced")
+                .description("KV gets served by another caller's in-flight read or the short-TTL cache")
+                .register(meterRegistry);
+        }
+        logger.info("🔑 KV read coalescing: enabled={}, cache={} (ttl={} ms)",
+                    properties.isEnabled(), properties.isCacheEnabled(), properties.getCacheTtlMs());
+    }
+
+    /**
+     * Get a document with RawJsonTranscoder, joining an identical read already in flight.
+     *
+     * @param timeout per-get timeout, or null for the SDK default
+     */
+    public CompletableFuture<GetResult> get(Collection collection, String documentKey, Duration timeout) {
+        if (!properties.isEnabled()) {
+            return collection.async().get(documentKey, options(timeout));
+        }
+
+        String key = key(collection.bucketName(), collection.scopeName(), collection.name(), documentKey);
+
+        if (recent != null) {
+            GetResult cached = recent.getIfPresent(key);
+            if (cached != null) {
+                countCoalesced();
+                return CompletableFuture.completedFuture(cached);
+            }
+        }
+
+        CompletableFuture<GetResult> leader = new CompletableFuture<>();
+        CompletableFuture<GetResult> existing = inFlight.putIfAbsent(key, leader);
+        if (existing != null) {
+            countCoalesced();
+            return existing;
+        }
+
+        long generation = writeGeneration.get();
+        CompletableFuture<GetResult> read;
+        try {
+            read = collection.async().get(documentKey, options(timeout));
+        } catch (RuntimeException e) {
+            inFlight.remove(key, leader);
+            leader.completeExceptionally(e);
+            return leader;
+        }
+
+        read.whenComplete((result, error) -> {
+            // Unregister before completing so a caller arriving after completion issues a fresh read
+            inFlight.remove(key, leader);
+            if (error != null) {
+                leader.completeExceptionally(error);
+                return;
+            }
+            if (recent != null && writeGeneration.get() == generation) {
+                recent.put(key, result);
+            }
+            leader.complete(result);
+        });
+        return leader;
+    }
+
+    /**
+     * Forget any cached or in-flight read of a document that is being written.
+     */
+    public void invalidate(String bucketName, String scopeName, String collectionName, String documentKey) {
+        writeGeneration.incrementAndGet();
+        String key = key(bucketName, scopeName, collectionName, documentKey);
+        inFlight.remove(key);
+        if (recent != null) {
+            recent.invalidate(key);
+        }
+    }
+
+    private GetOptions options(Duration timeout) {
+        GetOptions options = GetOptions.getOptions().transcoder(RawJsonTranscoder.INSTANCE);
+        if (timeout != null) {
+            options.timeout(timeout);
+        }
+        return options;
+    }
+
+    private void countCoalesced() {
+        if (coalescedCounter != null) {
+            coalescedCounter.increment();
+        }
+    }
+
+    private static String key(String bucketName, String scopeName, String collectionName, String documentKey) {
+        return bucketName + "/" + scopeName + "/" + collectionName + "/" + documentKey;
+    }
+}
@@ -2,19 +2,32 @@ package com.couchbase.fhir.resources.service;
 
 import com.couchbase.client.core.error.DocumentNotFoundException;
 import com.couchbase.client.java.Collection;
-import com.couchbase.client.java.json.JsonObject;
+import com.couchbase.client.java.codec.RawBinaryTranscoder;
+import com.couchbase.client.java.kv.GetOptions;
 import com.couchbase.client.java.kv.GetResult;
+import com.couchbase.client.java.kv.UpsertOptions;
+import com.couchbase.fhir.resources.config.PaginationCacheProperties;
 import com.couchbase.fhir.resources.gateway.CouchbaseGateway;
 import com.couchbase.fhir.resources.search.PaginationState;
+import com.couchbase.fhir.resources.search.PaginationStateCodec;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.util.HashMap;
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Service to manage pagination state in Couchbase Admin.cache collection (off-heap).
@@ -26,6 +39,9 @@ import java.util.Map;
  * - Document key = pagination token (UUID)
  * - Couchbase collection maxTTL handles expiry automatically (no per-document expiry needed)
  * - Automatic retry: Storage operations retry once if they fail (helps with transient network/DB issues)
+ * - Near-cache: a size-bounded Caffeine (W-TinyLFU) cache keyed by token serves hot paging
+ *   sessions without a KV round trip; entries expire together with the PaginationState
+ * - Compact binary encoding (PaginationStateCodec) instead of Map/JSON conversion
  * 
  * Benefits:
  * - Off-heap storage: Eliminates 171MB+ heap consumption
@@ -45,91 +61,137 @@ public class PaginationCacheService {
     private static final Logger logger = LoggerFactory.getLogger(PaginationCacheService.class);
     private static final String ADMIN_SCOPE = "Admin";
     private static final String CACHE_COLLECTION = "cache";
+    private static final long RETRY_DELAY_MS = 50;
     
     @Autowired
     private CouchbaseGateway couchbaseGateway;
     
+    @Autowired
+    private PaginationCacheProperties nearCacheProperties;
+    
     private final ObjectMapper objectMapper;
     
     // Cache collection references per bucket to avoid repeated lookups
-    private final Map<String, Collection> cacheCollectionCache = new HashMap<>();
+    private final Map<String, Collection> cacheCollectionCache = new ConcurrentHashMap<>();
+    
+    // Near-cache keyed by bucket:token, each entry expires together with its PaginationState
+    private Cache<String, PaginationState> nearCache;
     
     public PaginationCacheService() {
         this.objectMapper = new ObjectMapper();
         this.objectMapper.registerModule(new JavaTimeModule());
     }
     
+    @PostConstruct
+    void initNearCache() {
+        if (!nearCacheProperties.isEnabled()) {
+            logger.info("📦 Pagination near-cache disabled - every continuation page reads Admin.cache");
+            return;
+        }
+        nearCache = Caffeine.newBuilder()
+            .maximumSize(nearCacheProperties.getMaximumSize())
+            .expireAfter(new Expiry<String, PaginationState>() {
+                @Override
+                public long expireAfterCreate(String key, PaginationState state, long currentTime) {
+                    return nanosUntilExpiry(state);
+                }
+                
+                @Override
+                public long expireAfterUpdate(String key, PaginationState state, long currentTime, long currentDuration) {
+                    return nanosUntilExpiry(state);
+                }
+                
+                @Override
+                public long expireAfterRead(String key, PaginationState state, long currentTime, long currentDuration) {
+                    return currentDuration;
+                }
+            })
+            .build();
+        logger.info("📦 Pagination near-cache enabled: maxSize={}, asyncWrites={}", 
+                   nearCacheProperties.getMaximumSize(), nearCacheProperties.isAsyncWrites());
+    }
+    
     /**
      * Store pagination state in Couchbase Admin.cache collection.
      * 
      * TTL is managed at collection level (maxTTL setting on Admin.cache collection).
      * No per-document expiry needed - all documents auto-expire based on collection maxTTL.
      * 
-     * Includes retry logic: If storage fails, retries once after a brief delay.
+     * The state is put in the near-cache first, then written as compact binary
+     * (PaginationStateCodec). With async writes the request does not wait for Couchbase;
+     * either way a failed write is retried once after a brief delay.
      * 
      * @param bucketName FHIR bucket name
      * @param token Pagination token (UUID)
      * @param state PaginationState object to store
-     * @throws RuntimeException if storage fails after retry
+     * @throws RuntimeException if a synchronous write fails after retry
      */
     public void storePaginationState(String bucketName, String token, PaginationState state) {
-        Exception lastException = null;
+        if (nearCache != null) {
+            nearCache.put(nearCacheKey(bucketName, token), state);
+        }
         
-        // Try up to 2 times (initial attempt + 1 retry)
-        for (int attempt = 1; attempt <= 2; attempt++) {
-            try {
-                Collection cacheCollection = getCacheCollection(bucketName);
-                
-                // Convert PaginationState to JSON
-                Map<String, Object> stateMap = paginationStateToMap(state);
-                JsonObject jsonObject = JsonObject.fromJson(objectMapper.writeValueAsString(stateMap));
-                
-                // Store without explicit expiry - collection-level maxTTL handles expiration
-                // Simpler, less overhead than per-document expiry
-                cacheCollection.upsert(token, jsonObject);
-                
-                // Log appropriate info based on pagination strategy
-                if (state.isUseLegacyKeyList() && state.getAllDocumentKeys() != null) {
-                    logger.debug("📦 Stored pagination state (LEGACY): bucket={}, token={}, keys={} (attempt={}, collection maxTTL handles expiry)", 
-                                bucketName, token, state.getAllDocumentKeys().size(), attempt);
-                } else {
-                    logger.debug("📦 Stored pagination state (NEW): bucket={}, token={}, type={}, offset={}, pageSize={} (attempt={}, collection maxTTL handles expiry)", 
-                                bucketName, token, state.getSearchType(), state.getPrimaryOffset(), state.getPrimaryPageSize(), attempt);
-                }
-                
-                // Success - exit loop
+        byte[] encoded = PaginationStateCodec.encode(state);
+        CompletableFuture<Void> write = writeWithRetry(bucketName, token, encoded, 1);
+        
+        // Log appropriate info based on pagination strategy
+        if (state.isUseLegacyKeyList() && state.getAllDocumentKeys() != null) {
+            logger.debug("📦 Storing pagination state (LEGACY): bucket={}, token={}, keys={}, bytes={} (collection maxTTL handles expiry)", 
+                        bucketName, token, state.getAllDocumentKeys().size(), encoded.length);
+        } else {
+            logger.debug("📦 Storing pagination state (NEW): bucket={}, token={}, type={}, offset={}, pageSize={}, bytes={} (collection maxTTL handles expiry)", 
+                        bucketName, token, state.getSearchType(), state.getPrimaryOffset(), state.getPrimaryPageSize(), encoded.length);
+        }
+        
+        if (nearCache != null && nearCacheProperties.isAsyncWrites()) {
+            return; // Near-cache already serves this node; Couchbase write completes in the background
+        }
+        
+        try {
+            write.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            throw new RuntimeException("Failed to store pagination state after 2 attempts: " + cause.getMessage(), cause);
+        }
+    }
+    
+    /**
+     * Upsert encoded state, retrying once after RETRY_DELAY_MS (non-blocking delay).
+     */
+    private CompletableFuture<Void> writeWithRetry(String bucketName, String token, byte[] encoded, int attempt) {
+        CompletableFuture<Void> write;
+        try {
+            // Store without explicit expiry - collection-level maxTTL handles expiration
+            write = getCacheCollection(bucketName).async()
+                .upsert(token, encoded, UpsertOptions.upsertOptions().transcoder(RawBinaryTranscoder.INSTANCE))
+                .thenApply(result -> (Void) null);
+        } catch (Exception e) {
+            write = CompletableFuture.failedFuture(e);
+        }
+        
+        return write.handle((ignored, error) -> {
+            if (error == null) {
                 if (attempt > 1) {
                     logger.debug("✅ Pagination state storage succeeded on retry attempt {}", attempt);
                 }
-                return;
-                
-            } catch (Exception e) {
-                lastException = e;
-                
-                if (attempt < 2) {
-                    logger.warn("⚠️  Failed to store pagination state (attempt {}): bucket={}, token={}, error={} - retrying...", 
-                               attempt, bucketName, token, e.getMessage());
-                    
-                    // Brief delay before retry (50ms)
-                    try {
-                        Thread.sleep(50);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        logger.warn("Retry sleep interrupted");
-                    }
-                } else {
-                    logger.error("❌ Failed to store pagination state after {} attempts: bucket={}, token={}, error={}", 
-                                attempt, bucketName, token, e.getMessage());
-                }
+                return CompletableFuture.<Void>completedFuture(null);
             }
-        }
-        
-        // If we got here, all attempts failed
-        throw new RuntimeException("Failed to store pagination state after 2 attempts: " + lastException.getMessage(), lastException);
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (attempt < 2) {
+                logger.warn("⚠️  Failed to store pagination state (attempt {}): bucket={}, token={}, error={} - retrying...", 
+                           attempt, bucketName, token, cause.getMessage());
+                return CompletableFuture.supplyAsync(() -> null,
+                        CompletableFuture.delayedExecutor(RETRY_DELAY_MS, TimeUnit.MILLISECONDS))
+                    .thenCompose(v -> writeWithRetry(bucketName, token, encoded, attempt + 1));
+            }
+            logger.error("❌ Failed to store pagination state after {} attempts: bucket={}, token={}, error={}", 
+                        attempt, bucketName, token, cause.getMessage());
+            return CompletableFuture.<Void>failedFuture(cause);
+        }).thenCompose(f -> f);
     }
     
     /**
-     * Retrieve pagination state from Couchbase Admin.cache collection.
+     * Retrieve pagination state, from the near-cache when possible, else from Couchbase Admin.cache.
      * 
      * @param bucketName FHIR bucket name
      * @param token Pagination token (UUID)
@@ -141,17 +203,29 @@ public class PaginationCacheService {
             return null;
         }
         
+        if (nearCache != null) {
+            PaginationState cached = nearCache.getIfPresent(nearCacheKey(bucketName, token));
+            if (cached != null) {
+                logger.debug("📦 Pagination state near-cache hit: bucket={}, token={}", bucketName, token);
+                return cached;
+            }
+        }
+        
         try {
             Collection cacheCollection = getCacheCollection(bucketName);
             
-            // Get from Couchbase
-            GetResult result = cacheCollection.get(token);
-            JsonObject jsonObject = result.contentAsObject();
+            // Get from Couchbase as raw bytes (binary codec, or JSON written by older versions)
+            GetResult result = cacheCollection.get(token, GetOptions.getOptions().transcoder(RawBinaryTranscoder.INSTANCE));
+            byte[] content = result.contentAs(byte[].class);
             
-            // Convert JSON to PaginationState
-            @SuppressWarnings("unchecked")
-            Map<String, Object> stateMap = objectMapper.readValue(jsonObject.toString(), Map.class);
-            PaginationState state = mapToPaginationState(stateMap);
+            PaginationState state;
+            if (PaginationStateCodec.isBinary(content)) {
+                state = PaginationStateCodec.decode(content);
+            } else {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> stateMap = objectMapper.readValue(content, Map.class);
+                state = mapToPaginationState(stateMap);
+            }
             
             // Log appropriate info based on pagination strategy
             if (state.isUseLegacyKeyList() && state.getAllDocumentKeys() != null) {
@@ -162,6 +236,10 @@ public class PaginationCacheService {
                             bucketName, token, state.getSearchType(), state.getPrimaryOffset(), state.getPrimaryPageSize());
             }
             
+            if (nearCache != null && !state.isExpired()) {
+                nearCache.put(nearCacheKey(bucketName, token), state);
+            }
+            
             return state;
             
         } catch (DocumentNotFoundException e) {
@@ -188,6 +266,10 @@ public class PaginationCacheService {
             return;
         }
         
+        if (nearCache != null) {
+            nearCache.invalidate(nearCacheKey(bucketName, token));
+        }
+        
         try {
             Collection cacheCollection = getCacheCollection(bucketName);
             cacheCollection.remove(token);
@@ -219,44 +301,17 @@ public class PaginationCacheService {
         });
     }
     
-    /**
-     * Convert PaginationState object to Map for JSON serialization.
-     */
-    private Map<String, Object> paginationStateToMap(PaginationState state) {
-        Map<String, Object> map = new HashMap<>();
-        
-        // Common fields
-        map.put("searchType", state.getSearchType());
-        map.put("resourceType", state.getResourceType());
-        map.put("bucketName", state.getBucketName());
-        map.put("baseUrl", state.getBaseUrl());
-        map.put("createdAt", state.getCreatedAt().toString());
-        map.put("expiresAt", state.getExpiresAt().toString());
-        
-        // Legacy fields (may be null in new approach)
-        map.put("allDocumentKeys", state.getAllDocumentKeys());
-        map.put("pageSize", state.getPageSize());
-        map.put("currentOffset", state.getCurrentOffset());
-        map.put("primaryResourceCount", state.getPrimaryResourceCount());
-        
-        // New query-based fields (may be null in legacy approach)
-        map.put("primaryFtsQueriesJson", state.getPrimaryFtsQueriesJson());
-        map.put("primaryOffset", state.getPrimaryOffset());
-        map.put("primaryPageSize", state.getPrimaryPageSize());
-        map.put("sortFieldsJson", state.getSortFieldsJson());
-        map.put("maxBundleSize", state.getMaxBundleSize());
-        map.put("revIncludeResourceType", state.getRevIncludeResourceType());
-        map.put("revIncludeSearchParam", state.getRevIncludeSearchParam());
-        map.put("includeResourceType", state.getIncludeResourceType());
-        map.put("includeSearchParam", state.getIncludeSearchParam());
-        map.put("includeParamsList", state.getIncludeParamsList());
-        map.put("useLegacyKeyList", state.isUseLegacyKeyList());
-        
-        return map;
+    private static String nearCacheKey(String bucketName, String token) {
+        return bucketName + ":" + token;
+    }
+    
+    private static long nanosUntilExpiry(PaginationState state) {
+        return Math.max(0, Duration.between(LocalDateTime.now(), state.getExpiresAt()).toNanos());
     }
     
     /**
-     * Convert Map to PaginationState object after JSON deserialization.
+     * Convert Map to PaginationState object after JSON deserialization
+     * (only for JSON documents written before the binary codec).
      */
     @SuppressWarnings("unchecked")
     private PaginationState mapToPaginationState(Map<String, Object> map) {
@@ -283,6 +338,7 @@ public class PaginationCacheService {
             .includeSearchParam((String) map.get("includeSearchParam"))
             .includeParamsList((java.util.List<String>) map.get("includeParamsList"))
             .useLegacyKeyList(getBoolOrDefault(map, "useLegacyKeyList", false))
+            .createdAt(map.get("createdAt") instanceof String ? LocalDateTime.parse((String) map.get("createdAt")) : null)
             .build();
     }
     
@@ -309,6 +365,9 @@ public class PaginationCacheService {
      */
     public void clearCollectionCache() {
         cacheCollectionCache.clear();
+        if (nearCache != null) {
+            nearCache.invalidateAll();
+        }
         logger.debug("🔧 Cleared pagination cache collection references");
     }
 }
@@ -0,0 +1,124 @@
+package com.couchbase.fhir.resources.service;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.parser.LenientErrorHandler;
+import jakarta.annotation.PreDestroy;
+import org.hl7.fhir.r4.model.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Parses raw KV JSON bytes into HAPI resources.
+ *
+ * - Reads straight from byte[] (RawJsonTranscoder) - no JsonObject or intermediate String
+ * - Reuses lenient parsers from a shared pool: HAPI parsers are not thread-safe, and a page is
+ *   parsed partly on the calling thread and partly on the parse threads
+ * - Large pages are split into chunks; the first is parsed on the calling thread and the rest on
+ *   a fixed pool of daemon threads, one per core, since parsing is CPU bound
+ */
+@Service
+public class ParallelResourceParser {
+
+    private static final Logger logger = LoggerFactory.getLogger(ParallelResourceParser.class);
+
+    // Below this many documents the fan-out overhead outweighs the gain
+    private static final int PARALLEL_THRESHOLD = 32;
+    // Keep chunks large enough that each task does meaningful work
+    private static final int MIN_CHUNK_SIZE = 16;
+
+    @Autowired
+    private FhirContext fhirContext;
+
+    private final int parallelism = Math.max(1, Runtime.getRuntime().availableProcessors());
+    private final ConcurrentLinkedQueue<IParser> parserPool = new ConcurrentLinkedQueue<>();
+    private final ExecutorService parseExecutor;
+
+    public ParallelResourceParser() {
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.parseExecutor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "fhir-parse-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Parse documents in order. Entries that fail to parse are logged and skipped.
+     *
+     * @param keys document keys (same order as documents, used for logging)
+     * @param documents raw UTF-8 JSON for each key
+     * @return parsed resources in input order
+     */
+    public List<Resource> parseAll(List<String> keys, List<byte[]> documents) {
+        int size = documents.size();
+        Resource[] parsed = new Resource[size];
+
+        if (size < PARALLEL_THRESHOLD || parallelism == 1) {
+            parseRange(keys, documents, parsed, 0, size);
+        } else {
+            int chunkSize = Math.max(MIN_CHUNK_SIZE, (size + parallelism - 1) / parallelism);
+            List<CompletableFuture<Void>> tasks = new ArrayList<>();
+            for (int from = chunkSize; from < size; from += chunkSize) {
+                int start = from;
+                int end = Math.min(size, from + chunkSize);
+                tasks.add(CompletableFuture.runAsync(() -> parseRange(keys, documents, parsed, start, end), parseExecutor));
+            }
+            // Calling thread takes the first chunk instead of idling
+            parseRange(keys, documents, parsed, 0, Math.min(size, chunkSize));
+            CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0])).join();
+            logger.debug("🔑 Parsed {} documents in {} chunks", size, tasks.size() + 1);
+        }
+
+        List<Resource> resources = new ArrayList<>(size);
+        for (Resource resource : parsed) {
+            if (resource != null) {
+                resources.add(resource);
+            }
+        }
+        return resources;
+    }
+
+    private void parseRange(List<String> keys, List<byte[]> documents, Resource[] parsed, int from, int to) {
+        IParser parser = borrowParser();
+        try {
+            for (int i = from; i < to; i++) {
+                try {
+                    parsed[i] = (Resource) parser.parseResource(
+                        new InputStreamReader(new ByteArrayInputStream(documents.get(i)), StandardCharsets.UTF_8));
+                } catch (Exception e) {
+                    logger.warn("🔑 Failed to parse document {}: {}", keys.get(i), e.getMessage());
+                }
+            }
+        } finally {
+            parserPool.offer(parser);
+        }
+    }
+
+    private IParser borrowParser() {
+        IParser parser = parserPool.poll();
+        if (parser == null) {
+            parser = fhirContext.newJsonParser();
+            parser.setParserErrorHandler(new LenientErrorHandler().setErrorOnInvalidValue(false));
+        }
+        return parser;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        parseExecutor.shutdownNow();
+    }
+}
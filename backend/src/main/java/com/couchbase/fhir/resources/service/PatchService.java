@@ -4,7 +4,10 @@ import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.parser.IParser;
 import ca.uhn.fhir.rest.api.MethodOutcome;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.rest.server.exceptions.PreconditionFailedException;
 import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceVersionConflictException;
+import com.couchbase.fhir.resources.config.CasUpdateProperties;
 import com.couchbase.fhir.resources.config.TenantContextHolder;
 import com.couchbase.fhir.resources.repository.FhirResourceDaoImpl;
 import com.couchbase.fhir.resources.validation.FhirBucketValidator;
@@ -50,6 +53,9 @@ public class PatchService {
     @Autowired
     private FHIRResourceService serviceFactory;
     
+    @Autowired
+    private CasUpdateProperties casProperties;
+    
     /**
      * Apply JSON Patch operations to a FHIR resource by ID.
      * 
@@ -59,6 +65,21 @@ public class PatchService {
      * @return MethodOutcome with updated resource
      */
     public <T extends Resource> MethodOutcome patchResource(String resourceType, String resourceId, String patchBody, Class<T> resourceClass) {
+        return patchResource(resourceType, resourceId, patchBody, resourceClass, null);
+    }
+    
+    /**
+     * Apply JSON Patch operations to a FHIR resource by ID, only if its current version is the
+     * expected one (If-Match). A different current version fails with 412.
+     * 
+     * The patched body is written only over the version it was computed from. Without If-Match, a
+     * write that gets in between makes the update fail its version check, and the resource is read
+     * and patched again (up to fhir.update.cas.max-attempts, then 409).
+     * 
+     * @param expectedVersionId version the client expects to patch, or null for an unconditional PATCH
+     */
+    public <T extends Resource> MethodOutcome patchResource(String resourceType, String resourceId, String patchBody,
+                                                            Class<T> resourceClass, String expectedVersionId) {
         String bucketName = TenantContextHolder.getTenantId();
         
         logger.debug("🔧 PatchService: Processing JSON Patch for {}/{}", resourceType, resourceId);
@@ -70,16 +91,77 @@ public class PatchService {
             throw new InvalidRequestException(e.getMessage());
         }
         
-        // 1. Get current resource (direct key lookup)
-        FhirResourceDaoImpl<T> dao = serviceFactory.getService(resourceClass);
-        T currentResource = dao.read(resourceType, resourceId, bucketName)
-            .orElseThrow(() -> new ResourceNotFoundException(new IdType(resourceType, resourceId)));
-        
-        logger.debug("🔧 PatchService: Found existing resource with version {}", 
-                   currentResource.getMeta().getVersionId());
+        int maxAttempts = expectedVersionId != null ? 1 : Math.max(1, casProperties.getMaxAttempts());
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            if (attempt > 1) {
+                putService.backoff(attempt);
+            }
+            
+            // 1. Get current resource (direct key lookup)
+            FhirResourceDaoImpl<T> dao = serviceFactory.getService(resourceClass);
+            T currentResource = dao.read(resourceType, resourceId, bucketName)
+                .orElseThrow(() -> new ResourceNotFoundException(new IdType(resourceType, resourceId)));
+            
+            // Documents written before versioning carry no versionId and count as version 1
+            String readVersionId = currentResource.getMeta().getVersionId() != null
+                ? currentResource.getMeta().getVersionId() : "1";
+            logger.debug("🔧 PatchService: Found existing resource with version {}", readVersionId);
+            
+            if (expectedVersionId != null && !expectedVersionId.equals(readVersionId)) {
+                throw new PreconditionFailedException("Resource " + resourceType + "/" + resourceId + " is at version "
+                    + readVersionId + ", not " + expectedVersionId);
+            }
+            
+            // 2. Apply JSON Patch
+            T patchedResource = applyPatch(currentResource, resourceId, patchBody, resourceClass);
+            
+            // 3. Delegate to PUT service (handles versioning, validation, conflicts, meta, audit, storage),
+            //    guarded by the version the patch was applied to
+            try {
+                com.couchbase.client.java.Cluster cluster = couchbaseGateway.getClusterForTransaction("default");
+                TransactionContextImpl context = new TransactionContextImpl(cluster, bucketName);
+                
+                @SuppressWarnings("unchecked")
+                T updatedResource = (T) putService.updateOrCreateResource(patchedResource, context, readVersionId);
+                
+                MethodOutcome outcome = new MethodOutcome();
+                outcome.setResource(updatedResource);
+                outcome.setCreated(false); // PATCH is always an update (resource must exist)
+                outcome.setId(new IdType(resourceType, updatedResource.getIdElement().getIdPart()));
+                
+                String newVersionId = updatedResource.getMeta().getVersionId();
+                logger.debug("✅ PatchService: Successfully patched resource {}/{}, new version {}", 
+                           resourceType, resourceId, newVersionId);
+                
+                return outcome;
+                
+            } catch (PreconditionFailedException e) {
+                if (expectedVersionId != null) {
+                    throw e;
+                }
+                // Updated (or deleted) since it was read - patch the new version
+                logger.debug("🔁 PatchService: {}/{} changed since version {} (attempt {}/{})",
+                           resourceType, resourceId, readVersionId, attempt, maxAttempts);
+            } catch (ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException e) {
+                // ID was tombstoned or concurrently updated - return 409
+                logger.error("❌ PatchService: Resource {}/{} could not be updated: {}", resourceType, resourceId, e.getMessage());
+                throw e;
+            } catch (Exception e) {
+                logger.error("❌ PatchService: Failed to update resource {}/{}: {}", resourceType, resourceId, e.getMessage());
+                throw new ca.uhn.fhir.rest.server.exceptions.InternalErrorException("Failed to patch resource: " + e.getMessage());
+            }
+        }
         
-        // 2. Apply JSON Patch
-        T patchedResource;
+        logger.warn("🚫 PatchService: {}/{} still contended after {} attempts", resourceType, resourceId, maxAttempts);
+        throw new ResourceVersionConflictException(
+            "Resource " + resourceType + "/" + resourceId + " is being updated concurrently. Please retry the request.");
+    }
+    
+    /**
+     * Apply the JSON Patch to a copy of the resource (round-tripped through JSON)
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends Resource> T applyPatch(T currentResource, String resourceId, String patchBody, Class<T> resourceClass) {
         try {
             // Use HAPI FHIR's JSON parser to avoid circular reference issues
             IParser fhirParser = fhirContext.newJsonParser();
@@ -94,12 +176,13 @@ public class PatchService {
             
             // Convert back to FHIR resource using HAPI parser
             String patchedResourceJson = objectMapper.writeValueAsString(patchedJson);
-            patchedResource = (T) fhirParser.parseResource(resourceClass, patchedResourceJson);
+            T patchedResource = (T) fhirParser.parseResource(resourceClass, patchedResourceJson);
             
             // Ensure ID consistency (patch shouldn't change ID)
             patchedResource.setId(resourceId);
             
             logger.debug("🔧 PatchService: Successfully applied JSON Patch operations");
+            return patchedResource;
             
         } catch (JsonPatchException e) {
             logger.error("❌ PatchService: Invalid JSON Patch operation: {}", e.getMessage());
@@ -108,34 +191,6 @@ public class PatchService {
             logger.error("❌ PatchService: Failed to parse or apply patch: {}", e.getMessage());
             throw new InvalidRequestException("Failed to process JSON Patch: " + e.getMessage());
         }
-        
-        // 3. Delegate to PUT service (handles versioning, validation, conflicts, meta, audit, storage)
-        try {
-            com.couchbase.client.java.Cluster cluster = couchbaseGateway.getClusterForTransaction("default");
-            TransactionContextImpl context = new TransactionContextImpl(cluster, bucketName);
-            
-            @SuppressWarnings("unchecked")
-            T updatedResource = (T) putService.updateOrCreateResource(patchedResource, context);
-            
-            MethodOutcome outcome = new MethodOutcome();
-            outcome.setResource(updatedResource);
-            outcome.setCreated(false); // PATCH is always an update (resource must exist)
-            outcome.setId(new IdType(resourceType, updatedResource.getIdElement().getIdPart()));
-            
-            String newVersionId = updatedResource.getMeta().getVersionId();
-            logger.debug("✅ PatchService: Successfully patched resource {}/{}, new version {}", 
-                       resourceType, resourceId, newVersionId);
-            
-            return outcome;
-            
-        } catch (ca.uhn.fhir.rest.server.exceptions.ResourceVersionConflictException e) {
-            // ID was tombstoned - return 409
-            logger.error("❌ PatchService: Resource {}/{} is tombstoned", resourceType, resourceId);
-            throw e;
-        } catch (Exception e) {
-            logger.error("❌ PatchService: Failed to update resource {}/{}: {}", resourceType, resourceId, e.getMessage());
-            throw new ca.uhn.fhir.rest.server.exceptions.InternalErrorException("Failed to patch resource: " + e.getMessage());
-        }
     }
     
     /**
@@ -2,7 +2,8 @@ package com.couchbase.fhir.resources.service;
 
 import ca.uhn.fhir.parser.IParser;
 import com.couchbase.client.java.Cluster;
-import com.couchbase.client.java.json.JsonObject;
+import com.couchbase.client.java.codec.RawJsonTranscoder;
+import com.couchbase.client.java.kv.InsertOptions;
 import com.couchbase.common.fhir.FhirMetaHelper;
 import com.couchbase.fhir.resources.gateway.CouchbaseGateway;
 import org.hl7.fhir.r4.model.Resource;
@@ -11,7 +12,9 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.util.UUID;
+import java.util.function.Function;
 
 /**
  * Service for handling FHIR POST operations (create new resources).
@@ -36,18 +39,27 @@ public class PostService {
     @Autowired
     private CouchbaseGateway couchbaseGateway;
     
+    @Autowired
+    private SearchResultCache searchResultCache;
+    
     /**
      * Create a new FHIR resource via POST operation.
      * Always generates a server-controlled ID, ignoring any client-supplied ID.
-     * Gets cluster through CouchbaseGateway for circuit breaker protection.
+     * Writes through CouchbaseGateway for circuit breaker protection.
      * 
      * @param resource The FHIR resource to create
      * @param bucketName The target bucket name
      * @return The created resource with server-generated ID and metadata
      */
     public Resource createResource(Resource resource, String bucketName) {
-        // ✅ Get cluster through gateway for circuit breaker protection
-        Cluster cluster = couchbaseGateway.getClusterForTransaction("default");
+        return createResource(resource, this::encode, bucketName);
+    }
+    
+    /**
+     * Create a new FHIR resource, with the stored JSON produced by the given encoder
+     * (called after the ID and meta are applied, e.g. to write a Bundle entry's raw JSON).
+     */
+    public Resource createResource(Resource resource, Function<Resource, byte[]> encoder, String bucketName) {
         String resourceType = resource.getResourceType().name();
         
         // ✅ FHIR POST Semantics: Server controls ID generation
@@ -71,10 +83,10 @@ public class PostService {
         
         // Prepare document key and JSON
         String documentKey = resourceType + "/" + serverGeneratedId;
-        String resourceJson = jsonParser.encodeResourceToString(resource);
+        byte[] resourceJson = encoder.apply(resource);
         
-        // Insert into Couchbase (simple insert, no transaction handling)
-        insertResource(cluster, bucketName, resourceType, documentKey, resourceJson);
+        // Insert into Couchbase (KV insert, no transaction handling)
+        insertResource(bucketName, resourceType, documentKey, resourceJson);
         
         logger.debug("✅ POST {}: Created resource with ID {}", resourceType, serverGeneratedId);
         return resource;
@@ -95,6 +107,18 @@ public class PostService {
                                               com.couchbase.client.java.transactions.TransactionAttemptContext txContext,
                                               Cluster cluster, 
                                               String bucketName) {
+        return createResourceInTransaction(resource, this::encode, txContext, cluster, bucketName);
+    }
+    
+    /**
+     * Create a new FHIR resource within a transaction context, with the stored JSON produced by the
+     * given encoder (called after the ID and meta are applied).
+     */
+    public Resource createResourceInTransaction(Resource resource, 
+                                              Function<Resource, byte[]> encoder,
+                                              com.couchbase.client.java.transactions.TransactionAttemptContext txContext,
+                                              Cluster cluster, 
+                                              String bucketName) {
         String resourceType = resource.getResourceType().name();
         
         // ✅ FHIR POST Semantics: Server controls ID generation
@@ -118,7 +142,7 @@ public class PostService {
         
         // Prepare document key and JSON
         String documentKey = resourceType + "/" + serverGeneratedId;
-        String resourceJson = jsonParser.encodeResourceToString(resource);
+        byte[] resourceJson = encoder.apply(resource);
         
         // Insert into Couchbase using transaction context
         insertResourceInTransaction(txContext, cluster, bucketName, resourceType, documentKey, resourceJson);
@@ -127,6 +151,10 @@ public class PostService {
         return resource;
     }
     
+    private byte[] encode(Resource resource) {
+        return jsonParser.encodeResourceToString(resource).getBytes(StandardCharsets.UTF_8);
+    }
+    
     /**
      * Generate a new server-controlled resource ID
      */
@@ -135,22 +163,21 @@ public class PostService {
     }
     
     /**
-     * Insert resource using regular Couchbase operations (no transaction)
+     * Insert resource with a KV insert (no transaction, no query service round trip).
+     * The encoded bytes are stored as is; an existing key fails the create.
      */
-    private void insertResource(Cluster cluster, String bucketName, String resourceType, 
-                               String documentKey, String resourceJson) {
+    private void insertResource(String bucketName, String resourceType, 
+                               String documentKey, byte[] resourceJson) {
         try {
             // Get the correct target collection for this resource type
             String targetCollection = collectionRoutingService.getTargetCollection(resourceType);
             
-            // Use N1QL UPSERT for consistency
-            String sql = String.format(
-                "UPSERT INTO `%s`.`%s`.`%s` (KEY, VALUE) VALUES ('%s', %s)",
-                bucketName, DEFAULT_SCOPE, targetCollection, documentKey,
-                JsonObject.fromJson(resourceJson).toString()
-            );
-            
-            couchbaseGateway.query("default", sql);
+            InsertOptions options = InsertOptions.insertOptions()
+                .transcoder(RawJsonTranscoder.INSTANCE)
+                .durability(couchbaseGateway.kvDurability());
+            couchbaseGateway.withCollection("default", bucketName, DEFAULT_SCOPE, targetCollection,
+                collection -> collection.insert(documentKey, resourceJson, options));
+            searchResultCache.onWrite(bucketName, resourceType);
             logger.debug("🔧 Inserted resource: {} into collection: {}", documentKey, targetCollection);
             
         } catch (Exception e) {
@@ -164,7 +191,7 @@ public class PostService {
      */
     private void insertResourceInTransaction(com.couchbase.client.java.transactions.TransactionAttemptContext txContext,
                                            Cluster cluster, String bucketName, String resourceType,
-                                           String documentKey, String resourceJson) {
+                                           String documentKey, byte[] resourceJson) {
         try {
             // Get the correct target collection for this resource type
             String targetCollection = collectionRoutingService.getTargetCollection(resourceType);
@@ -173,8 +200,11 @@ public class PostService {
             com.couchbase.client.java.Collection collection = 
                 cluster.bucket(bucketName).scope(DEFAULT_SCOPE).collection(targetCollection);
             
-            // Insert using transaction context
-            txContext.insert(collection, documentKey, JsonObject.fromJson(resourceJson));
+            // Insert using transaction context (bytes are already JSON - no JsonObject round trip)
+            txContext.insert(collection, documentKey, resourceJson,
+                com.couchbase.client.java.transactions.config.TransactionInsertOptions.transactionInsertOptions()
+                    .transcoder(com.couchbase.client.java.codec.RawJsonTranscoder.INSTANCE));
+            searchResultCache.onWrite(bucketName, resourceType);
             logger.debug("🔧 Inserted resource in transaction: {} into collection: {}", documentKey, targetCollection);
             
         } catch (Exception e) {
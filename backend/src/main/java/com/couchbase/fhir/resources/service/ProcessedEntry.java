@@ -13,14 +13,19 @@ public class ProcessedEntry {
     private String documentKey;
     private Bundle.BundleEntryComponent responseEntry;
     private String errorMessage;
+    private String errorStatus;
     
     public static ProcessedEntry success(String resourceType, String resourceId, 
                                        String documentKey,
                                        Bundle.BundleEntryComponent responseEntry) {
-        return new ProcessedEntry(true, resourceType, resourceId, documentKey, responseEntry, null);
+        return new ProcessedEntry(true, resourceType, resourceId, documentKey, responseEntry, null, null);
     }
     
     public static ProcessedEntry failed(String errorMessage) {
-        return new ProcessedEntry(false, null, null, null, null, errorMessage);
+        return failed("400 Bad Request", errorMessage);
+    }
+    
+    public static ProcessedEntry failed(String errorStatus, String errorMessage) {
+        return new ProcessedEntry(false, null, null, null, null, errorMessage, errorStatus);
     }
 } 
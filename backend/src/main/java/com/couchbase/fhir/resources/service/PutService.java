@@ -1,8 +1,20 @@
 package com.couchbase.fhir.resources.service;
 
 import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import ca.uhn.fhir.rest.server.exceptions.PreconditionFailedException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceVersionConflictException;
+import com.couchbase.client.core.error.CasMismatchException;
+import com.couchbase.client.core.error.DocumentExistsException;
+import com.couchbase.client.core.error.DocumentNotFoundException;
 import com.couchbase.client.java.Cluster;
-import com.couchbase.client.java.json.JsonObject;
+import com.couchbase.client.java.Collection;
+import com.couchbase.client.java.codec.RawJsonTranscoder;
+import com.couchbase.client.java.kv.GetResult;
+import com.couchbase.client.java.kv.InsertOptions;
+import com.couchbase.client.java.kv.ReplaceOptions;
+import com.couchbase.client.java.kv.UpsertOptions;
+import com.couchbase.fhir.resources.config.CasUpdateProperties;
 import com.couchbase.common.fhir.FhirMetaHelper;
 import com.couchbase.fhir.resources.gateway.CouchbaseGateway;
 import org.hl7.fhir.r4.model.Resource;
@@ -11,12 +23,15 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Service for handling FHIR PUT operations (create or update resources with client-controlled IDs).
  * PUT operations always use the client-supplied ID and handle proper FHIR versioning.
  * This service handles both standalone transactions and nested transactions (from Bundle).
+ * Outside Bundle transactions, buckets with update.mode = "cas" update with optimistic
+ * concurrency (CAS-guarded replace) instead of a standalone transaction.
  */
 @Service
 public class PutService {
@@ -40,6 +55,21 @@ public class PutService {
     @Autowired
     private CouchbaseGateway couchbaseGateway;
     
+    @Autowired
+    private KvReadCoalescer readCoalescer;
+    
+    @Autowired
+    private SearchResultCache searchResultCache;
+    
+    @Autowired
+    private ResourceVersioningService versioningService;
+    
+    @Autowired
+    private FhirBucketConfigService bucketConfigService;
+    
+    @Autowired
+    private CasUpdateProperties casProperties;
+    
     /**
      * Create or update a FHIR resource via PUT operation.
      * Always uses the client-supplied ID and handles proper versioning.
@@ -50,6 +80,16 @@ public class PutService {
      * @return The created/updated resource with proper versioning metadata
      */
     public Resource updateOrCreateResource(Resource resource, TransactionContext context) {
+        return updateOrCreateResource(resource, context, null);
+    }
+    
+    /**
+     * Create or update a FHIR resource via PUT operation, only if its current version is the
+     * expected one (If-Match). A different or missing current version fails with 412.
+     * 
+     * @param expectedVersionId version the client expects to replace, or null for an unconditional PUT
+     */
+    public Resource updateOrCreateResource(Resource resource, TransactionContext context, String expectedVersionId) {
         String resourceType = resource.getResourceType().name();
         String clientId = resource.getIdElement().getIdPart();
         
@@ -70,10 +110,13 @@ public class PutService {
         
         if (context.isInTransaction()) {
             // Operate within existing Bundle transaction
-            return updateResourceInTransaction(resource, documentKey, context, cluster, bucketName);
+            return updateResourceInTransaction(resource, documentKey, context, cluster, bucketName, expectedVersionId);
+        } else if (isCasUpdateMode(bucketName)) {
+            // Single document - optimistic concurrency instead of a transaction
+            return updateResourceWithCas(resource, documentKey, bucketName, expectedVersionId);
         } else {
             // Create standalone transaction for this PUT operation
-            return updateResourceWithStandaloneTransaction(resource, documentKey, context, cluster, bucketName);
+            return updateResourceWithStandaloneTransaction(resource, documentKey, context, cluster, bucketName, expectedVersionId);
         }
     }
     
@@ -81,17 +124,20 @@ public class PutService {
      * Handle PUT operation within existing transaction (Bundle context)
      */
     private Resource updateResourceInTransaction(Resource resource, String documentKey, 
-                                                TransactionContext context, Cluster cluster, String bucketName) {
+                                                TransactionContext context, Cluster cluster, String bucketName,
+                                                String expectedVersionId) {
         String resourceType = resource.getResourceType().name();
         
         try {
             // Handle versioning and update within the existing transaction
             handleVersioningAndUpdate(resource, documentKey, context.getTransactionContext(), 
-                                    cluster, bucketName);
+                                    cluster, bucketName, expectedVersionId);
             
             logger.debug("✅ PUT {} (in transaction): Updated resource {}", resourceType, documentKey);
             return resource;
             
+        } catch (BaseServerResponseException e) {
+            throw e;
         } catch (Exception e) {
             logger.error("❌ PUT {} (in transaction) failed: {}", resourceType, e.getMessage());
             throw new RuntimeException("PUT operation failed in transaction: " + e.getMessage(), e);
@@ -102,7 +148,8 @@ public class PutService {
      * Handle PUT operation with standalone transaction
      */
     private Resource updateResourceWithStandaloneTransaction(Resource resource, String documentKey, 
-                                                           TransactionContext context, Cluster cluster, String bucketName) {
+                                                           TransactionContext context, Cluster cluster, String bucketName,
+                                                           String expectedVersionId) {
         String resourceType = resource.getResourceType().name();
         
         try {
@@ -110,14 +157,21 @@ public class PutService {
             logger.debug("🔄 PUT {}: Starting standalone transaction for {}", resourceType, documentKey);
             cluster.transactions().run(txContext -> {
                 logger.debug("🔄 PUT {}: Inside transaction context", resourceType);
-                handleVersioningAndUpdate(resource, documentKey, txContext, cluster, bucketName);
+                handleVersioningAndUpdate(resource, documentKey, txContext, cluster, bucketName, expectedVersionId);
                 logger.debug("✅ PUT {}: Transaction operations completed", resourceType);
             });
             
+            // Reads between the write and the commit may have cached the old document
+            readCoalescer.invalidate(bucketName, DEFAULT_SCOPE, collectionRoutingService.getTargetCollection(resourceType), documentKey);
+            searchResultCache.onWrite(bucketName, resourceType);
             logger.debug("✅ PUT {}: Updated resource {} (standalone transaction committed)", resourceType, documentKey);
             return resource;
             
         } catch (Exception e) {
+            // 409/412 raised inside the transaction come back wrapped in TransactionFailedException
+            if (e.getCause() instanceof BaseServerResponseException fhirError) {
+                throw fhirError;
+            }
             logger.error("❌ PUT {} (standalone transaction) failed: {}", resourceType, e.getMessage());
             throw new RuntimeException("PUT operation failed: " + e.getMessage(), e);
         }
@@ -128,7 +182,7 @@ public class PutService {
      */
     private void handleVersioningAndUpdate(Resource resource, String documentKey,
                                          com.couchbase.client.java.transactions.TransactionAttemptContext txContext,
-                                         Cluster cluster, String bucketName) {
+                                         Cluster cluster, String bucketName, String expectedVersionId) {
         String resourceType = resource.getResourceType().name();
         String clientId = resource.getIdElement().getIdPart();
         
@@ -140,8 +194,11 @@ public class PutService {
             );
         }
         
-        // Step 1: Copy existing resource to Versions collection (if it exists) and get next version
-        int nextVersion = copyExistingResourceToVersions(txContext, cluster, bucketName, resourceType, documentKey);
+        // Step 1: Copy existing resource to Versions collection (if it exists) - KV only
+        ResourceVersioningService.CurrentVersion current =
+            versioningService.archiveCurrent(txContext, cluster, bucketName, resourceType, documentKey);
+        checkExpectedVersion(documentKey, expectedVersionId, current != null ? current.getVersionId() : null);
+        int nextVersion = current != null ? current.nextVersion() : 1;
         
         if (nextVersion > 1) {
             logger.debug("📋 PUT {}: Resource exists, copied to Versions, updating to version {}", 
@@ -152,64 +209,157 @@ public class PutService {
             updateResourceMetadata(resource, "1", "CREATE");
         }
         
-        // Step 2: UPSERT the resource with new/updated version
-        upsertResourceInTransaction(txContext, cluster, bucketName, resourceType, documentKey, resource);
+        // Step 2: Replace the document read in step 1, or insert it when new
+        writeResourceInTransaction(txContext, cluster, bucketName, resourceType, documentKey, resource, current);
     }
     
     /**
-     * Copy existing resource to Versions collection using efficient N1QL and return next version number
-     * Uses UPSERT to handle race conditions when multiple concurrent requests update the same resource
+     * Handle PUT operation with optimistic concurrency (bucket update mode "cas"): read the live
+     * document, archive it to Versions, then replace it guarded by the CAS of the read. A write in
+     * between fails the replace; the PUT is retried with backoff, or rejected with 412 when the
+     * client asked for a version (If-Match) that is no longer current.
+     */
+    private Resource updateResourceWithCas(Resource resource, String documentKey, String bucketName,
+                                          String expectedVersionId) {
+        String resourceType = resource.getResourceType().name();
+        int maxAttempts = Math.max(1, casProperties.getMaxAttempts());
+        
+        try {
+            for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+                if (attempt > 1) {
+                    backoff(attempt);
+                }
+                boolean written = couchbaseGateway.withCluster("default",
+                    cluster -> tryCasWrite(resource, documentKey, cluster, bucketName, expectedVersionId));
+                if (written) {
+                    readCoalescer.invalidate(bucketName, DEFAULT_SCOPE, collectionRoutingService.getTargetCollection(resourceType), documentKey);
+                    searchResultCache.onWrite(bucketName, resourceType);
+                    logger.debug("✅ PUT {}: Wrote {} version {} with CAS (attempt {})", resourceType, documentKey,
+                               resource.getMeta().getVersionId(), attempt);
+                    return resource;
+                }
+                logger.debug("🔁 PUT {}: CAS conflict on {} (attempt {}/{})", resourceType, documentKey, attempt, maxAttempts);
+            }
+        } catch (BaseServerResponseException e) {
+            throw e;
+        } catch (Exception e) {
+            logger.error("❌ PUT {} (CAS) failed: {}", resourceType, e.getMessage());
+            throw new RuntimeException("PUT operation failed: " + e.getMessage(), e);
+        }
+        
+        logger.warn("🚫 PUT {}: {} still contended after {} attempts", resourceType, documentKey, maxAttempts);
+        throw new ResourceVersionConflictException(
+            "Resource " + documentKey + " is being updated concurrently. Please retry the request.");
+    }
+    
+    /**
+     * One CAS attempt.
      * 
-     * @return Next version number (1 if resource doesn't exist, current+1 if it does)
+     * @return false when another write got in first (the attempt can be retried)
      */
-    private int copyExistingResourceToVersions(com.couchbase.client.java.transactions.TransactionAttemptContext txContext,
-                                              Cluster cluster, String bucketName, String resourceType, String documentKey) {
+    private boolean tryCasWrite(Resource resource, String documentKey, Cluster cluster, String bucketName,
+                                String expectedVersionId) {
+        String resourceType = resource.getResourceType().name();
+        String clientId = resource.getIdElement().getIdPart();
+        Collection live = cluster.bucket(bucketName).scope(DEFAULT_SCOPE)
+            .collection(collectionRoutingService.getTargetCollection(resourceType));
+        
+        GetResult current;
         try {
-            // Get the correct target collection for this resource type
-            String targetCollection = collectionRoutingService.getTargetCollection(resourceType);
-            
-            // Use UPSERT instead of INSERT to handle concurrent updates gracefully
-            // This prevents "Duplicate Key" errors when multiple requests update the same resource
-            String sql = String.format(
-                "UPSERT INTO `%s`.`%s`.`%s` (KEY k, VALUE v) " +
-                "SELECT " +
-                "    CONCAT(META(r).id, '/', IFNULL(r.meta.versionId, '1')) AS k, " +
-                "    r AS v " +
-                "FROM `%s`.`%s`.`%s` r " +
-                "USE KEYS '%s' " +
-                "RETURNING RAW %s.meta.versionId",
-                bucketName, DEFAULT_SCOPE, VERSIONS_COLLECTION,  // UPSERT INTO Versions
-                bucketName, DEFAULT_SCOPE, targetCollection,     // FROM TargetCollection
-                documentKey,                                     // USE KEYS 'Patient/simple-patient-1'
-                VERSIONS_COLLECTION                              // RETURNING RAW Versions.meta.versionId
-            );
-            
-            logger.debug("🔄 Copying to Versions with USE KEYS: {}", sql);
-            
-            // Execute query within transaction context
-            com.couchbase.client.java.transactions.TransactionQueryResult result = txContext.query(sql);
-            
-            // Get RETURNING results from SDK - this gives us the CURRENT version that was copied
-            List<String> rows = result.rowsAs(String.class);
-            if (!rows.isEmpty()) {
-                String currentVersionStr = rows.get(0);
-                int currentVersion = Integer.parseInt(currentVersionStr);
-                int nextVersion = currentVersion + 1;
-                logger.debug("📊 Document exists, current version: {}, next version: {}", currentVersion, nextVersion);
-                return nextVersion;
-            } else {
-                logger.debug("🆕 Document doesn't exist, using version 1");
-                return 1;
+            current = live.get(documentKey);
+        } catch (DocumentNotFoundException e) {
+            current = null;
+        }
+        
+        if (current == null) {
+            checkExpectedVersion(documentKey, expectedVersionId, null);
+            if (deleteService.isTombstoned(resourceType, clientId, cluster, bucketName)) {
+                logger.warn("🚫 PUT {}: ID was previously deleted and cannot be reused", documentKey);
+                throw new ResourceVersionConflictException(
+                    "Resource ID " + clientId + " was previously deleted and cannot be reused. Please choose a new ID."
+                );
             }
-            
+            updateResourceMetadata(resource, "1", "CREATE");
+            try {
+                live.insert(documentKey, encode(resource), InsertOptions.insertOptions()
+                    .transcoder(RawJsonTranscoder.INSTANCE)
+                    .durability(couchbaseGateway.kvDurability()));
+                return true;
+            } catch (DocumentExistsException e) {
+                return false;
+            }
+        }
+        
+        String currentVersionId = ResourceVersioningService.versionIdOf(current.contentAsObject());
+        checkExpectedVersion(documentKey, expectedVersionId, currentVersionId);
+        
+        // Archive first: a failed replace leaves a copy of a version that did exist (rewritten by the retry)
+        Collection versions = cluster.bucket(bucketName).scope(DEFAULT_SCOPE).collection(VERSIONS_COLLECTION);
+        versions.upsert(documentKey + "/" + currentVersionId, current.contentAsBytes(), UpsertOptions.upsertOptions()
+            .transcoder(RawJsonTranscoder.INSTANCE)
+            .durability(couchbaseGateway.kvDurability()));
+        
+        updateResourceMetadata(resource, String.valueOf(ResourceVersioningService.nextVersion(currentVersionId)), "UPDATE");
+        try {
+            live.replace(documentKey, encode(resource), ReplaceOptions.replaceOptions()
+                .cas(current.cas())
+                .transcoder(RawJsonTranscoder.INSTANCE)
+                .durability(couchbaseGateway.kvDurability()));
+            return true;
+        } catch (CasMismatchException | DocumentNotFoundException e) {
+            return false;
+        }
+    }
+    
+    /**
+     * If-Match: the current version must be the one the client expects (412 otherwise)
+     */
+    private static void checkExpectedVersion(String documentKey, String expectedVersionId, String currentVersionId) {
+        if (expectedVersionId == null || expectedVersionId.equals(currentVersionId)) {
+            return;
+        }
+        logger.debug("🚫 PUT {}: If-Match version {} but current is {}", documentKey, expectedVersionId, currentVersionId);
+        throw new PreconditionFailedException(currentVersionId == null
+            ? "Resource " + documentKey + " does not exist (If-Match version " + expectedVersionId + ")"
+            : "Resource " + documentKey + " is at version " + currentVersionId + ", not " + expectedVersionId);
+    }
+    
+    private boolean isCasUpdateMode(String bucketName) {
+        try {
+            return bucketConfigService.getFhirBucketConfig(bucketName).isCasUpdateMode();
         } catch (Exception e) {
-            // Log at debug level to reduce noise - this is expected for new resources
-            logger.debug("Resource {} doesn't exist or copy failed: {}", documentKey, e.getMessage());
-            // If copy fails, assume resource doesn't exist (version 1)
-            return 1;
+            logger.debug("No bucket config for {}, updates use transactions: {}", bucketName, e.getMessage());
+            return false;
         }
     }
     
+    /**
+     * Exponential backoff with full jitter, capped by fhir.update.cas.max-backoff-ms
+     */
+    void backoff(int attempt) {
+        long ceiling = backoffCeilingMs(attempt, casProperties.getInitialBackoffMs(), casProperties.getMaxBackoffMs());
+        if (ceiling <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("PUT interrupted while backing off", e);
+        }
+    }
+    
+    /**
+     * Upper bound of the sleep before an attempt: initial, doubled per further attempt, at most max
+     */
+    static long backoffCeilingMs(int attempt, long initialBackoffMs, long maxBackoffMs) {
+        return Math.min(maxBackoffMs, initialBackoffMs << Math.min(attempt - 2, 20));
+    }
+    
+    private byte[] encode(Resource resource) {
+        return jsonParser.encodeResourceToString(resource).getBytes(StandardCharsets.UTF_8);
+    }
+    
     /**
      * Update resource metadata (version, lastUpdated, audit info)
      */
@@ -227,36 +377,24 @@ public class PutService {
     }
     
     /**
-     * UPSERT resource in transaction context
+     * Write the updated resource as the live document in transaction context
      */
-    private void upsertResourceInTransaction(com.couchbase.client.java.transactions.TransactionAttemptContext txContext,
-                                           Cluster cluster, String bucketName, String resourceType,
-                                           String documentKey, Resource resource) {
+    private void writeResourceInTransaction(com.couchbase.client.java.transactions.TransactionAttemptContext txContext,
+                                          Cluster cluster, String bucketName, String resourceType,
+                                          String documentKey, Resource resource,
+                                          ResourceVersioningService.CurrentVersion current) {
         try {
-            // Get the correct target collection for this resource type
-            String targetCollection = collectionRoutingService.getTargetCollection(resourceType);
+            byte[] resourceJson = encode(resource);
+            versioningService.writeCurrent(txContext, cluster, bucketName, resourceType, documentKey, current, resourceJson);
             
-            // Get collection reference
-            com.couchbase.client.java.Collection collection = 
-                cluster.bucket(bucketName).scope(DEFAULT_SCOPE).collection(targetCollection);
-            
-            // Convert to JSON and upsert (try replace first, then insert if not found)
-            String resourceJson = jsonParser.encodeResourceToString(resource);
-            
-            try {
-                // First try to get the document for replace
-                var existingDoc = txContext.get(collection, documentKey);
-                txContext.replace(existingDoc, JsonObject.fromJson(resourceJson));
-            } catch (com.couchbase.client.core.error.DocumentNotFoundException e) {
-                // Document doesn't exist, use insert
-                txContext.insert(collection, documentKey, JsonObject.fromJson(resourceJson));
-            }
+            readCoalescer.invalidate(bucketName, DEFAULT_SCOPE, collectionRoutingService.getTargetCollection(resourceType), documentKey);
+            searchResultCache.onWrite(bucketName, resourceType);
             
-            logger.debug("🔧 Upserted resource in transaction: {}", documentKey);
+            logger.debug("🔧 Wrote resource in transaction: {}", documentKey);
             
         } catch (Exception e) {
-            logger.error("❌ Failed to upsert resource {} in transaction: {}", documentKey, e.getMessage());
+            logger.error("❌ Failed to write resource {} in transaction: {}", documentKey, e.getMessage());
             throw new RuntimeException("Failed to update resource: " + e.getMessage(), e);
         }
     }
-}
+}
\ No newline at end of file
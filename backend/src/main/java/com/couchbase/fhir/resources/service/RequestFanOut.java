@@ -0,0 +1,82 @@
+package com.couchbase.fhir.resources.service;
+
+import com.couchbase.fhir.resources.interceptor.RequestPerfBag;
+import com.couchbase.fhir.resources.interceptor.RequestPerfBagUtils;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Bounded fan-out for the sub-queries of a single request.
+ *
+ * Tasks run on virtual threads (blocking SDK calls are cheap there) and at most maxConcurrency of
+ * them run at once, so one request cannot flood FTS or KV with its own work. Create one per request;
+ * tasks must not submit-and-wait on the same instance or they can starve each other of permits.
+ *
+ * The SecurityContext of the thread that creates the fan-out is installed around every task, so
+ * audit tags and authorization checks see the caller even for tasks submitted from a callback.
+ * Its KV request window is carried the same way, so the KV gets of all tasks count against the one
+ * per-request limit, and so is its perf bag, so notes from tasks land on the right request.
+ */
+public final class RequestFanOut {
+
+    private static final ExecutorService VIRTUAL_THREADS = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final Semaphore permits;
+    private final SecurityContext securityContext;
+    private final KvFetchEngine.RequestWindow kvWindow;
+    private final RequestPerfBag perfBag;
+
+    public RequestFanOut(int maxConcurrency) {
+        this.permits = new Semaphore(Math.max(1, maxConcurrency));
+        this.securityContext = SecurityContextHolder.getContext();
+        this.kvWindow = KvFetchEngine.currentWindow();
+        this.perfBag = RequestPerfBagUtils.current();
+    }
+
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+            SecurityContext previous = SecurityContextHolder.getContext();
+            KvFetchEngine.RequestWindow previousWindow = KvFetchEngine.currentWindow();
+            RequestPerfBag previousPerfBag = RequestPerfBagUtils.current();
+            SecurityContextHolder.setContext(securityContext);
+            KvFetchEngine.bindWindow(kvWindow);
+            RequestPerfBagUtils.bind(perfBag);
+            try {
+                return task.get();
+            } finally {
+                SecurityContextHolder.setContext(previous);
+                KvFetchEngine.bindWindow(previousWindow);
+                RequestPerfBagUtils.bind(previousPerfBag);
+                permits.release();
+            }
+        }, VIRTUAL_THREADS);
+    }
+
+    /**
+     * Wait for a task and unwrap its failure.
+     */
+    public static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RuntimeException(cause.getMessage(), cause);
+        }
+    }
+}
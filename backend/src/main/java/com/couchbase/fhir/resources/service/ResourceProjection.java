@@ -0,0 +1,163 @@
+package com.couchbase.fhir.resources.service;
+
+import ca.uhn.fhir.rest.api.Constants;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Byte-level _summary / _elements projection for the JSON fastpath.
+ *
+ * Raw KV documents are filtered top-level field by field with Jackson's streaming parser and
+ * generator, so the resource is never materialized. Kept elements are copied token for token;
+ * dropped elements are skipped without being decoded. The projected resource is tagged
+ * SUBSETTED in meta, as HAPI does when it encodes in summary mode.
+ *
+ * Instances are per request (see {@link ResourceProjectionService#forRequest}); field filters are
+ * resolved once per resource type, so _include/_revinclude entries of other types project too.
+ */
+public final class ResourceProjection {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResourceProjection.class);
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    // Always emitted, whatever the projection
+    private static final Set<String> ALWAYS = Set.of("resourceType", "id", "meta");
+
+    /**
+     * Top-level fields to keep (or, when exclude is set, to drop)
+     */
+    static final class FieldFilter {
+        final Set<String> fields;
+        final boolean exclude;
+
+        FieldFilter(Set<String> fields, boolean exclude) {
+            this.fields = Set.copyOf(fields);
+            this.exclude = exclude;
+        }
+
+        boolean keeps(String field) {
+            if (ALWAYS.contains(field)) {
+                return true;
+            }
+            // Primitive extensions (_birthDate) follow their element
+            String element = field.startsWith("_") ? field.substring(1) : field;
+            return fields.contains(element) != exclude;
+        }
+    }
+
+    private final String description;
+    private final Function<String, FieldFilter> filterResolver;
+    private final Map<String, FieldFilter> filters = new ConcurrentHashMap<>();
+
+    ResourceProjection(String description, Function<String, FieldFilter> filterResolver) {
+        this.description = description;
+        this.filterResolver = filterResolver;
+    }
+
+    /**
+     * Project one document. The resource type is taken from the document key ("Patient/123").
+     * Documents that cannot be parsed are returned unchanged.
+     */
+    public byte[] apply(String documentKey, byte[] json) {
+        int slash = documentKey.indexOf('/');
+        String resourceType = slash > 0 ? documentKey.substring(0, slash) : documentKey;
+        try {
+            return project(json, filters.computeIfAbsent(resourceType, filterResolver));
+        } catch (IOException | RuntimeException e) {
+            logger.warn("🚀 FASTPATH: Failed to project {} ({}), returning full resource", documentKey, e.getMessage());
+            return json;
+        }
+    }
+
+    static byte[] project(byte[] json, FieldFilter filter) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length);
+        try (JsonParser parser = JSON_FACTORY.createParser(json);
+             JsonGenerator generator = JSON_FACTORY.createGenerator(out)) {
+
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return json;
+            }
+            generator.writeStartObject();
+
+            boolean metaWritten = false;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (!filter.keeps(field)) {
+                    parser.skipChildren();
+                    continue;
+                }
+                generator.writeFieldName(field);
+                if ("meta".equals(field) && value == JsonToken.START_OBJECT) {
+                    copyMetaWithSubsettedTag(parser, generator);
+                    metaWritten = true;
+                } else {
+                    generator.copyCurrentStructure(parser);
+                }
+            }
+
+            if (!metaWritten) {
+                generator.writeObjectFieldStart("meta");
+                generator.writeArrayFieldStart("tag");
+                writeSubsettedTag(generator);
+                generator.writeEndArray();
+                generator.writeEndObject();
+            }
+            generator.writeEndObject();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Copy meta (parser positioned on its START_OBJECT), appending the SUBSETTED tag
+     */
+    private static void copyMetaWithSubsettedTag(JsonParser parser, JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        boolean tagWritten = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            generator.writeFieldName(field);
+            if ("tag".equals(field) && value == JsonToken.START_ARRAY) {
+                generator.writeStartArray();
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    generator.copyCurrentStructure(parser);
+                }
+                writeSubsettedTag(generator);
+                generator.writeEndArray();
+                tagWritten = true;
+            } else {
+                generator.copyCurrentStructure(parser);
+            }
+        }
+        if (!tagWritten) {
+            generator.writeArrayFieldStart("tag");
+            writeSubsettedTag(generator);
+            generator.writeEndArray();
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeSubsettedTag(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("system", Constants.TAG_SUBSETTED_SYSTEM_R4);
+        generator.writeStringField("code", Constants.TAG_SUBSETTED_CODE);
+        generator.writeEndObject();
+    }
+
+    @Override
+    public String toString() {
+        return "ResourceProjection{" + description + "}";
+    }
+}
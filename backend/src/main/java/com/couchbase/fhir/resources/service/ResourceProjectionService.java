@@ -0,0 +1,121 @@
+package com.couchbase.fhir.resources.service;
+
+import ca.uhn.fhir.context.BaseRuntimeChildDefinition;
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeResourceDefinition;
+import ca.uhn.fhir.rest.api.SummaryEnum;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Builds {@link ResourceProjection}s for _summary and _elements on the JSON fastpath.
+ *
+ * Summary and mandatory (min > 0) element names come from HAPI's resource definitions and are
+ * cached per resource type. Choice elements expand to every JSON name (value[x] → valueQuantity, ...).
+ *
+ * - _summary=true: summary + mandatory elements
+ * - _summary=text: text + mandatory elements
+ * - _summary=data: everything except text
+ * - _elements:     requested + mandatory elements (nested paths keep their whole top-level element)
+ *
+ * _summary=count has no entries to project and stays on the HAPI path.
+ */
+@Service
+public class ResourceProjectionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResourceProjectionService.class);
+
+    @Autowired
+    private FhirContext fhirContext;
+
+    private final Map<String, Set<String>> summaryFields = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> mandatoryFields = new ConcurrentHashMap<>();
+
+    /**
+     * Whether a request with this _summary mode can be served from raw bytes
+     */
+    public boolean supportsFastpath(SummaryEnum summaryMode) {
+        return summaryMode != SummaryEnum.COUNT;
+    }
+
+    /**
+     * Projection for a request, or null when resources are returned whole.
+     * _elements wins over _summary, as in applyResourceFiltering.
+     */
+    public ResourceProjection forRequest(SummaryEnum summaryMode, Set<String> elements) {
+        if (elements != null && !elements.isEmpty()) {
+            Set<String> requested = Set.copyOf(elements);
+            return new ResourceProjection("_elements=" + requested, resourceType -> {
+                Set<String> fields = new HashSet<>(mandatoryFields(resourceType));
+                for (String element : requested) {
+                    fields.addAll(jsonNames(resourceType, element));
+                }
+                return new ResourceProjection.FieldFilter(fields, false);
+            });
+        }
+        if (summaryMode == null) {
+            return null;
+        }
+        switch (summaryMode) {
+            case TRUE:
+                return new ResourceProjection("_summary=true",
+                    resourceType -> new ResourceProjection.FieldFilter(summaryFields(resourceType), false));
+            case TEXT:
+                return new ResourceProjection("_summary=text", resourceType -> {
+                    Set<String> fields = new HashSet<>(mandatoryFields(resourceType));
+                    fields.add("text");
+                    return new ResourceProjection.FieldFilter(fields, false);
+                });
+            case DATA:
+                return new ResourceProjection("_summary=data",
+                    resourceType -> new ResourceProjection.FieldFilter(Set.of("text"), true));
+            default:
+                return null;
+        }
+    }
+
+    private Set<String> summaryFields(String resourceType) {
+        return summaryFields.computeIfAbsent(resourceType, rt -> collectFields(rt, true));
+    }
+
+    private Set<String> mandatoryFields(String resourceType) {
+        return mandatoryFields.computeIfAbsent(resourceType, rt -> collectFields(rt, false));
+    }
+
+    private Set<String> collectFields(String resourceType, boolean includeSummary) {
+        Set<String> fields = new HashSet<>();
+        RuntimeResourceDefinition definition = fhirContext.getResourceDefinition(resourceType);
+        for (BaseRuntimeChildDefinition child : definition.getChildren()) {
+            if (child.getMin() > 0 || (includeSummary && child.isSummary())) {
+                fields.addAll(child.getValidChildNames());
+            }
+        }
+        logger.debug("🚀 FASTPATH: {} {} fields: {}", resourceType, includeSummary ? "summary" : "mandatory", fields);
+        return Set.copyOf(fields);
+    }
+
+    /**
+     * JSON names of a requested _elements entry ("Observation.value", "value", "name.family")
+     */
+    private Set<String> jsonNames(String resourceType, String element) {
+        String name = element.startsWith(resourceType + ".") ? element.substring(resourceType.length() + 1) : element;
+        int dot = name.indexOf('.');
+        if (dot > 0) {
+            name = name.substring(0, dot);
+        }
+
+        RuntimeResourceDefinition definition = fhirContext.getResourceDefinition(resourceType);
+        BaseRuntimeChildDefinition child = definition.getChildByName(name);
+        if (child == null) {
+            child = definition.getChildByName(name + "[x]");
+        }
+        return child != null ? child.getValidChildNames() : Set.of(name);
+    }
+}
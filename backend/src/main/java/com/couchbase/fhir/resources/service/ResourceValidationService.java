@@ -0,0 +1,245 @@
+package com.couchbase.fhir.resources.service;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.validation.FhirValidator;
+import ca.uhn.fhir.validation.SingleValidationMessage;
+import ca.uhn.fhir.validation.ValidationResult;
+import com.couchbase.fhir.resources.config.ValidationProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.hash.Hashing;
+import jakarta.annotation.PostConstruct;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.CanonicalType;
+import org.hl7.fhir.r4.model.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * FHIR validation with a result cache and a bound on concurrent validations.
+ *
+ * Outcomes are keyed by (validator, meta.profile set, SHA-256 of the resource encoded without id
+ * and meta), so a resubmitted resource, or another one with the same content, is not validated
+ * again. Concurrent validations of the same key share one run.
+ *
+ * The validator beans are thread-safe singletons (the US Core one holds the whole package on heap),
+ * so instead of pooling copies, at most {@code fhir.validation.max-concurrency} validations run at
+ * once across all requests. Bundle entries are validated in parallel within that bound.
+ */
+@Service
+public class ResourceValidationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResourceValidationService.class);
+
+    @Autowired
+    private FhirContext fhirContext;
+
+    @Autowired
+    private FhirValidator fhirValidator;  // Primary US Core validator
+
+    @Autowired
+    @Qualifier("basicFhirValidator")
+    private FhirValidator basicFhirValidator;  // Basic validator for lenient validation
+
+    @Autowired
+    private ValidationProperties properties;
+
+    private final ConcurrentHashMap<String, CompletableFuture<ValidationResult>> inFlight = new ConcurrentHashMap<>();
+    private Cache<String, ValidationResult> results;
+    private Semaphore validatorSlots;
+
+    @PostConstruct
+    void init() {
+        if (properties.isCacheEnabled()) {
+            results = Caffeine.newBuilder()
+                .maximumSize(properties.getCacheMaximumSize())
+                .build();
+        }
+        validatorSlots = new Semaphore(Math.max(1, properties.getMaxConcurrency()));
+        logger.info("🩺 Validation: maxConcurrency={}, cache={} (maxSize={})",
+                    properties.getMaxConcurrency(), properties.isCacheEnabled(), properties.getCacheMaximumSize());
+    }
+
+    /**
+     * Validate one resource with the US Core validator or the basic R4 one
+     */
+    public ValidationResult validate(Resource resource, boolean usCore) {
+        if (results == null) {
+            return run(resource, usCore);
+        }
+
+        String key = key(fhirContext, resource, usCore);
+        ValidationResult cached = results.getIfPresent(key);
+        if (cached != null) {
+            logger.debug("🩺 {} validation served from cache", resource.getResourceType());
+            return cached;
+        }
+
+        CompletableFuture<ValidationResult> leader = new CompletableFuture<>();
+        CompletableFuture<ValidationResult> existing = inFlight.putIfAbsent(key, leader);
+        if (existing != null) {
+            return RequestFanOut.join(existing);
+        }
+        try {
+            ValidationResult result = run(resource, usCore);
+            results.put(key, result);
+            leader.complete(result);
+            return result;
+        } catch (Throwable t) {
+            // Errors too (e.g. StackOverflowError in the validator), or waiters would block forever
+            leader.completeExceptionally(t);
+            throw t;
+        } finally {
+            inFlight.remove(key, leader);
+        }
+    }
+
+    /**
+     * Validate resources in parallel; results are in input order
+     */
+    public List<ValidationResult> validateAll(List<? extends Resource> resources, boolean usCore) {
+        List<ValidationResult> validated = new ArrayList<>(resources.size());
+        if (resources.size() <= 1) {
+            resources.forEach(resource -> validated.add(validate(resource, usCore)));
+            return validated;
+        }
+
+        RequestFanOut fanOut = new RequestFanOut(properties.getMaxConcurrency());
+        List<CompletableFuture<ValidationResult>> futures = new ArrayList<>(resources.size());
+        for (Resource resource : resources) {
+            futures.add(fanOut.submit(() -> validate(resource, usCore)));
+        }
+        for (CompletableFuture<ValidationResult> future : futures) {
+            validated.add(RequestFanOut.join(future));
+        }
+        return validated;
+    }
+
+    /**
+     * Validate a batch or transaction Bundle: the entry resources each on their own, in parallel,
+     * and the Bundle itself without them. Entry messages are prefixed with their entry.
+     * Other Bundle types, or entries without a request, are validated as one resource.
+     */
+    public ValidationResult validateBundle(Bundle bundle, boolean usCore) {
+        boolean splittable = (bundle.getType() == Bundle.BundleType.BATCH || bundle.getType() == Bundle.BundleType.TRANSACTION)
+            && bundle.getEntry().stream().allMatch(Bundle.BundleEntryComponent::hasRequest);
+        if (!splittable) {
+            return validate(bundle, usCore);
+        }
+
+        List<Resource> parts = new ArrayList<>();
+        List<Integer> entryIndexes = new ArrayList<>();
+        parts.add(withoutEntryResources(bundle));
+        entryIndexes.add(null);
+        for (int i = 0; i < bundle.getEntry().size(); i++) {
+            Resource resource = bundle.getEntry().get(i).getResource();
+            if (resource != null) {
+                parts.add(resource);
+                entryIndexes.add(i);
+            }
+        }
+
+        List<ValidationResult> validated = validateAll(parts, usCore);
+        List<SingleValidationMessage> messages = new ArrayList<>();
+        for (int p = 0; p < validated.size(); p++) {
+            Integer entryIndex = entryIndexes.get(p);
+            for (SingleValidationMessage message : validated.get(p).getMessages()) {
+                messages.add(entryIndex == null ? message : withEntryLocation(message, entryIndex));
+            }
+        }
+        return new ValidationResult(fhirContext, messages);
+    }
+
+    public void clear() {
+        if (results != null) {
+            results.invalidateAll();
+        }
+    }
+
+    private ValidationResult run(Resource resource, boolean usCore) {
+        FhirValidator validator = usCore ? fhirValidator : basicFhirValidator;
+        try {
+            validatorSlots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting to validate " + resource.getResourceType(), e);
+        }
+        try {
+            return validator.validateWithResult(resource);
+        } finally {
+            validatorSlots.release();
+        }
+    }
+
+    /**
+     * Cache key: validator, sorted meta.profile values and the SHA-256 of the resource encoded
+     * without id and meta. Resources that differ only in id, versionId or lastUpdated share a key.
+     */
+    static String key(FhirContext fhirContext, Resource resource, boolean usCore) {
+        TreeSet<String> profiles = new TreeSet<>();
+        if (resource.hasMeta()) {
+            for (CanonicalType profile : resource.getMeta().getProfile()) {
+                profiles.add(profile.getValue());
+            }
+        }
+
+        Resource content = resource.copy();
+        content.setIdElement(null);
+        content.setMeta(null);
+        String json = fhirContext.newJsonParser().setPrettyPrint(false).encodeResourceToString(content);
+
+        return (usCore ? "us-core" : "basic") + "|" + String.join(",", profiles) + "|"
+            + Hashing.sha256().hashString(json, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The Bundle with the same entries minus their resources (ids, meta and requests are shared, not copied)
+     */
+    private static Bundle withoutEntryResources(Bundle bundle) {
+        Bundle skeleton = new Bundle();
+        skeleton.setIdElement(bundle.getIdElement());
+        skeleton.setMeta(bundle.getMeta());
+        skeleton.setImplicitRulesElement(bundle.getImplicitRulesElement());
+        skeleton.setLanguageElement(bundle.getLanguageElement());
+        skeleton.setIdentifier(bundle.getIdentifier());
+        skeleton.setTypeElement(bundle.getTypeElement());
+        skeleton.setTimestampElement(bundle.getTimestampElement());
+        skeleton.setTotalElement(bundle.getTotalElement());
+        skeleton.setLink(bundle.getLink());
+        skeleton.setSignature(bundle.getSignature());
+        for (Bundle.BundleEntryComponent entry : bundle.getEntry()) {
+            Bundle.BundleEntryComponent stripped = skeleton.addEntry();
+            stripped.setFullUrlElement(entry.getFullUrlElement());
+            stripped.setLink(entry.getLink());
+            stripped.setSearch(entry.getSearch());
+            stripped.setRequest(entry.getRequest());
+            stripped.setResponse(entry.getResponse());
+            stripped.setExtension(entry.getExtension());
+            stripped.setModifierExtension(entry.getModifierExtension());
+        }
+        return skeleton;
+    }
+
+    private static SingleValidationMessage withEntryLocation(SingleValidationMessage message, int entryIndex) {
+        SingleValidationMessage located = new SingleValidationMessage();
+        located.setSeverity(message.getSeverity());
+        located.setMessage(message.getMessage());
+        located.setMessageId(message.getMessageId());
+        located.setLocationString("Bundle.entry[" + entryIndex + "].resource/" + message.getLocationString());
+        located.setLocationLine(message.getLocationLine());
+        located.setLocationCol(message.getLocationCol());
+        located.setSliceMessages(message.getSliceMessages());
+        return located;
+    }
+}
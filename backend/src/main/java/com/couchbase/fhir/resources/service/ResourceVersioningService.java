@@ -0,0 +1,133 @@
+package com.couchbase.fhir.resources.service;
+
+import com.couchbase.client.core.error.DocumentExistsException;
+import com.couchbase.client.core.error.DocumentNotFoundException;
+import com.couchbase.client.java.Cluster;
+import com.couchbase.client.java.Collection;
+import com.couchbase.client.java.codec.RawJsonTranscoder;
+import com.couchbase.client.java.json.JsonObject;
+import com.couchbase.client.java.transactions.TransactionAttemptContext;
+import com.couchbase.client.java.transactions.TransactionGetResult;
+import com.couchbase.client.java.transactions.config.TransactionInsertOptions;
+import com.couchbase.client.java.transactions.config.TransactionReplaceOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * KV-only versioning for PUT and DELETE inside Couchbase transactions.
+ *
+ * The current document is read once with txContext.get and its bytes are copied unchanged to
+ * Versions under "{documentKey}/{versionId}". The same read is then used to replace (PUT) or
+ * remove (DELETE) the live document, so a transaction made of PUTs and DELETEs stays in KV mode
+ * and never goes through the query service.
+ */
+@Service
+public class ResourceVersioningService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResourceVersioningService.class);
+    private static final String DEFAULT_SCOPE = "Resources";
+    private static final String VERSIONS_COLLECTION = "Versions";
+
+    /**
+     * The live document as read in the transaction, and the version it was archived under
+     */
+    public static final class CurrentVersion {
+        private final TransactionGetResult document;
+        private final String versionId;
+
+        CurrentVersion(TransactionGetResult document, String versionId) {
+            this.document = document;
+            this.versionId = versionId;
+        }
+
+        public TransactionGetResult getDocument() {
+            return document;
+        }
+
+        public String getVersionId() {
+            return versionId;
+        }
+
+        /**
+         * Version number of the next write
+         */
+        public int nextVersion() {
+            return ResourceVersioningService.nextVersion(versionId);
+        }
+    }
+
+    @Autowired
+    private CollectionRoutingService collectionRoutingService;
+
+    /**
+     * Copy the live document to Versions.
+     *
+     * @return the archived document, or null when there is no live document
+     */
+    public CurrentVersion archiveCurrent(TransactionAttemptContext txContext, Cluster cluster,
+                                         String bucketName, String resourceType, String documentKey) {
+        TransactionGetResult current;
+        try {
+            current = txContext.get(liveCollection(cluster, bucketName, resourceType), documentKey);
+        } catch (DocumentNotFoundException e) {
+            logger.debug("🆕 {} has no live document, nothing to archive", documentKey);
+            return null;
+        }
+
+        String versionId = versionIdOf(current.contentAsObject());
+        Collection versions = cluster.bucket(bucketName).scope(DEFAULT_SCOPE).collection(VERSIONS_COLLECTION);
+        String versionKey = documentKey + "/" + versionId;
+        byte[] content = current.contentAsBytes();
+        try {
+            txContext.insert(versions, versionKey, content,
+                TransactionInsertOptions.transactionInsertOptions().transcoder(RawJsonTranscoder.INSTANCE));
+        } catch (DocumentExistsException e) {
+            // Left by an earlier write of the same version - the live copy wins
+            txContext.replace(txContext.get(versions, versionKey), content,
+                TransactionReplaceOptions.transactionReplaceOptions().transcoder(RawJsonTranscoder.INSTANCE));
+        }
+        logger.debug("📂 Archived {} as {}", documentKey, versionKey);
+        return new CurrentVersion(current, versionId);
+    }
+
+    /**
+     * Write the new live document: replace the archived one, or insert when there was none
+     */
+    public void writeCurrent(TransactionAttemptContext txContext, Cluster cluster, String bucketName,
+                             String resourceType, String documentKey, CurrentVersion current, byte[] resourceJson) {
+        if (current != null) {
+            txContext.replace(current.getDocument(), resourceJson,
+                TransactionReplaceOptions.transactionReplaceOptions().transcoder(RawJsonTranscoder.INSTANCE));
+        } else {
+            txContext.insert(liveCollection(cluster, bucketName, resourceType), documentKey, resourceJson,
+                TransactionInsertOptions.transactionInsertOptions().transcoder(RawJsonTranscoder.INSTANCE));
+        }
+    }
+
+    private Collection liveCollection(Cluster cluster, String bucketName, String resourceType) {
+        String targetCollection = collectionRoutingService.getTargetCollection(resourceType);
+        return cluster.bucket(bucketName).scope(DEFAULT_SCOPE).collection(targetCollection);
+    }
+
+    /**
+     * Version number that follows a stored version (non-numeric version ids restart at 1)
+     */
+    static int nextVersion(String versionId) {
+        try {
+            return Integer.parseInt(versionId) + 1;
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
+    /**
+     * meta.versionId of a stored resource, "1" when absent
+     */
+    static String versionIdOf(JsonObject document) {
+        JsonObject meta = document.getObject("meta");
+        Object versionId = meta != null ? meta.get("versionId") : null;
+        return versionId != null ? versionId.toString() : "1";
+    }
+}
@@ -0,0 +1,143 @@
+package com.couchbase.fhir.resources.service;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeSearchParam;
+import com.couchbase.client.java.search.SearchQuery;
+import com.couchbase.common.config.FhirConfig;
+import com.couchbase.fhir.resources.search.SearchPlan;
+import com.couchbase.fhir.resources.util.DateSearchHelper;
+import com.couchbase.fhir.resources.util.QuantitySearchHelper;
+import com.couchbase.fhir.resources.util.ReferenceSearchHelper;
+import com.couchbase.fhir.resources.util.StringSearchHelper;
+import com.couchbase.fhir.resources.util.TokenSearchHelper;
+import com.couchbase.fhir.resources.util.USCoreSearchHelper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Cache of compiled search plans keyed by (resourceType, parameter name, modifier).
+ *
+ * Traffic is dominated by a small number of query shapes, so resolving the RuntimeSearchParam,
+ * parsing its FHIRPath expression, checking US Core definitions and expanding field paths is
+ * done once per shape instead of on every request. Bounded, since parameter names come from
+ * the request.
+ */
+@Service
+public class SearchPlanCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(SearchPlanCache.class);
+
+    private static final long MAX_PLANS = 4096;
+
+    @Autowired
+    private FhirContext fhirContext;
+
+    @Autowired
+    private FhirConfig fhirConfig;
+
+    private final Cache<String, SearchPlan> plans = Caffeine.newBuilder()
+        .maximumSize(MAX_PLANS)
+        .build();
+
+    /**
+     * Get (or compile) the plan for a parameter shape.
+     */
+    public SearchPlan getPlan(String resourceType, String paramName, String modifier) {
+        String key = resourceType + "|" + paramName + "|" + (modifier != null ? modifier : "");
+        return plans.get(key, k -> compile(resourceType, paramName, modifier));
+    }
+
+    public void clear() {
+        plans.invalidateAll();
+    }
+
+    private SearchPlan compile(String resourceType, String paramName, String modifier) {
+        RuntimeSearchParam searchParam = fhirContext
+                .getResourceDefinition(resourceType)
+                .getSearchParam(paramName);
+
+        SearchPlan plan = searchParam != null
+            ? compileHapiPlan(resourceType, paramName, modifier, searchParam)
+            : compileUSCorePlan(resourceType, paramName, modifier);
+        logger.debug("🔍 Compiled {}", plan);
+        return plan;
+    }
+
+    private SearchPlan compileHapiPlan(String resourceType, String paramName, String modifier,
+                                       RuntimeSearchParam searchParam) {
+        String paramType = searchParam.getParamType().name();
+
+        switch (searchParam.getParamType()) {
+            case TOKEN: {
+                TokenSearchHelper.TokenTarget target = TokenSearchHelper.resolveTokenTarget(fhirContext, resourceType, paramName);
+                return new SearchPlan(resourceType, paramName, modifier, paramType, List.of(target.getFieldPath()),
+                    values -> single(TokenSearchHelper.buildTokenQuery(fhirContext, resourceType, target, values.get(0))));
+            }
+            case STRING: {
+                List<String> fieldPaths = StringSearchHelper.resolveStringFieldPaths(fhirContext, resourceType, paramName, searchParam);
+                return new SearchPlan(resourceType, paramName, modifier, paramType, fieldPaths,
+                    values -> single(StringSearchHelper.buildStringQueryForFields(fieldPaths, values.get(0), modifier)));
+            }
+            case DATE: {
+                List<String> fieldPaths = List.copyOf(DateSearchHelper.resolveDateFieldPaths(fhirContext, resourceType, paramName));
+                return new SearchPlan(resourceType, paramName, modifier, paramType, fieldPaths,
+                    values -> single(DateSearchHelper.buildDateQueryForFields(fieldPaths, values)));
+            }
+            case REFERENCE:
+                return new SearchPlan(resourceType, paramName, modifier, paramType, null, values -> {
+                    SearchQuery referenceQuery = ReferenceSearchHelper.buildReferenceFTSQuery(
+                        fhirContext, resourceType, paramName, values.get(0), searchParam);
+                    if (referenceQuery == null) {
+                        logger.warn("🔍 Failed to build FTS query for REFERENCE parameter: {}", paramName);
+                    }
+                    return single(referenceQuery);
+                });
+            case URI:
+            case COMPOSITE:
+            case QUANTITY:
+                return new SearchPlan(resourceType, paramName, modifier, paramType, null,
+                    values -> single(QuantitySearchHelper.buildQuantityFTSQuery(
+                        fhirContext, resourceType, paramName, values.get(0), searchParam)));
+            default:
+                logger.warn("Unsupported search parameter type: {} for parameter: {}", searchParam.getParamType(), paramName);
+                return new SearchPlan(resourceType, paramName, modifier, paramType, null, null);
+        }
+    }
+
+    /**
+     * US Core parameters that HAPI doesn't know about
+     */
+    private SearchPlan compileUSCorePlan(String resourceType, String paramName, String modifier) {
+        if (!fhirConfig.isValidUSCoreSearchParam(resourceType, paramName)) {
+            return new SearchPlan(resourceType, paramName, modifier, null, null, null);
+        }
+        org.hl7.fhir.r4.model.SearchParameter usCoreParam = fhirConfig.getUSCoreSearchParamDetails(resourceType, paramName);
+        if (usCoreParam == null) {
+            return new SearchPlan(resourceType, paramName, modifier, null, null, null);
+        }
+
+        logger.debug("🔍 Found US Core parameter: {} for {} (code: {}, expression: {}, type: {})",
+                     paramName, resourceType, usCoreParam.getCode(), usCoreParam.getExpression(), usCoreParam.getType());
+
+        String paramType = usCoreParam.getType() != null ? "US_CORE_" + usCoreParam.getType().toCode().toUpperCase() : "US_CORE";
+        return new SearchPlan(resourceType, paramName, modifier, paramType, null, values -> {
+            List<SearchQuery> usCoreQueries = USCoreSearchHelper.buildUSCoreFTSQueries(
+                fhirContext, resourceType, paramName, values, usCoreParam);
+            if (usCoreQueries == null || usCoreQueries.isEmpty()) {
+                logger.warn("🔍 Failed to build US Core queries for parameter: {}", paramName);
+                return List.of();
+            }
+            return usCoreQueries;
+        });
+    }
+
+    private static List<SearchQuery> single(SearchQuery query) {
+        return query != null ? List.of(query) : List.of();
+    }
+}
@@ -0,0 +1,221 @@
+package com.couchbase.fhir.resources.service;
+
+import com.couchbase.fhir.resources.config.SearchResultCacheProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Searchset result cache for repeated searches (dashboards, SMART apps polling the same query).
+ *
+ * Holds the fastpath bundle bytes of a first-page search, keyed by bucket + server base +
+ * resource type + normalized parameters. Consistency comes from write epochs: every create,
+ * update and delete bumps a counter for its collection (and one for the whole bucket), and an
+ * entry is served only while the epochs it was computed under are unchanged. Writes made
+ * elsewhere (other nodes, direct KV) are bounded by the bucket's maxStalenessSeconds, which is
+ * also what opts a bucket in (0 = disabled).
+ *
+ * Flow:
+ * 1. SearchService opens a {@link Ticket} before running the search (epoch snapshot)
+ * 2. Hit: the cached bytes are served as fastpath bytes
+ * 3. Miss: the ticket rides in userData; FastpathResponseInterceptor stores the bytes it wrote
+ */
+@Service
+public class SearchResultCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(SearchResultCache.class);
+
+    // userData key of the pending ticket for a cache miss
+    public static final String PENDING_ATTRIBUTE = "com.couchbase.fhir.search.result-cache.ticket";
+
+    // Pseudo-collection bumped by every write (for results whose dependencies are not known)
+    private static final String ANY_COLLECTION = "*";
+
+    /**
+     * A cacheable search: its key, the epochs it depends on and how long a result may live
+     */
+    public static final class Ticket {
+        private final String key;
+        private final List<String> epochKeys;
+        private final long[] epochs;
+        private final int ttlSeconds;
+
+        Ticket(String key, List<String> epochKeys, long[] epochs, int ttlSeconds) {
+            this.key = key;
+            this.epochKeys = epochKeys;
+            this.epochs = epochs;
+            this.ttlSeconds = ttlSeconds;
+        }
+    }
+
+    private static final class Entry {
+        final byte[] bytes;
+        final Ticket ticket;
+
+        Entry(byte[] bytes, Ticket ticket) {
+            this.bytes = bytes;
+            this.ticket = ticket;
+        }
+    }
+
+    @Autowired
+    private SearchResultCacheProperties properties;
+
+    @Autowired
+    private FhirBucketConfigService bucketConfigService;
+
+    @Autowired
+    private CollectionRoutingService collectionRoutingService;
+
+    @Autowired
+    private ChainSearchEngine chainSearchEngine;
+
+    @Autowired
+    private FtsCountCache countCache;
+
+    private final Map<String, AtomicLong> epochs = new ConcurrentHashMap<>();
+
+    private Cache<String, Entry> entries;
+
+    @PostConstruct
+    void init() {
+        entries = Caffeine.newBuilder()
+            .maximumWeight(properties.getMaximumSizeMb() * 1024 * 1024)
+            .weigher((String key, Entry entry) -> entry.bytes.length + key.length())
+            .expireAfter(Expiry.creating((String key, Entry entry) -> Duration.ofSeconds(entry.ticket.ttlSeconds)))
+            .build();
+        logger.info("🗃️ Search result cache: enabled={}, maxSize={}MB, maxEntry={}KB, maxStaleness={}s",
+                    properties.isEnabled(), properties.getMaximumSizeMb(), properties.getMaxEntryKb(),
+                    properties.getMaxStalenessSeconds());
+    }
+
+    /**
+     * Open a ticket for a search, or null when the bucket has not opted in.
+     *
+     * @param dependentTypes resource types whose writes can change the result, or null when
+     *                       they are not known (any write to the bucket invalidates)
+     */
+    public Ticket open(String bucketName, String serverBase, String resourceType,
+                       Map<String, String[]> params, Set<String> dependentTypes) {
+        int ttlSeconds = ttlSeconds(bucketName);
+        if (ttlSeconds <= 0) {
+            return null;
+        }
+
+        List<String> epochKeys = dependentTypes == null
+            ? List.of(epochKey(bucketName, ANY_COLLECTION))
+            : dependentTypes.stream()
+                .map(type -> epochKey(bucketName, collectionRoutingService.getTargetCollection(type)))
+                .distinct()
+                .toList();
+        return new Ticket(cacheKey(bucketName, serverBase, resourceType, params), epochKeys,
+                          snapshot(epochKeys), ttlSeconds);
+    }
+
+    /**
+     * Cached bundle bytes for a ticket, or null on a miss or when a dependency was written since
+     */
+    public byte[] get(Ticket ticket) {
+        Entry entry = entries.getIfPresent(ticket.key);
+        if (entry == null) {
+            return null;
+        }
+        if (!isCurrent(entry.ticket)) {
+            entries.asMap().remove(ticket.key, entry);
+            return null;
+        }
+        return entry.bytes;
+    }
+
+    /**
+     * Store a result computed under the ticket (dropped when a dependency was written meanwhile)
+     */
+    public void put(Ticket ticket, byte[] bytes) {
+        if (bytes == null || bytes.length > getMaxEntryBytes()) {
+            return;
+        }
+        if (!isCurrent(ticket)) {
+            logger.debug("🗃️ Result for {} superseded by a write, not cached", ticket.key);
+            return;
+        }
+        entries.put(ticket.key, new Entry(bytes, ticket));
+    }
+
+    /**
+     * Record a write to a resource type (call after the write, and again after a transaction commits).
+     * Also drops the chain target sets and FTS counts of that type, which hang off the same writes.
+     */
+    public void onWrite(String bucketName, String resourceType) {
+        String collection = collectionRoutingService.getTargetCollection(resourceType);
+        epochs.computeIfAbsent(epochKey(bucketName, collection), k -> new AtomicLong()).incrementAndGet();
+        epochs.computeIfAbsent(epochKey(bucketName, ANY_COLLECTION), k -> new AtomicLong()).incrementAndGet();
+        chainSearchEngine.onWrite(bucketName, resourceType);
+        countCache.onWrite(bucketName, resourceType);
+    }
+
+    public int getMaxEntryBytes() {
+        return properties.getMaxEntryKb() * 1024;
+    }
+
+    public void clear() {
+        entries.invalidateAll();
+    }
+
+    private int ttlSeconds(String bucketName) {
+        if (!properties.isEnabled()) {
+            return 0;
+        }
+        try {
+            int bucketStaleness = bucketConfigService.getFhirBucketConfig(bucketName).getSearchCacheMaxStalenessSeconds();
+            return Math.min(bucketStaleness, properties.getMaxStalenessSeconds());
+        } catch (Exception e) {
+            logger.debug("🗃️ No bucket config for {}, result cache off: {}", bucketName, e.getMessage());
+            return 0;
+        }
+    }
+
+    private boolean isCurrent(Ticket ticket) {
+        return Arrays.equals(ticket.epochs, snapshot(ticket.epochKeys));
+    }
+
+    private long[] snapshot(List<String> epochKeys) {
+        long[] values = new long[epochKeys.size()];
+        for (int i = 0; i < values.length; i++) {
+            AtomicLong epoch = epochs.get(epochKeys.get(i));
+            values[i] = epoch != null ? epoch.get() : 0;
+        }
+        return values;
+    }
+
+    private static String epochKey(String bucketName, String collection) {
+        return bucketName + "|" + collection;
+    }
+
+    /**
+     * Parameter order and repeated-value order do not change a search, so both are sorted
+     */
+    static String cacheKey(String bucketName, String serverBase, String resourceType, Map<String, String[]> params) {
+        Map<String, Set<String>> normalized = new TreeMap<>();
+        params.forEach((name, values) -> {
+            if (values != null && values.length > 0) {
+                normalized.computeIfAbsent(name, k -> new TreeSet<>()).addAll(Arrays.asList(values));
+            }
+        });
+        return bucketName + "|" + serverBase + "|" + resourceType + "?" + normalized;
+    }
+}
@@ -1,16 +1,17 @@
 package com.couchbase.fhir.resources.service;
 
-import ca.uhn.fhir.context.BaseRuntimeChildDefinition;
 import ca.uhn.fhir.context.FhirContext;
-import ca.uhn.fhir.context.RuntimeResourceDefinition;
 import ca.uhn.fhir.context.RuntimeSearchParam;
 import ca.uhn.fhir.rest.api.SummaryEnum;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
 import com.couchbase.fhir.resources.interceptor.RequestPerfBagUtils;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import ca.uhn.fhir.rest.server.exceptions.ResourceGoneException;
+import com.couchbase.client.java.json.JsonObject;
 import com.couchbase.client.java.search.SearchQuery;
 import com.couchbase.client.java.search.sort.SearchSort;
+import com.couchbase.fhir.resources.config.SearchFanOutProperties;
+import com.couchbase.fhir.resources.config.SearchPaginationProperties;
 import com.couchbase.fhir.resources.config.TenantContextHolder;
 import com.couchbase.fhir.resources.search.*;
 import com.couchbase.fhir.resources.search.validation.FhirSearchParameterPreprocessor;
@@ -19,8 +20,6 @@ import com.couchbase.fhir.resources.util.*;
 import com.couchbase.fhir.resources.validation.FhirBucketValidator;
 import com.couchbase.fhir.resources.validation.FhirBucketValidationException;
 import ca.uhn.fhir.model.api.Include;
-import org.hl7.fhir.instance.model.api.IBase;
-import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.Resource;
 import org.slf4j.Logger;
@@ -32,6 +31,8 @@ import com.couchbase.common.config.FhirConfig;
 
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiFunction;
 import java.util.stream.Collectors;
 
 /**
@@ -52,6 +53,9 @@ public class SearchService {
     // Fastpath attribute key for storing UTF-8 bytes in request (2x memory savings vs String)
     public static final String FASTPATH_BYTES_ATTRIBUTE = "com.couchbase.fhir.fastpath.bytes";
     
+    // Streaming fastpath attribute key: a StreamingSearchset written to the response as KV reads complete
+    public static final String FASTPATH_STREAM_ATTRIBUTE = "com.couchbase.fhir.fastpath.stream";
+    
     @Autowired
     private FhirContext fhirContext;
     
@@ -89,10 +93,30 @@ public class SearchService {
     @Autowired
     private IncludeReferenceExtractor includeReferenceExtractor;
     
+    @Autowired
+    private SearchPaginationProperties paginationProperties;
+    
+    @Autowired
+    private SearchPlanCache searchPlanCache;
+    
+    @Autowired
+    private ResourceProjectionService resourceProjectionService;
+    
+    @Autowired
+    private ChainSearchEngine chainSearchEngine;
+    
+    @Autowired
+    private SearchResultCache searchResultCache;
+
+    @Autowired
+    private SearchFanOutProperties fanOutProperties;
+    
     /**
      * Resolve conditional operations by finding matching resources.
      * Returns result indicating ZERO, ONE(id), or MANY matches for conditional operations.
      * 
+     * Keys only: one unscored FTS request with limit 2 decides the outcome, no resource is fetched or parsed.
+     * 
      * @param resourceType FHIR resource type (e.g., "Patient")
      * @param criteria Search criteria as key-value pairs
      * @return ResolveResult indicating ZERO, ONE(id), or MANY matches
@@ -100,42 +124,101 @@ public class SearchService {
     public ResolveResult resolveConditional(String resourceType, Map<String, List<String>> criteria) {
         logger.debug("🔍 Resolving conditional operation: {} with criteria: {}", resourceType, criteria);
         
-        // Use regular search with small limit for conditional operations
-        Bundle result = searchForConditional(resourceType, criteria, 2);
+        String bucketName = TenantContextHolder.getTenantId();
+        List<SearchQuery> ftsQueries = buildConditionalQueries(resourceType, criteria, bucketName);
+        if (ftsQueries == null) {
+            return ResolveResult.zero();
+        }
         
-        int totalResults = result.getTotal();
-        if (totalResults == 0) {
+        // Two keys are enough to tell ONE from MANY
+        List<String> keys = ftsSearchService.searchForKeys(ftsQueries, resourceType, 0, 2, null).getDocumentKeys();
+        if (keys.isEmpty()) {
             return ResolveResult.zero();
-        } else if (totalResults == 1) {
-            String resourceId = result.getEntry().get(0).getResource().getIdElement().getIdPart();
+        } else if (keys.size() == 1) {
+            String resourceId = keys.get(0).substring(keys.get(0).indexOf('/') + 1);
             logger.debug("🔍 Conditional operation: Single match found: {}", resourceId);
             return ResolveResult.one(resourceId);
         } else {
-            logger.warn("🔍 Conditional operation: Multiple matches found ({}), returning MANY", totalResults);
+            logger.warn("🔍 Conditional operation: Multiple matches found, returning MANY");
             return ResolveResult.many();
         }
     }
     
     /**
-     * Internal search method for conditional operations with small result limit
+     * Resolve many conditional URLs at once (e.g. all ifNoneExist criteria of a transaction Bundle).
+     * Each distinct URL is resolved once; the FTS requests run in parallel under the search fan-out budget.
+     * 
+     * @param conditionalUrls URLs of the form "Patient?identifier=http://sys|123"
+     * @return ResolveResult per distinct URL
      */
-    private Bundle searchForConditional(String resourceType, Map<String, List<String>> criteria, int limit) {
-        // Convert Map<String, List<String>> to Map<String, String[]> for search
-        Map<String, String[]> searchParams = criteria.entrySet().stream()
-                .collect(Collectors.toMap(
-                        Map.Entry::getKey,
-                        e -> e.getValue().toArray(new String[0])
-                ));
+    public Map<String, ResolveResult> resolveConditionalUrls(Collection<String> conditionalUrls) {
+        RequestFanOut fanOut = newFanOut();
+        Map<String, CompletableFuture<ResolveResult>> pending = new LinkedHashMap<>();
+        for (String url : conditionalUrls) {
+            if (pending.containsKey(url)) {
+                continue;
+            }
+            String[] parts = url.split("\\?", 2);
+            String resourceType = parts[0];
+            Map<String, List<String>> criteria = new LinkedHashMap<>();
+            if (parts.length > 1) {
+                ca.uhn.fhir.util.UrlUtil.parseQueryString(parts[1])
+                    .forEach((name, values) -> criteria.put(name, Arrays.asList(values)));
+            }
+            pending.put(url, fanOut.submit(() -> resolveConditional(resourceType, criteria)));
+        }
         
-        // Create minimal request details
-        ca.uhn.fhir.rest.server.servlet.ServletRequestDetails requestDetails = 
-            new ca.uhn.fhir.rest.server.servlet.ServletRequestDetails();
-        requestDetails.setParameters(searchParams);
+        Map<String, ResolveResult> results = new LinkedHashMap<>();
+        pending.forEach((url, future) -> results.put(url, RequestFanOut.join(future)));
+        logger.debug("🔍 Resolved {} conditional URLs in parallel", results.size());
+        return results;
+    }
+    
+    /**
+     * Build the FTS queries for conditional criteria, or null when a _has criterion matches nothing
+     */
+    private List<SearchQuery> buildConditionalQueries(String resourceType, Map<String, List<String>> criteria,
+                                                      String bucketName) {
+        Map<String, List<String>> remaining = new LinkedHashMap<>(criteria);
+        List.of("_summary", "_elements", "_count", "_sort", "_total", "_include", "_revinclude")
+            .forEach(remaining::remove);
+        Map<String, String> firstValues = new LinkedHashMap<>();
+        remaining.forEach((name, values) -> {
+            if (values != null && !values.isEmpty()) {
+                firstValues.put(name, values.get(0));
+            }
+        });
+        
+        ChainParam chainParam = detectChainParameter(firstValues, resourceType);
+        HasParam hasParam = detectHasParameter(firstValues);
+        if (chainParam != null) {
+            remaining.remove(chainParam.getOriginalParameter());
+        }
+        if (hasParam != null) {
+            remaining.remove("_has");
+            remaining.keySet().removeIf(name -> name.startsWith("_has:"));
+        }
         
-        // Override count parameter to limit results
-        searchParams.put("_count", new String[]{String.valueOf(limit)});
+        try {
+            searchPreprocessor.validateSearchParameters(resourceType, remaining);
+        } catch (FhirSearchValidationException e) {
+            throw new InvalidRequestException(e.getUserFriendlyMessage());
+        }
         
-        return search(resourceType, requestDetails);
+        List<SearchQuery> ftsQueries = new ArrayList<>(buildSearchQueries(resourceType, remaining).getFtsQueries());
+        if (hasParam != null) {
+            // Conditional operations resolve against current targets, never the cached target sets
+            SearchQuery hasQuery = buildHasQuery(resourceType, hasParam, bucketName, false);
+            if (hasQuery == null) {
+                return null;
+            }
+            ftsQueries.add(0, hasQuery);
+        }
+        if (chainParam != null) {
+            ChainSearchEngine.ChainPlan chainPlan = planChain(resourceType, chainParam, ftsQueries, null, bucketName, false);
+            return chainPlan.isEmpty() ? null : chainPlan.getPrimaryQueries();
+        }
+        return ftsQueries;
     }
     
     /**
@@ -166,6 +249,18 @@ public class SearchService {
             // Call search - it may use fastpath and store bytes in userData
             Bundle result = search(resourceType, requestDetails);
             
+            // Streaming fastpath has no servlet response here - materialize it into bytes
+            Object streamingSearchset = requestDetails.getUserData().remove(FASTPATH_STREAM_ATTRIBUTE);
+            if (streamingSearchset instanceof StreamingSearchset) {
+                java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream();
+                try {
+                    fastJsonBundleBuilder.writeSearchsetBundle((StreamingSearchset) streamingSearchset, baos);
+                } catch (java.io.IOException e) {
+                    throw new RuntimeException("Failed to build Bundle JSON", e);
+                }
+                requestDetails.getUserData().put(FASTPATH_BYTES_ATTRIBUTE, baos.toByteArray());
+            }
+            
             // Check if fastpath was used (bytes stored in userData)
             Object fastpathBytes = requestDetails.getUserData().get(FASTPATH_BYTES_ATTRIBUTE);
             if (fastpathBytes instanceof byte[]) {
@@ -265,6 +360,7 @@ public class SearchService {
     int count = parseCountParameter(searchParams);
     List<SearchSort> sortFields = parseSortParameter(searchParams);
         String totalMode = parseTotalParameter(searchParams);
+        ResourceProjection projection = resourceProjectionService.forRequest(summaryMode, elements);
         
         // Check for _revinclude parameters (can be multiple) using HAPI's Include class
         List<Include> revIncludes = new ArrayList<>();
@@ -297,8 +393,27 @@ public class SearchService {
             }
             logger.debug("🔍 Total _include parameters: {}", includes.size());
         }
-
-
+        
+        // Serve repeated searches from the result cache (fastpath bytes, write-invalidated)
+        if (fastpathProperties.isEnabled() && resourceProjectionService.supportsFastpath(summaryMode)) {
+            SearchResultCache.Ticket ticket = searchResultCache.open(bucketName, requestDetails.getFhirServerBase(),
+                resourceType, rawParams, dependentResourceTypes(resourceType, chainParam, hasParam, includes, revIncludes));
+            if (ticket != null) {
+                byte[] cachedBytes = searchResultCache.get(ticket);
+                if (cachedBytes != null) {
+                    logger.debug("🗃️ Result cache hit for {} search ({} bytes)", resourceType, cachedBytes.length);
+                    RequestPerfBagUtils.incrementCount(requestDetails, "result_cache_hits");
+                    RequestPerfBagUtils.addTiming(requestDetails, "search_service", System.currentTimeMillis() - searchStartMs);
+                    requestDetails.getUserData().put(FASTPATH_BYTES_ATTRIBUTE, cachedBytes);
+                    
+                    Bundle placeholder = new Bundle();
+                    placeholder.setType(Bundle.BundleType.SEARCHSET);
+                    return placeholder;
+                }
+                // Miss: FastpathResponseInterceptor stores the bytes it writes
+                requestDetails.getUserData().put(SearchResultCache.PENDING_ATTRIBUTE, ticket);
+            }
+        }
         
     // Remove control parameters from search criteria (we already captured userExplicitCount)
         searchParams.remove("_summary");
@@ -327,6 +442,18 @@ public class SearchService {
         List<SearchQuery> ftsQueries = searchQueryResult.getFtsQueries();
         // Note: N1QL filters removed - using pure FTS/KV architecture
         
+        // $has: resolve to the referenced primaries' document IDs, then search like any other criterion
+        // (sort, _total, _include/_revinclude and continuation pages all work on the primary query)
+        if (hasParam != null) {
+            SearchQuery hasQuery = buildHasQuery(resourceType, hasParam, bucketName, true);
+            if (hasQuery == null) {
+                logger.debug("🔗 No primaries match {}, returning empty bundle", hasParam);
+                return createEmptyBundle();
+            }
+            ftsQueries = new ArrayList<>(ftsQueries);
+            ftsQueries.add(0, hasQuery);
+        }
+        
         logger.debug("🔍 SearchService: Built {} FTS queries for {}", ftsQueries.size(), resourceType);
         // Handle count-only queries
         if ("accurate".equals(totalMode) && count == 0) {
@@ -345,24 +472,16 @@ public class SearchService {
             return result;
         }
 
-        if(hasParam != null){
-            Bundle result  = handleHasSearch(resourceType , hasParam , ftsQueries , bucketName , sortFields , count , requestDetails);
-            RequestPerfBagUtils.addTiming(requestDetails, "search_service", System.currentTimeMillis() - searchStartMs);
-            RequestPerfBagUtils.addCount(requestDetails, "search_results", result.getTotal());
-            return result;
-        }
-        
         // Check if this is a _revinclude search (can have multiple _revinclude parameters)
         if (!revIncludes.isEmpty()) {
-            // Check if fastpath is enabled (beta: no _summary/_elements support)
+            // Check if fastpath is enabled (_summary/_elements are projected from raw bytes)
             boolean useFastpath = fastpathProperties.isEnabled() && 
-                                  (summaryMode == null || summaryMode == SummaryEnum.FALSE) && 
-                                  (elements == null || elements.isEmpty());
+                                  resourceProjectionService.supportsFastpath(summaryMode);
             
         if (useFastpath) {
             logger.debug("🚀 FASTPATH ENABLED: Using JSON fastpath for _revinclude search");
             byte[] resultBytes = handleMultipleRevIncludeSearchFastpath(resourceType, ftsQueries, revIncludes, count, 
-                                     bucketName, requestDetails);
+                                     bucketName, summaryMode, elements, projection, requestDetails);
             RequestPerfBagUtils.addTiming(requestDetails, "search_service", System.currentTimeMillis() - searchStartMs);
             
             // Store UTF-8 bytes in request attribute for interceptor (2x memory savings vs String)
@@ -384,15 +503,14 @@ public class SearchService {
         // Check if this is a _include search (can have multiple _include parameters)
         if (!includes.isEmpty()) {
             try {
-                // Check if fastpath is enabled (beta: no _summary/_elements support)
+                // Check if fastpath is enabled (_summary/_elements are projected from raw bytes)
                 boolean useFastpath = fastpathProperties.isEnabled() && 
-                                      (summaryMode == null || summaryMode == SummaryEnum.FALSE) && 
-                                      (elements == null || elements.isEmpty());
+                                      resourceProjectionService.supportsFastpath(summaryMode);
                 
             if (useFastpath) {
                 logger.debug("🚀 FASTPATH ENABLED: Using JSON fastpath for _include search");
                 byte[] resultBytes = handleMultipleIncludeSearchFastpath(resourceType, ftsQueries, includes, count, 
-                                         bucketName, requestDetails);
+                                         bucketName, summaryMode, elements, projection, requestDetails);
                 RequestPerfBagUtils.addTiming(requestDetails, "search_service", System.currentTimeMillis() - searchStartMs);
                 
                 // Store UTF-8 bytes in request attribute for interceptor (2x memory savings vs String)
@@ -421,19 +539,21 @@ public class SearchService {
             }
         }
         
-        // Check if fastpath is enabled for regular search (beta: no _summary/_elements support)
+        // Check if fastpath is enabled for regular search (_summary/_elements are projected from raw bytes)
         boolean useFastpath = fastpathProperties.isEnabled() && 
-                              (summaryMode == null || summaryMode == SummaryEnum.FALSE) && 
-                              (elements == null || elements.isEmpty());
+                              resourceProjectionService.supportsFastpath(summaryMode);
         
         if (useFastpath) {
             logger.debug("🚀 FASTPATH ENABLED: Using JSON fastpath for regular search");
             byte[] resultBytes = handleRegularSearchFastpath(resourceType, ftsQueries, count, sortFields,
-                                         bucketName, requestDetails);
+                                         bucketName, summaryMode, elements, projection, requestDetails);
             RequestPerfBagUtils.addTiming(requestDetails, "search_service", System.currentTimeMillis() - searchStartMs);
             
             // Store UTF-8 bytes in request attribute for interceptor (2x memory savings vs String)
-            requestDetails.getUserData().put(FASTPATH_BYTES_ATTRIBUTE, resultBytes);
+            // (null when the bundle was deferred to the streaming writer)
+            if (resultBytes != null) {
+                requestDetails.getUserData().put(FASTPATH_BYTES_ATTRIBUTE, resultBytes);
+            }
             
             // Return empty placeholder Bundle (interceptor will replace with JSON)
             Bundle placeholder = new Bundle();
@@ -453,6 +573,32 @@ public class SearchService {
     
     // ========== Private Helper Methods ==========
     
+    /**
+     * Resource types whose writes can change a search's bundle, or null when an _include
+     * has no target type (any write may then change it)
+     */
+    private Set<String> dependentResourceTypes(String resourceType, ChainParam chainParam, HasParam hasParam,
+                                               List<Include> includes, List<Include> revIncludes) {
+        Set<String> types = new HashSet<>();
+        types.add(resourceType);
+        if (chainParam != null) {
+            types.add(chainParam.getTargetResourceType());
+        }
+        if (hasParam != null) {
+            types.add(hasParam.getTargetResource());
+        }
+        for (Include revInclude : revIncludes) {
+            types.add(revInclude.getParamType());
+        }
+        for (Include include : includes) {
+            if (include.getParamTargetType() == null) {
+                return null;
+            }
+            types.add(include.getParamTargetType());
+        }
+        return types;
+    }
+    
     /**
      * Detect if any parameter is a chained parameter
      */
@@ -518,88 +664,23 @@ public class SearchService {
                 modifier = rawParamName.substring(colonIndex + 1);
             }
             
-            // paramName is already resolved by HAPI FHIR's getSearchParam() method below
+            // Resolution (search param, FHIRPath, US Core, field expansion) is cached per shape;
+            // only the values are bound here
             List<String> values = entry.getValue();
-            
-            
-            RuntimeSearchParam searchParam = fhirContext
-                    .getResourceDefinition(resourceType)
-                    .getSearchParam(paramName);
-            
-            // Check for US Core parameters when HAPI doesn't know about them
-            if (searchParam == null) {
-                // Check if it's a US Core parameter
-                boolean isUSCoreParam = fhirConfig.isValidUSCoreSearchParam(resourceType, paramName);
-                if (isUSCoreParam) {
-                    org.hl7.fhir.r4.model.SearchParameter usCoreParam = fhirConfig.getUSCoreSearchParamDetails(resourceType, paramName);
-                    if (usCoreParam != null) {
-                        logger.debug("🔍 Found US Core parameter: {} for {}", paramName, resourceType);
-                        logger.debug("🔍 US Core parameter details:");
-                        logger.debug("   - Name: {}", usCoreParam.getName());
-                        logger.debug("   - Code: {}", usCoreParam.getCode());
-                        logger.debug("   - Expression: {}", usCoreParam.getExpression());
-                        logger.debug("   - Type: {}", usCoreParam.getType());
-                        
-                        // Try to build US Core queries using the new helper
-                        List<SearchQuery> usCoreQueries = USCoreSearchHelper.buildUSCoreFTSQueries(
-                            fhirContext, resourceType, paramName, values, usCoreParam);
-                        
-                        if (usCoreQueries != null && !usCoreQueries.isEmpty()) {
-                            ftsQueries.addAll(usCoreQueries);
-                            logger.debug("🔍 Added {} US Core queries for {}", usCoreQueries.size(), paramName);
-                            for (SearchQuery query : usCoreQueries) {
-                                logger.debug("🔍   - {}", query.export());
-                            }
-                        } else {
-                            logger.warn("🔍 Failed to build US Core queries for parameter: {}", paramName);
-                        }
-                    }
-                }
-                continue; // Still skip for now, just log what we found
+            SearchPlan plan = searchPlanCache.getPlan(resourceType, paramName, modifier);
+            if (!plan.isSupported()) {
+                logger.debug("🔍 Skipping unsupported parameter: {} for {}", rawParamName, resourceType);
+                continue;
             }
             
-            // Build appropriate query based on parameter type
-            logger.debug("🔍 Processing parameter: {} = {} (type: {})", paramName, values, searchParam.getParamType());
+            logger.debug("🔍 Processing parameter: {} = {} (type: {})", paramName, values, plan.getParamType());
+            List<SearchQuery> paramQueries = plan.bind(values);
+            ftsQueries.addAll(paramQueries);
             
-            switch (searchParam.getParamType()) {
-                case TOKEN:
-                    SearchQuery tokenQuery = TokenSearchHelper.buildTokenFTSQuery(fhirContext, resourceType, paramName, values.get(0));
-                    ftsQueries.add(tokenQuery);
-                    logger.debug("🔍 Added TOKEN query for {}: {}", paramName, tokenQuery.export());
-                    break;
-                case STRING:
-                    SearchQuery stringQuery = StringSearchHelper.buildStringFTSQuery(fhirContext, resourceType, paramName, values.get(0), searchParam, modifier);
-                    ftsQueries.add(stringQuery);
-                    logger.debug("🔍 Added STRING query for {}: {}", paramName, stringQuery.export());
-                    break;
-                case DATE:
-                    SearchQuery dateQuery = DateSearchHelper.buildDateFTS(fhirContext, resourceType, paramName, values);
-                    if (dateQuery != null) {
-                        ftsQueries.add(dateQuery);
-                        logger.debug("🔍 Added DATE query for {}: {}", paramName, dateQuery.export());
-                    }
-                    break;
-                case REFERENCE:
-                    // Convert REFERENCE parameters to FTS queries
-                    SearchQuery referenceQuery = ReferenceSearchHelper.buildReferenceFTSQuery(fhirContext, resourceType, paramName, values.get(0), searchParam);
-                    if (referenceQuery != null) {
-                        ftsQueries.add(referenceQuery);
-                        logger.debug("🔍 Added REFERENCE FTS query for {}: {}", paramName, referenceQuery.export());
-                    } else {
-                        logger.warn("🔍 Failed to build FTS query for REFERENCE parameter: {}", paramName);
-                    }
-                    break;
-                case URI:
-                case COMPOSITE:
-                case QUANTITY:
-                    SearchQuery quantitySearch = QuantitySearchHelper.buildQuantityFTSQuery(fhirContext ,resourceType , paramName , values.get(0), searchParam );
-                    ftsQueries.add(quantitySearch);
-                    logger.debug("🔍 Added Quantity query for {}: {}", paramName, quantitySearch.export());
-                    break;
-                case SPECIAL:
-                case NUMBER:
-                    logger.warn("Unsupported search parameter type: {} for parameter: {}", searchParam.getParamType(), paramName);
-                    break;
+            if (logger.isDebugEnabled()) {
+                for (SearchQuery query : paramQueries) {
+                    logger.debug("🔍 Added {} query for {}: {}", plan.getParamType(), paramName, query.export());
+                }
             }
         }
         
@@ -670,6 +751,17 @@ public class SearchService {
         return elements.isEmpty() ? null : elements;
     }
     
+    /**
+     * _summary and _elements as stored in PaginationState (null when absent)
+     */
+    private static String summaryCode(SummaryEnum summaryMode) {
+        return summaryMode != null ? summaryMode.getCode() : null;
+    }
+    
+    private static List<String> elementList(Set<String> elements) {
+        return elements != null ? List.copyOf(elements) : null;
+    }
+    
     private int parseCountParameter(Map<String, String> searchParams) {
         String countValue = searchParams.get("_count");
         if (countValue == null || countValue.isEmpty()) {
@@ -847,7 +939,10 @@ public class SearchService {
                 .primaryFtsQueriesJson(serializedQueries)
                 .primaryOffset(pageSize)  // Next page starts at offset=pageSize
                 .primaryPageSize(pageSize)
+                .searchAfter(keysetAfter(ftsResult, pageSize - 1))  // Resume point for the next page
                 .sortFieldsJson(serializedSortFields)
+                .summaryMode(summaryCode(summaryMode))  // Project continuation pages like this one
+                .elements(elementList(elements))
                 .bucketName(bucketName)
                 .baseUrl(baseUrl)
                 .useLegacyKeyList(false)  // NEW query-based approach
@@ -951,25 +1046,8 @@ public class SearchService {
         List<Resource> results = new ArrayList<>();
         String searchType = paginationState.getSearchType();
         if ("revinclude".equals(searchType) || "include".equals(searchType)) {
-            // Group keys by resource type and retrieve from appropriate collections
-            // Filter out any invalid keys (defensive programming)
-            Map<String, List<String>> keysByResourceType = currentPageKeys.stream()
-                .filter(key -> key != null && key.contains("/"))
-                .collect(Collectors.groupingBy(key -> key.substring(0, key.indexOf("/"))));
-            
-            // Fetch resources grouped by type for efficiency
-            Map<String, Resource> resourcesByKey = new java.util.HashMap<>();
-            for (Map.Entry<String, List<String>> entry : keysByResourceType.entrySet()) {
-                String keyResourceType = entry.getKey();
-                List<String> keysForType = entry.getValue();
-                logger.debug("🔑 Retrieving {} {} documents", keysForType.size(), keyResourceType);
-                List<Resource> resourcesForType = ftsKvSearchService.getDocumentsFromKeys(keysForType, keyResourceType);
-                // Store in map for ordering
-                for (Resource resource : resourcesForType) {
-                    String resourceKey = resource.getResourceType().name() + "/" + resource.getIdElement().getIdPart();
-                    resourcesByKey.put(resourceKey, resource);
-                }
-            }
+            // Retrieve from each type's collection (one KV batch per type, in parallel)
+            Map<String, Resource> resourcesByKey = fetchResourcesByKey(newFanOut(), currentPageKeys);
             
             // Restore original order from currentPageKeys (primary first, then secondary)
             for (String key : currentPageKeys) {
@@ -1001,7 +1079,9 @@ public class SearchService {
             int primaryCount = paginationState.getPrimaryResourceCount();
             bundle.setTotal(primaryCount);
         } else {
-            bundle.setTotal(allDocumentKeys.size()); // Total is known from initial FTS for pure primary searches
+            // Total is known from initial FTS for pure primary searches (the key list itself is capped)
+            int primaryCount = paginationState.getPrimaryResourceCount();
+            bundle.setTotal(primaryCount > 0 ? primaryCount : allDocumentKeys.size());
         }
         
         // Add resources to bundle with filtering
@@ -1071,10 +1151,10 @@ public class SearchService {
                                              RequestDetails requestDetails) {
         logger.debug("🔍 Continuation page: offset={}, count={}, searchType={}", offset, count, state.getSearchType());
         
-        // Check if fastpath is enabled (beta: no _summary/_elements support)
+        // Check if fastpath is enabled (_summary/_elements are projected from raw bytes)
         boolean useFastpath = fastpathProperties.isEnabled() && 
-                              (summaryMode == null || summaryMode == SummaryEnum.FALSE) && 
-                              (elements == null || elements.isEmpty());
+                              resourceProjectionService.supportsFastpath(summaryMode);
+        ResourceProjection projection = resourceProjectionService.forRequest(summaryMode, elements);
         
         String searchType = state.getSearchType();
         String primaryResourceType = state.getResourceType();
@@ -1084,26 +1164,34 @@ public class SearchService {
         logger.debug("🚀 QUERY-BASED PAGE: type={}, primaryType={}, offset={}, pageSize={}", 
                    searchType, primaryResourceType, offset, pageSize);
         
-        // Step 1: Rebuild FTS queries from serialized JSON
-        // TODO: For now, use simple approach - rebuild from stored criteria
-        // Since we're storing empty query lists, we'll use matchAll for now
-        List<SearchQuery> primaryQueries = new ArrayList<>();
-        if (state.getPrimaryFtsQueriesJson() != null && !state.getPrimaryFtsQueriesJson().isEmpty()) {
-            // TODO: Deserialize queries properly
-            logger.warn("⚠️  Query deserialization not yet implemented, using matchAll");
-        }
-        // For now, use matchAll (works for initial testing)
-        // primaryQueries is empty, will use matchAll in buildCombinedSearchQuery
-        
-        // Step 2: Re-execute FTS for primaries with updated offset (fetch count+1 for pagination detection)
         List<SearchSort> sortFields = deserializeSortFields(state.getSortFieldsJson());
-        
-        FtsSearchService.FtsSearchResult primaryResult = ftsSearchService.searchForKeys(
-            primaryQueries, primaryResourceType, offset, pageSize + 1, sortFields);  // +1 for pagination detection
-        
-        List<String> primaryKeys = primaryResult.getDocumentKeys();
-        logger.debug("🚀 FTS re-execution returned {} primary keys (requested {}+1 for pagination detection)", 
-                   primaryKeys.size(), pageSize);
+        List<String> primaryKeys;
+        FtsSearchService.FtsSearchResult primaryResult = null;
+        List<String> storedKeys = state.getAllDocumentKeys();
+        if (storedKeys != null) {
+            // Key-addressed chain plans: slice the stored, already ordered key list (count+1)
+            primaryKeys = storedKeys.subList(Math.min(offset, storedKeys.size()),
+                                             Math.min(offset + pageSize + 1, storedKeys.size()));
+            logger.debug("🚀 Stored key list returned {} primary keys at offset={}", primaryKeys.size(), offset);
+        } else {
+            // Step 1: Rebuild FTS queries from serialized JSON
+            List<SearchQuery> primaryQueries = deserializeFtsQueries(state.getPrimaryFtsQueriesJson());
+            
+            // Step 2: Re-execute FTS for primaries (fetch count+1 for pagination detection).
+            // Sequential pages resume after the previous page's last hit (search_after); anything else
+            // (previous links, hand-edited offsets) falls back to from/size.
+            boolean keyset = paginationProperties.isKeysetEnabled() 
+                             && state.getSearchAfter() != null 
+                             && offset == state.getPrimaryOffset();
+            
+            primaryResult = keyset
+                ? ftsSearchService.searchForKeysAfter(primaryQueries, primaryResourceType, state.getSearchAfter(), pageSize + 1, sortFields)
+                : ftsSearchService.searchForKeys(primaryQueries, primaryResourceType, offset, pageSize + 1, sortFields);  // +1 for pagination detection
+            
+            primaryKeys = primaryResult.getDocumentKeys();
+            logger.debug("🚀 FTS re-execution ({}) returned {} primary keys (requested {}+1 for pagination detection)", 
+                       keyset ? "search_after" : "from/size", primaryKeys.size(), pageSize);
+        }
         
         if (primaryKeys.isEmpty()) {
             logger.debug("🚀 No more primaries at offset={}", offset);
@@ -1113,6 +1201,9 @@ public class SearchService {
         // Step 3: Detect pagination and get keys for this page
         boolean hasMorePages = primaryKeys.size() > pageSize;
         List<String> thisPageKeys = hasMorePages ? primaryKeys.subList(0, pageSize) : primaryKeys;
+        String nextPageToken = !hasMorePages ? null
+            : primaryResult == null ? continuationToken  // The stored key list serves every page
+            : storeNextPageState(continuationToken, state, primaryResult, offset + pageSize, pageSize);
         
         // Step 4: Fetch primary resources (only for this page, not the +1)
         List<Resource> primaryResources = ftsKvSearchService.getDocumentsFromKeys(thisPageKeys, primaryResourceType);
@@ -1127,9 +1218,9 @@ public class SearchService {
             // For regular search, check if fastpath is enabled
             if (useFastpath) {
                 logger.debug("🚀 FASTPATH: Continuation page using fastpath");
-                return handleRegularContinuationFastpath(continuationToken, state, offset, thisPageKeys, 
+                return handleRegularContinuationFastpath(continuationToken, nextPageToken, state, offset, thisPageKeys, 
                                                         primaryResourceType, pageSize, bucketName, 
-                                                        hasMorePages, requestDetails);
+                                                        hasMorePages, projection, requestDetails);
             }
             
         } else if ("revinclude".equals(searchType)) {
@@ -1188,16 +1279,7 @@ public class SearchService {
                         .collect(Collectors.toList());
                     
                     if (!limitedKeys.isEmpty()) {
-                        // Group by type and fetch
-                        Map<String, List<String>> includeKeysByType = limitedKeys.stream()
-                            .collect(Collectors.groupingBy(key -> key.substring(0, key.indexOf("/"))));
-                        
-                        for (Map.Entry<String, List<String>> entry : includeKeysByType.entrySet()) {
-                            String includeType = entry.getKey();
-                            List<String> keysForType = entry.getValue();
-                            List<Resource> includeResources = ftsKvSearchService.getDocumentsFromKeys(keysForType, includeType);
-                            allResources.addAll(includeResources);
-                        }
+                        allResources.addAll(fetchResourcesByKey(newFanOut(), limitedKeys).values());
                         
                         logger.debug("🚀 Fetched {} included resources ({} contained refs skipped)", 
                                    allResources.size() - primaryResources.size(), includeKeys.size() - limitedKeys.size());
@@ -1214,9 +1296,9 @@ public class SearchService {
             // For chain search, check if fastpath is enabled
             if (useFastpath) {
                 logger.debug("🚀 FASTPATH: Chain continuation page using fastpath");
-                return handleChainContinuationFastpath(continuationToken, state, offset, thisPageKeys, 
+                return handleChainContinuationFastpath(continuationToken, nextPageToken, state, offset, thisPageKeys, 
                                                       primaryResourceType, pageSize, bucketName, 
-                                                      hasMorePages, requestDetails);
+                                                      hasMorePages, projection, requestDetails);
             }
             
             // Chain continuation may have _include parameters (stored in state)
@@ -1244,15 +1326,7 @@ public class SearchService {
                         .collect(Collectors.toList());
                     
                     if (!limitedKeys.isEmpty()) {
-                        Map<String, List<String>> includeKeysByType = limitedKeys.stream()
-                            .collect(Collectors.groupingBy(key -> key.substring(0, key.indexOf("/"))));
-                        
-                        for (Map.Entry<String, List<String>> entry : includeKeysByType.entrySet()) {
-                            String includeType = entry.getKey();
-                            List<String> keysForType = entry.getValue();
-                            List<Resource> includeResources = ftsKvSearchService.getDocumentsFromKeys(keysForType, includeType);
-                            allResources.addAll(includeResources);
-                        }
+                        allResources.addAll(fetchResourcesByKey(newFanOut(), limitedKeys).values());
                     } else {
                         logger.debug("🚀 All {} references are contained (skipped)", includeKeys.size());
                     }
@@ -1302,7 +1376,7 @@ public class SearchService {
         if (hasMorePages) {
             bundle.addLink()
                     .setRelation("next")
-                    .setUrl(buildNextPageUrl(continuationToken, nextOffset, primaryResourceType, bucketName, pageSize, baseUrl));
+                    .setUrl(buildNextPageUrl(nextPageToken, nextOffset, primaryResourceType, bucketName, pageSize, baseUrl));
         }
         
         logger.debug("🚀 QUERY-BASED PAGE COMPLETE: {} resources ({} primaries + {} secondaries), hasMore={}", 
@@ -1311,6 +1385,25 @@ public class SearchService {
         return bundle;
     }
     
+    /**
+     * Token for the next link of a query-based page. With keyset pagination a derived state is stored
+     * that resumes after this page's last hit; otherwise the current token is reused with a new offset.
+     */
+    private String storeNextPageState(String continuationToken, PaginationState state,
+                                      FtsSearchService.FtsSearchResult primaryResult, int nextOffset, int pageSize) {
+        List<String> searchAfter = keysetAfter(primaryResult, pageSize - 1);
+        if (searchAfter == null) {
+            return continuationToken;
+        }
+        PaginationState nextState = state.toBuilder()
+            .primaryOffset(nextOffset)
+            .searchAfter(searchAfter)
+            .build();
+        String nextToken = searchStateManager.storePaginationState(nextState);
+        logger.debug("🚀 Keyset next page: token={}, primaryOffset={}", nextToken, nextOffset);
+        return nextToken;
+    }
+    
     /**
      * Handle MULTIPLE _revinclude search parameters with FHIR-compliant count+1 pagination strategy.
      * 
@@ -1377,73 +1470,24 @@ public class SearchService {
         
         logger.debug("🔍 Derived {} primary references for secondary lookup", primaryResourceReferences.size());
         
-        // Step 4: Fetch SECONDARIES for EACH _revinclude parameter (respecting bundle cap)
-        List<String> allSecondaryKeys = new ArrayList<>();
-        int currentBundleSize = firstPagePrimaryKeys.size();
+        // Step 4: Fetch SECONDARIES for ALL _revinclude parameters in parallel (respecting bundle cap)
+        RequestFanOut fanOut = newFanOut();
+        List<SearchSort> secondarySortFields = new ArrayList<>();
+        secondarySortFields.add(SearchSort.byField("meta.lastUpdated").desc(true));
         
-        for (Include revInclude : revIncludes) {
-            String revIncludeResourceType = revInclude.getParamType();
-            String revIncludeSearchParam = revInclude.getParamName();
-            
-            int maxSecondariesForThisType = MAX_BUNDLE_SIZE - currentBundleSize;
-            if (maxSecondariesForThisType <= 0) {
-                logger.debug("🔍 Bundle size cap reached ({}/{}), skipping remaining _revinclude: {}", 
-                           currentBundleSize, MAX_BUNDLE_SIZE, revInclude.getValue());
-                break;
-            }
-            
-            logger.debug("🔍 Fetching _revinclude: {} -> {} (max={}, currentBundle={})", 
-                       primaryResourceType, revInclude.getValue(), maxSecondariesForThisType, currentBundleSize);
-            
-            // Build FTS query for this secondary type
-            List<SearchQuery> referenceQueries = new ArrayList<>();
-            for (String primaryReference : primaryResourceReferences) {
-                referenceQueries.add(SearchQuery.match(primaryReference).field(revIncludeSearchParam + ".reference"));
-            }
-            
-            if (!referenceQueries.isEmpty()) {
-                List<SearchQuery> revIncludeQueries = List.of(SearchQuery.disjuncts(referenceQueries.toArray(new SearchQuery[0])));
-                
-                List<SearchSort> secondarySortFields = new ArrayList<>();
-                secondarySortFields.add(SearchSort.byField("meta.lastUpdated").desc(true));
-                
-                FtsSearchService.FtsSearchResult secondaryFtsResult = ftsSearchService.searchForKeys(
-                    revIncludeQueries, revIncludeResourceType, 0, maxSecondariesForThisType, secondarySortFields);
-                List<String> secondaryKeys = secondaryFtsResult.getDocumentKeys();
-                
-                logger.debug("🔍 SECONDARY FTS ({}) returned {} keys (limit={}, bundleSize={})", 
-                           revIncludeResourceType, secondaryKeys.size(), maxSecondariesForThisType, 
-                           currentBundleSize + secondaryKeys.size());
-                
-                allSecondaryKeys.addAll(secondaryKeys);
-                currentBundleSize += secondaryKeys.size();
-            }
-        }
+        List<String> allSecondaryKeys = searchRevIncludeKeys(fanOut, primaryResourceReferences, revIncludes,
+            MAX_BUNDLE_SIZE - firstPagePrimaryKeys.size(), secondarySortFields);
         
         logger.debug("🔍 First page composition: {} primaries + {} secondaries (from {} _revinclude params) = {} total", 
-                   firstPagePrimaryKeys.size(), allSecondaryKeys.size(), revIncludes.size(), currentBundleSize);
+                   firstPagePrimaryKeys.size(), allSecondaryKeys.size(), revIncludes.size(), 
+                   firstPagePrimaryKeys.size() + allSecondaryKeys.size());
         
-        // Step 5: KV Batch fetch for all resources
+        // Step 5: KV Batch fetch for all resources (one batch per type, in parallel)
         List<String> firstPageKeys = new ArrayList<>();
         firstPageKeys.addAll(firstPagePrimaryKeys);
         firstPageKeys.addAll(allSecondaryKeys);
         
-        // Filter out any invalid keys (defensive programming)
-        Map<String, List<String>> keysByResourceType = firstPageKeys.stream()
-            .filter(key -> key != null && key.contains("/"))
-            .collect(Collectors.groupingBy(key -> key.substring(0, key.indexOf("/"))));
-        
-        Map<String, Resource> resourcesByKey = new java.util.HashMap<>();
-        for (Map.Entry<String, List<String>> entry : keysByResourceType.entrySet()) {
-            String keyResourceType = entry.getKey();
-            List<String> keysForType = entry.getValue();
-            logger.debug("🔍 KV Batch fetching {} {} documents", keysForType.size(), keyResourceType);
-            List<Resource> resourcesForType = ftsKvSearchService.getDocumentsFromKeys(keysForType, keyResourceType);
-            for (Resource resource : resourcesForType) {
-                String resourceKey = resource.getResourceType().name() + "/" + resource.getIdElement().getIdPart();
-                resourcesByKey.put(resourceKey, resource);
-            }
-        }
+        Map<String, Resource> resourcesByKey = fetchResourcesByKey(fanOut, firstPageKeys);
         
         List<Resource> firstPageResources = new ArrayList<>();
         for (String key : firstPageKeys) {
@@ -1475,9 +1519,12 @@ public class SearchService {
                 .primaryFtsQueriesJson(serializedQueries)
                 .primaryOffset(count)
                 .primaryPageSize(count)
+                .searchAfter(keysetAfter(primaryFtsResult, count - 1))  // Resume point for the next page
                 .sortFieldsJson(serializedSortFields)
                 .maxBundleSize(MAX_BUNDLE_SIZE)
                 .includeParamsList(revIncludeStrings)  // Store all _revinclude params
+                .summaryMode(summaryCode(summaryMode))  // Project continuation pages like this one
+                .elements(elementList(elements))
                 .bucketName(bucketName)
                 .baseUrl(baseUrl)
                 .useLegacyKeyList(false)
@@ -1623,23 +1670,8 @@ public class SearchService {
         logger.debug("🔍 First page composition: {} primaries + {} secondaries = {} total resources", 
                    firstPagePrimaryKeys.size(), secondaryKeys.size(), firstPageKeys.size());
         
-        // Step 6: KV Batch fetch for all resources on this page (grouped by resource type for efficiency)
-        // Filter out any invalid keys (defensive programming)
-        Map<String, List<String>> keysByResourceType = firstPageKeys.stream()
-            .filter(key -> key != null && key.contains("/"))
-            .collect(Collectors.groupingBy(key -> key.substring(0, key.indexOf("/"))));
-        
-        Map<String, Resource> resourcesByKey = new java.util.HashMap<>();
-        for (Map.Entry<String, List<String>> entry : keysByResourceType.entrySet()) {
-            String keyResourceType = entry.getKey();
-            List<String> keysForType = entry.getValue();
-            logger.debug("🔍 KV Batch fetching {} {} documents", keysForType.size(), keyResourceType);
-            List<Resource> resourcesForType = ftsKvSearchService.getDocumentsFromKeys(keysForType, keyResourceType);
-            for (Resource resource : resourcesForType) {
-                String resourceKey = resource.getResourceType().name() + "/" + resource.getIdElement().getIdPart();
-                resourcesByKey.put(resourceKey, resource);
-            }
-        }
+        // Step 6: KV Batch fetch for all resources on this page (one batch per resource type, in parallel)
+        Map<String, Resource> resourcesByKey = fetchResourcesByKey(newFanOut(), firstPageKeys);
         
         // Restore original order (primary first, then secondary)
         List<Resource> firstPageResources = new ArrayList<>();
@@ -1668,10 +1700,13 @@ public class SearchService {
                 .primaryFtsQueriesJson(serializedQueries)
                 .primaryOffset(count)  // Next page starts at offset=count
                 .primaryPageSize(count)
+                .searchAfter(keysetAfter(primaryFtsResult, count - 1))  // Resume point for the next page
                 .sortFieldsJson(serializedSortFields)
                 .maxBundleSize(MAX_BUNDLE_SIZE)
                 .revIncludeResourceType(revIncludeResourceType)
                 .revIncludeSearchParam(revIncludeSearchParam)
+                .summaryMode(summaryCode(summaryMode))  // Project continuation pages like this one
+                .elements(elementList(elements))
                 .bucketName(bucketName)
                 .baseUrl(baseUrl)
                 .useLegacyKeyList(false)  // NEW query-based approach
@@ -1828,23 +1863,11 @@ public class SearchService {
         logger.debug("🔍 _include extraction complete: {} unique include keys ({} contained refs skipped, limit={})", 
                    fetchableKeys.size(), includeKeys.size() - fetchableKeys.size(), maxIncludes);
         
-        // Step 5: Fetch include resources (grouped by resource type)
-        Map<String, Resource> includeResourcesByKey = new java.util.HashMap<>();
+        // Step 5: Fetch include resources (one batch per resource type, in parallel)
+        Map<String, Resource> includeResourcesByKey = new java.util.LinkedHashMap<>();
         
         if (!fetchableKeys.isEmpty()) {
-            Map<String, List<String>> includeKeysByType = fetchableKeys.stream()
-                    .collect(Collectors.groupingBy(k -> k.substring(0, k.indexOf('/'))));
-            
-            for (Map.Entry<String, List<String>> entry : includeKeysByType.entrySet()) {
-                String includeType = entry.getKey();
-                List<String> keysForType = entry.getValue();
-                logger.debug("🔍 KV Batch fetching {} {} includes", keysForType.size(), includeType);
-                List<Resource> fetched = ftsKvSearchService.getDocumentsFromKeys(keysForType, includeType);
-                for (Resource r : fetched) {
-                    String k = r.getResourceType().name() + "/" + r.getIdElement().getIdPart();
-                    includeResourcesByKey.put(k, r);
-                }
-            }
+            includeResourcesByKey.putAll(fetchResourcesByKey(newFanOut(), fetchableKeys));
         }
         
         logger.debug("🔍 Fetched {} include resources", includeResourcesByKey.size());
@@ -1876,9 +1899,12 @@ public class SearchService {
                     .primaryFtsQueriesJson(serializedQueries)
                     .primaryOffset(count)  // Next page starts at offset=count
                     .primaryPageSize(count)
+                    .searchAfter(keysetAfter(primaryFtsResult, count - 1))  // Resume point for the next page
                     .sortFieldsJson(serializedSortFields)
                     .maxBundleSize(MAX_BUNDLE_SIZE)
                     .includeParamsList(includeParamsList)  // Store _include parameters
+                    .summaryMode(summaryCode(summaryMode))  // Project continuation pages like this one
+                    .elements(elementList(elements))
                     .bucketName(bucketName)
                     .baseUrl(baseUrl)
                     .useLegacyKeyList(false)  // NEW query-based approach
@@ -1937,8 +1963,9 @@ public class SearchService {
      * Same pagination logic as handleMultipleIncludeSearch, but skips HAPI parsing.
      */
     private byte[] handleMultipleIncludeSearchFastpath(String primaryResourceType, List<SearchQuery> ftsQueries,
-                                              List<Include> includes, int count,
-                                              String bucketName, RequestDetails requestDetails) {
+                                              List<Include> includes, int count, String bucketName,
+                                              SummaryEnum summaryMode, Set<String> elements,
+                                              ResourceProjection projection, RequestDetails requestDetails) {
         logger.debug("🚀 FASTPATH: Handling {} _include parameters for {} (count={}, maxBundle={})", 
                    includes.size(), primaryResourceType, count, MAX_BUNDLE_SIZE);
 
@@ -1978,17 +2005,22 @@ public class SearchService {
                    firstPagePrimaryKeys.size());
 
         // Step 3: Fetch ONLY first page primary resources as RAW BYTES (ZERO-COPY from Couchbase!)
+        // Runs alongside the reference extraction below - both only need the primary keys
+        RequestFanOut fanOut = newFanOut();
         long primFetchStart = System.currentTimeMillis();
-        Map<String, byte[]> primaryKeyToBytesMap = batchKvService.getDocumentsAsBytesWithKeys(firstPagePrimaryKeys, primaryResourceType);
-        logger.debug("🚀 FASTPATH: Fetched {} primary resources as raw bytes with keys in {} ms", 
-                primaryKeyToBytesMap.size(), System.currentTimeMillis() - primFetchStart);
+        CompletableFuture<Map<String, byte[]>> primaryFetch = fanOut.submit(
+            () -> batchKvService.getDocumentsAsBytesWithKeys(firstPagePrimaryKeys, primaryResourceType));
 
-        // Step 4: Extract _include references using N1QL (server-side, no double-fetch!)
-        // N1QL handles de-duplication and limiting on the server side
+        // Step 4: Extract _include references with KV sub-document lookups (reference fields only, no double-fetch!)
+        // De-duplication and limiting happen in the extractor
         int maxIncludes = MAX_BUNDLE_SIZE - firstPagePrimaryKeys.size();
         List<String> includeReferences = includeReferenceExtractor.extractReferences(
             firstPagePrimaryKeys, includes, primaryResourceType, bucketName, maxIncludes);
         
+        Map<String, byte[]> primaryKeyToBytesMap = RequestFanOut.join(primaryFetch);
+        logger.debug("🚀 FASTPATH: Fetched {} primary resources as raw bytes with keys in {} ms", 
+                primaryKeyToBytesMap.size(), System.currentTimeMillis() - primFetchStart);
+        
         // Filter out contained references (e.g., #medXYZ) - they don't need to be fetched
         List<String> includeKeys = includeReferences.stream()
                 .filter(ref -> ref != null && ref.contains("/"))
@@ -2001,16 +2033,7 @@ public class SearchService {
         Map<String, byte[]> includedKeyToBytesMap = new java.util.LinkedHashMap<>();
         
         if (!includeKeys.isEmpty()) {
-            Map<String, List<String>> includeKeysByType = includeKeys.stream()
-                    .collect(Collectors.groupingBy(k -> k.substring(0, k.indexOf('/'))));
-            
-            for (Map.Entry<String, List<String>> entry : includeKeysByType.entrySet()) {
-                String includeType = entry.getKey();
-                List<String> keysForType = entry.getValue();
-                logger.debug("🚀 FASTPATH: KV Batch fetching {} {} includes as raw bytes with keys", keysForType.size(), includeType);
-                Map<String, byte[]> fetchedMap = batchKvService.getDocumentsAsBytesWithKeys(keysForType, includeType);
-                includedKeyToBytesMap.putAll(fetchedMap);
-            }
+            includedKeyToBytesMap.putAll(fetchBytesByKey(fanOut, includeKeys));
             
             logger.debug("🚀 FASTPATH: Fetched {} include resources as raw bytes with keys", includedKeyToBytesMap.size());
         }
@@ -2042,9 +2065,12 @@ public class SearchService {
                 .primaryFtsQueriesJson(serializedQueries)
                 .primaryOffset(count)  // Next page starts at offset=count
                 .primaryPageSize(count)
+                .searchAfter(keysetAfter(primaryFtsResult, count - 1))  // Resume point for the next page
                 .sortFieldsJson(serializedSortFields)
                 .maxBundleSize(MAX_BUNDLE_SIZE)
                 .includeParamsList(includeParamsList)  // Store _include parameters
+                .summaryMode(summaryCode(summaryMode))  // Project continuation pages like this one
+                .elements(elementList(elements))
                 .bucketName(bucketName)
                 .baseUrl(baseUrl)
                 .useLegacyKeyList(false)  // Query-based approach
@@ -2065,7 +2091,8 @@ public class SearchService {
             nextUrl,
             null,  // No previous link on first page
             baseUrl,
-            Instant.now()
+            Instant.now(),
+            projection
         );
 
         logger.debug("🚀 FASTPATH: _include COMPLETE: Bundle={} resources ({} primaries + {} includes), total={} primaries", 
@@ -2085,10 +2112,14 @@ public class SearchService {
     /**
      * FASTPATH: Handle regular search (no _include, no _revinclude) with pure JSON assembly
      * Bypasses HAPI parsing/serialization for 10x memory reduction, returns UTF-8 bytes (2x savings vs String)
+     * 
+     * When streaming is enabled the KV fetch is deferred: a StreamingSearchset is stored in userData
+     * under FASTPATH_STREAM_ATTRIBUTE and null is returned.
      */
     private byte[] handleRegularSearchFastpath(String primaryResourceType, List<SearchQuery> ftsQueries,
                                                int count, List<SearchSort> sortFields, String bucketName,
-                                               RequestDetails requestDetails) {
+                                               SummaryEnum summaryMode, Set<String> elements,
+                                               ResourceProjection projection, RequestDetails requestDetails) {
         
         logger.debug("🚀 FASTPATH: Handling regular search: {} (count={})", primaryResourceType, count);
         
@@ -2114,11 +2145,16 @@ public class SearchService {
                    allPrimaryKeys.size(), needsPagination ? "YES" : "NO", actualTotalCount);
         
         // Step 3: Fetch ONLY first page resources as RAW BYTES (ZERO-COPY from Couchbase!)
-        long fetchStart = System.currentTimeMillis();
-        Map<String, byte[]> primaryKeyToBytesMap = batchKvService.getDocumentsAsBytesWithKeys(
-            firstPagePrimaryKeys, primaryResourceType);
-        logger.debug("🚀 FASTPATH: Fetched {} resources as raw bytes with keys in {} ms", 
-                   primaryKeyToBytesMap.size(), System.currentTimeMillis() - fetchStart);
+        // Streaming mode defers the fetch to the response writer (documents go straight to the socket)
+        boolean streaming = fastpathProperties.isStreaming() && !firstPagePrimaryKeys.isEmpty();
+        Map<String, byte[]> primaryKeyToBytesMap = new java.util.LinkedHashMap<>();
+        if (!streaming) {
+            long fetchStart = System.currentTimeMillis();
+            primaryKeyToBytesMap = batchKvService.getDocumentsAsBytesWithKeys(
+                firstPagePrimaryKeys, primaryResourceType);
+            logger.debug("🚀 FASTPATH: Fetched {} resources as raw bytes with keys in {} ms", 
+                       primaryKeyToBytesMap.size(), System.currentTimeMillis() - fetchStart);
+        }
         
         // Step 4: Build Bundle JSON directly (no HAPI!)
         String baseUrl = extractBaseUrl(requestDetails, bucketName);
@@ -2142,7 +2178,10 @@ public class SearchService {
                 .primaryFtsQueriesJson(serializedQueries)
                 .primaryOffset(count)  // Next page starts at offset=count
                 .primaryPageSize(count)
+                .searchAfter(keysetAfter(ftsResult, count - 1))  // Resume point for the next page
                 .sortFieldsJson(serializedSortFields)
+                .summaryMode(summaryCode(summaryMode))  // Project continuation pages like this one
+                .elements(elementList(elements))
                 .bucketName(bucketName)
                 .baseUrl(baseUrl)
                 .useLegacyKeyList(false)  // Query-based approach
@@ -2155,6 +2194,15 @@ public class SearchService {
             logger.debug("🚀 FASTPATH: Pagination enabled, token={}, nextOffset={}", continuationToken, count);
         }
         
+        if (streaming) {
+            requestDetails.getUserData().put(FASTPATH_STREAM_ATTRIBUTE, new StreamingSearchset(
+                primaryResourceType, firstPagePrimaryKeys, (int) actualTotalCount, selfUrl, nextUrl, null, baseUrl,
+                projection));
+            logger.debug("🚀 FASTPATH: Regular search deferred to streaming writer ({} keys, total={})", 
+                       firstPagePrimaryKeys.size(), actualTotalCount);
+            return null;
+        }
+        
         // Build bundle with NO includes (empty map) as UTF-8 bytes
         byte[] bundleBytes = fastJsonBundleBuilder.buildSearchsetBundle(
             primaryKeyToBytesMap,
@@ -2164,7 +2212,8 @@ public class SearchService {
             nextUrl,
             null,  // No previous link on first page
             baseUrl,
-            Instant.now()
+            Instant.now(),
+            projection
         );
         
         logger.debug("🚀 FASTPATH: Regular search COMPLETE: Bundle={} resources, total={}", 
@@ -2181,10 +2230,11 @@ public class SearchService {
      * FASTPATH: Handle regular search continuation page
      * Bypasses HAPI parsing/serialization for 10x memory reduction
      */
-    private Bundle handleRegularContinuationFastpath(String continuationToken, PaginationState state, int offset,
+    private Bundle handleRegularContinuationFastpath(String continuationToken, String nextPageToken,
+                                                     PaginationState state, int offset,
                                                      List<String> primaryKeys, String primaryResourceType, 
                                                      int pageSize, String bucketName, boolean hasMorePages,
-                                                     RequestDetails requestDetails) {
+                                                     ResourceProjection projection, RequestDetails requestDetails) {
         
         logger.debug("🚀 FASTPATH: Regular continuation - offset={}, keys={}, hasMore={}", 
                    offset, primaryKeys.size(), hasMorePages);
@@ -2192,10 +2242,6 @@ public class SearchService {
         // Use stored total count (from first page)
         int totalCount = state.getPrimaryResourceCount();
         
-        // Fetch as raw bytes (ZERO-COPY from Couchbase!)
-        Map<String, byte[]> primaryKeyToBytesMap = batchKvService.getDocumentsAsBytesWithKeys(
-            primaryKeys, primaryResourceType);
-        
         String baseUrl = state.getBaseUrl();
         
         // Build self URL
@@ -2205,7 +2251,7 @@ public class SearchService {
         // Build next URL if more results
         int nextOffset = offset + primaryKeys.size();
         String nextUrl = hasMorePages ? 
-            (baseUrl + "/" + primaryResourceType + "?_page=" + continuationToken 
+            (baseUrl + "/" + primaryResourceType + "?_page=" + nextPageToken 
              + "&_offset=" + nextOffset + "&_count=" + pageSize) : null;
         
         // Build previous URL if not on first page
@@ -2216,6 +2262,22 @@ public class SearchService {
                         + "&_offset=" + prevOffset + "&_count=" + pageSize;
         }
         
+        Bundle placeholder = new Bundle();
+        placeholder.setType(Bundle.BundleType.SEARCHSET);
+        
+        if (fastpathProperties.isStreaming() && !primaryKeys.isEmpty()) {
+            // Streaming: documents are fetched and written by the response interceptor
+            requestDetails.getUserData().put(FASTPATH_STREAM_ATTRIBUTE, new StreamingSearchset(
+                primaryResourceType, primaryKeys, totalCount, selfUrl, nextUrl, previousUrl, baseUrl, projection));
+            logger.debug("🚀 FASTPATH: Continuation deferred to streaming writer - {} keys, total={}, hasMore={}", 
+                       primaryKeys.size(), totalCount, hasMorePages);
+            return placeholder;
+        }
+        
+        // Fetch as raw bytes (ZERO-COPY from Couchbase!)
+        Map<String, byte[]> primaryKeyToBytesMap = batchKvService.getDocumentsAsBytesWithKeys(
+            primaryKeys, primaryResourceType);
+        
         // Build JSON bundle as UTF-8 bytes
         byte[] bundleBytes = fastJsonBundleBuilder.buildSearchsetBundle(
             primaryKeyToBytesMap,
@@ -2225,7 +2287,8 @@ public class SearchService {
             nextUrl,
             previousUrl,
             baseUrl,
-            Instant.now()
+            Instant.now(),
+            projection
         );
         
         logger.debug("🚀 FASTPATH: Continuation COMPLETE - {} resources, total={}, hasMore={}", 
@@ -2235,8 +2298,6 @@ public class SearchService {
         requestDetails.getUserData().put(FASTPATH_BYTES_ATTRIBUTE, bundleBytes);
         
         // Return empty placeholder Bundle (interceptor will replace with JSON)
-        Bundle placeholder = new Bundle();
-        placeholder.setType(Bundle.BundleType.SEARCHSET);
         return placeholder;
     }
     
@@ -2244,10 +2305,11 @@ public class SearchService {
      * FASTPATH: Handle chain search continuation page with pure JSON assembly
      * Bypasses HAPI parsing/serialization for 10x memory reduction
      */
-    private Bundle handleChainContinuationFastpath(String continuationToken, PaginationState state, int offset,
+    private Bundle handleChainContinuationFastpath(String continuationToken, String nextPageToken,
+                                                   PaginationState state, int offset,
                                                    List<String> primaryKeys, String primaryResourceType, 
                                                    int pageSize, String bucketName, boolean hasMorePages,
-                                                   RequestDetails requestDetails) {
+                                                   ResourceProjection projection, RequestDetails requestDetails) {
         
         logger.debug("🚀 FASTPATH: Chain continuation - offset={}, keys={}, hasMore={}", 
                    offset, primaryKeys.size(), hasMorePages);
@@ -2266,7 +2328,7 @@ public class SearchService {
         if (includeParamsList != null && !includeParamsList.isEmpty()) {
             logger.debug("🚀 FASTPATH: Processing {} _include parameters for chain continuation", includeParamsList.size());
             
-            // Convert include param strings to Include objects for N1QL extraction
+            // Convert include param strings to Include objects for reference extraction
             List<Include> includeObjects = new ArrayList<>();
             for (String includeParam : includeParamsList) {
                 try {
@@ -2276,13 +2338,13 @@ public class SearchService {
                 }
             }
             
-            // Extract references using N1QL (server-side, no double-fetch!)
-            // N1QL handles de-duplication and limiting on the server side
+            // Extract references with KV sub-document lookups (reference fields only, no double-fetch!)
+            // De-duplication and limiting happen in the extractor
             int maxIncludes = state.getMaxBundleSize() - primaryKeys.size();
             List<String> refs = includeReferenceExtractor.extractReferences(
                 primaryKeys, includeObjects, primaryResourceType, bucketName, maxIncludes);
             
-            logger.debug("🚀 FASTPATH: N1QL extracted {} unique references for {} includes", 
+            logger.debug("🚀 FASTPATH: KV extracted {} unique references for {} includes", 
                        refs.size(), includeParamsList.size());
             
             // Fetch included resources as JSON with keys
@@ -2293,16 +2355,7 @@ public class SearchService {
                     .collect(Collectors.toList());
                 
                 if (!limitedKeys.isEmpty()) {
-                    Map<String, List<String>> includeKeysByType = limitedKeys.stream()
-                        .collect(Collectors.groupingBy(k -> k.substring(0, k.indexOf('/'))));
-                    
-                    for (Map.Entry<String, List<String>> entry : includeKeysByType.entrySet()) {
-                        String includeType = entry.getKey();
-                        List<String> keysForType = entry.getValue();
-                        Map<String, byte[]> fetchedMap = batchKvService.getDocumentsAsBytesWithKeys(
-                            keysForType, includeType);
-                        includedKeyToBytesMap.putAll(fetchedMap);
-                    }
+                    includedKeyToBytesMap.putAll(fetchBytesByKey(newFanOut(), limitedKeys));
                     
                     logger.debug("🚀 FASTPATH: Fetched {} included resources as raw bytes with keys ({} contained refs skipped)", 
                                includedKeyToBytesMap.size(), refs.size() - limitedKeys.size());
@@ -2321,7 +2374,7 @@ public class SearchService {
         // Build next URL if more results
         int nextOffset = offset + primaryKeys.size();
         String nextUrl = hasMorePages ? 
-            (baseUrl + "/" + primaryResourceType + "?_page=" + continuationToken 
+            (baseUrl + "/" + primaryResourceType + "?_page=" + nextPageToken 
              + "&_offset=" + nextOffset + "&_count=" + pageSize) : null;
         
         // Build previous URL if not on first page
@@ -2341,7 +2394,8 @@ public class SearchService {
             nextUrl,
             previousUrl,
             baseUrl,
-            Instant.now()
+            Instant.now(),
+            projection
         );
         
         logger.debug("🚀 FASTPATH: Chain continuation COMPLETE - {} resources ({} primaries + {} includes), total={}, hasMore={}", 
@@ -2364,8 +2418,9 @@ public class SearchService {
      * Bypasses HAPI parsing/serialization for 10x memory reduction, returns UTF-8 bytes (2x savings vs String)
      */
     private byte[] handleMultipleRevIncludeSearchFastpath(String primaryResourceType, List<SearchQuery> ftsQueries,
-                                                          List<Include> revIncludes, int count,
-                                                          String bucketName, RequestDetails requestDetails) {
+                                                          List<Include> revIncludes, int count, String bucketName,
+                                                          SummaryEnum summaryMode, Set<String> elements,
+                                                          ResourceProjection projection, RequestDetails requestDetails) {
         
         logger.debug("🚀 FASTPATH: Handling {} _revinclude parameters for {} (count={}, maxBundle={})", 
                    revIncludes.size(), primaryResourceType, count, MAX_BUNDLE_SIZE);
@@ -2408,59 +2463,24 @@ public class SearchService {
         // Step 3: Derive primary resource references for secondary lookup
         List<String> primaryResourceReferences = new ArrayList<>(firstPagePrimaryKeys);
         
-        // Step 4: Fetch SECONDARIES for EACH _revinclude parameter (respecting bundle cap)
-        Map<String, byte[]> allSecondaryKeyToBytesMap = new java.util.LinkedHashMap<>();
-        int currentBundleSize = firstPagePrimaryKeys.size();
-        
-        for (Include revInclude : revIncludes) {
-            String revIncludeResourceType = revInclude.getParamType();
-            String revIncludeSearchParam = revInclude.getParamName();
-            
-            int maxSecondariesForThisType = MAX_BUNDLE_SIZE - currentBundleSize;
-            if (maxSecondariesForThisType <= 0) {
-                logger.debug("🚀 FASTPATH: Bundle size cap reached ({}/{}), skipping remaining _revinclude", 
-                           currentBundleSize, MAX_BUNDLE_SIZE);
-                break;
-            }
-            
-            logger.debug("🚀 FASTPATH: Fetching _revinclude: {} -> {} (max={}, currentBundle={})", 
-                       primaryResourceType, revInclude.getValue(), maxSecondariesForThisType, currentBundleSize);
-            
-            // Build FTS query for this secondary type
-            List<SearchQuery> referenceQueries = new ArrayList<>();
-            for (String primaryReference : primaryResourceReferences) {
-                referenceQueries.add(SearchQuery.match(primaryReference).field(revIncludeSearchParam + ".reference"));
-            }
-            
-            if (!referenceQueries.isEmpty()) {
-                List<SearchQuery> revIncludeQueries = List.of(
-                    SearchQuery.disjuncts(referenceQueries.toArray(new SearchQuery[0]))
-                );
-                
-                FtsSearchService.FtsSearchResult secondaryResult = ftsSearchService.searchForKeys(
-                    revIncludeQueries, revIncludeResourceType, 0, maxSecondariesForThisType, sortFields);
-                List<String> secondaryKeys = secondaryResult.getDocumentKeys();
-                
-                logger.debug("🚀 FASTPATH: SECONDARY FTS ({}) returned {} keys", 
-                           revIncludeResourceType, secondaryKeys.size());
-                
-                // Fetch secondaries as raw bytes (ZERO-COPY from Couchbase!)
-                Map<String, byte[]> secondaryMap = batchKvService.getDocumentsAsBytesWithKeys(
-                    secondaryKeys, revIncludeResourceType);
-                allSecondaryKeyToBytesMap.putAll(secondaryMap);
-                currentBundleSize += secondaryMap.size();
-            }
-        }
+        // Step 4: Fetch primaries as raw bytes (ZERO-COPY from Couchbase!) while the _revinclude
+        // searches run - all branches share one per-request budget and finish in a single round trip
+        RequestFanOut fanOut = newFanOut();
+        long primFetchStart = System.currentTimeMillis();
+        CompletableFuture<Map<String, byte[]>> primaryFetch = fanOut.submit(
+            () -> batchKvService.getDocumentsAsBytesWithKeys(firstPagePrimaryKeys, primaryResourceType));
         
-        logger.debug("🚀 FASTPATH: First page composition: {} primaries + {} secondaries = {} total", 
-                   firstPagePrimaryKeys.size(), allSecondaryKeyToBytesMap.size(), currentBundleSize);
+        // Step 5: Fetch SECONDARIES for ALL _revinclude parameters in parallel (respecting bundle cap)
+        List<String> secondaryKeys = searchRevIncludeKeys(fanOut, primaryResourceReferences, revIncludes,
+            MAX_BUNDLE_SIZE - firstPagePrimaryKeys.size(), sortFields);
+        Map<String, byte[]> allSecondaryKeyToBytesMap = fetchBytesByKey(fanOut, secondaryKeys);
         
-        // Step 5: Fetch primary resources as raw bytes (ZERO-COPY from Couchbase!)
-        long primFetchStart = System.currentTimeMillis();
-        Map<String, byte[]> primaryKeyToBytesMap = batchKvService.getDocumentsAsBytesWithKeys(
-            firstPagePrimaryKeys, primaryResourceType);
+        Map<String, byte[]> primaryKeyToBytesMap = RequestFanOut.join(primaryFetch);
         logger.debug("🚀 FASTPATH: Fetched {} primary resources as raw bytes with keys in {} ms", 
                    primaryKeyToBytesMap.size(), System.currentTimeMillis() - primFetchStart);
+        logger.debug("🚀 FASTPATH: First page composition: {} primaries + {} secondaries = {} total", 
+                   primaryKeyToBytesMap.size(), allSecondaryKeyToBytesMap.size(), 
+                   primaryKeyToBytesMap.size() + allSecondaryKeyToBytesMap.size());
         
         // Step 6: Build Bundle JSON directly
         String baseUrl = extractBaseUrl(requestDetails, bucketName);
@@ -2489,9 +2509,12 @@ public class SearchService {
                 .primaryFtsQueriesJson(serializedQueries)
                 .primaryOffset(count)  // Next page starts at offset=count
                 .primaryPageSize(count)
+                .searchAfter(keysetAfter(primaryFtsResult, count - 1))  // Resume point for the next page
                 .sortFieldsJson(serializedSortFields)
                 .maxBundleSize(MAX_BUNDLE_SIZE)
                 .includeParamsList(revIncludeStrings)  // Store all _revinclude params
+                .summaryMode(summaryCode(summaryMode))  // Project continuation pages like this one
+                .elements(elementList(elements))
                 .bucketName(bucketName)
                 .baseUrl(baseUrl)
                 .useLegacyKeyList(false)  // Query-based approach
@@ -2512,7 +2535,8 @@ public class SearchService {
             nextUrl,
             null,  // No previous link on first page
             baseUrl,
-            Instant.now()
+            Instant.now(),
+            projection
         );
         
         logger.debug("🚀 FASTPATH: _revinclude COMPLETE: Bundle={} resources ({} primaries + {} secondaries), total={} primaries", 
@@ -2540,31 +2564,28 @@ public class SearchService {
         logger.debug("🔗 Handling chained search: {} with chain {} and {} includes", 
                     primaryResourceType, chainParam, includes.size());
 
-        // Step 1: Execute chain query to find referenced resource IDs
-        List<String> referencedResourceIds = executeChainQuery(
-            chainParam.getTargetResourceType(),
-            chainParam.getSearchParam(),
-            chainParam.getValue(),
-            bucketName
-        );
+        // Step 1: Resolve chain targets and plan the primary queries (semi-join engine)
+        ChainSearchEngine.ChainPlan chainPlan = planChain(primaryResourceType, chainParam, ftsQueries, sortFields, bucketName, true);
         
-        if (referencedResourceIds.isEmpty()) {
+        if (chainPlan.isEmpty()) {
             logger.warn("🔗 No referenced resources found for chain query, returning empty bundle");
             return createEmptyBundle();
         }
 
-        logger.debug("🔗 Chain query found {} referenced {} resources: {}", 
-                   referencedResourceIds.size(), chainParam.getTargetResourceType(), referencedResourceIds);
+        logger.debug("🔗 Chain query found {} referenced {} resources ({})", 
+                   chainPlan.getTargetCount(), chainParam.getTargetResourceType(), chainPlan.getStrategy());
+        RequestPerfBagUtils.addCount(requestDetails, "chain_targets", chainPlan.getTargetCount());
         
-        // Check if fastpath is enabled (beta: no _summary/_elements support)
+        // Check if fastpath is enabled (_summary/_elements are projected from raw bytes)
         boolean useFastpath = fastpathProperties.isEnabled() && 
-                              (summaryMode == null || summaryMode == SummaryEnum.FALSE) && 
-                              (elements == null || elements.isEmpty());
+                              resourceProjectionService.supportsFastpath(summaryMode);
         
         if (useFastpath) {
             logger.debug("🚀 FASTPATH ENABLED: Using JSON fastpath for chain search");
             byte[] resultBytes = handleChainSearchFastpath(primaryResourceType, ftsQueries, chainParam, includes,
-                                                         count, sortFields, bucketName, referencedResourceIds, requestDetails);
+                                                         count, sortFields, bucketName, chainPlan, summaryMode, elements,
+                                                         resourceProjectionService.forRequest(summaryMode, elements),
+                                                         requestDetails);
             
             // Store UTF-8 bytes in request attribute for interceptor (2x memory savings vs String)
             requestDetails.getUserData().put(FASTPATH_BYTES_ATTRIBUTE, resultBytes);
@@ -2576,15 +2597,11 @@ public class SearchService {
         }
         
         // Step 2: Execute primary search with count+1 strategy (efficient pagination detection)
-        FtsSearchService.FtsSearchResult chainFtsResult = executePrimaryChainSearchForKeysEfficient(
+        FtsSearchService.FtsSearchResult chainFtsResult = executeFirstChainPage(
             primaryResourceType,
-            chainParam.getReferenceFieldPath(),
-            chainParam.getTargetResourceType(),
-            referencedResourceIds,
-            ftsQueries, // Additional search criteria
+            chainPlan,  // Reference semi-join + additional search criteria
             sortFields,
-            count + 1,  // Fetch count+1 for pagination detection
-            bucketName
+            count + 1  // Fetch count+1 for pagination detection
         );
         
         List<String> allPrimaryKeys = chainFtsResult.getDocumentKeys();
@@ -2633,15 +2650,7 @@ public class SearchService {
                 if (!fetchableKeys.isEmpty()) {
                     logger.debug("🔗 KV Batch fetching {} includes ({} contained refs skipped)", 
                                fetchableKeys.size(), includeKeys.size() - fetchableKeys.size());
-                    Map<String, List<String>> includeKeysByType = fetchableKeys.stream()
-                        .collect(Collectors.groupingBy(key -> key.substring(0, key.indexOf("/"))));
-                    
-                    for (Map.Entry<String, List<String>> entry : includeKeysByType.entrySet()) {
-                        String includeResourceType = entry.getKey();
-                        List<String> keysForType = entry.getValue();
-                        List<Resource> resourcesForType = ftsKvSearchService.getDocumentsFromKeys(keysForType, includeResourceType);
-                        includedResources.addAll(resourcesForType);
-                    }
+                    includedResources.addAll(fetchResourcesByKey(newFanOut(), fetchableKeys).values());
                     
                     logger.debug("🔗 Fetched {} included resources", includedResources.size());
                 } else {
@@ -2654,8 +2663,10 @@ public class SearchService {
         String continuationToken = null;
         
         if (needsPagination) {
-            // Serialize queries and chain metadata for re-execution
-            List<String> serializedQueries = serializeFtsQueries(ftsQueries);
+            // Serialize the full primary query (reference semi-join + criteria) for re-execution;
+            // key-addressed plans store their key list once instead and pages slice it
+            List<String> serializedQueries = chainPlan.getPrimaryKeys() == null
+                ? serializeFtsQueries(chainPlan.getPrimaryQueries()) : null;
             List<String> serializedSortFields = serializeSortFields(sortFields);
             
             // Store _include parameters if present (for continuation pages)
@@ -2671,10 +2682,14 @@ public class SearchService {
                 .resourceType(primaryResourceType)
                 .primaryResourceCount((int) totalCount)  // Store for Bundle.total
                 .primaryFtsQueriesJson(serializedQueries)
+                .allDocumentKeys(chainPlan.getPrimaryKeys())
                 .primaryOffset(count)  // Next page starts at offset=count
                 .primaryPageSize(count)
+                .searchAfter(keysetAfter(chainFtsResult, count - 1))  // Resume point for the next page
                 .sortFieldsJson(serializedSortFields)
                 .includeParamsList(includeParamsList)  // Store _include params for continuation
+                .summaryMode(summaryCode(summaryMode))  // Project continuation pages like this one
+                .elements(elementList(elements))
                 .bucketName(bucketName)
                 .baseUrl(baseUrl)
                 .useLegacyKeyList(false)  // Query-based approach
@@ -2737,21 +2752,19 @@ public class SearchService {
     private byte[] handleChainSearchFastpath(String primaryResourceType, List<SearchQuery> ftsQueries,
                                             ChainParam chainParam, List<Include> includes, int count,
                                             List<SearchSort> sortFields, String bucketName,
-                                            List<String> referencedResourceIds, RequestDetails requestDetails) {
+                                            ChainSearchEngine.ChainPlan chainPlan, SummaryEnum summaryMode,
+                                            Set<String> elements, ResourceProjection projection,
+                                            RequestDetails requestDetails) {
         
         logger.debug("🚀 FASTPATH: Handling chain search: {} with chain {} and {} includes (count={})", 
                    primaryResourceType, chainParam, includes.size(), count);
         
         // Step 1: Execute primary search with count+1 strategy
-        FtsSearchService.FtsSearchResult chainFtsResult = executePrimaryChainSearchForKeysEfficient(
+        FtsSearchService.FtsSearchResult chainFtsResult = executeFirstChainPage(
             primaryResourceType,
-            chainParam.getReferenceFieldPath(),
-            chainParam.getTargetResourceType(),
-            referencedResourceIds,
-            ftsQueries,
+            chainPlan,
             sortFields,
-            count + 1,
-            bucketName
+            count + 1
         );
         
         List<String> allPrimaryKeys = chainFtsResult.getDocumentKeys();
@@ -2777,13 +2790,13 @@ public class SearchService {
         if (!includes.isEmpty()) {
             logger.debug("🚀 FASTPATH: Processing {} _include parameters", includes.size());
             
-            // Extract references using N1QL (server-side, no double-fetch!)
-            // N1QL handles de-duplication and limiting on the server side
+            // Extract references with KV sub-document lookups (reference fields only, no double-fetch!)
+            // De-duplication and limiting happen in the extractor
             int maxIncludes = MAX_BUNDLE_SIZE - firstPageKeys.size();
             List<String> refs = includeReferenceExtractor.extractReferences(
                 firstPageKeys, includes, primaryResourceType, bucketName, maxIncludes);
             
-            logger.debug("🚀 FASTPATH: N1QL extracted {} unique references for {} includes", 
+            logger.debug("🚀 FASTPATH: KV extracted {} unique references for {} includes", 
                        refs.size(), includes.size());
             
             // Fetch included resources as JSON with keys
@@ -2796,16 +2809,7 @@ public class SearchService {
                 if (!includeKeys.isEmpty()) {
                     logger.debug("🚀 FASTPATH: KV Batch fetching {} includes as JSON ({} contained refs skipped)", 
                                includeKeys.size(), refs.size() - includeKeys.size());
-                    Map<String, List<String>> includeKeysByType = includeKeys.stream()
-                        .collect(Collectors.groupingBy(k -> k.substring(0, k.indexOf('/'))));
-                    
-                    for (Map.Entry<String, List<String>> entry : includeKeysByType.entrySet()) {
-                        String includeResourceType = entry.getKey();
-                        List<String> keysForType = entry.getValue();
-                        Map<String, byte[]> fetchedMap = batchKvService.getDocumentsAsBytesWithKeys(
-                            keysForType, includeResourceType);
-                        includedKeyToBytesMap.putAll(fetchedMap);
-                    }
+                    includedKeyToBytesMap.putAll(fetchBytesByKey(newFanOut(), includeKeys));
                     
                     logger.debug("🚀 FASTPATH: Fetched {} included resources as raw bytes with keys", includedKeyToBytesMap.size());
                 } else {
@@ -2824,8 +2828,10 @@ public class SearchService {
         
         String nextUrl = null;
         if (needsPagination) {
-            // Store pagination state for continuation pages
-            List<String> serializedQueries = serializeFtsQueries(ftsQueries);
+            // Store pagination state for continuation pages (full primary query incl. reference disjunction,
+            // or the key list of a key-addressed plan)
+            List<String> serializedQueries = chainPlan.getPrimaryKeys() == null
+                ? serializeFtsQueries(chainPlan.getPrimaryQueries()) : null;
             List<String> serializedSortFields = serializeSortFields(sortFields);
             
             // Store _include parameters if present (for continuation pages)
@@ -2841,10 +2847,14 @@ public class SearchService {
                 .resourceType(primaryResourceType)
                 .primaryResourceCount((int) totalCount)
                 .primaryFtsQueriesJson(serializedQueries)
+                .allDocumentKeys(chainPlan.getPrimaryKeys())
                 .primaryOffset(count)
                 .primaryPageSize(count)
+                .searchAfter(keysetAfter(chainFtsResult, count - 1))  // Resume point for the next page
                 .sortFieldsJson(serializedSortFields)
                 .includeParamsList(includeParamsList)  // Store _include params for continuation
+                .summaryMode(summaryCode(summaryMode))  // Project continuation pages like this one
+                .elements(elementList(elements))
                 .bucketName(bucketName)
                 .baseUrl(baseUrl)
                 .useLegacyKeyList(false)
@@ -2865,7 +2875,8 @@ public class SearchService {
             nextUrl,
             null,  // No previous link on first page
             baseUrl,
-            Instant.now()
+            Instant.now(),
+            projection
         );
         
         logger.debug("🚀 FASTPATH: Chain search COMPLETE: Bundle={} resources ({} primaries + {} includes), total={}, pagination={}", 
@@ -2886,106 +2897,19 @@ public class SearchService {
 
 
     /**
-     * Handle Has search with two-query strategy
+     * Build the primary-side query for a _has parameter: a document ID query over the distinct
+     * primaries referenced by matching targets, or null when there are none
      */
-    private Bundle handleHasSearch(String resourceType , HasParam hasParam, List<SearchQuery> ftsQueries , String bucketName , List<SearchSort> sortFields , int count , RequestDetails requestDetails){
-
-        String baseUrl = extractBaseUrl(requestDetails, bucketName);
-        Map<String, List<String>> chainCriteria = Map.of(hasParam.getCriteriaParam(), List.of(hasParam.getCriteriaValue()));
-        SearchQueryResult hasQueryResult = buildSearchQueries(hasParam.getTargetResource(), chainCriteria);
-        List<SearchQuery> hasQueries = hasQueryResult.getFtsQueries();
-        hasQueries.addAll(ftsQueries);
-        FtsSearchService.FtsSearchResult ftsResult = ftsKvSearchService.searchForAllKeys(hasQueries, hasParam.getTargetResource(), sortFields);
-        List<String> docKeys = new ArrayList<>(ftsResult.getDocumentKeys());
-        List<Resource> referencedDocs =  ftsKvSearchService.getDocumentsFromKeys(docKeys ,  hasParam.getTargetResource());
-
-
-        if (referencedDocs.isEmpty()) {
-            logger.warn("🔗 No referenced resources found for has query, returning empty bundle");
-            return createEmptyBundle();
-        }
-
-        long totalCount = referencedDocs.size();  // Accurate total from FTS metadata
-        boolean needsPagination = referencedDocs.size() > count;
-
-        // Step 3: Get keys for first page
-        List<Resource> firstPageKeys = needsPagination ? referencedDocs.subList(0, count) : referencedDocs;
-
-        Set<String> results = new HashSet<>();
-
-        for (IBaseResource res : firstPageKeys) {
-            String ref = extractSubjectReference(fhirContext, res);
-            if (ref != null) {
-                results.add(ref);
-            }
-        }
-
-        List<Resource> primaryResources = ftsKvSearchService.getDocumentsFromKeys(results.stream().toList(),resourceType);
-
-
-        String continuationToken = null;
-
-        if (needsPagination) {
-            // Serialize queries and chain metadata for re-execution
-            List<String> serializedQueries = serializeFtsQueries(hasQueries);
-            List<String> serializedSortFields = serializeSortFields(sortFields);
-
-            PaginationState paginationState = PaginationState.builder()
-                    .searchType("has")
-                    .resourceType(resourceType)
-                    .primaryResourceCount((int) totalCount)  // Store for Bundle.total
-                    .primaryFtsQueriesJson(serializedQueries)
-                    .primaryOffset(count)  // Next page starts at offset=count
-                    .primaryPageSize(count)
-                    .sortFieldsJson(serializedSortFields)
-                     .bucketName(bucketName)
-                    .baseUrl(baseUrl)
-                    .useLegacyKeyList(false)  // Query-based approach
-                    .build();
-
-            continuationToken = searchStateManager.storePaginationState(paginationState);
-            logger.info("✅ Created HAS PaginationState: token={}, strategy=query-based, offset={}, total={}",
-                    continuationToken, count, totalCount);
-        }
-
-        Bundle bundle = new Bundle();
-        bundle.setType(Bundle.BundleType.SEARCHSET);
-        bundle.setTotal( primaryResources.size());
-        for (Resource resource : primaryResources) {
-            Resource filteredResource = applyResourceFiltering(resource, null, null);
-            bundle.addEntry()
-                    .setResource(filteredResource)
-                    .getSearch()
-                    .setMode(Bundle.SearchEntryMode.MATCH);
-        }
-
-        bundle.addLink()
-                .setRelation("self")
-                .setUrl(baseUrl + "/" + resourceType + "?_has" +":"+hasParam.getTargetResource()+":"+ hasParam.getReferenceField()+":"+hasParam.getCriteriaParam() + "=" + hasParam.getCriteriaValue());
-
-        // Add next link if there are more results
-        if (continuationToken != null && needsPagination) {
-            bundle.addLink()
-                    .setRelation("next")
-                    .setUrl(baseUrl + "/" + resourceType + "?_page=" + continuationToken + "&_offset=" + count + "&_count=" + count);
-        }
-
-        return  bundle;
-    }
-
-    public String extractSubjectReference(FhirContext ctx, IBaseResource resource) {
-        RuntimeResourceDefinition def = ctx.getResourceDefinition(resource);
-        BaseRuntimeChildDefinition subjectChild = def.getChildByName("subject");
-        if (subjectChild == null) return null;
-
-        List<IBase> values = subjectChild.getAccessor().getValues(resource);
-        if (values == null || values.isEmpty()) return null;
-
-        if (values.get(0) instanceof org.hl7.fhir.r4.model.Reference ref) {
-            return ref.getReference();
+    private SearchQuery buildHasQuery(String resourceType, HasParam hasParam, String bucketName, boolean useTargetCache) {
+        Map<String, List<String>> hasCriteria = Map.of(hasParam.getCriteriaParam(), List.of(hasParam.getCriteriaValue()));
+        List<SearchQuery> targetQueries = buildSearchQueries(hasParam.getTargetResource(), hasCriteria).getFtsQueries();
+        
+        List<String> primaryKeys = chainSearchEngine.resolveHasPrimaryKeys(resourceType, hasParam, targetQueries, bucketName,
+                                                                           useTargetCache);
+        if (primaryKeys.isEmpty()) {
+            return null;
         }
-
-        return null;
+        return SearchQuery.docId(primaryKeys.toArray(new String[0]));
     }
 
     /**
@@ -3030,10 +2954,13 @@ public class SearchService {
             }
             
             logger.debug("🔑 Using new pagination strategy for token: {}", continuationToken);
-            // Pass offset and count from URL to handle pagination (document is immutable)
+            // Pass offset and count from URL to handle pagination (document is immutable);
+            // _summary/_elements come from the first page
+            List<String> storedElements = paginationState.getElements();
             return handleContinuationTokenNewPagination(continuationToken, paginationState.getResourceType(),
                                                    offset, count,
-                                                   SummaryEnum.FALSE, null, // TODO: Store these in PaginationState if needed
+                                                   SummaryEnum.fromCode(paginationState.getSummaryMode()),
+                                                   storedElements != null ? new HashSet<>(storedElements) : null,
                                                    paginationState.getBucketName(), requestDetails);
         }
         
@@ -3288,27 +3215,142 @@ public class SearchService {
      */
     // Removed unused helper getResourcesByIds (replaced by direct getDocumentsFromKeys calls)
     
+    // ========== Include / RevInclude Fan-Out Helpers ==========
+    
+    /**
+     * Per-request budget for the parallel _include / _revinclude branches
+     */
+    private RequestFanOut newFanOut() {
+        return new RequestFanOut(fanOutProperties.getMaxConcurrency());
+    }
+    
+    /**
+     * Run one FTS search per _revinclude in parallel and merge the keys in parameter order.
+     * Every branch may use the whole remaining budget; the merge hands it out in parameter order,
+     * so the page matches what running the branches one after another would have produced.
+     */
+    private List<String> searchRevIncludeKeys(RequestFanOut fanOut, List<String> primaryReferences,
+                                              List<Include> revIncludes, int budget, List<SearchSort> sortFields) {
+        List<String> secondaryKeys = new ArrayList<>();
+        if (budget <= 0 || primaryReferences.isEmpty()) {
+            return secondaryKeys;
+        }
+        
+        List<CompletableFuture<List<String>>> branches = new ArrayList<>(revIncludes.size());
+        for (Include revInclude : revIncludes) {
+            List<SearchQuery> referenceQueries = new ArrayList<>(primaryReferences.size());
+            for (String primaryReference : primaryReferences) {
+                referenceQueries.add(SearchQuery.match(primaryReference).field(revInclude.getParamName() + ".reference"));
+            }
+            List<SearchQuery> revIncludeQueries = List.of(SearchQuery.disjuncts(referenceQueries.toArray(new SearchQuery[0])));
+            branches.add(fanOut.submit(() -> ftsSearchService.searchForKeys(
+                revIncludeQueries, revInclude.getParamType(), 0, budget, sortFields).getDocumentKeys()));
+        }
+        
+        for (int i = 0; i < branches.size(); i++) {
+            List<String> branchKeys = RequestFanOut.join(branches.get(i));
+            int remaining = budget - secondaryKeys.size();
+            List<String> kept = branchKeys.size() > remaining ? branchKeys.subList(0, remaining) : branchKeys;
+            secondaryKeys.addAll(kept);
+            logger.debug("🔍 _revinclude {} returned {} keys, kept {} (bundle cap {})", 
+                       revIncludes.get(i).getValue(), branchKeys.size(), kept.size(), MAX_BUNDLE_SIZE);
+        }
+        return secondaryKeys;
+    }
+    
+    /**
+     * KV-fetch resources of mixed types (one batch per type, in parallel), keyed and ordered by document key
+     */
+    private Map<String, Resource> fetchResourcesByKey(RequestFanOut fanOut, Collection<String> keys) {
+        return fetchByType(fanOut, keys, (keysForType, type) -> {
+            Map<String, Resource> fetched = new HashMap<>();
+            for (Resource resource : ftsKvSearchService.getDocumentsFromKeys(keysForType, type)) {
+                fetched.put(resource.getResourceType().name() + "/" + resource.getIdElement().getIdPart(), resource);
+            }
+            return fetched;
+        });
+    }
+    
+    /**
+     * KV-fetch raw JSON of mixed types (one batch per type, in parallel), keyed and ordered by document key
+     */
+    private Map<String, byte[]> fetchBytesByKey(RequestFanOut fanOut, Collection<String> keys) {
+        return fetchByType(fanOut, keys, batchKvService::getDocumentsAsBytesWithKeys);
+    }
+    
+    private <T> Map<String, T> fetchByType(RequestFanOut fanOut, Collection<String> keys,
+                                           BiFunction<List<String>, String, Map<String, T>> batchFetch) {
+        // Filter out any invalid keys (defensive programming)
+        Map<String, List<String>> keysByType = new LinkedHashMap<>();
+        for (String key : keys) {
+            int slashIdx = key != null ? key.indexOf('/') : -1;
+            if (slashIdx > 0) {
+                keysByType.computeIfAbsent(key.substring(0, slashIdx), type -> new ArrayList<>()).add(key);
+            }
+        }
+        
+        Map<String, T> fetched = new HashMap<>();
+        if (keysByType.size() == 1) {
+            // Single type - nothing to overlap, stay on this thread
+            Map.Entry<String, List<String>> only = keysByType.entrySet().iterator().next();
+            fetched.putAll(batchFetch.apply(only.getValue(), only.getKey()));
+        } else {
+            List<CompletableFuture<Map<String, T>>> batches = new ArrayList<>(keysByType.size());
+            keysByType.forEach((type, keysForType) -> {
+                logger.debug("🔍 KV Batch fetching {} {} documents", keysForType.size(), type);
+                batches.add(fanOut.submit(() -> batchFetch.apply(keysForType, type)));
+            });
+            for (CompletableFuture<Map<String, T>> batch : batches) {
+                fetched.putAll(RequestFanOut.join(batch));
+            }
+        }
+        
+        // Merge in key order so the bundle does not depend on which batch finished first
+        Map<String, T> ordered = new LinkedHashMap<>();
+        for (String key : keys) {
+            T value = fetched.get(key);
+            if (value != null) {
+                ordered.put(key, value);
+            }
+        }
+        return ordered;
+    }
+    
 
     
     // ========== Chain Search Helper Methods ==========
     
     /**
-     * Execute chain query to find referenced resource IDs
+     * Resolve the chain's targets and plan the primary queries (see ChainSearchEngine)
      */
-    private List<String> executeChainQuery(String targetResourceType, String searchParam, 
-                                         String searchValue, String bucketName) {
-        logger.debug("🔗 Executing chain query: {} where {}={}", targetResourceType, searchParam, searchValue);
+    private ChainSearchEngine.ChainPlan planChain(String primaryResourceType, ChainParam chainParam,
+                                                  List<SearchQuery> additionalQueries, List<SearchSort> sortFields,
+                                                  String bucketName, boolean useTargetCache) {
+        logger.debug("🔗 Executing chain query: {} where {}={}", 
+                   chainParam.getTargetResourceType(), chainParam.getSearchParam(), chainParam.getValue());
         
         // Build FTS query for the chain parameter
-        Map<String, List<String>> chainCriteria = Map.of(searchParam, List.of(searchValue));
-        SearchQueryResult chainQueryResult = buildSearchQueries(targetResourceType, chainCriteria);
-        List<SearchQuery> chainQueries = chainQueryResult.getFtsQueries();
-        
-        // Execute FTS search to get referenced resource IDs
-        FtsSearchService.FtsSearchResult ftsResult = ftsKvSearchService.searchForAllKeys(chainQueries, targetResourceType, null);
-        return ftsResult.getDocumentKeys().stream()
-                .map(key -> key.substring(key.lastIndexOf("/") + 1)) // Extract ID from "ResourceType/id"
-                .collect(Collectors.toList());
+        Map<String, List<String>> chainCriteria = Map.of(chainParam.getSearchParam(), List.of(chainParam.getValue()));
+        List<SearchQuery> targetQueries = buildSearchQueries(chainParam.getTargetResourceType(), chainCriteria).getFtsQueries();
+        
+        return chainSearchEngine.plan(primaryResourceType, chainParam, targetQueries, additionalQueries, sortFields,
+                                      bucketName, useTargetCache);
+    }
+    
+    /**
+     * First page of a chained search (limit keys plus the total). Key-addressed plans are sliced from
+     * their key list; query plans run the primary FTS search.
+     */
+    private FtsSearchService.FtsSearchResult executeFirstChainPage(String primaryResourceType,
+                                                                  ChainSearchEngine.ChainPlan chainPlan,
+                                                                  List<SearchSort> sortFields, int limit) {
+        List<String> planKeys = chainPlan.getPrimaryKeys();
+        if (planKeys == null) {
+            return executePrimaryChainSearchForKeysEfficient(primaryResourceType, chainPlan.getPrimaryQueries(),
+                                                             sortFields, limit);
+        }
+        return new FtsSearchService.FtsSearchResult(planKeys.subList(0, Math.min(limit, planKeys.size())),
+                                                    planKeys.size(), 0);
     }
     
     /**
@@ -3317,32 +3359,10 @@ public class SearchService {
      * Returns FtsSearchResult with accurate total count from metadata
      */
     private FtsSearchService.FtsSearchResult executePrimaryChainSearchForKeysEfficient(
-                                                          String primaryResourceType, String referenceFieldPath,
-                                                          String targetResourceType, List<String> referencedIds,
-                                                          List<SearchQuery> additionalQueries,
-                                                          List<SearchSort> sortFields, int limit, String bucketName) {
-        
-        logger.debug("🔗 Executing primary chain search for keys: {} where {} references {} IDs (limit={})", 
-                   primaryResourceType, referenceFieldPath, targetResourceType, limit);
-        
-        // Build FTS query for primary resources that reference the found IDs
-        List<SearchQuery> primaryQueries = new ArrayList<>();
-        
-        // Add reference queries (similar to revinclude logic)
-        List<SearchQuery> referenceQueries = new ArrayList<>();
-        for (String referencedId : referencedIds) {
-            String referenceValue = targetResourceType + "/" + referencedId;
-            referenceQueries.add(SearchQuery.match(referenceValue).field(referenceFieldPath));
-        }
-        
-        if (!referenceQueries.isEmpty()) {
-            primaryQueries.add(SearchQuery.disjuncts(referenceQueries.toArray(new SearchQuery[0])));
-        }
+                                                          String primaryResourceType, List<SearchQuery> primaryQueries,
+                                                          List<SearchSort> sortFields, int limit) {
         
-        // Add any additional search criteria
-        if (additionalQueries != null) {
-            primaryQueries.addAll(additionalQueries);
-        }
+        logger.debug("🔗 Executing primary chain search for keys: {} (limit={})", primaryResourceType, limit);
         
         // Use searchForKeys with limit (count+1 for pagination detection)
         FtsSearchService.FtsSearchResult ftsResult = ftsSearchService.searchForKeys(
@@ -3353,6 +3373,15 @@ public class SearchService {
         return ftsResult;
     }
     
+    /**
+     * Sort values to resume after the hit at lastIndex, or null when keyset pagination is disabled
+     * or not available on the connection (continuation pages then use from/size).
+     */
+    private List<String> keysetAfter(FtsSearchService.FtsSearchResult result, int lastIndex) {
+        return paginationProperties.isKeysetEnabled() && ftsSearchService.supportsSearchAfter()
+            ? result.getSortValues(lastIndex) : null;
+    }
+    
     // ========== FTS Query Serialization Helpers ==========
     
     /**
@@ -3409,18 +3438,15 @@ public class SearchService {
     
     /**
      * Parse SearchQuery from JSON string.
-     * This is a temporary implementation - may need to be enhanced based on query complexity.
+     * The exported JSON is replayed as-is, so any query type the SDK can export round-trips.
      */
     private SearchQuery parseSearchQueryFromJson(String json) {
-        // For now, we'll store the queries as-is and rebuild them from criteria
-        // TODO: Implement proper JSON -> SearchQuery conversion if needed
-        // Alternative: Store search criteria instead of serialized queries
-        throw new UnsupportedOperationException("Query deserialization not yet implemented - will store criteria instead");
+        return new RawJsonSearchQuery(json);
     }
     
     /**
-     * Serialize sort fields to simple strings for storage in PaginationState.
-     * Format: "fieldName:desc" or "fieldName:asc"
+     * Serialize sort fields for storage in PaginationState.
+     * Format: the FTS sort JSON of each field (e.g. {"by":"field","field":"meta.lastUpdated","desc":true})
      * 
      * @param sortFields List of SearchSort objects
      * @return List of serialized sort strings
@@ -3430,32 +3456,68 @@ public class SearchService {
             return List.of();
         }
         
-        // For now, just store default sort indication
-        // TODO: Implement proper sort field serialization if complex sorting is needed
         List<String> serialized = new ArrayList<>();
-        serialized.add("meta.lastUpdated:desc");  // Default sort
+        for (SearchSort sortField : sortFields) {
+            serialized.add(sortField.toCore().toJsonNode().toString());
+        }
         return serialized;
     }
     
     /**
-     * Deserialize sort fields from JSON strings stored in PaginationState.
+     * Deserialize sort fields stored in PaginationState.
+     * Also accepts the older "fieldName:desc" format; anything unrecognised falls back to the default sort.
      * 
-     * @param sortFieldsJson List of JSON strings
+     * @param sortFieldsJson List of serialized sort strings
      * @return List of SearchSort objects
      */
     private List<SearchSort> deserializeSortFields(List<String> sortFieldsJson) {
-        if (sortFieldsJson == null || sortFieldsJson.isEmpty()) {
+        List<SearchSort> sortFields = new ArrayList<>();
+        if (sortFieldsJson != null) {
+            for (String sortJson : sortFieldsJson) {
+                SearchSort sortField = parseSortField(sortJson);
+                if (sortField == null) {
+                    logger.warn("⚠️  Unrecognised stored sort field '{}', using default sort", sortJson);
+                    sortFields.clear();
+                    break;
+                }
+                sortFields.add(sortField);
+            }
+        }
+        
+        if (sortFields.isEmpty()) {
             // Return default sort
-            List<SearchSort> defaultSort = new ArrayList<>();
-            defaultSort.add(SearchSort.byField("meta.lastUpdated").desc(true));
-            return defaultSort;
+            sortFields.add(SearchSort.byField("meta.lastUpdated").desc(true));
+        }
+        return sortFields;
+    }
+    
+    private SearchSort parseSortField(String sortJson) {
+        if (sortJson == null || sortJson.isBlank()) {
+            return null;
         }
         
-        // TODO: Implement proper JSON -> SearchSort conversion
-        // For now, return default sort as fallback
-        List<SearchSort> defaultSort = new ArrayList<>();
-        defaultSort.add(SearchSort.byField("meta.lastUpdated").desc(true));
-        return defaultSort;
+        if (!sortJson.startsWith("{")) {
+            // Legacy format: "fieldName:desc" / "fieldName:asc"
+            int colon = sortJson.lastIndexOf(':');
+            String field = colon > 0 ? sortJson.substring(0, colon) : sortJson;
+            boolean descending = colon > 0 && "desc".equalsIgnoreCase(sortJson.substring(colon + 1));
+            return SearchSort.byField(field).desc(descending);
+        }
+        
+        try {
+            JsonObject sort = JsonObject.fromJson(sortJson);
+            boolean descending = Boolean.TRUE.equals(sort.getBoolean("desc"));
+            String by = sort.getString("by");
+            if ("field".equals(by) && sort.getString("field") != null) {
+                return SearchSort.byField(sort.getString("field")).desc(descending);
+            } else if ("id".equals(by)) {
+                return SearchSort.byId().desc(descending);
+            } else if ("score".equals(by)) {
+                return SearchSort.byScore().desc(descending);
+            }
+        } catch (Exception e) {
+            logger.debug("Failed to parse stored sort field '{}': {}", sortJson, e.getMessage());
+        }
+        return null;
     }
 }
-
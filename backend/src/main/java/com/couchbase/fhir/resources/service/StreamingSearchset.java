@@ -0,0 +1,58 @@
+package com.couchbase.fhir.resources.service;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Deferred description of a fastpath searchset Bundle.
+ *
+ * Instead of fetching every document and assembling the Bundle in memory, the search layer
+ * stores this descriptor in the request userData. {@link com.couchbase.fhir.resources.interceptor.FastpathResponseInterceptor}
+ * then hands it to {@link FastJsonBundleBuilder#writeSearchsetBundle} which streams each KV
+ * document straight to the servlet output stream (in FTS order) as it arrives.
+ */
+public class StreamingSearchset {
+
+    private final String resourceType;
+    private final List<String> primaryKeys;
+    private final int total;
+    private final String selfUrl;
+    private final String nextUrl;
+    private final String previousUrl;
+    private final String baseUrl;
+    private final Instant timestamp;
+    private final ResourceProjection projection;  // _summary/_elements, null for whole resources
+
+    public StreamingSearchset(String resourceType, List<String> primaryKeys, int total,
+                              String selfUrl, String nextUrl, String previousUrl, String baseUrl) {
+        this(resourceType, primaryKeys, total, selfUrl, nextUrl, previousUrl, baseUrl, null);
+    }
+
+    public StreamingSearchset(String resourceType, List<String> primaryKeys, int total, String selfUrl,
+                              String nextUrl, String previousUrl, String baseUrl, ResourceProjection projection) {
+        this.resourceType = resourceType;
+        this.primaryKeys = List.copyOf(primaryKeys);
+        this.total = total;
+        this.selfUrl = selfUrl;
+        this.nextUrl = nextUrl;
+        this.previousUrl = previousUrl;
+        this.baseUrl = baseUrl;
+        this.timestamp = Instant.now();
+        this.projection = projection;
+    }
+
+    public String getResourceType() { return resourceType; }
+    public List<String> getPrimaryKeys() { return primaryKeys; }
+    public int getTotal() { return total; }
+    public String getSelfUrl() { return selfUrl; }
+    public String getNextUrl() { return nextUrl; }
+    public String getPreviousUrl() { return previousUrl; }
+    public String getBaseUrl() { return baseUrl; }
+    public Instant getTimestamp() { return timestamp; }
+    public ResourceProjection getProjection() { return projection; }
+
+    @Override
+    public String toString() {
+        return String.format("StreamingSearchset{type=%s, keys=%d, total=%d}", resourceType, primaryKeys.size(), total);
+    }
+}
@@ -28,6 +28,16 @@ public class DateSearchHelper {
         if (searchValues == null || searchValues.isEmpty()) {
             return null;
         }
+        return buildDateQueryForFields(resolveDateFieldPaths(fhirContext, resourceType, paramName), searchValues);
+    }
+
+    /**
+     * Bind date search values to already-resolved field paths (see resolveDateFieldPaths)
+     */
+    public static SearchQuery buildDateQueryForFields(List<String> fieldPaths, List<String> searchValues) {
+        if (searchValues == null || searchValues.isEmpty()) {
+            return null;
+        }
 
         // Parse all search values to determine date range
         String start = null;
@@ -53,9 +63,6 @@ public class DateSearchHelper {
             }
         }
 
-        // Get field paths using HAPI introspection
-        List<String> fieldPaths = getDateFieldPaths(fhirContext, resourceType, paramName);
-        
         if (fieldPaths.size() == 1) {
             // Single field - create simple query
             return buildDateQueryForField(fieldPaths.get(0), start, end, inclusiveStart, inclusiveEnd);
@@ -86,9 +93,10 @@ public class DateSearchHelper {
     }
 
     /**
-     * Get all possible date field paths for a parameter using HAPI introspection
+     * Get all possible date field paths for a parameter using HAPI introspection.
+     * Independent of the search value, so callers can resolve once and reuse.
      */
-    private static List<String> getDateFieldPaths(FhirContext fhirContext, String resourceType, String paramName) {
+    public static List<String> resolveDateFieldPaths(FhirContext fhirContext, String resourceType, String paramName) {
         try {
             ca.uhn.fhir.context.RuntimeSearchParam searchParam = fhirContext.getResourceDefinition(resourceType).getSearchParam(paramName);
             if (searchParam != null && searchParam.getPath() != null) {
@@ -4,7 +4,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Centralized FHIRPath expression parser for all search helpers
@@ -14,6 +17,9 @@ public class FHIRPathParser {
     
     private static final Logger logger = LoggerFactory.getLogger(FHIRPathParser.class);
     
+    /** Parsed expressions by source text. Expressions come from search parameter definitions, so the set is bounded. */
+    private static final Map<String, ParsedExpression> PARSE_CACHE = new ConcurrentHashMap<>();
+    
     /**
      * Represents a parsed FHIRPath expression with all its components
      */
@@ -30,7 +36,8 @@ public class FHIRPathParser {
                               List<String> fieldPaths, String extensionUrl, String extensionValueField) {
             this.originalExpression = originalExpression;
             this.type = type;
-            this.fieldPaths = fieldPaths != null ? fieldPaths : new ArrayList<>();
+            // Immutable: parsed expressions are cached and shared between requests
+            this.fieldPaths = fieldPaths != null ? Collections.unmodifiableList(new ArrayList<>(fieldPaths)) : List.of();
             this.extensionUrl = extensionUrl;
             this.extensionValueField = extensionValueField;
             this.isUnion = type == ExpressionType.UNION;
@@ -69,6 +76,10 @@ public class FHIRPathParser {
             return new ParsedExpression(expression, ExpressionType.UNKNOWN, null, null, null);
         }
         
+        return PARSE_CACHE.computeIfAbsent(expression, FHIRPathParser::parseExpression);
+    }
+    
+    private static ParsedExpression parseExpression(String expression) {
         String trimmed = expression.trim();
         logger.debug("🔍 FHIRPathParser: Parsing expression: {}", trimmed);
         
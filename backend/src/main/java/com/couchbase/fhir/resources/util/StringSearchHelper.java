@@ -48,13 +48,29 @@ public class StringSearchHelper {
         String searchValue,
         RuntimeSearchParam searchParam,
         String modifier
+    ) {
+        List<String> fieldPaths = resolveStringFieldPaths(fhirContext, resourceType, paramName, searchParam);
+        return buildStringQueryForFields(fieldPaths, searchValue, modifier);
+    }
+
+    /**
+     * Resolve the string-bearing leaf fields of a parameter. Independent of the search value,
+     * so callers can resolve once per (resourceType, paramName) and reuse the result.
+     *
+     * @return expanded field paths, empty if the parameter has no usable path
+     */
+    public static List<String> resolveStringFieldPaths(
+        FhirContext fhirContext,
+        String resourceType,
+        String paramName,
+        RuntimeSearchParam searchParam
     ) {
         String rawPath = (searchParam != null) ? searchParam.getPath() : null;
         logger.debug("🔍 StringSearchHelper: paramName={}, rawPath={}", paramName, rawPath);
 
         if (rawPath == null || rawPath.isEmpty()) {
             logger.warn("🔍 StringSearchHelper: Empty/unknown path for paramName={}", paramName);
-            return null;
+            return Collections.emptyList();
         }
 
         // Parse FHIRPath (supports unions like "name | Organization.alias")
@@ -81,6 +97,17 @@ public class StringSearchHelper {
 
         if (fieldPaths.isEmpty()) {
             logger.warn("🔍 StringSearchHelper: No field paths found for paramName={}, rawPath={}", paramName, rawPath);
+        }
+        return Collections.unmodifiableList(fieldPaths);
+    }
+
+    /**
+     * Bind a string value to already-resolved field paths (OR across fields).
+     *
+     * @return the query, or null if there are no fields
+     */
+    public static SearchQuery buildStringQueryForFields(List<String> fieldPaths, String searchValue, String modifier) {
+        if (fieldPaths == null || fieldPaths.isEmpty()) {
             return null;
         }
 
@@ -12,11 +12,16 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class TokenSearchHelper {
 
     private static final Logger logger = LoggerFactory.getLogger(TokenSearchHelper.class);
 
+    /** Introspected field types: key = resourceType + "|" + fieldPath. */
+    private static final Map<String, String> FIELD_TYPE_CACHE = new ConcurrentHashMap<>();
+
     /**
      * Build TOKEN query - main entry point handling both HAPI parameters and direct expressions
      */
@@ -24,6 +29,14 @@ public class TokenSearchHelper {
                                                 String resourceType,
                                                 String paramName,
                                                 String tokenValue) {
+        return buildTokenQuery(fhirContext, resourceType, resolveTokenTarget(fhirContext, resourceType, paramName), tokenValue);
+    }
+
+    /**
+     * Resolve where a token parameter lives in the document. The result does not depend on the
+     * search value, so it can be computed once per (resourceType, paramName) and reused.
+     */
+    public static TokenTarget resolveTokenTarget(FhirContext fhirContext, String resourceType, String paramName) {
         try {
             // Get HAPI search parameter
             RuntimeResourceDefinition def = fhirContext.getResourceDefinition(resourceType);
@@ -31,15 +44,15 @@ public class TokenSearchHelper {
             
             if (searchParam != null && searchParam.getPath() != null) {
                 logger.debug("🔍 TokenSearchHelper: HAPI path={}", searchParam.getPath());
-                return buildTokenFTSQueryFromExpression(fhirContext, resourceType, searchParam.getPath(), tokenValue);
+                return resolveTokenTargetFromExpression(searchParam.getPath());
             } else {
                 // Fallback for parameters without HAPI definition
                 logger.warn("🔍 TokenSearchHelper: No HAPI path found for {}, using parameter name", paramName);
-                return buildTokenQueryForField(resourceType, paramName, tokenValue);
+                return new TokenTarget(paramName, TokenTarget.Mode.SIMPLE);
             }
         } catch (Exception e) {
             logger.warn("🔍 TokenSearchHelper: Failed to get HAPI path for {}: {}", paramName, e.getMessage());
-            return buildTokenQueryForField(resourceType, paramName, tokenValue);
+            return new TokenTarget(paramName, TokenTarget.Mode.SIMPLE);
         }
     }
 
@@ -50,6 +63,10 @@ public class TokenSearchHelper {
                                                               String resourceType,
                                                               String expression,
                                                               String tokenValue) {
+        return buildTokenQuery(fhirContext, resourceType, resolveTokenTargetFromExpression(expression), tokenValue);
+    }
+
+    private static TokenTarget resolveTokenTargetFromExpression(String expression) {
         logger.debug("🔍 TokenSearchHelper: Building query from expression: {}", expression);
 
         // Parse the expression to get field path
@@ -58,11 +75,24 @@ public class TokenSearchHelper {
         
         if (fieldPath == null) {
             logger.warn("🔍 TokenSearchHelper: Could not extract field path from: {}", expression);
-            return SearchQuery.match(tokenValue).field("unknown");
+            return new TokenTarget("unknown", TokenTarget.Mode.UNRESOLVED);
+        }
+        return new TokenTarget(fieldPath, TokenTarget.Mode.INTROSPECTED);
+    }
+
+    /**
+     * Bind a token value to a resolved target
+     */
+    public static SearchQuery buildTokenQuery(FhirContext fhirContext, String resourceType, TokenTarget target, String tokenValue) {
+        switch (target.mode) {
+            case UNRESOLVED:
+                return SearchQuery.match(tokenValue).field(target.fieldPath);
+            case SIMPLE:
+                return buildTokenQueryForField(resourceType, target.fieldPath, tokenValue);
+            default:
+                // Introspect field type and build appropriate query
+                return buildTokenQueryForField(fhirContext, resourceType, target.fieldPath, tokenValue);
         }
-        
-        // Introspect field type and build appropriate query
-        return buildTokenQueryForField(fhirContext, resourceType, fieldPath, tokenValue);
     }
 
     /**
@@ -152,9 +182,14 @@ public class TokenSearchHelper {
     }
 
     /**
-     * Introspect FHIR field type using HAPI reflection
+     * Introspect FHIR field type using HAPI reflection (cached - the answer only depends on the model)
      */
     private static String introspectFieldType(FhirContext fhirContext, String resourceType, String fieldPath) {
+        return FIELD_TYPE_CACHE.computeIfAbsent(resourceType + "|" + fieldPath,
+            key -> doIntrospectFieldType(fhirContext, resourceType, fieldPath));
+    }
+
+    private static String doIntrospectFieldType(FhirContext fhirContext, String resourceType, String fieldPath) {
         try {
             RuntimeResourceDefinition resourceDef = fhirContext.getResourceDefinition(resourceType);
             String[] pathParts = fieldPath.split("\\.");
@@ -269,6 +304,29 @@ public class TokenSearchHelper {
         return SearchQuery.match(token.code).field(fieldPath);
     }
 
+    /**
+     * Resolved document location of a token parameter
+     */
+    public static final class TokenTarget {
+        enum Mode {
+            INTROSPECTED, // field type looked up in the HAPI model (CodeableConcept, Identifier, ...)
+            SIMPLE,       // no HAPI definition - plain match on the parameter name
+            UNRESOLVED    // expression could not be parsed
+        }
+
+        private final String fieldPath;
+        private final Mode mode;
+
+        private TokenTarget(String fieldPath, Mode mode) {
+            this.fieldPath = fieldPath;
+            this.mode = mode;
+        }
+
+        public String getFieldPath() {
+            return fieldPath;
+        }
+    }
+
     /**
      * Token parameter parser - handles system|code format
      */
@@ -0,0 +1,112 @@
+package com.couchbase.fhir.resources.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Round-trip tests for the binary pagination state encoding stored in Admin.cache.
+ */
+public class PaginationStateCodecTest {
+
+    @Test
+    public void testQueryBasedState_RoundTrips() {
+        PaginationState state = PaginationState.builder()
+            .searchType("include")
+            .resourceType("Observation")
+            .primaryResourceCount(1234)
+            .primaryFtsQueriesJson(List.of("{\"match\":\"final\",\"field\":\"status\"}", "{\"match_all\":{}}"))
+            .primaryOffset(50)
+            .primaryPageSize(50)
+            .sortFieldsJson(List.of("meta.lastUpdated:desc"))
+            .maxBundleSize(1000)
+            .includeParamsList(List.of("Observation:subject", "Observation:performer"))
+            .searchAfter(List.of("2024-05-01T10:15:30.000Z", "Observation/obs-50"))
+            .bucketName("fhir")
+            .baseUrl("http://localhost:8080/fhir")
+            .build();
+
+        PaginationState decoded = PaginationStateCodec.decode(PaginationStateCodec.encode(state));
+
+        assertEquals("include", decoded.getSearchType());
+        assertEquals("Observation", decoded.getResourceType());
+        assertEquals(1234, decoded.getPrimaryResourceCount());
+        assertEquals(state.getPrimaryFtsQueriesJson(), decoded.getPrimaryFtsQueriesJson());
+        assertEquals(50, decoded.getPrimaryOffset());
+        assertEquals(50, decoded.getPrimaryPageSize());
+        assertEquals(state.getSortFieldsJson(), decoded.getSortFieldsJson());
+        assertEquals(1000, decoded.getMaxBundleSize());
+        assertEquals(state.getIncludeParamsList(), decoded.getIncludeParamsList());
+        assertEquals(state.getSearchAfter(), decoded.getSearchAfter());
+        assertNull(decoded.getRevIncludeResourceType());
+        assertNull(decoded.getAllDocumentKeys());
+        assertFalse(decoded.isUseLegacyKeyList());
+        assertEquals(state.getCreatedAt(), decoded.getCreatedAt(), "createdAt must survive so TTL is not extended");
+        assertEquals(state.getExpiresAt(), decoded.getExpiresAt());
+    }
+
+    @Test
+    public void testLegacyKeyListState_RoundTrips() {
+        PaginationState state = PaginationState.builder()
+            .searchType("everything")
+            .resourceType("Patient")
+            .allDocumentKeys(List.of("Patient/1", "Observation/ü-2", "Condition/3"))
+            .pageSize(50)
+            .currentOffset(50)
+            .bucketName("fhir")
+            .baseUrl("http://localhost:8080/fhir")
+            .useLegacyKeyList(true)
+            .build();
+
+        PaginationState decoded = PaginationStateCodec.decode(PaginationStateCodec.encode(state));
+
+        assertEquals(state.getAllDocumentKeys(), decoded.getAllDocumentKeys());
+        assertEquals(50, decoded.getPageSize());
+        assertEquals(50, decoded.getCurrentOffset());
+        assertTrue(decoded.isUseLegacyKeyList());
+        assertNull(decoded.getSearchAfter());
+    }
+
+    @Test
+    public void testProjection_RoundTrips() {
+        PaginationState state = PaginationState.builder()
+            .searchType("chain")
+            .resourceType("Observation")
+            .summaryMode("data")
+            .elements(List.of("status", "subject"))
+            .build();
+
+        PaginationState decoded = PaginationStateCodec.decode(PaginationStateCodec.encode(state));
+
+        assertEquals("data", decoded.getSummaryMode());
+        assertEquals(List.of("status", "subject"), decoded.getElements());
+    }
+
+    @Test
+    public void testVersion2Document_DecodesWithoutProjection() {
+        byte[] v3 = PaginationStateCodec.encode(PaginationState.builder()
+            .searchType("regular")
+            .resourceType("Patient")
+            .searchAfter(List.of("Patient/p50"))
+            .build());
+        // v2 layout: no trailing summaryMode and elements (null string + null list = 8 bytes)
+        byte[] v2 = Arrays.copyOf(v3, v3.length - 8);
+        v2[0] = 2;
+
+        assertTrue(PaginationStateCodec.isBinary(v2));
+        PaginationState decoded = PaginationStateCodec.decode(v2);
+        assertEquals(List.of("Patient/p50"), decoded.getSearchAfter());
+        assertNull(decoded.getSummaryMode());
+        assertNull(decoded.getElements());
+    }
+
+    @Test
+    public void testJsonDocument_IsNotBinary() {
+        assertFalse(PaginationStateCodec.isBinary("{\"searchType\":\"regular\"}".getBytes(StandardCharsets.UTF_8)));
+        assertTrue(PaginationStateCodec.isBinary(PaginationStateCodec.encode(PaginationState.builder().build())));
+    }
+}
@@ -0,0 +1,72 @@
+package com.couchbase.fhir.resources.search;
+
+import com.couchbase.client.java.search.SearchQuery;
+import com.couchbase.client.java.search.queries.MatchOperator;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Stored query JSON rebuilds into the same typed queries, so it can be sent over Protostellar.
+ */
+public class RawJsonSearchQueryTest {
+
+    private static void assertRoundTrips(SearchQuery query) {
+        String json = query.export().toString();
+
+        assertEquals(query.export(), new RawJsonSearchQuery(json).toTyped().export(), json);
+    }
+
+    @Test
+    void leafQueriesRoundTrip() {
+        List<SearchQuery> queries = List.of(
+            SearchQuery.match("smith").field("name.family").analyzer("standard").fuzziness(1).prefixLength(2)
+                .operator(MatchOperator.AND),
+            SearchQuery.term("final").field("status").boost(2.0),
+            SearchQuery.prefix("Smi").field("name.family"),
+            SearchQuery.wildcard("sm*th").field("name.family"),
+            SearchQuery.regexp("sm.th").field("name.family"),
+            SearchQuery.matchPhrase("john smith").field("name.text"),
+            SearchQuery.phrase("john", "smith").field("name.text"),
+            SearchQuery.queryString("+status:final"),
+            SearchQuery.booleanField(true).field("active"),
+            SearchQuery.docId("Patient/p1", "Patient/p2"),
+            SearchQuery.matchAll(),
+            SearchQuery.matchNone(),
+            SearchQuery.numericRange().min(5, true).max(10, false).field("valueQuantity.value"),
+            SearchQuery.dateRange().start("2024-01-01T00:00:00Z", true).end("2025-01-01T00:00:00Z", false)
+                .field("meta.lastUpdated"),
+            SearchQuery.termRange().min("a", true).max("m", false).field("name.family"));
+
+        queries.forEach(RawJsonSearchQueryTest::assertRoundTrips);
+    }
+
+    @Test
+    void compoundQueriesRoundTrip() {
+        SearchQuery status = SearchQuery.match("final").field("status");
+        SearchQuery subject = SearchQuery.disjuncts(
+            SearchQuery.match("Patient/p1").field("subject.reference"),
+            SearchQuery.match("Patient/p2").field("subject.reference")).min(1);
+
+        assertRoundTrips(SearchQuery.conjuncts(status, subject));
+        assertRoundTrips(SearchQuery.booleans()
+            .must(status)
+            .should(SearchQuery.term("a").field("code"), SearchQuery.term("b").field("code"))
+            .shouldMin(1)
+            .mustNot(SearchQuery.match("entered-in-error").field("status")));
+    }
+
+    @Test
+    void searchQueriesConvertToProtostellar() {
+        SearchQuery search = SearchQuery.conjuncts(
+            SearchQuery.term("final").field("status"),
+            SearchQuery.disjuncts(SearchQuery.match("Patient/p1").field("subject.reference")),
+            SearchQuery.dateRange().start("2024-01-01T00:00:00Z").field("effectiveDateTime"),
+            SearchQuery.numericRange().min(5).field("valueQuantity.value"),
+            SearchQuery.docId("Observation/o1"));
+
+        assertNotNull(new RawJsonSearchQuery(search.export().toString()).toCore().asProtostellar());
+    }
+}
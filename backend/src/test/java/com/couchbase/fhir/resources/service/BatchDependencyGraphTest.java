@@ -0,0 +1,77 @@
+package com.couchbase.fhir.resources.service;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Reference;
+import org.hl7.fhir.r4.model.Resource;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Which batch entries have to wait for earlier ones.
+ */
+public class BatchDependencyGraphTest {
+
+    private static List<String> references(Resource resource) {
+        return resource instanceof Observation observation && observation.hasSubject()
+            ? List.of(observation.getSubject().getReference())
+            : List.of();
+    }
+
+    private static void add(Bundle bundle, String fullUrl, Resource resource, Bundle.HTTPVerb method, String url) {
+        bundle.addEntry()
+            .setFullUrl(fullUrl)
+            .setResource(resource)
+            .getRequest().setMethod(method).setUrl(url);
+    }
+
+    @Test
+    void independentEntriesDoNotWait() {
+        Bundle bundle = new Bundle().setType(Bundle.BundleType.BATCH);
+        add(bundle, "urn:uuid:p1", new Patient().setId("a"), Bundle.HTTPVerb.POST, "Patient");
+        add(bundle, "urn:uuid:p2", new Patient().setId("b"), Bundle.HTTPVerb.POST, "Patient");
+        add(bundle, null, new Observation().setId("c"), Bundle.HTTPVerb.PUT, "Observation/c");
+        add(bundle, null, null, Bundle.HTTPVerb.GET, "Practitioner?name=x");
+
+        List<Set<Integer>> dependencies = BatchDependencyGraph.build(bundle, BatchDependencyGraphTest::references);
+
+        dependencies.forEach(waitFor -> assertTrue(waitFor.isEmpty()));
+    }
+
+    @Test
+    void referencesSameDocumentAndSearchesWait() {
+        Bundle bundle = new Bundle().setType(Bundle.BundleType.BATCH);
+        add(bundle, "urn:uuid:p1", new Patient().setId("a"), Bundle.HTTPVerb.POST, "Patient");
+        add(bundle, null, new Observation().setSubject(new Reference("urn:uuid:p1")).setId("o1"),
+            Bundle.HTTPVerb.POST, "Observation");
+        add(bundle, null, new Patient().setId("x"), Bundle.HTTPVerb.PUT, "Patient/x");
+        add(bundle, null, null, Bundle.HTTPVerb.DELETE, "Patient/x");
+        add(bundle, null, null, Bundle.HTTPVerb.GET, "Patient?name=doe");
+        add(bundle, null, null, Bundle.HTTPVerb.GET, "Patient?family=doe");
+        add(bundle, null, new Patient().setId("y"), Bundle.HTTPVerb.PUT, "Patient/y");
+
+        List<Set<Integer>> dependencies = BatchDependencyGraph.build(bundle, BatchDependencyGraphTest::references);
+
+        assertEquals(Set.of(), dependencies.get(0));
+        assertEquals(Set.of(0), dependencies.get(1));       // urn:uuid reference
+        assertEquals(Set.of(), dependencies.get(2));
+        assertEquals(Set.of(2), dependencies.get(3));       // same document
+        assertEquals(Set.of(0, 2, 3), dependencies.get(4)); // search after writes of its type
+        assertEquals(Set.of(0, 2, 3), dependencies.get(5)); // searches do not wait for each other
+        assertEquals(Set.of(4, 5), dependencies.get(6));    // write after searches of its type
+    }
+
+    @Test
+    void parsesEntryUrls() {
+        assertEquals("Patient", BatchDependencyGraph.typeOf("/Patient/123/_history"));
+        assertEquals("Patient", BatchDependencyGraph.typeOf("Patient?name=x"));
+        assertEquals("123", BatchDependencyGraph.idOf("Patient/123/_history"));
+        assertNull(BatchDependencyGraph.idOf("Patient?_id=123"));
+        assertNull(BatchDependencyGraph.idOf("Patient/$everything"));
+    }
+}
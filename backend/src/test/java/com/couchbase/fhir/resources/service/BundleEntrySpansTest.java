@@ -0,0 +1,58 @@
+package com.couchbase.fhir.resources.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Raw entry spans of a transaction Bundle body and their byte-level rewrite for storage.
+ */
+public class BundleEntrySpansTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final String BUNDLE = "{\"resourceType\":\"Bundle\",\"type\":\"transaction\",\"entry\":["
+        + "{\"fullUrl\":\"urn:uuid:p1\",\"resource\":{\"resourceType\":\"Patient\",\"id\":\"client-id\","
+        + "\"meta\":{\"versionId\":\"9\"},\"name\":[{\"family\":\"Doe\"}]},\"request\":{\"method\":\"POST\",\"url\":\"Patient\"}},"
+        + "{\"request\":{\"method\":\"GET\",\"url\":\"Patient?name=doe\"}},"
+        + "{\"fullUrl\":\"urn:uuid:o1\",\"resource\":{\"resourceType\":\"Observation\",\"valueQuantity\":{\"value\":1.50},"
+        + "\"subject\":{\"reference\":\"urn:uuid:p1\"},\"performer\":[{\"reference\":\"Practitioner/x\"}],"
+        + "\"contained\":[{\"resourceType\":\"Device\",\"id\":\"d1\"}]},\"request\":{\"method\":\"POST\",\"url\":\"Observation\"}}"
+        + "]}";
+
+    @Test
+    void scanFindsEachEntryResource() {
+        BundleEntrySpans spans = BundleEntrySpans.scan(BUNDLE.getBytes(StandardCharsets.UTF_8));
+
+        assertNotNull(spans);
+        assertEquals(3, spans.size());
+        assertTrue(spans.hasResource(0));
+        assertFalse(spans.hasResource(1));
+        assertTrue(spans.hasResource(2));
+        assertNull(BundleEntrySpans.scan("not json".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void rewriteSwapsIdMetaAndBundleReferences() throws Exception {
+        BundleEntrySpans spans = BundleEntrySpans.scan(BUNDLE.getBytes(StandardCharsets.UTF_8));
+        Map<String, String> mapping = Map.of("urn:uuid:p1", "Patient/server-p1");
+
+        JsonNode patient = MAPPER.readTree(spans.rewrite(0, "server-p1", "{\"versionId\":\"1\"}", mapping::get));
+        assertEquals("server-p1", patient.get("id").asText());
+        assertEquals("1", patient.at("/meta/versionId").asText());
+        assertEquals("Doe", patient.at("/name/0/family").asText());
+
+        byte[] observationBytes = spans.rewrite(2, "server-o1", "{\"versionId\":\"1\"}", mapping::get);
+        JsonNode observation = MAPPER.readTree(observationBytes);
+        assertEquals("server-o1", observation.get("id").asText());
+        assertEquals("Patient/server-p1", observation.at("/subject/reference").asText());
+        assertEquals("Practitioner/x", observation.at("/performer/0/reference").asText());
+        assertEquals("d1", observation.at("/contained/0/id").asText());
+        assertTrue(new String(observationBytes, StandardCharsets.UTF_8).contains("\"value\":1.50"));
+    }
+}
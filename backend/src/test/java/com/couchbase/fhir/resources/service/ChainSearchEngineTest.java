@@ -0,0 +1,226 @@
+package com.couchbase.fhir.resources.service;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import com.couchbase.client.java.search.SearchQuery;
+import com.couchbase.client.java.search.sort.SearchSort;
+import com.couchbase.fhir.resources.config.ChainSearchProperties;
+import com.couchbase.fhir.resources.config.SearchFanOutProperties;
+import com.couchbase.fhir.resources.search.ChainParam;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Chain strategy selection by cardinality, batching of large target sets, the target-set cache and
+ * rejection of chains larger than max-targets.
+ */
+public class ChainSearchEngineTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final ChainParam CHAIN = ChainParam.parse("subject:Patient.name", "smith", "Observation", FhirContext.forR4());
+    private static final List<SearchQuery> TARGET_QUERIES = List.of(SearchQuery.match("smith").field("name.family"));
+    private static final String BUCKET = "fhir";
+
+    private final ChainSearchProperties properties = new ChainSearchProperties();
+    private FtsSearchService ftsSearchService;
+    private IncludeReferenceExtractor referenceExtractor;
+    private ChainSearchEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        properties.setDisjunctionBatchSize(2);
+        properties.setIntersectionMaxPrimaries(10);
+        ftsSearchService = mock(FtsSearchService.class);
+        referenceExtractor = mock(IncludeReferenceExtractor.class);
+        engine = new ChainSearchEngine();
+        ReflectionTestUtils.setField(engine, "properties", properties);
+        ReflectionTestUtils.setField(engine, "ftsSearchService", ftsSearchService);
+        ReflectionTestUtils.setField(engine, "referenceExtractor", referenceExtractor);
+        ReflectionTestUtils.setField(engine, "fanOutProperties", new SearchFanOutProperties());
+        ReflectionTestUtils.invokeMethod(engine, "init");
+    }
+
+    private void targets(String... ids) {
+        List<String> keys = new ArrayList<>();
+        for (String id : ids) {
+            keys.add("Patient/" + id);
+        }
+        when(ftsSearchService.searchForKeys(anyList(), eq("Patient"), anyInt(), anyInt(), isNull()))
+            .thenReturn(new FtsSearchService.FtsSearchResult(keys, keys.size(), 1));
+    }
+
+    private static JsonNode json(SearchQuery query) throws Exception {
+        return MAPPER.readTree(query.export().toString());
+    }
+
+    /**
+     * Reference values of a (possibly wrapped) reference disjunction
+     */
+    private static List<String> referenceValues(SearchQuery query) throws Exception {
+        List<String> values = new ArrayList<>();
+        for (JsonNode match : json(query).get("disjuncts")) {
+            values.add(match.get("match").asText());
+        }
+        return values;
+    }
+
+    @Test
+    void fewTargetsUseOneReverseLookupDisjunction() throws Exception {
+        targets("p1", "p2");
+
+        ChainSearchEngine.ChainPlan plan = engine.plan("Observation", CHAIN, TARGET_QUERIES, List.of(), null, BUCKET, true);
+
+        assertEquals(ChainSearchEngine.Strategy.REVERSE_LOOKUP, plan.getStrategy());
+        assertEquals(2, plan.getTargetCount());
+        assertEquals(List.of("Patient/p1", "Patient/p2"), referenceValues(plan.getPrimaryQueries().get(0)));
+        verify(ftsSearchService, never()).searchForKeys(anyList(), eq("Observation"), anyInt(), anyInt(), any());
+    }
+
+    @Test
+    void manyTargetsRunOneSearchPerBatchAndMergeSortedKeys() throws Exception {
+        targets("p1", "p2", "p3", "p4", "p5");
+        List<List<String>> batchValues = Collections.synchronizedList(new ArrayList<>());
+        when(ftsSearchService.searchForKeys(anyList(), eq("Observation"), anyInt(), anyInt(), isNull()))
+            .thenAnswer(invocation -> {
+                List<SearchQuery> queries = invocation.getArgument(0);
+                List<String> values = referenceValues(queries.get(0));
+                batchValues.add(values);
+                // Each batch matches one Observation per target, plus one shared by every batch
+                List<String> keys = new ArrayList<>();
+                for (String value : values) {
+                    keys.add("Observation/o-" + value.substring("Patient/".length()));
+                }
+                keys.add("Observation/shared");
+                return new FtsSearchService.FtsSearchResult(keys, keys.size(), 1);
+            });
+
+        ChainSearchEngine.ChainPlan plan = engine.plan("Observation", CHAIN, TARGET_QUERIES, List.of(), null, BUCKET, true);
+
+        assertEquals(ChainSearchEngine.Strategy.BATCHED_LOOKUP, plan.getStrategy());
+        assertEquals(3, batchValues.size());
+        batchValues.forEach(values -> assertTrue(values.size() <= 2, "batch of " + values.size()));
+        assertEquals(Set.of("Patient/p1", "Patient/p2", "Patient/p3", "Patient/p4", "Patient/p5"),
+                     batchValues.stream().flatMap(List::stream).collect(java.util.stream.Collectors.toSet()));
+
+        assertEquals(List.of("Observation/o-p1", "Observation/o-p2", "Observation/o-p3", "Observation/o-p4",
+                             "Observation/o-p5", "Observation/shared"), plan.getPrimaryKeys());
+        assertEquals(1, plan.getPrimaryQueries().size());
+        assertEquals(6, json(plan.getPrimaryQueries().get(0)).get("ids").size());
+    }
+
+    @Test
+    void sortedBatchedLookupOrdersTheMergedKeysOnce() {
+        targets("p1", "p2", "p3");
+        List<SearchSort> sort = List.of(SearchSort.byField("effectiveDateTime").desc(true));
+        when(ftsSearchService.searchForKeys(anyList(), eq("Observation"), anyInt(), anyInt(), isNull()))
+            .thenAnswer(invocation -> {
+                List<SearchQuery> queries = invocation.getArgument(0);
+                String key = referenceValues(queries.get(0)).size() == 2 ? "Observation/a" : "Observation/b";
+                return new FtsSearchService.FtsSearchResult(List.of(key), 1, 1);
+            });
+        when(ftsSearchService.searchForKeys(anyList(), eq("Observation"), eq(0), eq(2), eq(sort)))
+            .thenReturn(new FtsSearchService.FtsSearchResult(List.of("Observation/b", "Observation/a"), 2, 1));
+
+        ChainSearchEngine.ChainPlan plan = engine.plan("Observation", CHAIN, TARGET_QUERIES, List.of(), sort, BUCKET, true);
+
+        assertEquals(List.of("Observation/b", "Observation/a"), plan.getPrimaryKeys());
+        verify(ftsSearchService, times(1)).searchForKeys(anyList(), eq("Observation"), anyInt(), anyInt(), eq(sort));
+    }
+
+    @Test
+    void chainsBeyondMaxTargetsAreRejectedNotTruncated() {
+        properties.setMaxTargets(3);
+        when(ftsSearchService.searchForKeys(anyList(), eq("Patient"), anyInt(), anyInt(), isNull()))
+            .thenReturn(new FtsSearchService.FtsSearchResult(List.of("Patient/p1", "Patient/p2", "Patient/p3"), 4, 1));
+
+        assertThrows(InvalidRequestException.class,
+                     () -> engine.plan("Observation", CHAIN, TARGET_QUERIES, List.of(), null, BUCKET, true));
+    }
+
+    @Test
+    void mergedPrimariesBeyondMaxTargetsAreRejectedNotTruncated() {
+        properties.setMaxTargets(3);
+        targets("p1", "p2", "p3");
+        when(ftsSearchService.searchForKeys(anyList(), eq("Observation"), anyInt(), anyInt(), isNull()))
+            .thenReturn(new FtsSearchService.FtsSearchResult(List.of("Observation/o1", "Observation/o2"), 2, 1),
+                        new FtsSearchService.FtsSearchResult(List.of("Observation/o3", "Observation/o4"), 2, 1));
+
+        assertThrows(InvalidRequestException.class,
+                     () -> engine.plan("Observation", CHAIN, TARGET_QUERIES, List.of(), null, BUCKET, true));
+    }
+
+    @Test
+    void smallPrimarySideUsesIntersection() throws Exception {
+        targets("p1", "p2", "p3");
+        List<SearchQuery> additional = List.of(SearchQuery.match("final").field("status"));
+        when(ftsSearchService.getCount(additional, "Observation")).thenReturn(2L);
+        when(ftsSearchService.searchForKeys(eq(additional), eq("Observation"), eq(0), eq(10), isNull()))
+            .thenReturn(new FtsSearchService.FtsSearchResult(List.of("Observation/o1", "Observation/o2"), 2, 1));
+        when(referenceExtractor.extractReferencesPerPrimary(List.of("Observation/o1", "Observation/o2"), "subject",
+                                                            "Observation", BUCKET))
+            .thenReturn(List.of(Set.of("Patient/p2"), Set.of("Patient/other")));
+
+        ChainSearchEngine.ChainPlan plan = engine.plan("Observation", CHAIN, TARGET_QUERIES, additional, null, BUCKET, true);
+
+        assertEquals(ChainSearchEngine.Strategy.INTERSECTION, plan.getStrategy());
+        assertEquals(List.of("Observation/o1"), plan.getPrimaryKeys());
+        JsonNode ids = json(plan.getPrimaryQueries().get(0)).get("ids");
+        assertEquals(1, ids.size());
+        assertEquals("Observation/o1", ids.get(0).asText());
+    }
+
+    @Test
+    void largePrimarySideFallsBackToBatchedLookup() {
+        targets("p1", "p2", "p3");
+        List<SearchQuery> additional = List.of(SearchQuery.match("final").field("status"));
+        when(ftsSearchService.getCount(additional, "Observation")).thenReturn(500L);
+        when(ftsSearchService.searchForKeys(anyList(), eq("Observation"), anyInt(), anyInt(), isNull()))
+            .thenReturn(new FtsSearchService.FtsSearchResult(List.of(), 0, 1));
+
+        ChainSearchEngine.ChainPlan plan = engine.plan("Observation", CHAIN, TARGET_QUERIES, additional, null, BUCKET, true);
+
+        assertTrue(plan.isEmpty());
+        verify(ftsSearchService, times(2)).searchForKeys(anyList(), eq("Observation"), anyInt(), anyInt(), isNull());
+        verify(referenceExtractor, never()).extractReferencesPerPrimary(anyList(), anyString(), anyString(), anyString());
+    }
+
+    @Test
+    void targetSetsAreCachedUntilTheTargetTypeIsWritten() {
+        targets("p1");
+
+        engine.plan("Observation", CHAIN, TARGET_QUERIES, List.of(), null, BUCKET, true);
+        engine.plan("Observation", CHAIN, TARGET_QUERIES, List.of(), null, BUCKET, true);
+        verify(ftsSearchService, times(1)).searchForKeys(anyList(), eq("Patient"), anyInt(), anyInt(), isNull());
+
+        engine.onWrite(BUCKET, "Observation");
+        engine.plan("Observation", CHAIN, TARGET_QUERIES, List.of(), null, BUCKET, true);
+        verify(ftsSearchService, times(1)).searchForKeys(anyList(), eq("Patient"), anyInt(), anyInt(), isNull());
+
+        engine.onWrite(BUCKET, "Patient");
+        engine.plan("Observation", CHAIN, TARGET_QUERIES, List.of(), null, BUCKET, true);
+        verify(ftsSearchService, times(2)).searchForKeys(anyList(), eq("Patient"), anyInt(), anyInt(), isNull());
+    }
+
+    @Test
+    void conditionalResolutionBypassesTheCache() {
+        targets("p1");
+
+        engine.plan("Observation", CHAIN, TARGET_QUERIES, List.of(), null, BUCKET, true);
+        engine.plan("Observation", CHAIN, TARGET_QUERIES, List.of(), null, BUCKET, false);
+        engine.plan("Observation", CHAIN, TARGET_QUERIES, List.of(), null, BUCKET, false);
+
+        verify(ftsSearchService, times(3)).searchForKeys(anyList(), eq("Patient"), anyInt(), anyInt(), isNull());
+    }
+}
@@ -0,0 +1,68 @@
+package com.couchbase.fhir.resources.service;
+
+import com.couchbase.client.java.search.SearchQuery;
+import com.couchbase.fhir.resources.config.FtsCountCacheProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Query normalization used for FTS count cache keys, and invalidation by writes.
+ */
+public class FtsCountCacheTest {
+
+    private static final String INDEX = "fhir.Resources.ftsObservation";
+    private static final SearchQuery QUERY = SearchQuery.match("final").field("status");
+
+    private static FtsCountCache cache() {
+        CollectionRoutingService routing = mock(CollectionRoutingService.class);
+        when(routing.getFtsIndex("fhir", "Observation")).thenReturn(INDEX);
+        when(routing.getFtsIndex("fhir", "Patient")).thenReturn("fhir.Resources.ftsPatient");
+        FtsCountCache cache = new FtsCountCache();
+        ReflectionTestUtils.setField(cache, "properties", new FtsCountCacheProperties());
+        ReflectionTestUtils.setField(cache, "collectionRoutingService", routing);
+        ReflectionTestUtils.invokeMethod(cache, "init");
+        return cache;
+    }
+
+    @Test
+    public void testEquivalentQueries_ShareHash() throws Exception {
+        String a = "{\"conjuncts\":[{\"match\":\"final\",\"field\":\"status\"},{\"field\":\"code.coding.code\",\"term\":\"1234-5\"}]}";
+        String b = "{\"conjuncts\":[{\"term\":\"1234-5\",\"field\":\"code.coding.code\"},{\"field\":\"status\",\"match\":\"final\"}]}";
+
+        assertEquals(FtsCountCache.hash(a), FtsCountCache.hash(b));
+    }
+
+    @Test
+    public void testDifferentQueries_DoNotShareHash() throws Exception {
+        String a = "{\"match\":\"final\",\"field\":\"status\"}";
+        String b = "{\"match\":\"amended\",\"field\":\"status\"}";
+
+        assertNotEquals(FtsCountCache.hash(a), FtsCountCache.hash(b));
+    }
+
+    @Test
+    public void testWriteToTheIndexedType_HidesCachedCounts() {
+        FtsCountCache cache = cache();
+        cache.put(cache.key(INDEX, QUERY), 42);
+        assertEquals(42L, cache.get(cache.key(INDEX, QUERY)));
+
+        cache.onWrite("fhir", "Patient");
+        assertEquals(42L, cache.get(cache.key(INDEX, QUERY)));
+
+        cache.onWrite("fhir", "Observation");
+        assertNull(cache.get(cache.key(INDEX, QUERY)));
+    }
+
+    @Test
+    public void testCountOfASearchOverlappingAWrite_IsNotServed() {
+        FtsCountCache cache = cache();
+        String keyBeforeSearch = cache.key(INDEX, QUERY);
+        cache.onWrite("fhir", "Observation");
+        cache.put(keyBeforeSearch, 42);
+
+        assertNull(cache.get(cache.key(INDEX, QUERY)));
+    }
+}
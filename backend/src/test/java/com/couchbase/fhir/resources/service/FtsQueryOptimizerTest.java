@@ -0,0 +1,66 @@
+package com.couchbase.fhir.resources.service;
+
+import com.couchbase.client.java.search.SearchQuery;
+import com.couchbase.fhir.resources.config.FtsQueryOptimizerProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * FTS query rewrites against the shipped fts-indexes mappings.
+ */
+public class FtsQueryOptimizerTest {
+
+    private final FtsQueryOptimizer optimizer = newOptimizer();
+
+    private static FtsQueryOptimizer newOptimizer() {
+        FtsQueryOptimizer optimizer = new FtsQueryOptimizer();
+        ReflectionTestUtils.setField(optimizer, "properties", new FtsQueryOptimizerProperties());
+        optimizer.init();
+        return optimizer;
+    }
+
+    private String optimize(SearchQuery query, String collection) throws Exception {
+        return optimizer.optimizeForCollection(query, collection).getQuery().export().toString();
+    }
+
+    @Test
+    public void testFlattensAndOrdersBySelectivity() throws Exception {
+        SearchQuery query = SearchQuery.conjuncts(
+            SearchQuery.conjuncts(
+                SearchQuery.match("final").field("status"),
+                SearchQuery.dateRange().start("2024-01-01").field("effectiveDateTime")),
+            SearchQuery.match("Patient/1").field("subject.reference"));
+
+        FtsQueryOptimizer.OptimizedQuery optimized = optimizer.optimizeForCollection(query, "Observation");
+        String json = optimized.getQuery().export().toString();
+
+        assertFalse(json.contains("\"conjuncts\":[{\"conjuncts\""), "nested conjunction flattened: " + json);
+        assertTrue(json.indexOf("subject.reference") < json.indexOf("\"status\""), json);
+        assertTrue(json.indexOf("\"status\"") < json.indexOf("effectiveDateTime"), json);
+        assertTrue(json.contains("\"term\":\"Patient/1\""), json);
+        assertTrue(optimized.getExplain().contains("flatten=1"), optimized.getExplain());
+    }
+
+    @Test
+    public void testLowercaseKeywordFieldBecomesLowercasedTerm() throws Exception {
+        String json = optimize(SearchQuery.conjuncts(
+            SearchQuery.match("Patient").field("resourceType"),
+            SearchQuery.match("Smith").field("name.family")), "Patient");
+
+        assertTrue(json.contains("\"term\":\"smith\""), json);
+        assertFalse(json.contains("resourceType"), "dedicated collection needs no resourceType filter: " + json);
+    }
+
+    @Test
+    public void testKeepsMatchSemanticsWhenNotKeyword() throws Exception {
+        String fuzzy = optimize(SearchQuery.match("Smith").field("name.family").fuzziness(1), "Patient");
+        assertTrue(fuzzy.contains("\"match\":\"Smith\""), fuzzy);
+
+        String shared = optimize(SearchQuery.conjuncts(
+            SearchQuery.match("Organization").field("resourceType"),
+            SearchQuery.match("Acme").field("name")), "General");
+        assertTrue(shared.contains("resourceType"), "General keeps the resourceType filter: " + shared);
+    }
+}
@@ -0,0 +1,144 @@
+package com.couchbase.fhir.resources.service;
+
+import com.couchbase.client.java.AsyncCollection;
+import com.couchbase.client.java.Collection;
+import com.couchbase.client.java.kv.GetOptions;
+import com.couchbase.client.java.kv.GetResult;
+import com.couchbase.client.java.kv.LookupInOptions;
+import com.couchbase.client.java.kv.LookupInResult;
+import com.couchbase.client.java.kv.LookupInSpec;
+import com.couchbase.fhir.resources.config.KvFetchProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * The per-request window is shared by every fetch and lookup batch of a request, including fan-out tasks.
+ */
+public class KvFetchEngineTest {
+
+    private final KvFetchProperties properties = new KvFetchProperties();
+    private final List<CompletableFuture<GetResult>> pending = Collections.synchronizedList(new ArrayList<>());
+    private final List<CompletableFuture<LookupInResult>> pendingLookups = Collections.synchronizedList(new ArrayList<>());
+    private KvFetchEngine engine;
+    private Collection collection;
+
+    @BeforeEach
+    void setUp() {
+        properties.setMaxInFlightPerRequest(2);
+        properties.setMaxInFlightPerBucket(100);
+        engine = new KvFetchEngine();
+        ReflectionTestUtils.setField(engine, "properties", properties);
+
+        AsyncCollection async = mock(AsyncCollection.class);
+        when(async.get(anyString(), any(GetOptions.class))).thenAnswer(invocation -> {
+            CompletableFuture<GetResult> future = new CompletableFuture<>();
+            pending.add(future);
+            return future;
+        });
+        when(async.lookupIn(anyString(), anyList(), any(LookupInOptions.class))).thenAnswer(invocation -> {
+            CompletableFuture<LookupInResult> future = new CompletableFuture<>();
+            pendingLookups.add(future);
+            return future;
+        });
+        collection = mock(Collection.class);
+        when(collection.bucketName()).thenReturn("fhir");
+        when(collection.async()).thenReturn(async);
+    }
+
+    @AfterEach
+    void tearDown() {
+        KvFetchEngine.bindWindow(null);
+    }
+
+    private void completeNext() {
+        pending.remove(0).complete(mock(GetResult.class));
+    }
+
+    @Test
+    void batchesOfOneRequestShareTheWindow() throws Exception {
+        KvFetchEngine.bindWindow(engine.newRequestWindow());
+
+        KvFetchEngine.KvFetch first = engine.fetch(collection, List.of("a1", "a2", "a3"), null);
+        KvFetchEngine.KvFetch second = engine.fetch(collection, List.of("b1", "b2", "b3"), null);
+        assertEquals(2, pending.size());
+
+        while (!pending.isEmpty()) {
+            assertTrue(pending.size() <= 2, pending.size() + " gets in flight");
+            completeNext();
+        }
+        first.awaitAll();
+        second.awaitAll();
+    }
+
+    @Test
+    void fanOutTasksUseTheCallersWindow() {
+        KvFetchEngine.bindWindow(engine.newRequestWindow());
+        RequestFanOut fanOut = new RequestFanOut(4);
+
+        List<CompletableFuture<KvFetchEngine.KvFetch>> fetches = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            List<String> keys = List.of("t" + i + "-1", "t" + i + "-2");
+            fetches.add(fanOut.submit(() -> engine.fetch(collection, keys, null)));
+        }
+        fetches.forEach(RequestFanOut::join);
+
+        assertEquals(2, pending.size());
+    }
+
+    @Test
+    void lookupsShareTheWindowWithGets() throws Exception {
+        KvFetchEngine.bindWindow(engine.newRequestWindow());
+
+        KvFetchEngine.KvFetch fetch = engine.fetch(collection, List.of("a1", "a2"), null);
+        KvFetchEngine.KvLookup lookup = engine.lookupIn(collection, List.of("b1", "b2"), List.of(LookupInSpec.get("subject")));
+        assertEquals(2, pending.size());
+        assertEquals(0, pendingLookups.size());
+
+        completeNext();
+        assertEquals(1, pendingLookups.size());
+        completeNext();
+        fetch.awaitAll();
+        while (!pendingLookups.isEmpty()) {
+            assertTrue(pendingLookups.size() <= 2, pendingLookups.size() + " lookups in flight");
+            pendingLookups.remove(0).complete(mock(LookupInResult.class));
+        }
+        lookup.awaitAll();
+    }
+
+    @Test
+    void unboundBatchesGetTheirOwnWindow() {
+        engine.fetch(collection, List.of("a1", "a2", "a3"), null);
+        engine.fetch(collection, List.of("b1", "b2", "b3"), null);
+
+        assertEquals(4, pending.size());
+    }
+
+    @Test
+    void queueDelayIsTheLongestWaitNotTheSum() throws Exception {
+        properties.setMaxInFlightPerRequest(1);
+        long started = System.nanoTime();
+
+        KvFetchEngine.KvFetch fetch = engine.fetch(collection, List.of("a1", "a2", "a3"), null);
+        while (!pending.isEmpty()) {
+            Thread.sleep(100);
+            completeNext();
+        }
+        fetch.awaitAll();
+        long elapsedMs = (System.nanoTime() - started) / 1_000_000;
+
+        // a3 waited for two gets (~200 ms); a sum over keys would be ~300 ms, more than the whole batch took
+        assertTrue(fetch.getQueueMs() >= 150, fetch.getQueueMs() + " ms queued");
+        assertTrue(fetch.getQueueMs() <= elapsedMs, fetch.getQueueMs() + " ms queued in " + elapsedMs + " ms");
+    }
+}
@@ -0,0 +1,106 @@
+package com.couchbase.fhir.resources.service;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.server.exceptions.PreconditionFailedException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceVersionConflictException;
+import com.couchbase.fhir.resources.config.CasUpdateProperties;
+import com.couchbase.fhir.resources.gateway.CouchbaseGateway;
+import com.couchbase.fhir.resources.repository.FhirResourceDaoImpl;
+import com.couchbase.fhir.resources.validation.FhirBucketValidator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Resource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * PATCH writes only over the version it was applied to: concurrent updates are re-read and re-patched.
+ */
+public class PatchServiceTest {
+
+    private static final String PATCH = "[{\"op\":\"add\",\"path\":\"/active\",\"value\":true}]";
+
+    private final CasUpdateProperties casProperties = new CasUpdateProperties();
+    private PatchService patchService;
+    private PutService putService;
+    private FhirResourceDaoImpl<Patient> dao;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        casProperties.setMaxAttempts(3);
+        putService = mock(PutService.class);
+        dao = mock(FhirResourceDaoImpl.class);
+        FHIRResourceService serviceFactory = mock(FHIRResourceService.class);
+        when(serviceFactory.getService(Patient.class)).thenReturn(dao);
+
+        patchService = new PatchService();
+        ReflectionTestUtils.setField(patchService, "fhirContext", FhirContext.forR4());
+        ReflectionTestUtils.setField(patchService, "bucketValidator", mock(FhirBucketValidator.class));
+        ReflectionTestUtils.setField(patchService, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(patchService, "putService", putService);
+        ReflectionTestUtils.setField(patchService, "couchbaseGateway", mock(CouchbaseGateway.class));
+        ReflectionTestUtils.setField(patchService, "serviceFactory", serviceFactory);
+        ReflectionTestUtils.setField(patchService, "casProperties", casProperties);
+    }
+
+    private static Patient stored(String versionId, String family) {
+        Patient patient = new Patient();
+        patient.setId("p1");
+        patient.getMeta().setVersionId(versionId);
+        patient.addName().setFamily(family);
+        return patient;
+    }
+
+    @Test
+    void concurrentUpdateIsRepatchedOnTheNewVersion() {
+        when(dao.read("Patient", "p1", "fhir")).thenReturn(Optional.of(stored("3", "old")), Optional.of(stored("4", "new")));
+        when(putService.updateOrCreateResource(any(), any(), eq("3"))).thenThrow(new PreconditionFailedException("changed"));
+        when(putService.updateOrCreateResource(any(), any(), eq("4"))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        patchService.patchResource("Patient", "p1", PATCH, Patient.class);
+
+        ArgumentCaptor<Resource> written = ArgumentCaptor.forClass(Resource.class);
+        verify(putService).updateOrCreateResource(written.capture(), any(), eq("4"));
+        Patient patched = (Patient) written.getValue();
+        assertTrue(patched.getActive());
+        assertEquals("new", patched.getNameFirstRep().getFamily());
+    }
+
+    @Test
+    void contentionBeyondTheRetryBudgetFailsWith409() {
+        when(dao.read("Patient", "p1", "fhir")).thenReturn(Optional.of(stored("3", "old")));
+        when(putService.updateOrCreateResource(any(), any(), anyString())).thenThrow(new PreconditionFailedException("changed"));
+
+        assertThrows(ResourceVersionConflictException.class,
+                     () -> patchService.patchResource("Patient", "p1", PATCH, Patient.class));
+        verify(putService, times(3)).updateOrCreateResource(any(), any(), eq("3"));
+    }
+
+    @Test
+    void ifMatchOnAnOlderVersionFailsWith412() {
+        when(dao.read("Patient", "p1", "fhir")).thenReturn(Optional.of(stored("4", "new")));
+
+        assertThrows(PreconditionFailedException.class,
+                     () -> patchService.patchResource("Patient", "p1", PATCH, Patient.class, "3"));
+        verify(putService, never()).updateOrCreateResource(any(), any(), any());
+    }
+
+    @Test
+    void ifMatchIsNotRetriedWhenTheWriteLosesTheRace() {
+        when(dao.read("Patient", "p1", "fhir")).thenReturn(Optional.of(stored("3", "old")));
+        when(putService.updateOrCreateResource(any(), any(), eq("3"))).thenThrow(new PreconditionFailedException("changed"));
+
+        assertThrows(PreconditionFailedException.class,
+                     () -> patchService.patchResource("Patient", "p1", PATCH, Patient.class, "3"));
+        verify(dao, times(1)).read("Patient", "p1", "fhir");
+    }
+}
@@ -0,0 +1,172 @@
+package com.couchbase.fhir.resources.service;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.server.exceptions.PreconditionFailedException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceVersionConflictException;
+import com.couchbase.client.core.error.CasMismatchException;
+import com.couchbase.client.core.error.DocumentNotFoundException;
+import com.couchbase.client.core.msg.kv.DurabilityLevel;
+import com.couchbase.client.java.Bucket;
+import com.couchbase.client.java.Cluster;
+import com.couchbase.client.java.Collection;
+import com.couchbase.client.java.Scope;
+import com.couchbase.client.java.json.JsonObject;
+import com.couchbase.client.java.kv.GetResult;
+import com.couchbase.client.java.kv.MutationResult;
+import com.couchbase.client.java.kv.ReplaceOptions;
+import com.couchbase.client.java.kv.UpsertOptions;
+import com.couchbase.common.fhir.FhirMetaHelper;
+import com.couchbase.fhir.resources.config.CasUpdateProperties;
+import com.couchbase.fhir.resources.gateway.CouchbaseGateway;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * PUT in bucket update mode "cas": retry on CAS mismatch, 409 when retries run out, 412 on a stale If-Match.
+ */
+public class PutServiceCasTest {
+
+    private static final String BUCKET = "fhir";
+    private static final String KEY = "Patient/p1";
+
+    private final CasUpdateProperties casProperties = new CasUpdateProperties();
+    private PutService putService;
+    private CouchbaseGateway couchbaseGateway;
+    private Collection live;
+    private Collection versions;
+    private TransactionContext context;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        casProperties.setMaxAttempts(3);
+        casProperties.setInitialBackoffMs(0);
+
+        live = mock(Collection.class);
+        versions = mock(Collection.class);
+        Scope scope = mock(Scope.class);
+        when(scope.collection("Patient")).thenReturn(live);
+        when(scope.collection("Versions")).thenReturn(versions);
+        Bucket bucket = mock(Bucket.class);
+        when(bucket.scope("Resources")).thenReturn(scope);
+        Cluster cluster = mock(Cluster.class);
+        when(cluster.bucket(BUCKET)).thenReturn(bucket);
+
+        couchbaseGateway = mock(CouchbaseGateway.class);
+        when(couchbaseGateway.getClusterForTransaction("default")).thenReturn(cluster);
+        when(couchbaseGateway.kvDurability()).thenReturn(DurabilityLevel.NONE);
+        when(couchbaseGateway.withCluster(eq("default"), any()))
+            .thenAnswer(invocation -> ((Function<Cluster, Object>) invocation.getArgument(1)).apply(cluster));
+
+        FhirBucketConfigService.FhirBucketConfig bucketConfig = mock(FhirBucketConfigService.FhirBucketConfig.class);
+        when(bucketConfig.isCasUpdateMode()).thenReturn(true);
+        FhirBucketConfigService bucketConfigService = mock(FhirBucketConfigService.class);
+        when(bucketConfigService.getFhirBucketConfig(BUCKET)).thenReturn(bucketConfig);
+
+        CollectionRoutingService collectionRoutingService = mock(CollectionRoutingService.class);
+        when(collectionRoutingService.getTargetCollection("Patient")).thenReturn("Patient");
+
+        FhirMetaHelper metaHelper = new FhirMetaHelper();
+        ReflectionTestUtils.setField(metaHelper, "auditService", new FhirAuditService());
+
+        putService = new PutService();
+        ReflectionTestUtils.setField(putService, "jsonParser", FhirContext.forR4().newJsonParser());
+        ReflectionTestUtils.setField(putService, "metaHelper", metaHelper);
+        ReflectionTestUtils.setField(putService, "deleteService", mock(DeleteService.class));
+        ReflectionTestUtils.setField(putService, "collectionRoutingService", collectionRoutingService);
+        ReflectionTestUtils.setField(putService, "couchbaseGateway", couchbaseGateway);
+        ReflectionTestUtils.setField(putService, "readCoalescer", mock(KvReadCoalescer.class));
+        ReflectionTestUtils.setField(putService, "searchResultCache", mock(SearchResultCache.class));
+        ReflectionTestUtils.setField(putService, "bucketConfigService", bucketConfigService);
+        ReflectionTestUtils.setField(putService, "casProperties", casProperties);
+
+        context = mock(TransactionContext.class);
+        when(context.isInTransaction()).thenReturn(false);
+        when(context.getBucketName()).thenReturn(BUCKET);
+    }
+
+    private static GetResult stored(String versionId, long cas) {
+        GetResult result = mock(GetResult.class);
+        when(result.contentAsObject()).thenReturn(JsonObject.create()
+            .put("resourceType", "Patient")
+            .put("id", "p1")
+            .put("meta", JsonObject.create().put("versionId", versionId)));
+        when(result.contentAsBytes()).thenReturn(new byte[0]);
+        when(result.cas()).thenReturn(cas);
+        return result;
+    }
+
+    private static Patient patient() {
+        Patient patient = new Patient();
+        patient.setId("p1");
+        return patient;
+    }
+
+    @Test
+    void casMismatchIsRetriedAgainstTheNewVersion() {
+        GetResult v3 = stored("3", 30L);
+        GetResult v4 = stored("4", 40L);
+        when(live.get(KEY)).thenReturn(v3, v4);
+        when(live.replace(eq(KEY), any(), any(ReplaceOptions.class)))
+            .thenThrow(CasMismatchException.class)
+            .thenReturn(mock(MutationResult.class));
+
+        Patient saved = (Patient) putService.updateOrCreateResource(patient(), context);
+
+        assertEquals("5", saved.getMeta().getVersionId());
+        verify(live, times(2)).get(KEY);
+        verify(live, times(2)).replace(eq(KEY), any(), any(ReplaceOptions.class));
+        verify(versions).upsert(eq(KEY + "/3"), any(), any(UpsertOptions.class));
+        verify(versions).upsert(eq(KEY + "/4"), any(), any(UpsertOptions.class));
+    }
+
+    @Test
+    void exhaustedRetriesFailWith409() {
+        GetResult v3 = stored("3", 30L);
+        when(live.get(KEY)).thenReturn(v3);
+        when(live.replace(eq(KEY), any(), any(ReplaceOptions.class))).thenThrow(CasMismatchException.class);
+
+        assertThrows(ResourceVersionConflictException.class,
+                     () -> putService.updateOrCreateResource(patient(), context));
+        verify(live, times(3)).replace(eq(KEY), any(), any(ReplaceOptions.class));
+    }
+
+    @Test
+    void ifMatchOnAnOlderVersionFailsWith412WithoutRetrying() {
+        GetResult v4 = stored("4", 40L);
+        when(live.get(KEY)).thenReturn(v4);
+
+        assertThrows(PreconditionFailedException.class,
+                     () -> putService.updateOrCreateResource(patient(), context, "3"));
+        verify(live, times(1)).get(KEY);
+        verify(live, never()).replace(anyString(), any(), any(ReplaceOptions.class));
+        verifyNoInteractions(versions);
+    }
+
+    @Test
+    void ifMatchOnAMissingResourceFailsWith412WithoutRetrying() {
+        when(live.get(KEY)).thenThrow(DocumentNotFoundException.class);
+
+        assertThrows(PreconditionFailedException.class,
+                     () -> putService.updateOrCreateResource(patient(), context, "1"));
+        verify(live, times(1)).get(KEY);
+        verify(live, never()).insert(anyString(), any(), any());
+    }
+
+    @Test
+    void backoffDoublesUpToTheCeiling() {
+        assertEquals(5, PutService.backoffCeilingMs(2, 5, 100));
+        assertEquals(10, PutService.backoffCeilingMs(3, 5, 100));
+        assertEquals(80, PutService.backoffCeilingMs(6, 5, 100));
+        assertEquals(100, PutService.backoffCeilingMs(7, 5, 100));
+        assertEquals(100, PutService.backoffCeilingMs(1000, 5, 100));
+    }
+}
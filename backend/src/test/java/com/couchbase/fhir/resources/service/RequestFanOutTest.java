@@ -0,0 +1,88 @@
+package com.couchbase.fhir.resources.service;
+
+import com.couchbase.common.fhir.FhirMetaHelper;
+import com.couchbase.fhir.resources.interceptor.RequestPerfBag;
+import com.couchbase.fhir.resources.interceptor.RequestPerfBagUtils;
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tasks of a fan-out run as the caller that created it (batch entries are audited as that user)
+ * and report to its perf bag.
+ */
+public class RequestFanOutTest {
+
+    @AfterEach
+    void clearSecurityContext() {
+        SecurityContextHolder.clearContext();
+        RequestPerfBagUtils.unbind();
+    }
+
+    private static FhirMetaHelper metaHelper() {
+        FhirMetaHelper metaHelper = new FhirMetaHelper();
+        ReflectionTestUtils.setField(metaHelper, "auditService", new FhirAuditService());
+        return metaHelper;
+    }
+
+    private static String createdBy(Patient patient) {
+        Coding tag = patient.getMeta().getTag(FhirAuditService.auditSystem(), "created-by");
+        return tag != null ? tag.getDisplay() : null;
+    }
+
+    @Test
+    void batchCreatedResourcesAreTaggedWithTheCaller() {
+        SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("alice", "n/a", "ROLE_USER"));
+        FhirMetaHelper metaHelper = metaHelper();
+        RequestFanOut fanOut = new RequestFanOut(2);
+
+        Patient first = new Patient();
+        Patient dependent = new Patient();
+        CompletableFuture<Patient> firstDone = fanOut.submit(() -> {
+            metaHelper.applyMeta(first, MetaRequest.forCreate(null));
+            return first;
+        });
+        // Submitted from a completion callback on a virtual thread, like a dependent batch entry
+        CompletableFuture<Patient> dependentDone = firstDone.thenCompose(ignored -> fanOut.submit(() -> {
+            metaHelper.applyMeta(dependent, MetaRequest.forCreate(null));
+            return dependent;
+        }));
+
+        RequestFanOut.join(dependentDone);
+        assertEquals("user:alice", createdBy(first));
+        assertEquals("user:alice", createdBy(dependent));
+    }
+
+    @Test
+    void tasksDoNotLeakTheContextIntoLaterFanOuts() {
+        SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("alice", "n/a", "ROLE_USER"));
+        RequestFanOut.join(new RequestFanOut(1).submit(() -> "done"));
+
+        SecurityContextHolder.clearContext();
+        RequestFanOut anonymous = new RequestFanOut(1);
+        assertEquals("anonymous", RequestFanOut.join(anonymous.submit(() -> new FhirAuditService().getCurrentUserId())));
+    }
+
+    @Test
+    void tasksReportToTheCallersPerfBagOnly() {
+        RequestPerfBag perfBag = new RequestPerfBag();
+        RequestPerfBagUtils.bind(perfBag);
+        RequestFanOut.join(new RequestFanOut(1).submit(() -> {
+            RequestPerfBagUtils.addNote("fts_plan", "Patient");
+            return null;
+        }));
+        assertEquals("Patient", perfBag.getNotes().get("fts_plan"));
+
+        RequestPerfBagUtils.unbind();
+        RequestFanOut unbound = new RequestFanOut(1);
+        assertNull(RequestFanOut.join(unbound.submit(RequestPerfBagUtils::current)));
+    }
+}
@@ -0,0 +1,84 @@
+package com.couchbase.fhir.resources.service;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.api.SummaryEnum;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Byte-level _summary/_elements projection of raw resource JSON.
+ */
+public class ResourceProjectionTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final String PATIENT = "{\"resourceType\":\"Patient\",\"id\":\"p1\","
+        + "\"meta\":{\"versionId\":\"2\",\"tag\":[{\"code\":\"x\"}]},"
+        + "\"text\":{\"status\":\"generated\",\"div\":\"<div>p1</div>\"},"
+        + "\"name\":[{\"family\":\"Doe\"}],\"birthDate\":\"1970-01-01\",\"_birthDate\":{\"extension\":[]},"
+        + "\"contact\":[{\"name\":{\"family\":\"Roe\"}}],\"deceasedBoolean\":false}";
+
+    private final ResourceProjectionService service = newService();
+
+    private static ResourceProjectionService newService() {
+        ResourceProjectionService service = new ResourceProjectionService();
+        ReflectionTestUtils.setField(service, "fhirContext", FhirContext.forR4Cached());
+        return service;
+    }
+
+    private JsonNode project(ResourceProjection projection) throws Exception {
+        byte[] projected = projection.apply("Patient/p1", PATIENT.getBytes(StandardCharsets.UTF_8));
+        return MAPPER.readTree(projected);
+    }
+
+    @Test
+    public void testSummaryTrue_KeepsSummaryElementsOnly() throws Exception {
+        JsonNode patient = project(service.forRequest(SummaryEnum.TRUE, null));
+
+        assertEquals("p1", patient.get("id").asText());
+        assertTrue(patient.has("name"));
+        assertTrue(patient.has("birthDate"));
+        assertTrue(patient.has("_birthDate"), "primitive extensions follow their element");
+        assertTrue(patient.has("deceasedBoolean"), "choice elements expand to their JSON names");
+        assertFalse(patient.has("text"));
+        assertFalse(patient.has("contact"));
+
+        JsonNode tags = patient.get("meta").get("tag");
+        assertEquals(2, tags.size());
+        assertEquals("SUBSETTED", tags.get(1).get("code").asText());
+        assertEquals("2", patient.get("meta").get("versionId").asText());
+    }
+
+    @Test
+    public void testElements_KeepsRequestedAndMandatory() throws Exception {
+        JsonNode patient = project(service.forRequest(SummaryEnum.TRUE, Set.of("Patient.name", "deceased")));
+
+        assertTrue(patient.has("name"));
+        assertTrue(patient.has("deceasedBoolean"));
+        assertFalse(patient.has("birthDate"), "_elements wins over _summary");
+        assertFalse(patient.has("text"));
+    }
+
+    @Test
+    public void testSummaryData_DropsTextOnly() throws Exception {
+        JsonNode patient = project(service.forRequest(SummaryEnum.DATA, null));
+
+        assertFalse(patient.has("text"));
+        assertTrue(patient.has("contact"));
+        assertTrue(patient.has("name"));
+    }
+
+    @Test
+    public void testNoProjectionWhenNotRequested() {
+        assertNull(service.forRequest(null, null));
+        assertNull(service.forRequest(SummaryEnum.FALSE, null));
+        assertFalse(service.supportsFastpath(SummaryEnum.COUNT));
+    }
+}
@@ -0,0 +1,46 @@
+package com.couchbase.fhir.resources.service;
+
+import ca.uhn.fhir.context.FhirContext;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Validation cache keys: content and profiles count, id and the rest of meta do not.
+ */
+public class ResourceValidationKeyTest {
+
+    private static final FhirContext CONTEXT = FhirContext.forR4();
+
+    private static Patient patient(String id, String versionId, String family) {
+        Patient patient = new Patient();
+        patient.setId(id);
+        patient.getMeta().setVersionId(versionId);
+        patient.addName().setFamily(family);
+        return patient;
+    }
+
+    @Test
+    void idAndVersionDoNotChangeTheKey() {
+        Patient first = patient("a", "1", "Doe");
+        Patient resubmitted = patient("b", "7", "Doe");
+
+        assertEquals(ResourceValidationService.key(CONTEXT, first, true), ResourceValidationService.key(CONTEXT, resubmitted, true));
+        assertEquals("a", first.getIdElement().getIdPart());
+        assertEquals("1", first.getMeta().getVersionId());
+    }
+
+    @Test
+    void contentProfilesAndValidatorChangeTheKey() {
+        Patient base = patient("a", "1", "Doe");
+        Patient otherName = patient("a", "1", "Roe");
+        Patient profiled = patient("a", "1", "Doe");
+        profiled.getMeta().addProfile("http://hl7.org/fhir/us/core/StructureDefinition/us-core-patient");
+
+        String key = ResourceValidationService.key(CONTEXT, base, true);
+        assertNotEquals(key, ResourceValidationService.key(CONTEXT, otherName, true));
+        assertNotEquals(key, ResourceValidationService.key(CONTEXT, profiled, true));
+        assertNotEquals(key, ResourceValidationService.key(CONTEXT, base, false));
+    }
+}
@@ -0,0 +1,144 @@
+package com.couchbase.fhir.resources.service;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.validation.FhirValidator;
+import ca.uhn.fhir.validation.ResultSeverityEnum;
+import ca.uhn.fhir.validation.SingleValidationMessage;
+import ca.uhn.fhir.validation.ValidationResult;
+import com.couchbase.fhir.resources.config.ValidationProperties;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Validation results are cached and shared by concurrent callers; Bundle entries are validated
+ * on their own and reported at their entry.
+ */
+public class ResourceValidationServiceTest {
+
+    private static final FhirContext CONTEXT = FhirContext.forR4();
+
+    private final ValidationProperties properties = new ValidationProperties();
+    private FhirValidator validator;
+    private ResourceValidationService service;
+
+    @BeforeEach
+    void setUp() {
+        properties.setMaxConcurrency(4);
+        validator = mock(FhirValidator.class);
+        service = new ResourceValidationService();
+        ReflectionTestUtils.setField(service, "fhirContext", CONTEXT);
+        ReflectionTestUtils.setField(service, "fhirValidator", validator);
+        ReflectionTestUtils.setField(service, "basicFhirValidator", mock(FhirValidator.class));
+        ReflectionTestUtils.setField(service, "properties", properties);
+        ReflectionTestUtils.invokeMethod(service, "init");
+    }
+
+    private static Patient patient(String id) {
+        Patient patient = new Patient();
+        patient.setId(id);
+        patient.addName().setFamily("Doe");
+        return patient;
+    }
+
+    private static ValidationResult valid() {
+        return new ValidationResult(CONTEXT, List.of());
+    }
+
+    /**
+     * Start a validation on its own thread and wait until it is inside the validator or blocked on the leader
+     */
+    private CompletableFuture<ValidationResult> validateAsync(Patient patient) {
+        CompletableFuture<ValidationResult> done = new CompletableFuture<>();
+        Thread thread = new Thread(() -> {
+            try {
+                done.complete(service.validate(patient, true));
+            } catch (Throwable t) {
+                done.completeExceptionally(t);
+            }
+        });
+        thread.start();
+        while (thread.getState() != Thread.State.WAITING && !done.isDone()) {
+            Thread.onSpinWait();
+        }
+        return done;
+    }
+
+    @Test
+    void resubmittedResourceIsServedFromTheCache() {
+        when(validator.validateWithResult(any(IBaseResource.class))).thenReturn(valid());
+
+        ValidationResult first = service.validate(patient("a"), true);
+        ValidationResult second = service.validate(patient("b"), true);
+
+        assertSame(first, second);
+        verify(validator, times(1)).validateWithResult(any(IBaseResource.class));
+    }
+
+    @Test
+    void concurrentValidationsOfOneKeyRunTheValidatorOnce() {
+        CountDownLatch release = new CountDownLatch(1);
+        when(validator.validateWithResult(any(IBaseResource.class))).thenAnswer(invocation -> {
+            release.await();
+            return valid();
+        });
+
+        CompletableFuture<ValidationResult> leader = validateAsync(patient("a"));
+        CompletableFuture<ValidationResult> waiter = validateAsync(patient("b"));
+        release.countDown();
+
+        assertSame(leader.join(), waiter.join());
+        verify(validator, times(1)).validateWithResult(any(IBaseResource.class));
+    }
+
+    @Test
+    void waitersAreReleasedWhenTheValidatorThrowsAnError() {
+        CountDownLatch release = new CountDownLatch(1);
+        when(validator.validateWithResult(any(IBaseResource.class))).thenAnswer(invocation -> {
+            release.await();
+            throw new StackOverflowError();
+        });
+
+        CompletableFuture<ValidationResult> leader = validateAsync(patient("a"));
+        CompletableFuture<ValidationResult> waiter = validateAsync(patient("b"));
+        release.countDown();
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            assertThrows(Exception.class, leader::join);
+            assertThrows(Exception.class, waiter::join);
+        });
+    }
+
+    @Test
+    void bundleEntryMessagesArePrefixedWithTheirEntry() {
+        SingleValidationMessage message = new SingleValidationMessage();
+        message.setSeverity(ResultSeverityEnum.ERROR);
+        message.setMessage("name: minimum required = 1");
+        message.setLocationString("Patient.name");
+        when(validator.validateWithResult(any(IBaseResource.class))).thenAnswer(invocation ->
+            invocation.getArgument(0) instanceof Patient ? new ValidationResult(CONTEXT, List.of(message)) : valid());
+
+        Bundle bundle = new Bundle();
+        bundle.setType(Bundle.BundleType.TRANSACTION);
+        bundle.addEntry().getRequest().setMethod(Bundle.HTTPVerb.DELETE).setUrl("Patient/gone");
+        bundle.addEntry().setResource(patient("a")).getRequest().setMethod(Bundle.HTTPVerb.POST).setUrl("Patient");
+
+        ValidationResult result = service.validateBundle(bundle, true);
+
+        assertEquals(1, result.getMessages().size());
+        assertEquals("Bundle.entry[1].resource/Patient.name", result.getMessages().get(0).getLocationString());
+        assertEquals("name: minimum required = 1", result.getMessages().get(0).getMessage());
+    }
+}
@@ -0,0 +1,67 @@
+"""Create throughput benchmark: back-to-back plain POSTs, reported as creates per second.
+
+Compare two server builds by running the same user count and duration against each:
+
+    locust -f create_benchmark.py --host "$CBFHIR_FHIR_URL" --headless -u 32 -r 32 -t 2m
+"""
+from locust import FastHttpUser, task, constant, events
+from faker import Faker
+
+from auth import build_optional_auth_headers
+from resources.client import FHIRClient
+
+# Optional auth header supplier (fresh token per call)
+HEADER_SUPPLIER = build_optional_auth_headers()
+
+fake = Faker()
+
+
+def _patient() -> dict:
+    return {
+        "resourceType": "Patient",
+        "name": [{"family": fake.last_name(), "given": [fake.first_name()]}],
+        "gender": fake.random_element(["male", "female"]),
+        "birthDate": fake.date_of_birth(minimum_age=1, maximum_age=90).isoformat(),
+        "telecom": [{"system": "phone", "value": fake.phone_number()}],
+    }
+
+
+def _observation(patient_id: str) -> dict:
+    return {
+        "resourceType": "Observation",
+        "status": "final",
+        "code": {"coding": [{"system": "http://loinc.org", "code": "8867-4", "display": "Heart rate"}]},
+        "subject": {"reference": f"Patient/{patient_id}"},
+        "effectiveDateTime": fake.iso8601() + "Z",
+        "valueQuantity": {"value": fake.random_int(50, 120), "unit": "beats/minute",
+                          "system": "http://unitsofmeasure.org", "code": "/min"},
+    }
+
+
+class CreateBenchmark(FastHttpUser):
+    wait_time = constant(0)
+
+    def on_start(self):
+        self.fhir = FHIRClient(self.client, base_url='/', header_supplier=HEADER_SUPPLIER)
+        self.fhir.enable_log = False
+        resp = self.fhir.post("Patient", json=_patient())
+        self.patient_id = (resp.json() or {}).get("id") if resp.ok else None
+
+    @task(1)
+    def create_patient(self):
+        self.fhir.post("Patient", json=_patient())
+
+    @task(4)
+    def create_observation(self):
+        if self.patient_id:
+            self.fhir.post("Observation", json=_observation(self.patient_id))
+
+
+@events.test_stop.add_listener
+def report_creates_per_second(environment, **_):
+    stats = environment.stats
+    creates = sum(entry.num_requests - entry.num_failures
+                  for (name, method), entry in stats.entries.items() if method == "POST")
+    elapsed = max((stats.total.last_request_timestamp or stats.total.start_time) - stats.total.start_time, 1e-9)
+    print(f"Creates: {creates} in {elapsed:.1f}s = {creates / elapsed:.1f} creates/s "
+          f"(p95 {stats.total.get_response_time_percentile(0.95):.0f} ms)")